@@ -0,0 +1,132 @@
+/*
+ * JMH benchmarks for the server, run them with `./gradlew :server:benchmarks:jmh`.
+ * Add `-Pjmh.includes=<regex>` to only run some of them.
+ *
+ * `./gradlew :server:benchmarks:jmhBaseline` keeps the results of the last run
+ * as the baseline, and `./gradlew :server:benchmarks:jmhCompare` compares the
+ * results of the last run to it.
+ *
+ * `./gradlew :server:benchmarks:trackerSwarm --args="--help"` simulates
+ * trackers against a running server, see TrackerSwarm.kt.
+ */
+import org.jetbrains.kotlin.gradle.dsl.JvmTarget
+import org.jetbrains.kotlin.gradle.tasks.KotlinCompile
+
+plugins {
+	kotlin("jvm")
+	id("me.champeau.jmh")
+}
+
+kotlin {
+	jvmToolchain {
+		languageVersion.set(JavaLanguageVersion.of(17))
+	}
+}
+java {
+	toolchain {
+		languageVersion.set(JavaLanguageVersion.of(17))
+	}
+}
+tasks.withType<KotlinCompile> {
+	compilerOptions {
+		jvmTarget.set(JvmTarget.JVM_17)
+		freeCompilerArgs.set(listOf("-Xvalue-classes"))
+	}
+}
+
+// Set compiler to use UTF-8
+tasks.withType<JavaCompile> {
+	options.encoding = "UTF-8"
+}
+
+allprojects {
+	repositories {
+		mavenCentral()
+		maven(url = "https://jitpack.io")
+	}
+}
+
+dependencies {
+	// For the tracker swarm
+	implementation(project(":server:core"))
+	implementation(project(":solarxr-protocol"))
+	implementation("com.google.flatbuffers:flatbuffers-java:22.10.26")
+	implementation("org.java-websocket:Java-WebSocket:1.+")
+	implementation("commons-cli:commons-cli:1.8.0")
+
+	jmhImplementation(project(":server:core"))
+	// For building data feed updates
+	jmhImplementation(project(":solarxr-protocol"))
+	jmhImplementation("com.google.flatbuffers:flatbuffers-java:22.10.26")
+	// For comparing the OSC output with JavaOSC's serializer
+	jmhImplementation("com.illposed.osc:javaosc-core:0.8")
+}
+
+tasks.register<JavaExec>("trackerSwarm") {
+	description = "Simulates trackers against a running server"
+	classpath = sourceSets.main.get().runtimeClasspath
+	mainClass.set("dev.slimevr.loadgen.TrackerSwarmKt")
+}
+
+val jmhResults = layout.buildDirectory.file("results/jmh/results.json")
+val jmhBaseline = layout.projectDirectory.file("jmh-baseline.json")
+
+jmh {
+	jmhVersion.set("1.37")
+	// Reports gc.alloc.rate.norm, the bytes allocated per operation
+	profilers.add("gc")
+	findProperty("jmh.includes")?.let { includes.add(it.toString()) }
+	resultFormat.set("JSON")
+	resultsFile.set(jmhResults)
+}
+
+tasks.register<Copy>("jmhBaseline") {
+	description = "Keeps the results of the last JMH run as the baseline"
+	from(jmhResults)
+	into(jmhBaseline.asFile.parentFile)
+	rename { jmhBaseline.asFile.name }
+}
+
+tasks.register("jmhCompare") {
+	description = "Compares the results of the last JMH run to the baseline"
+	val results = jmhResults.get().asFile
+	val baseline = jmhBaseline.asFile
+	doLast {
+		// Score and allocated bytes per operation of each benchmark and params
+		@Suppress("UNCHECKED_CAST")
+		fun read(file: File): Map<String, Pair<Double, Double?>> {
+			val runs = groovy.json.JsonSlurper().parse(file) as List<Map<String, Any?>>
+			return runs.associate { run ->
+				val params = (run["params"] as Map<String, Any?>?)
+					?.entries
+					?.joinToString(", ", " (", ")") { "${it.key}=${it.value}" }
+					?: ""
+				val primary = run["primaryMetric"] as Map<String, Any?>
+				val secondary = run["secondaryMetrics"] as Map<String, Map<String, Any?>>
+				val alloc = secondary["gc.alloc.rate.norm"]?.get("score") as Number?
+				"${run["benchmark"]}$params" to Pair((primary["score"] as Number).toDouble(), alloc?.toDouble())
+			}
+		}
+
+		fun change(old: Double, new: Double): String =
+			if (old == 0.0) "" else String.format(java.util.Locale.ROOT, " (%+.1f%%)", (new - old) / old * 100)
+
+		if (!baseline.exists()) throw GradleException("No baseline, run jmhBaseline first")
+		val old = read(baseline)
+		for ((name, result) in read(results)) {
+			val (score, alloc) = result
+			val previous = old[name]
+			if (previous == null) {
+				logger.lifecycle("$name: new, score $score, ${alloc ?: "-"} B/op")
+				continue
+			}
+			val (oldScore, oldAlloc) = previous
+			val allocChange = if (alloc != null && oldAlloc != null) {
+				"$oldAlloc -> $alloc B/op${change(oldAlloc, alloc)}"
+			} else {
+				"- B/op"
+			}
+			logger.lifecycle("$name: score $oldScore -> $score${change(oldScore, score)}, $allocChange")
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package dev.slimevr.benchmarks
+
+import dev.slimevr.autobone.AutoBone
+import dev.slimevr.config.AutoBoneConfig
+import dev.slimevr.poseframeformat.PoseFrames
+import dev.slimevr.poseframeformat.trackerdata.TrackerFrame
+import dev.slimevr.poseframeformat.trackerdata.TrackerFrames
+import dev.slimevr.tracking.trackers.TrackerPosition
+import io.eiren.util.collections.FastList
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Wall time of AutoBone training and frame filtering on a synthetic
+ * recording for different amounts of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+open class AutoBoneBenchmark {
+	@Param("1", "2", "4", "8")
+	var threads = 1
+
+	@Param("64")
+	var batchSize = 64
+
+	private lateinit var frames: PoseFrames
+
+	// Frame filtering removes frames from the recording, so every run needs
+	// its own copy
+	@Setup(Level.Invocation)
+	fun setup() {
+		frames = walkingFrames(FRAME_COUNT)
+	}
+
+	@Benchmark
+	fun train(): AutoBone.AutoBoneResults {
+		val config = config()
+		config.numEpochs = 10
+		return AutoBone(null, config).processFrames(frames, config)
+	}
+
+	/**
+	 * A single epoch, along with the setup every run of AutoBone does
+	 */
+	@Benchmark
+	fun epoch(): AutoBone.AutoBoneResults {
+		val config = config()
+		config.numEpochs = 1
+		return AutoBone(null, config).processFrames(frames, config)
+	}
+
+	@Benchmark
+	fun filterFrames(): AutoBone.AutoBoneResults {
+		val config = config()
+		config.numEpochs = 0
+		config.useFrameFiltering = true
+		return AutoBone(null, config).processFrames(frames, config)
+	}
+
+	private fun config(): AutoBoneConfig {
+		val config = AutoBoneConfig()
+		config.threads = threads
+		config.batchSize = batchSize
+		config.targetHmdHeight = 1.6f
+		config.maxFinalError = Float.MAX_VALUE
+		return config
+	}
+
+	companion object {
+		const val FRAME_COUNT = 500
+
+		/**
+		 * A recording of legs swinging back and forth with the knees bending
+		 */
+		fun walkingFrames(frameCount: Int): PoseFrames {
+			val frames = PoseFrames()
+			fun addTracker(position: TrackerPosition, frame: (phase: Float) -> TrackerFrame) {
+				val trackerFrames = FastList<TrackerFrame?>(frameCount)
+				for (i in 0 until frameCount) {
+					trackerFrames.add(frame(i * 0.15f))
+				}
+				frames.frameHolders.add(TrackerFrames(position.designation, trackerFrames))
+			}
+
+			fun addLeg(upperLeg: TrackerPosition, lowerLeg: TrackerPosition, offset: Float) {
+				addTracker(upperLeg) { TrackerFrame(upperLeg, rotationX(0.5f * sin(it + offset))) }
+				addTracker(lowerLeg) {
+					TrackerFrame(lowerLeg, rotationX(0.5f * sin(it + offset) - 0.4f * (1f + cos(it + offset))))
+				}
+			}
+
+			addTracker(TrackerPosition.HEAD) {
+				TrackerFrame(TrackerPosition.HEAD, Quaternion.IDENTITY, Vector3(0f, 1.6f + 0.02f * sin(it * 2f), 0f))
+			}
+			addTracker(TrackerPosition.HIP) { TrackerFrame(TrackerPosition.HIP, Quaternion.IDENTITY) }
+			addLeg(TrackerPosition.LEFT_UPPER_LEG, TrackerPosition.LEFT_LOWER_LEG, 0f)
+			addLeg(TrackerPosition.RIGHT_UPPER_LEG, TrackerPosition.RIGHT_LOWER_LEG, PI.toFloat())
+			return frames
+		}
+
+		private fun rotationX(angle: Float) = Quaternion(cos(angle / 2f), sin(angle / 2f), 0f, 0f)
+	}
+}
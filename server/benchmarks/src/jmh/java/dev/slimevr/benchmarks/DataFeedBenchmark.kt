@@ -0,0 +1,156 @@
+package dev.slimevr.benchmarks
+
+import com.google.flatbuffers.FlatBufferBuilder
+import dev.slimevr.protocol.datafeed.DataFeedBuilder
+import dev.slimevr.protocol.datafeed.DataFeedDelta
+import dev.slimevr.tracking.processor.HumanPoseManager
+import dev.slimevr.tracking.trackers.Tracker
+import dev.slimevr.tracking.trackers.TrackerPosition
+import dev.slimevr.tracking.trackers.TrackerStatus
+import dev.slimevr.tracking.trackers.udp.IMUType
+import dev.slimevr.tracking.trackers.udp.UDPDevice
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import solarxr_protocol.data_feed.DataFeedUpdate
+import solarxr_protocol.data_feed.device_data.DeviceDataMaskT
+import solarxr_protocol.data_feed.tracker.TrackerDataMaskT
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.util.concurrent.TimeUnit
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Builds a data feed update the way DataFeedHandler.buildDatafeed does, for
+ * a device with a full body set of trackers and the skeleton's bones, after
+ * [movingTrackers] of them moved. [updateOnly] runs the same tick without
+ * building the update, the difference between both is the time building
+ * takes. With [delta], only what changed since the last update is added.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class DataFeedBenchmark {
+	@Param("false", "true")
+	var delta = false
+
+	@Param("1", "9")
+	var movingTrackers = 9
+
+	private val device = UDPDevice(
+		InetSocketAddress(InetAddress.getLoopbackAddress(), 6969),
+		InetAddress.getLoopbackAddress(),
+		"BE:NC:HM:AR:K0:01",
+	)
+	private lateinit var trackers: List<Tracker>
+	private lateinit var humanPoseManager: HumanPoseManager
+	private val fbb = FlatBufferBuilder(4096)
+	private val dataFeedDelta = DataFeedDelta()
+	private val trackerMask = TrackerDataMaskT().apply {
+		info = true
+		status = true
+		position = true
+		rotation = true
+		linearAcceleration = true
+		temp = true
+		rotationReferenceAdjusted = true
+		rotationIdentityAdjusted = true
+		tps = true
+	}
+	private val deviceMask = DeviceDataMaskT().apply {
+		deviceData = true
+		trackerData = trackerMask
+	}
+	private var angle = 0f
+
+	@Setup
+	fun setup() {
+		trackers = POSITIONS.mapIndexed { i, position ->
+			Tracker(
+				device,
+				i,
+				"udp://${device.hardwareIdentifier}/$i",
+				trackerPosition = position,
+				hasRotation = true,
+				hasAcceleration = true,
+				hasPosition = position == TrackerPosition.HEAD,
+				imuType = IMUType.UNKNOWN,
+				needsReset = true,
+				needsMounting = true,
+			).also {
+				it.status = TrackerStatus.OK
+				it.setRotation(Quaternion.IDENTITY)
+				it.setAcceleration(Vector3(0f, 0f, 0.1f))
+				device.trackers[i] = it
+			}
+		}
+		humanPoseManager = HumanPoseManager(trackers)
+	}
+
+	@Benchmark
+	fun build(): Int {
+		update()
+		val bones = humanPoseManager.allBones
+		val syntheticTrackers = humanPoseManager.computedTrackers
+		val feedDelta = if (delta) dataFeedDelta else null
+		if (feedDelta != null) {
+			val structure = ArrayList<Any>()
+			structure.add(device)
+			structure.addAll(trackers)
+			structure.addAll(syntheticTrackers)
+			structure.addAll(bones)
+			feedDelta.begin(System.currentTimeMillis(), structure)
+		}
+		fbb.clear()
+		val devicesOffset = DataFeedBuilder.createDevicesData(fbb, deviceMask, listOf(device), feedDelta)
+		val trackersOffset = DataFeedBuilder.createSyntheticTrackersData(fbb, trackerMask, syntheticTrackers, feedDelta)
+		val bonesOffset = DataFeedBuilder.createBonesData(fbb, true, bones, feedDelta)
+		fbb.finish(DataFeedUpdate.createDataFeedUpdate(fbb, devicesOffset, trackersOffset, bonesOffset))
+		return fbb.offset()
+	}
+
+	@Benchmark
+	fun updateOnly() {
+		update()
+	}
+
+	private fun update() {
+		angle += 0.001f
+		val rotation = Quaternion(cos(angle), 0f, sin(angle), 0f)
+		for (i in 0 until movingTrackers) {
+			trackers[i].setRotation(rotation)
+		}
+		for (tracker in trackers) {
+			tracker.tick()
+		}
+		humanPoseManager.update()
+	}
+
+	companion object {
+		private val POSITIONS = listOf(
+			TrackerPosition.LEFT_FOOT,
+			TrackerPosition.LEFT_LOWER_LEG,
+			TrackerPosition.LEFT_UPPER_LEG,
+			TrackerPosition.RIGHT_FOOT,
+			TrackerPosition.RIGHT_LOWER_LEG,
+			TrackerPosition.RIGHT_UPPER_LEG,
+			TrackerPosition.HIP,
+			TrackerPosition.CHEST,
+			TrackerPosition.HEAD,
+		)
+	}
+}
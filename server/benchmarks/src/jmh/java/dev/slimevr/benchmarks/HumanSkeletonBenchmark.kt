@@ -0,0 +1,97 @@
+package dev.slimevr.benchmarks
+
+import dev.slimevr.VRServer.Companion.getNextLocalTrackerId
+import dev.slimevr.tracking.processor.HumanPoseManager
+import dev.slimevr.tracking.trackers.Tracker
+import dev.slimevr.tracking.trackers.TrackerPosition
+import dev.slimevr.tracking.trackers.TrackerStatus
+import dev.slimevr.tracking.trackers.udp.IMUType
+import io.github.axisangles.ktmath.Quaternion
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Runs one server tick worth of tracker and skeleton updates for a full body
+ * setup, with [movingTrackers] of them receiving new rotations every tick.
+ * The time per operation multiplied by the tick rate is the CPU time spent
+ * per second, e.g. 10 µs/op at 1000 ticks per second is 1% of a core.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class HumanSkeletonBenchmark {
+	@Param("true", "false")
+	var skipUnchangedFrames = true
+
+	// 0 is idle, 1 only moves a foot and 9 moves every tracker
+	@Param("0", "1", "9")
+	var movingTrackers = 0
+
+	private lateinit var trackers: List<Tracker>
+	private lateinit var humanPoseManager: HumanPoseManager
+	private var angle = 0f
+
+	@Setup
+	fun setup() {
+		trackers = POSITIONS.map { position ->
+			Tracker(
+				null,
+				getNextLocalTrackerId(),
+				position.designation,
+				trackerPosition = position,
+				hasRotation = true,
+				hasPosition = position == TrackerPosition.HEAD,
+				imuType = IMUType.UNKNOWN,
+			).also {
+				it.status = TrackerStatus.OK
+				it.setRotation(Quaternion.IDENTITY)
+			}
+		}
+		humanPoseManager = HumanPoseManager(trackers)
+		humanPoseManager.skeleton.skipUnchangedFrames = skipUnchangedFrames
+	}
+
+	@Benchmark
+	fun tick() {
+		if (movingTrackers > 0) {
+			angle += 0.001f
+			val rotation = Quaternion(cos(angle), 0f, sin(angle), 0f)
+			for (i in 0 until movingTrackers) {
+				trackers[i].setRotation(rotation)
+			}
+		}
+		for (tracker in trackers) {
+			tracker.tick()
+		}
+		humanPoseManager.update()
+	}
+
+	companion object {
+		private val POSITIONS = listOf(
+			TrackerPosition.LEFT_FOOT,
+			TrackerPosition.LEFT_LOWER_LEG,
+			TrackerPosition.LEFT_UPPER_LEG,
+			TrackerPosition.RIGHT_FOOT,
+			TrackerPosition.RIGHT_LOWER_LEG,
+			TrackerPosition.RIGHT_UPPER_LEG,
+			TrackerPosition.HIP,
+			TrackerPosition.CHEST,
+			TrackerPosition.HEAD,
+		)
+	}
+}
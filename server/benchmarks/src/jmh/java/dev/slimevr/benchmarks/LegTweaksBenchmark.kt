@@ -0,0 +1,112 @@
+package dev.slimevr.benchmarks
+
+import dev.slimevr.VRServer.Companion.getNextLocalTrackerId
+import dev.slimevr.config.LegTweaksConfig
+import dev.slimevr.tracking.processor.HumanPoseManager
+import dev.slimevr.tracking.trackers.Tracker
+import dev.slimevr.tracking.trackers.TrackerPosition
+import dev.slimevr.tracking.trackers.TrackerStatus
+import dev.slimevr.tracking.trackers.udp.IMUType
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * A skeleton update of a full body setup walking in place, with leg tweaks
+ * (floor clip, skating correction, toe snap and foot plant) on and off. The
+ * difference between both is the time [dev.slimevr.tracking.processor.skeleton.LegTweaks.tweakLegs]
+ * takes, it can't run on its own as it works on the pose the update made.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class LegTweaksBenchmark {
+	@Param("true", "false")
+	var legTweaks = true
+
+	private lateinit var trackers: Map<TrackerPosition, Tracker>
+	private lateinit var humanPoseManager: HumanPoseManager
+	private var phase = 0f
+
+	@Setup
+	fun setup() {
+		trackers = POSITIONS.associateWith { position ->
+			Tracker(
+				null,
+				getNextLocalTrackerId(),
+				position.designation,
+				trackerPosition = position,
+				hasRotation = true,
+				hasPosition = position == TrackerPosition.HEAD,
+				imuType = IMUType.UNKNOWN,
+			).also {
+				it.status = TrackerStatus.OK
+				it.setRotation(Quaternion.IDENTITY)
+			}
+		}
+		trackers.getValue(TrackerPosition.HEAD).position = Vector3(0f, 1.6f, 0f)
+		humanPoseManager = HumanPoseManager(trackers.values.toList())
+		// Poses only change with the trackers, skipping unchanged ones would
+		// skip nothing here
+		humanPoseManager.skeleton.skipUnchangedFrames = false
+		val tweaks = humanPoseManager.skeleton.legTweaks
+		tweaks.setConfig(LegTweaksConfig())
+		tweaks.enabled = legTweaks
+		tweaks.setFloorClipEnabled(true)
+		tweaks.setSkatingCorrectionEnabled(true)
+		tweaks.toeSnapEnabled = true
+		tweaks.footPlantEnabled = true
+	}
+
+	@Benchmark
+	fun tick() {
+		phase += 0.01f
+		setLeg(TrackerPosition.LEFT_UPPER_LEG, TrackerPosition.LEFT_LOWER_LEG, TrackerPosition.LEFT_FOOT, 0f)
+		setLeg(TrackerPosition.RIGHT_UPPER_LEG, TrackerPosition.RIGHT_LOWER_LEG, TrackerPosition.RIGHT_FOOT, PI.toFloat())
+		for (tracker in trackers.values) {
+			tracker.tick()
+		}
+		humanPoseManager.update()
+	}
+
+	private fun setLeg(upperLeg: TrackerPosition, lowerLeg: TrackerPosition, foot: TrackerPosition, offset: Float) {
+		val swing = 0.5f * sin(phase + offset)
+		val bend = swing - 0.4f * (1f + cos(phase + offset))
+		trackers.getValue(upperLeg).setRotation(rotationX(swing))
+		trackers.getValue(lowerLeg).setRotation(rotationX(bend))
+		trackers.getValue(foot).setRotation(rotationX(bend + 0.2f * sin(phase + offset)))
+	}
+
+	private fun rotationX(angle: Float) = Quaternion(cos(angle / 2f), sin(angle / 2f), 0f, 0f)
+
+	companion object {
+		private val POSITIONS = listOf(
+			TrackerPosition.LEFT_FOOT,
+			TrackerPosition.LEFT_LOWER_LEG,
+			TrackerPosition.LEFT_UPPER_LEG,
+			TrackerPosition.RIGHT_FOOT,
+			TrackerPosition.RIGHT_LOWER_LEG,
+			TrackerPosition.RIGHT_UPPER_LEG,
+			TrackerPosition.HIP,
+			TrackerPosition.CHEST,
+			TrackerPosition.HEAD,
+		)
+	}
+}
@@ -0,0 +1,78 @@
+package dev.slimevr.benchmarks
+
+import dev.slimevr.poseframeformat.PoseFrameIO
+import dev.slimevr.poseframeformat.PoseFrames
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * Writes and reads a recording of [frameCount] frames of 6 trackers, in the
+ * stream format in memory and in the column format on disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class PoseFrameIOBenchmark {
+	@Param("1000", "20000")
+	var frameCount = 1000
+
+	private lateinit var frames: PoseFrames
+	private lateinit var streamBytes: ByteArray
+	private lateinit var columnsFile: File
+	private lateinit var outputFile: File
+	private val output = ByteArrayOutputStream()
+
+	@Setup
+	fun setup() {
+		frames = AutoBoneBenchmark.walkingFrames(frameCount)
+		DataOutputStream(output).use { PoseFrameIO.writeFrames(it, frames) }
+		streamBytes = output.toByteArray()
+		columnsFile = File.createTempFile("poseframes", ".pfr")
+		outputFile = File.createTempFile("poseframes-out", ".pfr")
+		PoseFrameIO.writeColumnsToFile(columnsFile, frames)
+	}
+
+	@TearDown
+	fun tearDown() {
+		columnsFile.delete()
+		outputFile.delete()
+	}
+
+	@Benchmark
+	fun writeStream(): Int {
+		output.reset()
+		PoseFrameIO.writeFrames(DataOutputStream(output), frames)
+		return output.size()
+	}
+
+	@Benchmark
+	fun readStream(): PoseFrames = PoseFrameIO.readFrames(DataInputStream(ByteArrayInputStream(streamBytes)))
+
+	@Benchmark
+	fun writeColumns(): Long {
+		PoseFrameIO.writeColumnsToFile(outputFile, frames)
+		return outputFile.length()
+	}
+
+	@Benchmark
+	fun readColumns(): PoseFrames = PoseFrameIO.readColumnsFromFile(columnsFile)
+}
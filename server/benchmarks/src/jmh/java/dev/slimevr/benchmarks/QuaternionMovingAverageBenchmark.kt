@@ -0,0 +1,60 @@
+package dev.slimevr.benchmarks
+
+import com.jme3.system.NanoTimer
+import dev.slimevr.filtering.QuaternionMovingAverage
+import dev.slimevr.filtering.TrackerFilters
+import io.github.axisangles.ktmath.Quaternion
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Feeds a filter a new rotation every [ticksPerSample] ticks and updates it
+ * every tick, the way a tracker sending at 100 Hz is filtered at 1000 ticks
+ * per second with the default of 10.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class QuaternionMovingAverageBenchmark {
+	@Param("SMOOTHING", "PREDICTION")
+	var type = TrackerFilters.SMOOTHING
+
+	@Param("1", "10")
+	var ticksPerSample = 10
+
+	private val fpsTimer = NanoTimer()
+	private lateinit var filter: QuaternionMovingAverage
+	private var ticks = 0
+	private var angle = 0f
+
+	@Setup
+	fun setup() {
+		filter = QuaternionMovingAverage(type, 0.2f, Quaternion.IDENTITY, fpsTimer)
+	}
+
+	@Benchmark
+	fun tick(): Quaternion {
+		fpsTimer.update()
+		if (++ticks % ticksPerSample == 0) {
+			angle += 0.01f
+			filter.addQuaternion(Quaternion(cos(angle), 0f, sin(angle), 0f))
+		}
+		filter.update()
+		return filter.filteredQuaternion
+	}
+}
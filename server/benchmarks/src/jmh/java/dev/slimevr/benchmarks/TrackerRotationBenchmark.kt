@@ -0,0 +1,81 @@
+package dev.slimevr.benchmarks
+
+import com.jme3.system.NanoTimer
+import dev.slimevr.VRServer.Companion.getNextLocalTrackerId
+import dev.slimevr.config.FiltersConfig
+import dev.slimevr.tracking.trackers.Tracker
+import dev.slimevr.tracking.trackers.udp.IMUType
+import io.github.axisangles.ktmath.Quaternion
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.util.concurrent.TimeUnit
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * One tick of a reset IMU tracker receiving a new rotation, followed by
+ * [consumers] reads of its adjusted rotation the way the skeleton, bridges,
+ * OSC handlers and data feed read it in the same tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class TrackerRotationBenchmark {
+	@Param("none", "smoothing", "prediction")
+	var filtering = "none"
+
+	@Param("1", "6")
+	var consumers = 1
+
+	private val fpsTimer = NanoTimer()
+	private lateinit var tracker: Tracker
+	private var angle = 0f
+
+	@Setup
+	fun setup() {
+		tracker = Tracker(
+			null,
+			getNextLocalTrackerId(),
+			"test",
+			"test",
+			null,
+			hasRotation = true,
+			imuType = IMUType.UNKNOWN,
+			allowFiltering = true,
+			needsReset = true,
+			needsMounting = true,
+		)
+		tracker.setRotation(Quaternion(0.9f, 0.1f, 0.4f, 0.1f).unit())
+		tracker.resetsHandler.resetFull(Quaternion.IDENTITY)
+		tracker.resetsHandler.resetMounting(Quaternion.IDENTITY)
+		val config = FiltersConfig()
+		config.type = filtering
+		tracker.filteringHandler.readFilteringConfig(config, tracker.getRawRotation(), fpsTimer)
+	}
+
+	@Benchmark
+	fun tick(): Quaternion {
+		fpsTimer.update()
+		angle += 0.001f
+		tracker.setRotation(Quaternion(cos(angle), 0.1f, sin(angle), 0.1f).unit())
+		tracker.dataTick()
+		tracker.tick()
+		var rotation = Quaternion.IDENTITY
+		for (i in 0 until consumers) {
+			rotation = tracker.getRotation()
+		}
+		return rotation
+	}
+}
@@ -0,0 +1,136 @@
+package dev.slimevr.benchmarks
+
+import dev.slimevr.tracking.trackers.Tracker
+import dev.slimevr.tracking.trackers.udp.IMUType
+import dev.slimevr.tracking.trackers.udp.UDPDevice
+import dev.slimevr.tracking.trackers.udp.UDPPacket
+import dev.slimevr.tracking.trackers.udp.UDPPacket17RotationData
+import dev.slimevr.tracking.trackers.udp.UDPPacket23RotationAndAcceleration
+import dev.slimevr.tracking.trackers.udp.UDPProtocolParser
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OperationsPerInvocation
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.concurrent.TimeUnit
+import java.util.function.Consumer
+
+/**
+ * Decodes tracker datagrams and applies them to trackers the same way
+ * TrackersUDPServer does. Run with the gc profiler, `gc.alloc.rate.norm` is
+ * the amount of bytes allocated per packet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class UDPProtocolParserBenchmark {
+	private val parser = UDPProtocolParser()
+	private val device = UDPDevice(
+		InetSocketAddress(InetAddress.getLoopbackAddress(), 6969),
+		InetAddress.getLoopbackAddress(),
+		"BE:NC:HM:AR:K0:00",
+	)
+	private val rotationData = ByteBuffer.allocateDirect(1472).order(ByteOrder.BIG_ENDIAN)
+	private val compactBundle = ByteBuffer.allocateDirect(1472).order(ByteOrder.BIG_ENDIAN)
+	private var packetNumber = 0L
+
+	private val consumer = Consumer<UDPPacket> { packet ->
+		when (packet) {
+			is UDPPacket23RotationAndAcceleration -> {
+				val tracker = device.getTracker(packet.sensorId) ?: return@Consumer
+				tracker.setRotation(packet.rotation)
+				tracker.setAcceleration(Vector3(packet.acceleration.y, packet.acceleration.x, packet.acceleration.z))
+				tracker.dataTick()
+			}
+
+			is UDPPacket17RotationData -> {
+				val tracker = device.getTracker(packet.sensorId) ?: return@Consumer
+				tracker.setRotation(packet.rotation)
+				tracker.dataTick()
+			}
+
+			else -> {}
+		}
+	}
+
+	@Setup
+	fun setup() {
+		for (i in 0 until BUNDLE_SIZE) {
+			device.trackers[i] = Tracker(
+				device,
+				i,
+				"udp://${device.hardwareIdentifier}/$i",
+				hasRotation = true,
+				hasAcceleration = true,
+				imuType = IMUType.UNKNOWN,
+				trackerPosition = null,
+			)
+		}
+
+		val rotation = Quaternion(0.7f, 0.1f, 0.7f, 0.1f).unit()
+		rotationData.putInt(UDPProtocolParser.PACKET_ROTATION_DATA)
+		rotationData.putLong(0)
+		rotationData.put(0)
+		rotationData.put(UDPPacket17RotationData.DATA_TYPE_NORMAL.toByte())
+		rotationData.putFloat(rotation.x)
+		rotationData.putFloat(rotation.y)
+		rotationData.putFloat(rotation.z)
+		rotationData.putFloat(rotation.w)
+		rotationData.put(0)
+		rotationData.flip()
+
+		compactBundle.putInt(UDPProtocolParser.PACKET_BUNDLE_COMPACT)
+		compactBundle.putLong(0)
+		for (i in 0 until BUNDLE_SIZE) {
+			// Packet length, packet id, sensor id, Q15 rotation and Q7 acceleration
+			compactBundle.put(16)
+			compactBundle.put(UDPProtocolParser.PACKET_ROTATION_AND_ACCELERATION.toByte())
+			compactBundle.put(i.toByte())
+			compactBundle.putShort((rotation.x * 32767).toInt().toShort())
+			compactBundle.putShort((rotation.y * 32767).toInt().toShort())
+			compactBundle.putShort((rotation.z * 32767).toInt().toShort())
+			compactBundle.putShort((rotation.w * 32767).toInt().toShort())
+			compactBundle.putShort(128)
+			compactBundle.putShort(0)
+			compactBundle.putShort(-256)
+		}
+		compactBundle.flip()
+	}
+
+	@Benchmark
+	fun rotationData() {
+		parse(rotationData)
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BUNDLE_SIZE)
+	fun compactBundle() {
+		parse(compactBundle)
+	}
+
+	private fun parse(buf: ByteBuffer) {
+		// Packet numbers need to increase or the packet is dropped as out of order
+		buf.putLong(4, ++packetNumber)
+		buf.rewind()
+		parser.parse(buf, device, consumer)
+	}
+
+	companion object {
+		const val BUNDLE_SIZE = 4
+	}
+}
@@ -0,0 +1,100 @@
+package dev.slimevr.benchmarks
+
+import com.illposed.osc.BufferBytesReceiver
+import com.illposed.osc.OSCBundle
+import com.illposed.osc.OSCMessage
+import com.illposed.osc.OSCSerializerAndParserBuilder
+import dev.slimevr.osc.OSCFloatBundle
+import io.github.axisangles.ktmath.EulerOrder
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.concurrent.TimeUnit
+import kotlin.math.PI
+
+/**
+ * Builds and serializes the VRChat OSC trackers bundle of 8 trackers, once
+ * with JavaOSC packets the way VRCOSCHandler used to on every tick and once
+ * with [OSCFloatBundle]. The time per operation multiplied by how many times
+ * per second it runs is the CPU time spent per second, the old way ran at
+ * the tick rate (1000/s) and the new one at the configured output rate.
+ * `gc.alloc.rate.norm` is the amount of bytes allocated per bundle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class VRCOSCOutputBenchmark {
+	private val positions = Array(TRACKERS) { Vector3(it * 0.1f, 1f - it * 0.1f, 0.05f) }
+	private val rotations = Array(TRACKERS) { Quaternion(1f, it * 0.05f, 0.1f, -it * 0.02f).unit() }
+
+	private val buffer = ByteBuffer.allocate(8192).order(ByteOrder.BIG_ENDIAN)
+	private val serializer = OSCSerializerAndParserBuilder().buildSerializer(BufferBytesReceiver(buffer))
+	private val oscArgs = ArrayList<Float?>(3)
+
+	private val floatBundle = OSCFloatBundle(
+		(1..TRACKERS).flatMap {
+			listOf("/tracking/trackers/$it/position", "/tracking/trackers/$it/rotation")
+		},
+		IntArray(TRACKERS * 2) { 3 },
+	)
+
+	@Benchmark
+	fun javaOSCBundle(): Int {
+		val bundle = OSCBundle()
+		for (i in 0 until TRACKERS) {
+			val (x, y, z) = positions[i]
+			oscArgs.clear()
+			oscArgs.add(x)
+			oscArgs.add(y)
+			oscArgs.add(-z)
+			bundle.addPacket(OSCMessage("/tracking/trackers/${i + 1}/position", ArrayList(oscArgs)))
+
+			val (x2, y2, z2) = euler(rotations[i])
+			oscArgs.clear()
+			oscArgs.add(x2)
+			oscArgs.add(y2)
+			oscArgs.add(z2)
+			bundle.addPacket(OSCMessage("/tracking/trackers/${i + 1}/rotation", ArrayList(oscArgs)))
+		}
+		buffer.clear()
+		serializer.write(bundle)
+		return buffer.position()
+	}
+
+	@Benchmark
+	fun floatBundle(): Int {
+		for (i in 0 until TRACKERS) {
+			val (x, y, z) = positions[i]
+			floatBundle.set(i * 2, x, y, -z)
+			val (x2, y2, z2) = euler(rotations[i])
+			floatBundle.set(i * 2 + 1, x2, y2, z2)
+		}
+		buffer.clear()
+		floatBundle.write(buffer)
+		return buffer.position()
+	}
+
+	private fun euler(rotation: Quaternion): Vector3 {
+		val (w, x, y, z) = rotation
+		val (_, x2, y2, z2) = Quaternion(w, -x, -y, z).toEulerAngles(EulerOrder.YXZ)
+		return Vector3(x2, y2, z2) * RAD_TO_DEG
+	}
+
+	companion object {
+		const val TRACKERS = 8
+		private const val RAD_TO_DEG = (180.0 / PI).toFloat()
+	}
+}
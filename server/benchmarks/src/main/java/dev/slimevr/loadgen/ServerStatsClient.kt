@@ -0,0 +1,101 @@
+package dev.slimevr.loadgen
+
+import com.google.flatbuffers.FlatBufferBuilder
+import org.java_websocket.client.WebSocketClient
+import org.java_websocket.handshake.ServerHandshake
+import solarxr_protocol.MessageBundle
+import solarxr_protocol.pub_sub.Message
+import solarxr_protocol.pub_sub.Payload
+import solarxr_protocol.pub_sub.PubSubHeader
+import solarxr_protocol.pub_sub.PubSubUnion
+import solarxr_protocol.pub_sub.SubscriptionRequest
+import solarxr_protocol.pub_sub.Topic
+import solarxr_protocol.pub_sub.TopicId
+import solarxr_protocol.pub_sub.TopicIdT
+import solarxr_protocol.rpc.AddUnknownDeviceRequest
+import solarxr_protocol.rpc.ForgetDeviceRequest
+import solarxr_protocol.rpc.RpcMessage
+import solarxr_protocol.rpc.RpcMessageHeader
+import java.net.URI
+import java.nio.ByteBuffer
+import java.util.function.Consumer
+
+/**
+ * Connects to the server's SolarXR websocket to add and forget the simulated
+ * devices, the way the GUI does when a new device is accepted, and to get
+ * the tick stats the server publishes every second
+ */
+class ServerStatsClient(uri: URI, private val onStats: Consumer<Map<String, String>>) : WebSocketClient(uri) {
+	override fun onOpen(handshake: ServerHandshake) {
+		val fbb = FlatBufferBuilder(64)
+		val topic = TopicId.pack(fbb, TICK_STATS_TOPIC)
+		val request = SubscriptionRequest.createSubscriptionRequest(fbb, Topic.TopicId, topic)
+		val header = PubSubHeader.createPubSubHeader(fbb, PubSubUnion.SubscriptionRequest, request)
+		val messages = MessageBundle.createPubSubMsgsVector(fbb, intArrayOf(header))
+		MessageBundle.startMessageBundle(fbb)
+		MessageBundle.addPubSubMsgs(fbb, messages)
+		fbb.finish(MessageBundle.endMessageBundle(fbb))
+		send(fbb.dataBuffer())
+	}
+
+	override fun onMessage(bytes: ByteBuffer) {
+		val bundle = MessageBundle.getRootAsMessageBundle(bytes)
+		for (i in 0 until bundle.pubSubMsgsLength()) {
+			val header = bundle.pubSubMsgsVector().get(i)
+			if (header.uType() != PubSubUnion.Message) continue
+			val message = (header.u(Message()) as Message?)?.unpack() ?: continue
+			if (message.topic.asTopicId()?.topic != TICK_STATS_TOPIC.topic) continue
+			if (message.payload.type != Payload.KeyValues) continue
+			val keyValues = message.payload.asKeyValues()
+			onStats.accept(keyValues.keys.zip(keyValues.values).toMap())
+		}
+	}
+
+	override fun onMessage(message: String) {}
+
+	override fun onClose(code: Int, reason: String?, remote: Boolean) {}
+
+	override fun onError(ex: Exception) {
+		System.err.println("[TrackerSwarm] Server websocket error: $ex")
+	}
+
+	/**
+	 * Adds [macAddress] to the known devices, so that the server accepts its
+	 * handshakes
+	 */
+	fun addDevice(macAddress: String) {
+		val fbb = FlatBufferBuilder(64)
+		val request = AddUnknownDeviceRequest.createAddUnknownDeviceRequest(fbb, fbb.createString(macAddress))
+		sendRpc(fbb, RpcMessage.AddUnknownDeviceRequest, request)
+	}
+
+	/**
+	 * Removes [macAddress] from the known devices and disconnects it
+	 */
+	fun forgetDevice(macAddress: String) {
+		val fbb = FlatBufferBuilder(64)
+		val request = ForgetDeviceRequest.createForgetDeviceRequest(fbb, fbb.createString(macAddress))
+		sendRpc(fbb, RpcMessage.ForgetDeviceRequest, request)
+	}
+
+	private fun sendRpc(fbb: FlatBufferBuilder, messageType: Byte, messageOffset: Int) {
+		RpcMessageHeader.startRpcMessageHeader(fbb)
+		RpcMessageHeader.addMessage(fbb, messageOffset)
+		RpcMessageHeader.addMessageType(fbb, messageType)
+		val header = RpcMessageHeader.endRpcMessageHeader(fbb)
+		val messages = MessageBundle.createRpcMsgsVector(fbb, intArrayOf(header))
+		MessageBundle.startMessageBundle(fbb)
+		MessageBundle.addRpcMsgs(fbb, messages)
+		fbb.finish(MessageBundle.endMessageBundle(fbb))
+		send(fbb.dataBuffer())
+	}
+
+	companion object {
+		// Same as the topic VRServer publishes its tick stats on
+		private val TICK_STATS_TOPIC = TopicIdT().apply {
+			appName = "server"
+			organization = "slimevr.dev"
+			topic = "tick_stats"
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package dev.slimevr.loadgen
+
+import dev.slimevr.tracking.trackers.udp.BoardType
+import dev.slimevr.tracking.trackers.udp.IMUType
+import dev.slimevr.tracking.trackers.udp.MCUType
+import dev.slimevr.tracking.trackers.udp.ServerFeatureFlags
+import dev.slimevr.tracking.trackers.udp.UDPPacket17RotationData
+import dev.slimevr.tracking.trackers.udp.UDPProtocolParser
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.nio.channels.DatagramChannel
+
+/**
+ * How simulated sensors send their data
+ */
+enum class SwarmPacketType {
+	/** A `PACKET_ROTATION_DATA` per sensor */
+	ROTATION,
+
+	/** A `PACKET_ROTATION_AND_ACCELERATION` per sensor */
+	ROTATION_AND_ACCELERATION,
+}
+
+/**
+ * How the packets of a device's sensors are put in datagrams
+ */
+enum class SwarmBundling {
+	NONE,
+	BUNDLE,
+	COMPACT,
+}
+
+/**
+ * A device with [sensors] IMUs talking to the server over its own socket the
+ * way the firmware does. It sends a handshake until the server answers, its
+ * feature flags, and the info of each sensor until the server acknowledges
+ * them, after which [sendData] sends the sensors' data. Bundles are only sent
+ * once the server said it supports them. The server only answers handshakes
+ * of known devices, so [macString] needs to be known first.
+ *
+ * Everything but [handleDatagram] is called from the sending thread.
+ */
+class SimulatedDevice(
+	val index: Int,
+	private val sensors: Int,
+	server: InetSocketAddress,
+	private val mac: ByteArray,
+) {
+	val macString = mac.joinToString(":") { String.format("%02X", it) }
+
+	val channel: DatagramChannel = DatagramChannel.open().apply {
+		connect(server)
+		configureBlocking(false)
+	}
+
+	// Only written by the receiving thread
+	@Volatile
+	var connected = false
+		private set
+
+	@Volatile
+	private var acknowledgedSensors = 0L
+
+	@Volatile
+	private var serverFlags: ByteArray? = null
+
+	@Volatile
+	private var handshakeStart = 0L
+
+	/**
+	 * Time from the first handshake to the server's response
+	 */
+	@Volatile
+	var connectTime = 0L
+		private set
+
+	private var packetNumber = 0L
+	private var nextSetupTime = 0L
+	private var flagsSent = false
+
+	// Written by the sending thread, the receiving thread only answers pings
+	private val buffer = ByteBuffer.allocate(MAX_PACKET_SIZE)
+	private val replyBuffer = ByteBuffer.allocate(MAX_PACKET_SIZE)
+	private val sample = FloatArray(7)
+
+	/**
+	 * Datagrams sent, and the ones that couldn't be
+	 */
+	@Volatile
+	var sentPackets = 0L
+		private set
+
+	@Volatile
+	var failedPackets = 0L
+		private set
+
+	val streaming: Boolean
+		get() = connected && acknowledgedSensors == (1L shl sensors) - 1
+
+	/**
+	 * Sends the handshake and sensor info again if they weren't answered in a
+	 * second, returns false until the device is [streaming]
+	 */
+	fun setUp(now: Long): Boolean {
+		if (streaming) return true
+		if (now < nextSetupTime) return false
+		nextSetupTime = now + SETUP_RETRY_NANOS
+		if (!connected) {
+			if (handshakeStart == 0L) handshakeStart = now
+			writeHandshake()
+			return false
+		}
+		if (!flagsSent) {
+			flagsSent = true
+			begin(UDPProtocolParser.PACKET_FEATURE_FLAGS)
+			// The firmware doesn't have any flags yet
+			buffer.put(0)
+			send(buffer)
+		}
+		for (sensor in 0 until sensors) {
+			if (acknowledgedSensors and (1L shl sensor) != 0L) continue
+			begin(UDPProtocolParser.PACKET_SENSOR_INFO)
+			buffer.put(sensor.toByte())
+			buffer.put(1) // Status OK
+			buffer.put(IMUType.UNKNOWN.id.toByte())
+			send(buffer)
+		}
+		return false
+	}
+
+	/**
+	 * Sends the data of every sensor, with the rotations [motion] gives the
+	 * trackers starting at [firstTracker]
+	 */
+	fun sendData(motion: SwarmMotion, firstTracker: Int, now: Long, type: SwarmPacketType, bundling: SwarmBundling) {
+		val bundle = when (bundling) {
+			SwarmBundling.COMPACT -> if (serverSupports(ServerFeatureFlags.PROTOCOL_BUNDLE_COMPACT_SUPPORT)) SwarmBundling.COMPACT else SwarmBundling.NONE
+			SwarmBundling.BUNDLE -> if (serverSupports(ServerFeatureFlags.PROTOCOL_BUNDLE_SUPPORT)) SwarmBundling.BUNDLE else SwarmBundling.NONE
+			SwarmBundling.NONE -> SwarmBundling.NONE
+		}
+		val packetId = when (type) {
+			SwarmPacketType.ROTATION -> UDPProtocolParser.PACKET_ROTATION_DATA
+			SwarmPacketType.ROTATION_AND_ACCELERATION -> UDPProtocolParser.PACKET_ROTATION_AND_ACCELERATION
+		}
+		when (bundle) {
+			SwarmBundling.NONE -> for (sensor in 0 until sensors) {
+				begin(packetId)
+				writeSensorData(sensor, motion, firstTracker + sensor, now, type)
+				send(buffer)
+			}
+
+			SwarmBundling.BUNDLE -> {
+				begin(UDPProtocolParser.PACKET_BUNDLE)
+				for (sensor in 0 until sensors) {
+					val start = buffer.position()
+					buffer.putShort(0)
+					buffer.putInt(packetId)
+					writeSensorData(sensor, motion, firstTracker + sensor, now, type)
+					buffer.putShort(start, (buffer.position() - start - 2).toShort())
+				}
+				send(buffer)
+			}
+
+			SwarmBundling.COMPACT -> {
+				begin(UDPProtocolParser.PACKET_BUNDLE_COMPACT)
+				for (sensor in 0 until sensors) {
+					val start = buffer.position()
+					buffer.put(0)
+					buffer.put(packetId.toByte())
+					writeSensorData(sensor, motion, firstTracker + sensor, now, type)
+					buffer.put(start, (buffer.position() - start - 1).toByte())
+				}
+				send(buffer)
+			}
+		}
+	}
+
+	/**
+	 * Handles a datagram from the server, called from the receiving thread
+	 */
+	fun handleDatagram(buf: ByteBuffer) {
+		if (buf.remaining() < 4) return
+		// The handshake response is a packet id byte followed by a string
+		if (buf.get(0).toInt() == UDPProtocolParser.PACKET_HANDSHAKE) {
+			if (!connected) {
+				connectTime = System.nanoTime() - handshakeStart
+				connected = true
+			}
+			return
+		}
+		when (buf.int) {
+			UDPProtocolParser.PACKET_PING_PONG -> {
+				buf.long
+				val pingId = buf.int
+				synchronized(this) {
+					replyBuffer.clear()
+					replyBuffer.putInt(UDPProtocolParser.PACKET_PING_PONG)
+					replyBuffer.putLong(0)
+					replyBuffer.putInt(pingId)
+					send(replyBuffer)
+				}
+			}
+
+			// Not followed by a packet number
+			UDPProtocolParser.PACKET_SENSOR_INFO -> {
+				val sensor = buf.get().toInt() and 0xFF
+				if (sensor < sensors) acknowledgedSensors = acknowledgedSensors or (1L shl sensor)
+			}
+
+			UDPProtocolParser.PACKET_FEATURE_FLAGS -> {
+				buf.long
+				serverFlags = ByteArray(buf.remaining()).also { buf.get(it) }
+			}
+
+			// Heartbeats and anything else
+			else -> {}
+		}
+	}
+
+	fun close() {
+		channel.close()
+	}
+
+	private fun serverSupports(flag: ServerFeatureFlags): Boolean {
+		val flags = serverFlags ?: return false
+		val bit = flag.ordinal
+		return bit / 8 < flags.size && (flags[bit / 8].toInt() and (1 shl (bit % 8))) != 0
+	}
+
+	private fun writeHandshake() {
+		begin(UDPProtocolParser.PACKET_HANDSHAKE)
+		buffer.putInt(BoardType.CUSTOM.id.toInt())
+		buffer.putInt(IMUType.UNKNOWN.id.toInt())
+		buffer.putInt(MCUType.UNKNOWN.id.toInt())
+		// IMU info
+		buffer.putInt(0)
+		buffer.putInt(0)
+		buffer.putInt(0)
+		buffer.putInt(FIRMWARE_BUILD)
+		buffer.put(FIRMWARE.length.toByte())
+		buffer.put(FIRMWARE.toByteArray(Charsets.US_ASCII))
+		buffer.put(mac)
+		send(buffer)
+	}
+
+	private fun writeSensorData(sensor: Int, motion: SwarmMotion, tracker: Int, now: Long, type: SwarmPacketType) {
+		motion.sample(tracker, now, sample)
+		buffer.put(sensor.toByte())
+		when (type) {
+			SwarmPacketType.ROTATION -> {
+				buffer.put(UDPPacket17RotationData.DATA_TYPE_NORMAL.toByte())
+				buffer.putFloat(sample[1])
+				buffer.putFloat(sample[2])
+				buffer.putFloat(sample[3])
+				buffer.putFloat(sample[0])
+				buffer.put(0) // Calibration info
+			}
+
+			SwarmPacketType.ROTATION_AND_ACCELERATION -> {
+				// Q15 rotation and Q7 acceleration
+				buffer.putShort((sample[1] * 32767).toInt().toShort())
+				buffer.putShort((sample[2] * 32767).toInt().toShort())
+				buffer.putShort((sample[3] * 32767).toInt().toShort())
+				buffer.putShort((sample[0] * 32767).toInt().toShort())
+				buffer.putShort((sample[4] * 128).toInt().toShort())
+				buffer.putShort((sample[5] * 128).toInt().toShort())
+				buffer.putShort((sample[6] * 128).toInt().toShort())
+			}
+		}
+	}
+
+	private fun begin(packetId: Int) {
+		buffer.clear()
+		buffer.putInt(packetId)
+		// Packet number, set when sending
+		buffer.putLong(0)
+	}
+
+	/**
+	 * Numbers and sends the packet in [buf]. Replies to pings are sent from
+	 * the receiving thread, numbering and sending happen under the same lock
+	 * so that the server never gets the numbers out of order.
+	 */
+	@Synchronized
+	private fun send(buf: ByteBuffer) {
+		buf.putLong(4, ++packetNumber)
+		buf.flip()
+		try {
+			channel.write(buf)
+			sentPackets++
+		} catch (e: IOException) {
+			// The server isn't listening (yet)
+			failedPackets++
+		}
+	}
+
+	companion object {
+		const val MAX_PACKET_SIZE = 1472
+		private const val SETUP_RETRY_NANOS = 1_000_000_000L
+		private const val FIRMWARE = "0.5.0-swarm"
+		private const val FIRMWARE_BUILD = 19
+	}
+}
@@ -0,0 +1,88 @@
+package dev.slimevr.loadgen
+
+import com.jme3.math.FastMath
+import dev.slimevr.poseframeformat.PoseFrames
+import io.github.axisangles.ktmath.Quaternion
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Where the rotations and accelerations of simulated trackers come from
+ */
+interface SwarmMotion {
+	/**
+	 * Writes the rotation (w, x, y, z) and acceleration (x, y, z) of tracker
+	 * [tracker] at [timeNanos] into [out], in the axes the firmware sends them
+	 */
+	fun sample(tracker: Int, timeNanos: Long, out: FloatArray)
+}
+
+/**
+ * Every tracker sways around its own axis at its own pace, so that every
+ * packet carries a new rotation
+ */
+class ProceduralMotion : SwarmMotion {
+	override fun sample(tracker: Int, timeNanos: Long, out: FloatArray) {
+		val seconds = timeNanos / 1_000_000_000.0
+		val frequency = 0.3 + (tracker % 7) * 0.1
+		val phase = 2 * PI * frequency * seconds + tracker
+		val half = (0.5 * sin(phase)).toFloat() / 2f
+		// Axis turning slowly around the vertical one
+		val axisAngle = tracker * 0.7f
+		val s = sin(half)
+		out[0] = cos(half)
+		out[1] = s * cos(axisAngle)
+		out[2] = s * sin(axisAngle)
+		out[3] = 0f
+		out[4] = (0.5 * cos(phase)).toFloat()
+		out[5] = 0f
+		out[6] = (0.2 * sin(2 * phase)).toFloat()
+	}
+}
+
+/**
+ * Replays a recording in a loop, one frame every [frameIntervalMs]. Tracker
+ * `i` plays the recorded tracker `i` modulo the amount of recorded trackers.
+ * Rotations are stored in the firmware's axes so that the server gets the
+ * recorded ones back.
+ */
+class RecordedMotion(frames: PoseFrames, private val frameIntervalMs: Long) : SwarmMotion {
+	private val recorded: List<FloatArray>
+	private val frameCount: Int
+
+	init {
+		val holders = frames.frameHolders.filter { holder -> holder.frames.any { it?.hasRotation() == true } }
+		require(holders.isNotEmpty()) { "The recording has no trackers with rotations" }
+		frameCount = holders.maxOf { it.frames.size }
+		recorded = holders.map { holder ->
+			val data = FloatArray(frameCount * 7)
+			var last = Quaternion.IDENTITY
+			for (i in 0 until frameCount) {
+				val frame = holder.tryGetFrame(i)
+				last = frame?.tryGetRawRotation() ?: frame?.tryGetRotation() ?: last
+				val rotation = FROM_SERVER_AXES * last
+				val acceleration = frame?.tryGetAcceleration()
+				data[i * 7] = rotation.w
+				data[i * 7 + 1] = rotation.x
+				data[i * 7 + 2] = rotation.y
+				data[i * 7 + 3] = rotation.z
+				// The server swaps x and y when reading the acceleration
+				data[i * 7 + 4] = acceleration?.y ?: 0f
+				data[i * 7 + 5] = acceleration?.x ?: 0f
+				data[i * 7 + 6] = acceleration?.z ?: 0f
+			}
+			data
+		}
+	}
+
+	override fun sample(tracker: Int, timeNanos: Long, out: FloatArray) {
+		val frame = ((timeNanos / 1_000_000 / frameIntervalMs) % frameCount).toInt()
+		System.arraycopy(recorded[tracker % recorded.size], frame * 7, out, 0, 7)
+	}
+
+	companion object {
+		// Inverse of the offset TrackersUDPServer applies to received rotations
+		private val FROM_SERVER_AXES = Quaternion.fromRotationVector(FastMath.HALF_PI, 0f, 0f)
+	}
+}
@@ -0,0 +1,93 @@
+package dev.slimevr.loadgen
+
+import java.util.Locale
+
+/**
+ * Keeps the tick stats the server publishes every second. The packet counters
+ * are totals since the server started, so the ones of the first stats are
+ * used as the baseline. They count the packets of every device, and are only
+ * all from the swarm if no other device is connected.
+ */
+class SwarmServerStats {
+	private var first: Map<String, String>? = null
+	private var previous: Map<String, String>? = null
+	private var latest: Map<String, String>? = null
+	private var minTps = Float.MAX_VALUE
+	private var maxPingP99 = 0L
+
+	@Volatile
+	private var updates = 0
+
+	@Synchronized
+	fun update(stats: Map<String, String>) {
+		if (first == null) first = stats
+		previous = latest
+		latest = stats
+		stats["tps"]?.toFloatOrNull()?.let { minTps = minOf(minTps, it) }
+		maxPingP99 = maxOf(maxPingP99, long(stats, "udp_ping_p99_us"))
+		updates++
+	}
+
+	/**
+	 * Waits up to [timeoutMs] for the next stats, returns false if none came
+	 */
+	fun awaitUpdate(timeoutMs: Long): Boolean {
+		val current = updates
+		val end = System.currentTimeMillis() + timeoutMs
+		while (updates == current) {
+			if (System.currentTimeMillis() >= end) return false
+			Thread.sleep(20)
+		}
+		return true
+	}
+
+	/**
+	 * The stats of the last second, or what changed since the first stats
+	 * with [summary]
+	 */
+	@Synchronized
+	fun describe(summary: Boolean): String {
+		val latest = latest ?: return "no stats"
+		val since = (if (summary) first else previous) ?: return "waiting for stats"
+		val received = long(latest, "udp_packets") - long(since, "udp_packets")
+		val outOfOrder = long(latest, "udp_out_of_order") - long(since, "udp_out_of_order")
+		val dropped = long(latest, "udp_queue_dropped") - long(since, "udp_queue_dropped")
+		return if (summary) {
+			String.format(
+				Locale.ROOT,
+				"received %d packets, %d out of order, %d dropped by ingest shards, %.0f tps (min), ping %d us (max p99)",
+				received,
+				outOfOrder,
+				dropped,
+				if (minTps == Float.MAX_VALUE) 0f else minTps,
+				maxPingP99,
+			)
+		} else {
+			String.format(
+				Locale.ROOT,
+				"%s tps, received %d packets, %d out of order, %d dropped, ping p50 %d us p99 %d us",
+				latest["tps"],
+				received,
+				outOfOrder,
+				dropped,
+				long(latest, "udp_ping_p50_us"),
+				long(latest, "udp_ping_p99_us"),
+			)
+		}
+	}
+
+	/**
+	 * Part of the [sent] packets the server didn't receive since the first
+	 * stats, or null if unknown
+	 */
+	@Synchronized
+	fun loss(sent: Long): Double? {
+		val first = first ?: return null
+		val latest = latest ?: return null
+		if (sent == 0L || first === latest) return null
+		val received = long(latest, "udp_packets") - long(first, "udp_packets")
+		return 1.0 - received.toDouble() / sent
+	}
+
+	private fun long(stats: Map<String, String>, key: String): Long = stats[key]?.toLongOrNull() ?: 0L
+}
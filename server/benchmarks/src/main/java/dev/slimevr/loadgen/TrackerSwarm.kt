@@ -0,0 +1,253 @@
+package dev.slimevr.loadgen
+
+import dev.slimevr.poseframeformat.PoseFrameIO
+import org.apache.commons.cli.CommandLine
+import org.apache.commons.cli.DefaultParser
+import org.apache.commons.cli.HelpFormatter
+import org.apache.commons.cli.Option
+import org.apache.commons.cli.Options
+import org.apache.commons.cli.ParseException
+import java.io.File
+import java.net.InetSocketAddress
+import java.net.URI
+import java.nio.ByteBuffer
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
+import java.util.Locale
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.LockSupport
+import kotlin.system.exitProcess
+
+/**
+ * Simulates a swarm of trackers against a running server, run it with
+ * `./gradlew :server:benchmarks:trackerSwarm --args="--devices 50"`.
+ *
+ * Every second, it prints how many packets it sent, and how many the server
+ * received, skipped as out of order and dropped, along with the server's tick
+ * rate and how long its pings to the devices took to come back.
+ */
+fun main(args: Array<String>) {
+	val options = Options()
+	options.addOption("h", "help", false, "Show help")
+	options.addOption(intOption("d", "devices", "Amount of devices, 10 by default"))
+	options.addOption(intOption("s", "sensors", "Sensors per device, 1 by default"))
+	options.addOption(intOption("r", "rate", "Packets per second per sensor, 100 by default"))
+	options.addOption(intOption("t", "duration", "Seconds to run for, 60 by default"))
+	options.addOption(valueOption("host", "Address of the server, 127.0.0.1 by default"))
+	options.addOption(intOption("p", "port", "Tracker port of the server, 6969 by default"))
+	options.addOption(intOption("w", "ws-port", "SolarXR websocket port of the server, 21110 by default"))
+	options.addOption(valueOption("packet", "rotation or rotation-acceleration (default)"))
+	options.addOption(valueOption("bundle", "none (default), bundle or compact"))
+	options.addOption(valueOption("recording", "Recording to replay instead of generated motion"))
+	options.addOption(intOption("recording-interval", "Milliseconds between recorded frames, 20 by default"))
+	options.addOption(null, "keep-devices", false, "Don't forget the simulated devices when done")
+
+	val formatter = HelpFormatter()
+	val cmd: CommandLine = try {
+		DefaultParser().parse(options, args)
+	} catch (e: ParseException) {
+		System.err.println(e.message)
+		formatter.printHelp("trackerSwarm", options)
+		exitProcess(1)
+	}
+	if (cmd.hasOption("help")) {
+		formatter.printHelp("trackerSwarm", options)
+		exitProcess(0)
+	}
+
+	val sensors = cmd.getParsedOptionValue("sensors", 1L).toInt()
+	require(sensors in 1..32) { "A device can have 1 to 32 sensors" }
+	val host = cmd.getOptionValue("host", "127.0.0.1")
+	val motion = cmd.getOptionValue("recording")?.let {
+		RecordedMotion(PoseFrameIO.readFromFile(File(it)), cmd.getParsedOptionValue("recording-interval", 20L))
+	} ?: ProceduralMotion()
+
+	val swarm = TrackerSwarm(
+		devices = cmd.getParsedOptionValue("devices", 10L).toInt(),
+		sensors = sensors,
+		rate = cmd.getParsedOptionValue("rate", 100L).toInt(),
+		server = InetSocketAddress(host, cmd.getParsedOptionValue("port", 6969L).toInt()),
+		websocket = URI("ws://$host:${cmd.getParsedOptionValue("ws-port", 21110L)}"),
+		type = when (val packet = cmd.getOptionValue("packet", "rotation-acceleration")) {
+			"rotation" -> SwarmPacketType.ROTATION
+			"rotation-acceleration" -> SwarmPacketType.ROTATION_AND_ACCELERATION
+			else -> throw IllegalArgumentException("Unknown packet type $packet")
+		},
+		bundling = SwarmBundling.valueOf(cmd.getOptionValue("bundle", "none").uppercase()),
+		motion = motion,
+	)
+	swarm.run(TimeUnit.SECONDS.toNanos(cmd.getParsedOptionValue("duration", 60L)), !cmd.hasOption("keep-devices"))
+	exitProcess(0)
+}
+
+private fun intOption(opt: String?, longOpt: String, description: String): Option = Option.builder(opt)
+	.longOpt(longOpt)
+	.hasArg()
+	.type(Long::class.javaObjectType)
+	.desc(description)
+	.build()
+
+private fun intOption(longOpt: String, description: String): Option = intOption(null, longOpt, description)
+
+private fun valueOption(longOpt: String, description: String): Option = Option.builder()
+	.longOpt(longOpt)
+	.hasArg()
+	.desc(description)
+	.build()
+
+/**
+ * Sends the data of [devices] devices with [sensors] sensors each at [rate]
+ * packets per second per sensor, with the devices spread over the period so
+ * that they don't all send at once. One thread sends everything and another
+ * one receives everything, which is enough for hundreds of trackers.
+ */
+class TrackerSwarm(
+	devices: Int,
+	private val sensors: Int,
+	rate: Int,
+	server: InetSocketAddress,
+	private val websocket: URI,
+	private val type: SwarmPacketType,
+	private val bundling: SwarmBundling,
+	private val motion: SwarmMotion,
+) {
+	private val devices = List(devices) { i ->
+		// Locally administered addresses, so they can't be real devices
+		val mac = byteArrayOf(0x02, 0x53, 0x57, (i shr 16).toByte(), (i shr 8).toByte(), i.toByte())
+		SimulatedDevice(i, sensors, server, mac)
+	}
+	private val period = 1_000_000_000L / rate
+	private val selector = Selector.open()
+
+	@Volatile
+	private var running = true
+
+	// Sends skipped because this thread fell behind, those aren't the server's
+	private var lateSends = 0L
+	private var lastReportSent = 0L
+	private val serverStats = SwarmServerStats()
+
+	fun run(durationNanos: Long, forgetDevices: Boolean) {
+		val statsClient = ServerStatsClient(websocket, serverStats::update)
+		val statsConnected = try {
+			statsClient.connectBlocking(5, TimeUnit.SECONDS)
+		} catch (e: Exception) {
+			false
+		}
+		if (statsConnected) {
+			for (device in devices) statsClient.addDevice(device.macString)
+			// The server's totals before the swarm sends anything
+			if (!serverStats.awaitUpdate(STATS_TIMEOUT_MS)) log("The server didn't send its stats")
+		} else {
+			log("Couldn't connect to $websocket, the devices need to be known already and the server's stats won't be shown")
+		}
+		for (device in devices) {
+			device.channel.register(selector, SelectionKey.OP_READ, device)
+		}
+		val receiver = Thread(::receive, "TrackerSwarm receiver")
+		receiver.isDaemon = true
+		receiver.start()
+		log("Simulating ${devices.size} devices with $sensors sensors each at ${1_000_000_000L / period} Hz")
+
+		send(durationNanos)
+
+		// Until the server counted everything that was sent
+		if (statsConnected) serverStats.awaitUpdate(STATS_TIMEOUT_MS)
+		running = false
+		selector.wakeup()
+		receiver.join()
+		report(true)
+		if (statsConnected) {
+			if (forgetDevices) {
+				for (device in devices) statsClient.forgetDevice(device.macString)
+			}
+			statsClient.closeBlocking()
+		}
+		for (device in devices) device.close()
+	}
+
+	private fun send(durationNanos: Long) {
+		val start = System.nanoTime()
+		val end = start + durationNanos
+		val next = LongArray(devices.size) { start + period * it / devices.size }
+		var nextReport = start + REPORT_INTERVAL
+		var now = start
+		while (now < end) {
+			var wake = now + period
+			for (i in devices.indices) {
+				val device = devices[i]
+				if (!device.setUp(now)) continue
+				if (now >= next[i]) {
+					device.sendData(motion, i * sensors, now, type, bundling)
+					next[i] += period
+					if (next[i] <= now) {
+						// Don't try to catch up, that would send bursts
+						lateSends += (now - next[i]) / period + 1
+						next[i] = now + period
+					}
+				}
+				if (next[i] < wake) wake = next[i]
+			}
+			if (now >= nextReport) {
+				report(false)
+				nextReport += REPORT_INTERVAL
+			}
+			LockSupport.parkNanos(wake - System.nanoTime())
+			now = System.nanoTime()
+		}
+	}
+
+	private fun receive() {
+		val buffer = ByteBuffer.allocate(SimulatedDevice.MAX_PACKET_SIZE)
+		while (running) {
+			selector.select(100)
+			val keys = selector.selectedKeys()
+			for (key in keys) {
+				val device = key.attachment() as SimulatedDevice
+				while (true) {
+					buffer.clear()
+					val read = try {
+						device.channel.read(buffer)
+					} catch (e: Exception) {
+						// The server isn't listening (yet)
+						0
+					}
+					if (read <= 0) break
+					buffer.flip()
+					device.handleDatagram(buffer)
+				}
+			}
+			keys.clear()
+		}
+	}
+
+	private fun report(summary: Boolean) {
+		val sent = devices.sumOf { it.sentPackets }
+		val streaming = devices.count { it.streaming }
+		val server = serverStats.describe(summary)
+		if (summary) {
+			val connectTimes = devices.filter { it.connected }.map { it.connectTime / 1_000_000 }.sorted()
+			val connect = if (connectTimes.isEmpty()) {
+				"no device connected"
+			} else {
+				"connected in ${connectTimes[connectTimes.size / 2]} ms (median), ${connectTimes.last()} ms (max)"
+			}
+			log("Done: $streaming/${devices.size} devices streaming, $connect")
+			log("Sent $sent packets, ${devices.sumOf { it.failedPackets }} failed, $lateSends late sends")
+			log("Server: $server")
+			serverStats.loss(sent)?.let { log(String.format(Locale.ROOT, "Lost %.2f%% of the packets", it * 100)) }
+		} else {
+			log("$streaming/${devices.size} devices streaming, sent ${sent - lastReportSent} packets | server: $server")
+			lastReportSent = sent
+		}
+	}
+
+	companion object {
+		private val REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(1)
+		private const val STATS_TIMEOUT_MS = 2000L
+
+		private fun log(message: String) {
+			println("[TrackerSwarm] $message")
+		}
+	}
+}
@@ -66,6 +66,7 @@ dependencies {
 	implementation("commons-cli:commons-cli:1.8.0")
 	implementation("com.fasterxml.jackson.core:jackson-databind:2.15.1")
 	implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-yaml:2.15.1")
+	implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-smile:2.15.1")
 
 	implementation("com.github.jonpeterson:jackson-module-model-versioning:1.2.2")
 	implementation("org.apache.commons:commons-math3:3.6.1")
@@ -0,0 +1,59 @@
+package dev.slimevr
+
+import io.eiren.util.logging.LogManager
+
+/**
+ * Measures how long each step of the server's startup takes, and how long it
+ * takes from the start to the first tracker packet
+ */
+class StartupProfile {
+	private val startTime = System.nanoTime()
+	private var initTime = 0L
+	private val steps = LinkedHashMap<String, Long>()
+	private var firstPacketLogged = false
+
+	/**
+	 * Runs [block] and records how long it took as the step [name]
+	 */
+	fun <T> step(name: String, block: () -> T): T {
+		val start = System.nanoTime()
+		try {
+			return block()
+		} finally {
+			steps[name] = System.nanoTime() - start
+		}
+	}
+
+	/**
+	 * Ends the profile of the initialization and logs it
+	 */
+	fun finish() {
+		initTime = System.nanoTime() - startTime
+		LogManager.info(
+			"[Startup] Initialized in ${millis(initTime)} ms (" +
+				steps.entries.joinToString { "${it.key} ${millis(it.value)} ms" } +
+				")",
+		)
+	}
+
+	/**
+	 * Adds the time of each step to [out] as `startup_<step>_ms`, along with
+	 * the time to the first packet if one was received at [firstPacketTime]
+	 */
+	fun addStats(firstPacketTime: Long, out: MutableMap<String, String>) {
+		out["startup_ms"] = millis(initTime).toString()
+		for ((name, time) in steps) {
+			out["startup_${name}_ms"] = millis(time).toString()
+		}
+		if (firstPacketTime != 0L) {
+			val timeToFirstPacket = millis(firstPacketTime - startTime)
+			out["startup_first_packet_ms"] = timeToFirstPacket.toString()
+			if (!firstPacketLogged) {
+				firstPacketLogged = true
+				LogManager.info("[Startup] First tracker packet received $timeToFirstPacket ms after starting")
+			}
+		}
+	}
+
+	private fun millis(nanos: Long): Long = nanos / 1_000_000
+}
@@ -5,6 +5,10 @@ import dev.slimevr.autobone.AutoBoneHandler
 import dev.slimevr.bridge.Bridge
 import dev.slimevr.bridge.ISteamVRBridge
 import dev.slimevr.config.ConfigManager
+import dev.slimevr.metrics.MetricsRegistry
+import dev.slimevr.metrics.MotionLatency
+import dev.slimevr.metrics.MotionTrace
+import dev.slimevr.metrics.TickStages
 import dev.slimevr.osc.OSCHandler
 import dev.slimevr.osc.OSCRouter
 import dev.slimevr.osc.VMCHandler
@@ -19,6 +23,9 @@ import dev.slimevr.serial.SerialHandlerStub
 import dev.slimevr.setup.HandshakeHandler
 import dev.slimevr.setup.TapSetupHandler
 import dev.slimevr.status.StatusSystem
+import dev.slimevr.tick.TaskPriority
+import dev.slimevr.tick.TaskQueue
+import dev.slimevr.tick.TickScheduler
 import dev.slimevr.tracking.processor.HumanPoseManager
 import dev.slimevr.tracking.processor.skeleton.HumanSkeleton
 import dev.slimevr.tracking.trackers.*
@@ -30,11 +37,14 @@ import io.eiren.util.ann.ThreadSecure
 import io.eiren.util.collections.FastList
 import io.eiren.util.logging.LogManager
 import solarxr_protocol.datatypes.TrackerIdT
+import solarxr_protocol.pub_sub.TopicIdT
+import java.io.File
+import java.io.IOException
 import java.util.*
-import java.util.concurrent.LinkedBlockingQueue
 import java.util.concurrent.atomic.AtomicInteger
 import java.util.function.Consumer
 import kotlin.concurrent.schedule
+import kotlin.concurrent.scheduleAtFixedRate
 
 typealias SteamBridgeProvider = (
 	server: VRServer,
@@ -50,6 +60,10 @@ class VRServer @JvmOverloads constructor(
 	acquireMulticastLock: () -> Any? = { null },
 	configPath: String,
 ) : Thread("VRServer") {
+	// Stage timing gets enabled once the config is loaded
+	@JvmField
+	val metrics = MetricsRegistry()
+
 	@JvmField
 	val configManager: ConfigManager
 
@@ -58,7 +72,7 @@ class VRServer @JvmOverloads constructor(
 	private val trackers: MutableList<Tracker> = FastList()
 	val trackersServer: TrackersUDPServer
 	private val bridges: MutableList<Bridge> = FastList()
-	private val tasks: Queue<Runnable> = LinkedBlockingQueue()
+	private val tasks = TaskQueue(metrics)
 	private val newTrackersConsumers: MutableList<Consumer<Tracker>> = FastList()
 	private val onTick: MutableList<Runnable> = FastList()
 	private val lock = acquireMulticastLock()
@@ -86,6 +100,7 @@ class VRServer @JvmOverloads constructor(
 	@JvmField
 	val protocolAPI: ProtocolAPI
 	private val timer = Timer()
+	private val startupProfile = StartupProfile()
 	val fpsTimer = NanoTimer()
 
 	@JvmField
@@ -100,69 +115,116 @@ class VRServer @JvmOverloads constructor(
 	@JvmField
 	val handshakeHandler = HandshakeHandler()
 
+	val tickScheduler: TickScheduler
+	private val taskBudget: Long
+
+	private val stages = TickStages(metrics)
+
+	@JvmField
+	val motionLatency: MotionLatency
+
 	init {
 		// UwU
 		instance = this
 
-		configManager = ConfigManager(configPath)
-		configManager.loadConfig()
+		configManager = startupProfile.step("config") {
+			ConfigManager(configPath, metrics).also { it.loadConfig() }
+		}
+		metrics.enabled = configManager.vrConfig.metrics.stageTiming
+		tickScheduler = TickScheduler.create(configManager.vrConfig.tick, metrics) {
+			humanPoseManager.getPauseTracking()
+		}
+		taskBudget = configManager.vrConfig.tick.taskBudget * 1000
+		// Serialize the config on the server thread, which is the one changing it
+		configManager.setSerializer { queueTask(it) }
+		metrics.gauge("tps") { fpsTimer.frameRate }
+		motionLatency = MotionLatency(metrics, configManager.vrConfig.metrics.motionLatency)
+		configManager.vrConfig.metrics.motionTraceFile?.let { startMotionTrace(File(it)) }
 		deviceManager = DeviceManager(this)
-		serialHandler = serialHandlerProvider(this)
+		serialHandler = startupProfile.step("serial") { serialHandlerProvider(this) }
 		provisioningHandler = ProvisioningHandler(this)
 		resetHandler = ResetHandler()
 		tapSetupHandler = TapSetupHandler()
-		humanPoseManager = HumanPoseManager(this)
+		humanPoseManager = startupProfile.step("skeleton") { HumanPoseManager(this) }
 		// AutoBone requires HumanPoseManager first
-		autoBoneHandler = AutoBoneHandler(this)
-		protocolAPI = ProtocolAPI(this)
+		autoBoneHandler = startupProfile.step("autobone") { AutoBoneHandler(this) }
+		protocolAPI = startupProfile.step("protocol") { ProtocolAPI(this) }
 		val computedTrackers = humanPoseManager.computedTrackers
 
 		// Start server for SlimeVR trackers
 		val trackerPort = configManager.vrConfig.server.trackerPort
 		LogManager.info("Starting the tracker server on port $trackerPort...")
-		trackersServer = TrackersUDPServer(
-			trackerPort,
-			"Sensors UDP server",
-		) { tracker: Tracker -> registerTracker(tracker) }
+		trackersServer = startupProfile.step("trackerServer") {
+			TrackersUDPServer(
+				trackerPort,
+				"Sensors UDP server",
+				{ tracker: Tracker -> registerTracker(tracker) },
+				configManager.vrConfig.server.trackerIngestThreads,
+				metrics,
+			)
+		}
 
 		// Start bridges for SteamVR and Feeder
-		val driverBridge = driverBridgeProvider(this, computedTrackers)
+		val driverBridge = startupProfile.step("driverBridge") { driverBridgeProvider(this, computedTrackers) }
 		if (driverBridge != null) {
 			tasks.add(Runnable { driverBridge.startBridge() })
 			bridges.add(driverBridge)
 		}
-		val feederBridge = feederBridgeProvider(this)
+		val feederBridge = startupProfile.step("feederBridge") { feederBridgeProvider(this) }
 		if (feederBridge != null) {
 			tasks.add(Runnable { feederBridge.startBridge() })
 			bridges.add(feederBridge)
 		}
 
 		// Create WebSocket server
-		val wsBridge = WebSocketVRBridge(computedTrackers, this)
+		val wsBridge = startupProfile.step("websocket") { WebSocketVRBridge(computedTrackers, this) }
 		tasks.add(Runnable { wsBridge.startBridge() })
 		bridges.add(wsBridge)
 
 		// Initialize OSC handlers
-		vrcOSCHandler = VRCOSCHandler(
-			this,
-			configManager.vrConfig.vrcOSC,
-			computedTrackers,
-		)
-		vMCHandler = VMCHandler(
-			this,
-			humanPoseManager,
-			configManager.vrConfig.vmc,
-		)
+		vrcOSCHandler = startupProfile.step("vrcOSC") {
+			VRCOSCHandler(
+				this,
+				configManager.vrConfig.vrcOSC,
+				computedTrackers,
+			)
+		}
+		vMCHandler = startupProfile.step("vmc") {
+			VMCHandler(
+				this,
+				humanPoseManager,
+				configManager.vrConfig.vmc,
+			)
+		}
 
 		// Initialize OSC router
 		val oscHandlers = FastList<OSCHandler>()
 		oscHandlers.add(vrcOSCHandler)
 		oscHandlers.add(vMCHandler)
-		oSCRouter = OSCRouter(configManager.vrConfig.oscRouter, oscHandlers)
+		oSCRouter = startupProfile.step("oscRouter") { OSCRouter(configManager.vrConfig.oscRouter, oscHandlers) }
 		bvhRecorder = BVHRecorder(this)
 		for (tracker in computedTrackers) {
 			registerTracker(tracker)
 		}
+
+		startupProfile.finish()
+
+		LogManager.info("Ticking in ${tickScheduler.mode} mode")
+		timer.scheduleAtFixedRate(TICK_STATS_INTERVAL, TICK_STATS_INTERVAL) {
+			val stats = LinkedHashMap<String, String>()
+			metrics.addStats(stats)
+			tickScheduler.addStats(stats)
+			tasks.drainStats(stats)
+			protocolAPI.dataFeedHandler.addStats(stats)
+			protocolAPI.apiServers.forEach { it.addStats(stats) }
+			oSCRouter.addStats(stats)
+			LogManager.addStats(stats)
+			configManager.addStats(stats)
+			trackersServer.addStats(stats)
+			Tracker.addStats(stats)
+			startupProfile.addStats(trackersServer.firstPacketTime, stats)
+			protocolAPI.pubSubHandler.publishKeyValues(TICK_STATS_TOPIC, stats)
+		}
 	}
 
 	fun hasBridge(bridgeClass: Class<out Bridge?>): Boolean {
@@ -221,30 +283,35 @@ class VRServer @JvmOverloads constructor(
 	override fun run() {
 		trackersServer.start()
 		while (true) {
-			// final long start = System.currentTimeMillis();
 			fpsTimer.update()
-			do {
-				val task = tasks.poll() ?: break
-				task.run()
-			} while (true)
+			// Each lap ends a stage and starts the next one
+			var time = metrics.startTimer()
+			tickScheduler.tasksLeft = tasks.run(taskBudget)
+			time = stages.tasks.lap(time)
 			for (task in onTick) {
 				task.run()
 			}
+			time = stages.onTick.lap(time)
 			for (bridge in bridges) {
 				bridge.dataRead()
 			}
+			time = stages.bridgesRead.lap(time)
 			for (tracker in trackers) {
 				tracker.tick()
 			}
+			time = stages.trackers.lap(time)
 			humanPoseManager.update()
+			time = stages.skeleton.lap(time)
 			for (bridge in bridges) {
 				bridge.dataWrite()
 			}
+			time = stages.bridgesWrite.lap(time)
 			vrcOSCHandler.update()
+			time = stages.vrcOSC.lap(time)
 			vMCHandler.update()
-			// final long time = System.currentTimeMillis() - start;
+			stages.vmc.lap(time)
 			try {
-				sleep(1) // 1000Hz
+				tickScheduler.awaitNextTick()
 			} catch (error: InterruptedException) {
 				LogManager.info("VRServer thread interrupted")
 				break
@@ -255,6 +322,16 @@ class VRServer @JvmOverloads constructor(
 	@ThreadSafe
 	fun queueTask(r: Runnable) {
 		tasks.add(r)
+		tickScheduler.wakeUp()
+	}
+
+	/**
+	 * Queues [r] to rebuild state unless a task with the same [key] is already
+	 * waiting to run, so a burst of requests only runs it once
+	 */
+	@ThreadSafe
+	fun queueCoalescedTask(key: Any, r: Runnable) {
+		if (tasks.addCoalesced(key, r, TaskPriority.REBUILD)) tickScheduler.wakeUp()
 	}
 
 	@VRServerThread
@@ -267,9 +344,41 @@ class VRServer @JvmOverloads constructor(
 		refreshTrackersDriftCompensationEnabled()
 	}
 
+	/**
+	 * Measures the motion latency and writes every measurement to [file]
+	 * until [stopMotionTrace] is called
+	 */
+	@ThreadSafe
+	fun startMotionTrace(file: File) {
+		val trace = try {
+			MotionTrace(file)
+		} catch (e: IOException) {
+			LogManager.warning("[VRServer] Couldn't open motion trace file $file", e)
+			return
+		}
+		motionLatency.trace?.close()
+		motionLatency.trace = trace
+		motionLatency.enabled = true
+		metrics.gauge("motion_trace_dropped") { trace.droppedRecords }
+		LogManager.info("[VRServer] Writing motion trace to $file")
+	}
+
+	@ThreadSafe
+	fun stopMotionTrace() {
+		motionLatency.trace?.close()
+		motionLatency.trace = null
+		metrics.removeGauge("motion_trace_dropped")
+		motionLatency.enabled = configManager.vrConfig.metrics.motionLatency
+	}
+
 	@ThreadSecure
 	fun registerTracker(tracker: Tracker) {
 		configManager.vrConfig.readTrackerConfig(tracker)
+		if (!tracker.isComputed) {
+			// Trackers are never removed, one registered again with the same id
+			// replaces the gauge
+			metrics.gauge("tracker_${tracker.id}_tps") { tracker.tps }
+		}
 		queueTask {
 			trackers.add(tracker)
 			trackerAdded(tracker)
@@ -281,7 +390,7 @@ class VRServer @JvmOverloads constructor(
 
 	@ThreadSafe
 	fun updateSkeletonModel() {
-		queueTask {
+		queueCoalescedTask("updateSkeletonModel") {
 			humanPoseManager.updateSkeletonModelFromServer()
 			vrcOSCHandler.setHeadTracker(TrackerUtils.getTrackerForSkeleton(trackers, TrackerPosition.HEAD))
 			if (this.getVRBridge(ISteamVRBridge::class.java)?.updateShareSettingsAutomatically() == true) {
@@ -402,15 +511,27 @@ class VRServer @JvmOverloads constructor(
 		}
 	}
 
+	@ThreadSafe
 	fun refreshTrackersDriftCompensationEnabled() {
-		for (t in allTrackers) {
-			if (t.isImu()) {
-				t.resetsHandler.refreshDriftCompensationEnabled()
+		queueCoalescedTask("refreshTrackersDriftCompensationEnabled") {
+			for (t in trackers) {
+				if (t.isImu()) {
+					t.resetsHandler.refreshDriftCompensationEnabled()
+				}
 			}
 		}
 	}
 
 	companion object {
+		private const val TICK_STATS_INTERVAL = 1000L
+
+		// Tick rate and jitter, published every second over pubsub
+		private val TICK_STATS_TOPIC = TopicIdT().apply {
+			appName = "server"
+			organization = "slimevr.dev"
+			topic = "tick_stats"
+		}
+
 		private val nextLocalTrackerId = AtomicInteger()
 		lateinit var instance: VRServer
 			private set
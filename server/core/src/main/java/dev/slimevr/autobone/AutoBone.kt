@@ -18,11 +18,15 @@ import io.github.axisangles.ktmath.Vector3
 import org.apache.commons.lang3.tuple.Pair
 import java.io.File
 import java.util.*
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
 import java.util.function.Consumer
 import java.util.function.Function
 import kotlin.math.*
 
-class AutoBone(server: VRServer) {
+class AutoBone(private val server: VRServer?, val globalConfig: AutoBoneConfig) {
+	constructor(server: VRServer) : this(server, server.configManager.vrConfig.autoBone)
+
 	// This is filled by loadConfigValues()
 	val offsets = EnumMap<SkeletonConfigOffsets, Float>(
 		SkeletonConfigOffsets::class.java,
@@ -48,8 +52,6 @@ class AutoBone(server: VRServer) {
 	// The total height of the normalized adjusted offsets
 	var adjustedHeightNormalized: Float = 1f
 
-	private val server: VRServer
-
 	// #region Error functions
 	var slideError = SlideError()
 	var offsetSlideError = OffsetSlideError()
@@ -62,11 +64,7 @@ class AutoBone(server: VRServer) {
 
 	private val rand = Random()
 
-	val globalConfig: AutoBoneConfig
-
 	init {
-		globalConfig = server.configManager.vrConfig.autoBone
-		this.server = server
 		loadConfigValues()
 	}
 
@@ -75,7 +73,7 @@ class AutoBone(server: VRServer) {
 		offsets.clear()
 
 		// Get current or default skeleton configs
-		val skeleton = server.humanPoseManager
+		val skeleton = server?.humanPoseManager
 		// Still compensate for a null skeleton, as it may not be initialized yet
 		val getOffset: Function<SkeletonConfigOffsets, Float> =
 			if (skeleton != null) {
@@ -138,11 +136,11 @@ class AutoBone(server: VRServer) {
 	}
 
 	@JvmOverloads
-	fun applyAndSaveConfig(humanPoseManager: HumanPoseManager? = this.server.humanPoseManager): Boolean {
+	fun applyAndSaveConfig(humanPoseManager: HumanPoseManager? = this.server?.humanPoseManager): Boolean {
 		if (humanPoseManager == null) return false
 		applyConfig(humanPoseManager)
 		humanPoseManager.saveConfig()
-		server.configManager.saveConfig()
+		server?.configManager?.saveConfig()
 		LogManager.info("[AutoBone] Configured skeleton bone lengths")
 		return true
 	}
@@ -153,7 +151,7 @@ class AutoBone(server: VRServer) {
 	): Float {
 		val targetHeight: Float
 		// Get the current skeleton from the server
-		val humanPoseManager = server.humanPoseManager
+		val humanPoseManager = server?.humanPoseManager
 		// Still compensate for a null skeleton, as it may not be initialized yet
 		if (config.useSkeletonHeight && humanPoseManager != null) {
 			// If there is a skeleton available, calculate the target height
@@ -183,10 +181,8 @@ class AutoBone(server: VRServer) {
 	}
 
 	private fun updateRecordingScale(trainingStep: AutoBoneStep, scale: Float) {
-		trainingStep.framePlayer1.setScales(scale)
-		trainingStep.framePlayer2.setScales(scale)
-		trainingStep.skeleton1.update()
-		trainingStep.skeleton2.update()
+		trainingStep.setScale(scale)
+		trainingStep.updatePlayerCursors()
 	}
 
 	@Throws(AutoBoneException::class)
@@ -214,101 +210,66 @@ class AutoBone(server: VRServer) {
 		}
 		check(targetHmdHeight > MIN_HEIGHT) { "Configured height ($targetHmdHeight) is too small (<= $MIN_HEIGHT)." }
 
+		// Frame pairs can only be evaluated in parallel when filtering frames or
+		// training in batches
+		val threads = if (config.useFrameFiltering || batchSize(config) > 1) {
+			if (config.threads > 0) config.threads else Runtime.getRuntime().availableProcessors()
+		} else {
+			1
+		}
+
 		// Set up the current state, making all required players and setting up the
-		// skeletons appropriately
-		val trainingStep = AutoBoneStep(
-			config = config,
-			targetHmdHeight = targetHmdHeight,
-			targetFullHeight = targetFullHeight,
-			frames = frames,
-			epochCallback = epochCallback,
-			serverConfig = server.configManager,
-		)
+		// skeletons appropriately. Every thread gets its own skeletons to pose.
+		val trainingSteps = List(threads) {
+			AutoBoneStep(
+				config = config,
+				targetHmdHeight = targetHmdHeight,
+				targetFullHeight = targetFullHeight,
+				frames = frames,
+				epochCallback = epochCallback,
+				serverConfig = server?.configManager,
+			)
+		}
+		val trainingStep = trainingSteps[0]
 
 		// Initialize the frame order randomizer with a repeatable seed
 		rand.setSeed(config.randSeed)
 
 		// Normalize the skeletons and get the normalized height for adjusted offsets
-		scaleSkeleton(trainingStep.skeleton1)
-		scaleSkeleton(trainingStep.skeleton2)
+		for (step in trainingSteps) {
+			scaleSkeleton(step.skeleton1)
+			scaleSkeleton(step.skeleton2)
+		}
 		adjustedHeightNormalized = sumAdjustedHeightOffsets(trainingStep.skeleton1)
 
 		// Normalize offsets based on the initial normalized skeleton
 		scaleOffsets()
 
-		// Apply the initial normalized config values
-		applyConfig(trainingStep.skeleton1)
-		applyConfig(trainingStep.skeleton2)
-
-		// Initialize normalization to the set target height (also updates skeleton)
+		// Apply the initial normalized config values and initialize normalization
+		// to the set target height (also updates skeleton)
 		estimatedHeight = targetHmdHeight
-		updateRecordingScale(trainingStep, 1f / targetHmdHeight)
+		for (step in trainingSteps) {
+			applyConfig(step.skeleton1)
+			applyConfig(step.skeleton2)
+			updateRecordingScale(step, 1f / targetHmdHeight)
+		}
 
-		if (config.useFrameFiltering) {
-			// Calculate the initial frame errors and recording stats
-			val frameErrors = FloatArray(frames.maxFrameCount)
-			val frameStats = StatsCalculator()
-			val recordingStats = StatsCalculator()
-			for (i in 0 until frames.maxFrameCount) {
-				frameStats.reset()
-				for (j in 0 until frames.maxFrameCount) {
-					if (i == j) continue
+		// Pose every frame once, the skeletons are posed from the cache from now on
+		cachePoses(trainingSteps)
 
-					trainingStep.setCursors(
-						i,
-						j,
-						updatePlayerCursors = true,
-					)
-
-					frameStats.addValue(getErrorDeriv(trainingStep))
-				}
-				frameErrors[i] = frameStats.mean
-				recordingStats.addValue(frameStats.mean)
-				// LogManager.info("[AutoBone] Frame: ${i + 1}, Mean error: ${frameStats.mean} (SD ${frameStats.standardDeviation})")
+		val pool = if (threads > 1) ForkJoinPool(threads) else null
+		try {
+			if (config.useFrameFiltering) {
+				filterFrames(frames, trainingSteps, pool)
 			}
-			LogManager.info("[AutoBone] Full recording mean error: ${frameStats.mean} (SD ${frameStats.standardDeviation})")
-
-			// Remove outlier frames
-			val sdMult = 1.4f
-			val mean = recordingStats.mean
-			val sd = recordingStats.standardDeviation * sdMult
-			for (i in frameErrors.size - 1 downTo 0) {
-				val err = frameErrors[i]
-				if (err < mean - sd || err > mean + sd) {
-					for (frameHolder in frames.frameHolders) {
-						frameHolder.frames.removeAt(i)
-					}
-				}
-			}
-			trainingStep.maxFrameCount = frames.maxFrameCount
-
-			// Calculate and print the resulting recording stats
-			recordingStats.reset()
-			for (i in 0 until frames.maxFrameCount) {
-				frameStats.reset()
-				for (j in 0 until frames.maxFrameCount) {
-					if (i == j) continue
-
-					trainingStep.setCursors(
-						i,
-						j,
-						updatePlayerCursors = true,
-					)
 
-					frameStats.addValue(getErrorDeriv(trainingStep))
-				}
-				recordingStats.addValue(frameStats.mean)
+			// Epoch loop, each epoch is one full iteration over the full dataset
+			for (epoch in (if (config.calcInitError) -1 else 0) until config.numEpochs) {
+				// Process the epoch
+				internalEpoch(trainingSteps, pool, epoch)
 			}
-			LogManager.info("[AutoBone] Full recording after mean error: ${frameStats.mean} (SD ${frameStats.standardDeviation})")
-		}
-
-		// Epoch loop, each epoch is one full iteration over the full dataset
-		for (epoch in (if (config.calcInitError) -1 else 0) until config.numEpochs) {
-			// Set the current epoch to process
-			trainingStep.curEpoch = epoch
-
-			// Process the epoch
-			internalEpoch(trainingStep)
+		} finally {
+			pool?.shutdown()
 		}
 
 		// Scale the normalized offsets to the estimated height for the final result
@@ -332,15 +293,112 @@ class AutoBone(server: VRServer) {
 		)
 	}
 
-	private fun internalEpoch(trainingStep: AutoBoneStep) {
+	private fun cachePoses(trainingSteps: List<AutoBoneStep>) {
+		val poseCache = AutoBonePoseCache(trainingSteps[0])
+		for (step in trainingSteps) {
+			step.poseCache = poseCache
+		}
+	}
+
+	/**
+	 * Removes the frames whose mean error against all other frames is an
+	 * outlier
+	 */
+	private fun filterFrames(frames: PoseFrames, trainingSteps: List<AutoBoneStep>, pool: ForkJoinPool?) {
+		// Calculate the initial frame errors and recording stats
+		val frameErrors = calcFrameErrors(trainingSteps, pool)
+		val recordingStats = StatsCalculator()
+		for (error in frameErrors) {
+			recordingStats.addValue(error)
+		}
+		LogManager.info("[AutoBone] Full recording mean error: ${recordingStats.mean} (SD ${recordingStats.standardDeviation})")
+
+		// Remove outlier frames
+		val sdMult = 1.4f
+		val mean = recordingStats.mean
+		val sd = recordingStats.standardDeviation * sdMult
+		val outliers = BooleanArray(frameErrors.size) { frameErrors[it] < mean - sd || frameErrors[it] > mean + sd }
+		for (frameHolder in frames.frameHolders) {
+			frameHolder.removeFrames { it < outliers.size && outliers[it] }
+		}
+		for (step in trainingSteps) {
+			step.maxFrameCount = frames.maxFrameCount
+		}
+		cachePoses(trainingSteps)
+
+		// Calculate and print the resulting recording stats
+		recordingStats.reset()
+		for (error in calcFrameErrors(trainingSteps, pool)) {
+			recordingStats.addValue(error)
+		}
+		LogManager.info("[AutoBone] Full recording after mean error: ${recordingStats.mean} (SD ${recordingStats.standardDeviation})")
+	}
+
+	/**
+	 * Calculates the mean error of every frame against all other frames
+	 */
+	private fun calcFrameErrors(trainingSteps: List<AutoBoneStep>, pool: ForkJoinPool?): FloatArray {
+		val frameCount = trainingSteps[0].maxFrameCount
+		val frameErrors = FloatArray(frameCount)
+		forEachShard(trainingSteps, pool, frameCount) { step, from, to ->
+			val frameStats = StatsCalculator()
+			for (i in from until to) {
+				frameStats.reset()
+				for (j in 0 until frameCount) {
+					if (i == j) continue
+
+					step.setCursors(
+						i,
+						j,
+						updatePlayerCursors = true,
+					)
+
+					frameStats.addValue(getErrorDeriv(step))
+				}
+				frameErrors[i] = frameStats.mean
+			}
+		}
+		return frameErrors
+	}
+
+	/**
+	 * Splits [count] items into a contiguous shard per training step and
+	 * processes the shards on [pool], every shard only uses its own step.
+	 */
+	private fun forEachShard(
+		trainingSteps: List<AutoBoneStep>,
+		pool: ForkJoinPool?,
+		count: Int,
+		action: (step: AutoBoneStep, from: Int, to: Int) -> Unit,
+	) {
+		val shards = min(trainingSteps.size, count)
+		if (pool == null || shards <= 1) {
+			action(trainingSteps[0], 0, count)
+			return
+		}
+		val tasks = List(shards) { shard ->
+			ForkJoinTask.adapt(
+				Runnable {
+					action(trainingSteps[shard], count * shard / shards, count * (shard + 1) / shards)
+				},
+			)
+		}
+		pool.invoke(ForkJoinTask.adapt(Runnable { ForkJoinTask.invokeAll(tasks) }))
+	}
+
+	private fun internalEpoch(trainingSteps: List<AutoBoneStep>, pool: ForkJoinPool?, epoch: Int) {
 		// Pull frequently used variables out of trainingStep to reduce call length
+		val trainingStep = trainingSteps[0]
 		val config = trainingStep.config
 		val frameCount = trainingStep.maxFrameCount
 		val errorStats = trainingStep.errorStats
-		val epoch = trainingStep.curEpoch
 
-		// Set the current adjust rate based on the current epoch
-		trainingStep.curAdjustRate = decayFunc(config.initialAdjustRate, config.adjustRateDecay, epoch)
+		// Set the current epoch and adjust rate based on the current epoch
+		val adjustRate = decayFunc(config.initialAdjustRate, config.adjustRateDecay, epoch)
+		for (step in trainingSteps) {
+			step.curEpoch = epoch
+			step.curAdjustRate = adjustRate
+		}
 
 		var randomFrameIndices: IntArray? = null
 		if (config.randomizeFrameOrder) {
@@ -359,39 +417,31 @@ class AutoBone(server: VRServer) {
 			}
 		}
 
-		// Iterate over the frames using a cursor and an offset for comparing
-		// frames a certain number of frames apart
-		var cursorOffset = config.minDataDistance
-		while (cursorOffset <= config.maxDataDistance &&
-			cursorOffset < frameCount
-		) {
-			var frameCursor = 0
-			while (frameCursor < frameCount - cursorOffset) {
-				val frameCursor2 = frameCursor + cursorOffset
-
-				// Then set the frame cursors and apply them to both skeletons
-				if (config.randomizeFrameOrder && randomFrameIndices != null) {
-					trainingStep
-						.setCursors(
-							randomFrameIndices[frameCursor],
-							randomFrameIndices[frameCursor2],
-							updatePlayerCursors = true,
-						)
-				} else {
-					trainingStep.setCursors(
-						frameCursor,
-						frameCursor2,
-						updatePlayerCursors = true,
-					)
-				}
-
-				// Process the iteration
-				internalIter(trainingStep)
-
-				// Move on to the next iteration
-				frameCursor += config.cursorIncrement
+		// Collect the frame pairs of the epoch
+		var pairCount = 0
+		forEachFramePair(config, frameCount) { _, _ -> pairCount++ }
+		val cursors1 = IntArray(pairCount)
+		val cursors2 = IntArray(pairCount)
+		var pair = 0
+		forEachFramePair(config, frameCount) { frameCursor, frameCursor2 ->
+			if (randomFrameIndices != null) {
+				cursors1[pair] = randomFrameIndices[frameCursor]
+				cursors2[pair] = randomFrameIndices[frameCursor2]
+			} else {
+				cursors1[pair] = frameCursor
+				cursors2[pair] = frameCursor2
 			}
-			cursorOffset++
+			pair++
+		}
+
+		// Process the pairs in batches
+		val batchSize = batchSize(config)
+		val results = BatchResults(min(batchSize, pairCount), adjustOffsets.size)
+		var batchStart = 0
+		while (batchStart < pairCount) {
+			val batchEnd = min(batchStart + batchSize, pairCount)
+			internalBatch(trainingSteps, pool, cursors1, cursors2, batchStart, batchEnd, results)
+			batchStart = batchEnd
 		}
 
 		// Calculate average error over the epoch
@@ -416,10 +466,132 @@ class AutoBone(server: VRServer) {
 		}
 	}
 
-	private fun internalIter(trainingStep: AutoBoneStep) {
+	private fun batchSize(config: AutoBoneConfig): Int = config.batchSize.coerceAtLeast(1)
+
+	/**
+	 * Iterates over the frames using a cursor and an offset for comparing
+	 * frames a certain number of frames apart
+	 */
+	private inline fun forEachFramePair(config: AutoBoneConfig, frameCount: Int, action: (Int, Int) -> Unit) {
+		var cursorOffset = config.minDataDistance
+		while (cursorOffset <= config.maxDataDistance &&
+			cursorOffset < frameCount
+		) {
+			var frameCursor = 0
+			while (frameCursor < frameCount - cursorOffset) {
+				action(frameCursor, frameCursor + cursorOffset)
+
+				// Move on to the next iteration
+				frameCursor += config.cursorIncrement
+			}
+			cursorOffset++
+		}
+	}
+
+	/**
+	 * Evaluates the frame pairs from [from] to [to] against the same offsets
+	 * and height, then applies the average of their adjustments, so the step
+	 * size doesn't grow with the batch. With a batch of one pair, this is plain
+	 * stochastic gradient descent.
+	 */
+	private fun internalBatch(
+		trainingSteps: List<AutoBoneStep>,
+		pool: ForkJoinPool?,
+		cursors1: IntArray,
+		cursors2: IntArray,
+		from: Int,
+		to: Int,
+		results: BatchResults,
+	) {
+		val trainingStep = trainingSteps[0]
+		val batchOffsets = EnumMap(offsets)
+		val batchHeight = estimatedHeight
+		val count = to - from
+		forEachShard(trainingSteps, pool, count) { step, shardFrom, shardTo ->
+			// Every pair of the batch starts from the same offsets, and each pair
+			// restores the ones it tries, so they only need to be applied once
+			applyConfig(step.skeleton1, batchOffsets)
+			applyConfig(step.skeleton2, batchOffsets)
+			for (i in shardFrom until shardTo) {
+				internalIter(step, cursors1[from + i], cursors2[from + i], batchOffsets, batchHeight, results, i)
+			}
+		}
+
+		// In case of fire
+		for (i in 0 until count) {
+			if (results.valid[i]) continue
+			// Extinguish
+			LogManager
+				.warning(
+					"[AutoBone] Error value is invalid, resetting variables to recover",
+				)
+			// Reset adjustable config values
+			loadConfigValues()
+
+			// Reset error sum values
+			trainingStep.errorStats.reset()
+
+			// Continue on new data
+			return
+		}
+
+		// Reduce the results in order so they don't depend on the amount of threads
+		var heightAdjust = 0f
+		for (i in 0 until count) {
+			// Store the error count for logging purposes
+			trainingStep.errorStats.addValue(results.errorDerivs[i])
+			heightAdjust += results.heights[i] - batchHeight
+		}
+		heightAdjust /= count
+		if (heightAdjust != 0f) {
+			estimatedHeight = (batchHeight + heightAdjust).coerceIn(
+				trainingStep.targetHmdHeight - 0.2f,
+				trainingStep.targetHmdHeight + 0.2f,
+			)
+		}
+		for ((offsetIndex, offset) in adjustOffsets.withIndex()) {
+			val originalLength = batchOffsets[offset] ?: continue
+			var lengthAdjust = 0f
+			for (i in 0 until count) {
+				lengthAdjust += results.lengthAdjusts[i * adjustOffsets.size + offsetIndex]
+			}
+			lengthAdjust /= count
+			// No small or negative numbers!!! Bad algorithm!
+			if (lengthAdjust != 0f && originalLength + lengthAdjust >= 0.01f) {
+				offsets[offset] = originalLength + lengthAdjust
+			}
+		}
+
+		// Normalize the scale, it will be upscaled to the target height later
+		// We only need to scale height offsets, as other offsets are not affected by height
+		scaleOffsets(onlyHeightOffsets = true)
+	}
+
+	/**
+	 * Evaluates one frame pair on [trainingStep]'s skeletons and stores its
+	 * error, height and offset adjustments in [results] at [index]
+	 */
+	private fun internalIter(
+		trainingStep: AutoBoneStep,
+		cursor1: Int,
+		cursor2: Int,
+		batchOffsets: EnumMap<SkeletonConfigOffsets, Float>,
+		batchHeight: Float,
+		results: BatchResults,
+		index: Int,
+	) {
 		// Pull frequently used variables out of trainingStep to reduce call length
 		val skeleton1 = trainingStep.skeleton1
 		val skeleton2 = trainingStep.skeleton2
+		val adjustStart = index * adjustOffsets.size
+		results.lengthAdjusts.fill(0f, adjustStart, adjustStart + adjustOffsets.size)
+
+		// Start from the batch's height, then set the frame cursors and apply them
+		// to both skeletons
+		trainingStep.setScale(1f / batchHeight)
+		trainingStep.setCursors(cursor1, cursor2, updatePlayerCursors = true)
+
+		var height = batchHeight
 
 		// Scaling each step used to mean enforcing the target height, so keep that
 		// behaviour to retain predictability
@@ -429,58 +601,44 @@ class AutoBone(server: VRServer) {
 			val maxHeight = trainingStep.targetHmdHeight + 0.2f
 			val minHeight = trainingStep.targetHmdHeight - 0.2f
 
-			trainingStep.currentHmdHeight = estimatedHeight
+			trainingStep.currentHmdHeight = height
 			val heightErrorDeriv = getErrorDeriv(trainingStep)
 			val heightAdjust = errorFunc(heightErrorDeriv) * trainingStep.curAdjustRate
 
-			val negHeight = (estimatedHeight - heightAdjust).coerceIn(minHeight, maxHeight)
+			val negHeight = (height - heightAdjust).coerceIn(minHeight, maxHeight)
 			updateRecordingScale(trainingStep, 1f / negHeight)
 			trainingStep.currentHmdHeight = negHeight
 			val negHeightErrorDeriv = getErrorDeriv(trainingStep)
 
-			val posHeight = (estimatedHeight + heightAdjust).coerceIn(minHeight, maxHeight)
+			val posHeight = (height + heightAdjust).coerceIn(minHeight, maxHeight)
 			updateRecordingScale(trainingStep, 1f / posHeight)
 			trainingStep.currentHmdHeight = posHeight
 			val posHeightErrorDeriv = getErrorDeriv(trainingStep)
 
 			if (negHeightErrorDeriv < heightErrorDeriv && negHeightErrorDeriv < posHeightErrorDeriv) {
-				estimatedHeight = negHeight
+				height = negHeight
 				// Apply the negative height scale
 				updateRecordingScale(trainingStep, 1f / negHeight)
 			} else if (posHeightErrorDeriv < heightErrorDeriv) {
-				estimatedHeight = posHeight
+				height = posHeight
 				// The last estimated height set was the positive adjustment, so no need to apply it again
 			} else {
 				// Reset to the initial scale
-				updateRecordingScale(trainingStep, 1f / estimatedHeight)
+				updateRecordingScale(trainingStep, 1f / height)
 			}
 		}
 
 		// Update the heights used for error calculations
-		trainingStep.currentHmdHeight = estimatedHeight
+		trainingStep.currentHmdHeight = height
 
 		val errorDeriv = getErrorDeriv(trainingStep)
 		val error = errorFunc(errorDeriv)
 
-		// In case of fire
-		if (java.lang.Float.isNaN(error) || java.lang.Float.isInfinite(error)) {
-			// Extinguish
-			LogManager
-				.warning(
-					"[AutoBone] Error value is invalid, resetting variables to recover",
-				)
-			// Reset adjustable config values
-			loadConfigValues()
-
-			// Reset error sum values
-			trainingStep.errorStats.reset()
+		results.valid[index] = !error.isNaN() && !error.isInfinite()
+		results.errorDerivs[index] = errorDeriv
+		results.heights[index] = height
+		if (!results.valid[index]) return
 
-			// Continue on new data
-			return
-		}
-
-		// Store the error count for logging purposes
-		trainingStep.errorStats.addValue(errorDeriv)
 		val adjustVal = error * trainingStep.curAdjustRate
 
 		// If there is no adjustment whatsoever, skip this
@@ -496,26 +654,25 @@ class AutoBone(server: VRServer) {
 			.getComputedTracker(TrackerRole.RIGHT_FOOT).position -
 			skeleton1.getComputedTracker(TrackerRole.RIGHT_FOOT).position
 
-		val intermediateOffsets = EnumMap(offsets)
-		for (entry in intermediateOffsets.entries) {
+		for ((offsetIndex, offset) in adjustOffsets.withIndex()) {
+			val originalLength = batchOffsets[offset] ?: continue
 			// Skip adjustment if the epoch is before starting (for logging only) or
 			// if there are no BoneTypes for this value
-			if (trainingStep.curEpoch < 0 || entry.key.affectedOffsets.isEmpty()) {
+			if (trainingStep.curEpoch < 0 || offset.affectedOffsets.isEmpty()) {
 				break
 			}
-			val originalLength = entry.value
 
 			val leftDotProduct = getDotProductDiff(
 				skeleton1,
 				skeleton2,
-				entry.key,
+				offset,
 				false,
 				slideLeft,
 			)
 			val rightDotProduct = getDotProductDiff(
 				skeleton1,
 				skeleton2,
-				entry.key,
+				offset,
 				true,
 				slideRight,
 			)
@@ -533,36 +690,34 @@ class AutoBone(server: VRServer) {
 			}
 
 			// Apply new offset length
-			skeleton1.setOffset(entry.key, newLength)
-			skeleton2.setOffset(entry.key, newLength)
+			skeleton1.setOffset(offset, newLength)
+			skeleton2.setOffset(offset, newLength)
 			scaleSkeleton(skeleton1, onlyAdjustedHeight = true)
 			scaleSkeleton(skeleton2, onlyAdjustedHeight = true)
 
 			// Update the skeleton poses for the new offset length
-			skeleton1.update()
-			skeleton2.update()
+			trainingStep.updateSkeletons()
 
 			val newErrorDeriv = getErrorDeriv(trainingStep)
 			if (newErrorDeriv < errorDeriv) {
-				// Apply the adjusted length to the current adjusted offsets
-				entry.setValue(newLength)
+				// Store the adjustment, it's applied with the rest of the batch
+				results.lengthAdjusts[adjustStart + offsetIndex] = curAdjustVal
 			}
 
 			// Reset the skeleton values to minimize bias in other variables, it's applied later
-			applyConfig(skeleton1)
-			applyConfig(skeleton2)
+			resetAdjustedOffsets(skeleton1, batchOffsets)
+			resetAdjustedOffsets(skeleton2, batchOffsets)
 		}
+	}
 
-		// Update the offsets from the adjusted ones
-		offsets.putAll(intermediateOffsets)
-
-		// Normalize the scale, it will be upscaled to the target height later
-		// We only need to scale height offsets, as other offsets are not affected by height
-		scaleOffsets(onlyHeightOffsets = true)
-
-		// Apply the normalized offsets to the skeleton
-		applyConfig(skeleton1)
-		applyConfig(skeleton2)
+	/**
+	 * Restores the offsets an adjustment can change, the adjusted offset itself
+	 * and the adjusted height offsets rescaled along with it
+	 */
+	private fun resetAdjustedOffsets(humanPoseManager: HumanPoseManager, batchOffsets: EnumMap<SkeletonConfigOffsets, Float>) {
+		for (offset in adjustOffsets) {
+			humanPoseManager.setOffset(offset, batchOffsets[offset] ?: continue)
+		}
 	}
 
 	/**
@@ -733,6 +888,17 @@ class AutoBone(server: VRServer) {
 		return recordings
 	}
 
+	/**
+	 * The results of every frame pair of a batch, indexed by its position in
+	 * the batch
+	 */
+	private class BatchResults(size: Int, offsetCount: Int) {
+		val valid = BooleanArray(size)
+		val errorDerivs = FloatArray(size)
+		val heights = FloatArray(size)
+		val lengthAdjusts = FloatArray(size * offsetCount)
+	}
+
 	inner class Epoch(
 		val epoch: Int,
 		val totalEpochs: Int,
@@ -15,6 +15,7 @@ import io.eiren.util.StringUtils
 import io.eiren.util.collections.FastList
 import io.eiren.util.logging.LogManager
 import org.apache.commons.lang3.tuple.Pair
+import java.io.File
 import java.util.*
 import java.util.concurrent.CopyOnWriteArrayList
 import java.util.concurrent.locks.ReentrantLock
@@ -106,10 +107,22 @@ class AutoBoneHandler(private val server: VRServer) {
 				// Calculate total time in seconds
 				val totalTime: Float = (sampleCount * sampleRate) / 1000f
 
-				val framesFuture = poseRecorder
+				// Save a recurring recording for users to send as debug info. It's
+				// streamed to a chunked file while recording, so it's kept even if
+				// the server crashes, and saved in the stream format older versions
+				// can read once done.
+				val saveDir = AutoBone.saveDir
+				val streamFile = if (saveDir.isDirectory || saveDir.mkdirs()) {
+					File(saveDir, "LastABRecording.pfra")
+				} else {
+					null
+				}
+
+				val recording = poseRecorder
 					.startFrameRecording(
 						sampleCount,
 						sampleRate,
+						streamFile = streamFile,
 					) { progress: RecordingProgress ->
 						announceProcessStatus(
 							AutoBoneProcessType.RECORD,
@@ -118,20 +131,20 @@ class AutoBoneHandler(private val server: VRServer) {
 							eta = totalTime - (progress.frame * totalTime / progress.totalFrames),
 						)
 					}
-				val frames = framesFuture.get()
+				// Waits for the recording, a streamed one is read back from its file
+				recording.get()
 				LogManager.info("[AutoBone] Done recording!")
 
-				// Save a recurring recording for users to send as debug info
 				announceProcessStatus(AutoBoneProcessType.RECORD, "Saving recording...")
-				autoBone.saveRecording(frames, "LastABRecording.pfr")
+				autoBone.saveRecording(recording.get(), "LastABRecording.pfr")
 				if (autoBone.globalConfig.saveRecordings) {
 					announceProcessStatus(
 						AutoBoneProcessType.RECORD,
 						"Saving recording (from config option)...",
 					)
-					autoBone.saveRecording(frames)
+					autoBone.saveRecording(recording.get())
 				}
-				listeners.forEach { listener: AutoBoneListener -> listener.onAutoBoneRecordingEnd(frames) }
+				listeners.forEach { listener: AutoBoneListener -> listener.onAutoBoneRecordingEnd(recording) }
 				announceProcessStatus(
 					AutoBoneProcessType.RECORD,
 					"Done recording!",
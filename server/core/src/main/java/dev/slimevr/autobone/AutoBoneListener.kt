@@ -4,6 +4,7 @@ import dev.slimevr.autobone.AutoBone.Epoch
 import dev.slimevr.poseframeformat.PoseFrames
 import dev.slimevr.tracking.processor.config.SkeletonConfigOffsets
 import java.util.*
+import java.util.concurrent.Future
 
 interface AutoBoneListener {
 	fun onAutoBoneProcessStatus(
@@ -16,7 +17,9 @@ interface AutoBoneListener {
 		success: Boolean,
 	)
 
-	fun onAutoBoneRecordingEnd(recording: PoseFrames)
+	// A streamed recording is only read from its file once its frames are asked
+	// for
+	fun onAutoBoneRecordingEnd(recording: Future<PoseFrames>)
 	fun onAutoBoneEpoch(epoch: Epoch)
 	fun onAutoBoneEnd(configValues: EnumMap<SkeletonConfigOffsets, Float>)
 }
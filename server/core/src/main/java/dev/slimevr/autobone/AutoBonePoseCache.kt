@@ -0,0 +1,38 @@
+package dev.slimevr.autobone
+
+import dev.slimevr.tracking.processor.HumanPoseManager
+
+/**
+ * The skeleton pose of every frame of a recording. Bone rotations only depend
+ * on the tracker rotations, not on bone lengths, so skeletons can be posed
+ * from this while AutoBone adjusts the lengths instead of replaying the
+ * tracker frames and recomputing the rotations every time.
+ */
+class AutoBonePoseCache(trainingStep: AutoBoneStep) {
+	private val poseSize = trainingStep.skeleton1.skeleton.transforms.poseSize
+	val frameCount = trainingStep.maxFrameCount
+	private val poses = FloatArray(poseSize * frameCount)
+
+	init {
+		// Pose the skeleton with unscaled positions, they get scaled when loaded
+		val framePlayer = trainingStep.framePlayer1
+		val skeleton = trainingStep.skeleton1
+		framePlayer.setScales(1f)
+		for (frame in 0 until frameCount) {
+			framePlayer.setCursors(frame)
+			skeleton.update()
+			skeleton.skeleton.transforms.savePose(poses, frame * poseSize)
+		}
+	}
+
+	/**
+	 * Poses [humanPoseManager] at [frame], with the positions of the recording
+	 * multiplied by [scale]
+	 */
+	fun applyPose(humanPoseManager: HumanPoseManager, frame: Int, scale: Float) {
+		val skeleton = humanPoseManager.skeleton
+		require(skeleton.transforms.poseSize == poseSize) { "The skeleton doesn't match the cached poses." }
+		skeleton.transforms.loadPose(poses, frame.coerceIn(0, frameCount - 1) * poseSize, scale)
+		skeleton.updateBonePositions()
+	}
+}
@@ -13,7 +13,7 @@ class AutoBoneStep(
 	val targetFullHeight: Float,
 	val frames: PoseFrames,
 	val epochCallback: Consumer<AutoBone.Epoch>?,
-	serverConfig: ConfigManager,
+	serverConfig: ConfigManager?,
 	var curEpoch: Int = 0,
 	var curAdjustRate: Float = 0f,
 	var cursor1: Int = 0,
@@ -36,10 +36,23 @@ class AutoBoneStep(
 
 	val errorStats = StatsCalculator()
 
+	/**
+	 * When set, the skeletons are posed from this instead of the frame players
+	 */
+	var poseCache: AutoBonePoseCache? = null
+
+	/**
+	 * The scale applied to the positions of the recording
+	 */
+	var scale = 1f
+		private set
+
 	init {
 		// Load server configs into the skeleton
-		skeleton1.loadFromConfig(serverConfig)
-		skeleton2.loadFromConfig(serverConfig)
+		if (serverConfig != null) {
+			skeleton1.loadFromConfig(serverConfig)
+			skeleton2.loadFromConfig(serverConfig)
+		}
 		// Disable leg tweaks, this will mess with the resulting positions
 		skeleton1.setLegTweaksEnabled(false)
 		skeleton2.setLegTweaksEnabled(false)
@@ -55,12 +68,43 @@ class AutoBoneStep(
 	}
 
 	fun updatePlayerCursors() {
+		val poseCache = poseCache
+		if (poseCache != null) {
+			poseCache.applyPose(skeleton1, cursor1, scale)
+			poseCache.applyPose(skeleton2, cursor2, scale)
+			return
+		}
 		framePlayer1.setCursors(cursor1)
 		framePlayer2.setCursors(cursor2)
 		skeleton1.update()
 		skeleton2.update()
 	}
 
+	/**
+	 * Sets the scale of the recording's positions, the skeletons get updated
+	 * with the next [updatePlayerCursors]
+	 */
+	fun setScale(scale: Float) {
+		this.scale = scale
+		if (poseCache == null) {
+			framePlayer1.setScales(scale)
+			framePlayer2.setScales(scale)
+		}
+	}
+
+	/**
+	 * Updates the skeletons after their offsets changed
+	 */
+	fun updateSkeletons() {
+		if (poseCache != null) {
+			skeleton1.skeleton.updateBonePositions()
+			skeleton2.skeleton.updateBonePositions()
+		} else {
+			skeleton1.update()
+			skeleton2.update()
+		}
+	}
+
 	val heightOffset: Float
 		get() = targetHmdHeight - currentHmdHeight
 }
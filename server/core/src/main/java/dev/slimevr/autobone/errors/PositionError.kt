@@ -35,9 +35,8 @@ class PositionError : IAutoBoneError {
 			var offset = 0f
 			var offsetCount = 0
 			for (tracker in trackers) {
-				val trackerFrame = tracker.tryGetFrame(cursor) ?: continue
-				val position = trackerFrame.tryGetPosition() ?: continue
-				val trackerRole = trackerFrame.tryGetTrackerPosition()?.trackerRole ?: continue
+				val position = tracker.tryGetPosition(cursor) ?: continue
+				val trackerRole = tracker.tryGetTrackerPosition(cursor)?.trackerRole ?: continue
 
 				val computedTracker = skeleton.getComputedTracker(trackerRole) ?: continue
 
@@ -29,13 +29,11 @@ class PositionOffsetError : IAutoBoneError {
 		var offset = 0f
 		var offsetCount = 0
 		for (tracker in trackers) {
-			val trackerFrame1 = tracker.tryGetFrame(cursor1) ?: continue
-			val position1 = trackerFrame1.tryGetPosition() ?: continue
-			val trackerRole1 = trackerFrame1.tryGetTrackerPosition()?.trackerRole ?: continue
+			val position1 = tracker.tryGetPosition(cursor1) ?: continue
+			val trackerRole1 = tracker.tryGetTrackerPosition(cursor1)?.trackerRole ?: continue
 
-			val trackerFrame2 = tracker.tryGetFrame(cursor2) ?: continue
-			val position2 = trackerFrame2.tryGetPosition() ?: continue
-			val trackerRole2 = trackerFrame2.tryGetTrackerPosition()?.trackerRole ?: continue
+			val position2 = tracker.tryGetPosition(cursor2) ?: continue
+			val trackerRole2 = tracker.tryGetTrackerPosition(cursor2)?.trackerRole ?: continue
 
 			val computedTracker1 = skeleton1.getComputedTracker(trackerRole1) ?: continue
 			val computedTracker2 = skeleton2.getComputedTracker(trackerRole2) ?: continue
@@ -27,4 +27,13 @@ class AutoBoneConfig {
 	var randSeed = 4L
 	var useFrameFiltering = false
 	var maxFinalError = 0.03f
+
+	// Amount of frame pairs evaluated against the same bone lengths before
+	// their adjustments get averaged, only batches can be trained in parallel.
+	// 1 trains every pair on its own. Doesn't depend on the amount of threads,
+	// so a seed gives the same results on every machine.
+	var batchSize = 1
+
+	// Amount of threads to train with, 0 uses all available cores
+	var threads = 0
 }
@@ -1,48 +1,127 @@
 package dev.slimevr.config;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
 import com.github.jonpeterson.jackson.module.versioning.VersioningModule;
 import dev.slimevr.config.serializers.QuaternionDeserializer;
 import dev.slimevr.config.serializers.QuaternionSerializer;
+import dev.slimevr.metrics.MetricHistogram;
+import dev.slimevr.metrics.MetricsRegistry;
 import io.eiren.util.ann.ThreadSafe;
 import io.eiren.util.logging.LogManager;
 import io.github.axisangles.ktmath.ObjectQuaternion;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 
+/**
+ * Loads and saves the config. Saves are written behind from a background
+ * thread: the requests made within {@link #SAVE_DELAY_MS} of the first one
+ * are written once, and a pending save is written on shutdown. The config is
+ * serialized by the {@link #setSerializer serializer}, which should run on
+ * the thread that changes it, and only the bytes are handed to the background
+ * thread.
+ * <p>
+ * A binary copy of the config is kept next to it, and is read instead of the
+ * YAML on startup as long as the YAML wasn't changed since.
+ */
 public class ConfigManager {
 
+	private static final long SAVE_DELAY_MS = 500;
+	// How long a flush waits for the serializer, and how often it tries to
+	// serialize on its own thread after that
+	private static final long FLUSH_TIMEOUT_MS = 1000;
+	private static final int FLUSH_ATTEMPTS = 20;
+	private static final long FLUSH_RETRY_DELAY_MS = 10;
+	private static final int CACHE_MAGIC = 0x53564343; // SVCC
+	private static final int CACHE_FORMAT = 1;
+	// Magic, format, modification time of the YAML and its SHA-256 hash
+	private static final int CACHE_HEADER_SIZE = 4 + 4 + 8 + 32;
+
 	private final String configPath;
 
 	private final ObjectMapper om;
+	private final ObjectMapper cacheMapper;
 
-	private VRConfig vrConfig;
+	private volatile VRConfig vrConfig;
 
+	private final ScheduledExecutorService saver = Executors
+		.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Config saver");
+			thread.setDaemon(true);
+			return thread;
+		});
+	private final AtomicBoolean savePending = new AtomicBoolean();
+	private final AtomicLong saveRequests = new AtomicLong();
+	private final AtomicLong saves = new AtomicLong();
+	private volatile Executor serializer = Runnable::run;
+	// Numbers of the last serialized and written configs, so an older config
+	// can't replace a newer one. Writing has its own lock, so serializing
+	// never waits for the disk.
+	private final Object serializeLock = new Object();
+	private final Object writeLock = new Object();
+	private long serialized;
+	private long written;
+	private final MetricHistogram saveTimes;
+	private boolean cacheHit;
 
-	public ConfigManager(String configPath) {
+	public ConfigManager(String configPath, MetricsRegistry metrics) {
 		this.configPath = configPath;
-		om = new ObjectMapper(new YAMLFactory().disable(YAMLGenerator.Feature.SPLIT_LINES));
-		om.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-		om.registerModule(new VersioningModule());
+		saveTimes = metrics.histogram("config_save");
+		om = createMapper(
+			new ObjectMapper(new YAMLFactory().disable(YAMLGenerator.Feature.SPLIT_LINES))
+		);
+		cacheMapper = createMapper(new ObjectMapper(new SmileFactory()));
+
+		Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "Config flush"));
+	}
+
+	private static ObjectMapper createMapper(ObjectMapper mapper) {
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+		mapper.registerModule(new VersioningModule());
 		SimpleModule quaternionModule = new SimpleModule();
 		quaternionModule.addSerializer(ObjectQuaternion.class, new QuaternionSerializer());
 		quaternionModule.addDeserializer(ObjectQuaternion.class, new QuaternionDeserializer());
-		om.registerModule(quaternionModule);
+		mapper.registerModule(quaternionModule);
+		return mapper;
 	}
 
 	public void loadConfig() {
 		try {
-			this.vrConfig = om
-				.readValue(new FileInputStream(configPath), VRConfig.class);
-		} catch (FileNotFoundException e) {
+			Path cfgFile = Paths.get(configPath);
+			byte[] yaml = Files.readAllBytes(cfgFile);
+			long modifiedTime = Files.getLastModifiedTime(cfgFile).toMillis();
+			byte[] hash = hash(yaml);
+			this.vrConfig = readCache(modifiedTime, hash);
+			cacheHit = this.vrConfig != null;
+			if (!cacheHit) {
+				this.vrConfig = om.readValue(yaml, VRConfig.class);
+				saver.execute(() -> writeCache(yaml, modifiedTime, hash));
+			}
+		} catch (NoSuchFileException e) {
 			// Config file didn't exist, is not an error
 		} catch (IOException e) {
 			// Log the exception
@@ -56,6 +135,77 @@ public class ConfigManager {
 		}
 	}
 
+	/**
+	 * Reads the config from the cache if it was made from the YAML with the
+	 * given modification time and hash, or returns null
+	 */
+	private VRConfig readCache(long modifiedTime, byte[] hash) {
+		Path cacheFile = Paths.get(configPath + ".cache");
+		byte[] cache;
+		try {
+			cache = Files.readAllBytes(cacheFile);
+		} catch (IOException e) {
+			return null;
+		}
+		if (cache.length < CACHE_HEADER_SIZE)
+			return null;
+		ByteBuffer header = ByteBuffer.wrap(cache, 0, CACHE_HEADER_SIZE);
+		if (header.getInt() != CACHE_MAGIC || header.getInt() != CACHE_FORMAT)
+			return null;
+		if (header.getLong() != modifiedTime)
+			return null;
+		byte[] cachedHash = new byte[32];
+		header.get(cachedHash);
+		if (!Arrays.equals(cachedHash, hash))
+			return null;
+		try {
+			return cacheMapper
+				.readValue(
+					cache,
+					CACHE_HEADER_SIZE,
+					cache.length - CACHE_HEADER_SIZE,
+					VRConfig.class
+				);
+		} catch (IOException e) {
+			LogManager.warning("[ConfigManager] Ignoring unreadable config cache: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the given YAML config to the cache in binary form
+	 */
+	private void writeCache(byte[] yaml, long modifiedTime, byte[] hash) {
+		Path tmpCacheFile = Paths.get(configPath + ".cache.tmp");
+		Path cacheFile = Paths.get(configPath + ".cache");
+		try {
+			// Converted from the YAML tree rather than the config object, so
+			// what's read from the cache is what would be read from the YAML.
+			// Decimals are kept as written so floats are parsed the same way.
+			JsonNode tree = om
+				.reader()
+				.with(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+				.readTree(yaml);
+			byte[] payload = cacheMapper.writeValueAsBytes(tree);
+			ByteBuffer cache = ByteBuffer.allocate(CACHE_HEADER_SIZE + payload.length);
+			cache.putInt(CACHE_MAGIC).putInt(CACHE_FORMAT).putLong(modifiedTime).put(hash);
+			cache.put(payload);
+			Files.write(tmpCacheFile, cache.array());
+			atomicMove(tmpCacheFile, cacheFile);
+		} catch (IOException e) {
+			LogManager.warning("[ConfigManager] Unable to write config cache: " + e);
+		}
+	}
+
+	private static byte[] hash(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
 	public void atomicMove(Path from, Path to) throws IOException {
 		try {
 			// Atomic move to overwrite
@@ -108,12 +258,149 @@ public class ConfigManager {
 		}
 	}
 
+	/**
+	 * Sets where the config gets serialized for saving, it's serialized on the
+	 * background thread until this is called
+	 */
+	@ThreadSafe
+	public void setSerializer(Executor serializer) {
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Saves the config in the background, along with the other saves requested
+	 * until it's written
+	 */
 	@ThreadSafe
-	public synchronized void saveConfig() {
+	public void saveConfig() {
+		saveRequests.incrementAndGet();
+		if (savePending.compareAndSet(false, true))
+			scheduleSave();
+	}
+
+	private void scheduleSave() {
+		saver
+			.schedule(
+				() -> serializer.execute(this::serializePendingConfig),
+				SAVE_DELAY_MS,
+				TimeUnit.MILLISECONDS
+			);
+	}
+
+	/**
+	 * Writes the config now if a save is pending. It's serialized by the
+	 * serializer if that runs it in time, and on the calling thread otherwise,
+	 * trying again while the config keeps changing during serialization.
+	 */
+	@ThreadSafe
+	public void flush() {
+		if (!savePending.get())
+			return;
+		FutureTask<Boolean> onSerializer = new FutureTask<>(this::tryFlush);
+		serializer.execute(onSerializer);
+		try {
+			if (onSerializer.get(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+				return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException | TimeoutException e) {
+			// The serializer doesn't run tasks anymore, serialize here
+		}
+		for (int attempt = 0; attempt < FLUSH_ATTEMPTS; attempt++) {
+			if (tryFlush())
+				return;
+			try {
+				Thread.sleep(FLUSH_RETRY_DELAY_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		LogManager
+			.severe(
+				"[ConfigManager] Unable to save the config, it kept changing while being serialized"
+			);
+	}
+
+	/**
+	 * Writes the pending save if there is one
+	 *
+	 * @return false if the config changed while being serialized, the save is
+	 * still pending then
+	 */
+	private boolean tryFlush() {
+		try {
+			SerializedConfig config = serializePending();
+			if (config != null)
+				writeConfig(config);
+			return true;
+		} catch (ConcurrentModificationException e) {
+			return false;
+		}
+	}
+
+	private void serializePendingConfig() {
+		SerializedConfig config;
+		try {
+			config = serializePending();
+		} catch (ConcurrentModificationException e) {
+			// Try again later
+			scheduleSave();
+			return;
+		}
+		if (config != null)
+			saver.execute(() -> writeConfig(config));
+	}
+
+	private static class SerializedConfig {
+
+		private final byte[] bytes;
+		private final long number;
+
+		private SerializedConfig(byte[] bytes, long number) {
+			this.bytes = bytes;
+			this.number = number;
+		}
+	}
+
+	/**
+	 * Serializes the config if a save is pending
+	 *
+	 * @return null if no save is pending or serializing failed
+	 * @throws ConcurrentModificationException if the config changed while
+	 * being serialized, the save stays pending
+	 */
+	private SerializedConfig serializePending() {
+		synchronized (serializeLock) {
+			// Cleared before serializing so changes made afterwards get saved again
+			if (!savePending.getAndSet(false))
+				return null;
+			try {
+				return new SerializedConfig(om.writeValueAsBytes(this.vrConfig), ++serialized);
+			} catch (IOException e) {
+				if (e.getCause() instanceof ConcurrentModificationException) {
+					savePending.set(true);
+					throw (ConcurrentModificationException) e.getCause();
+				}
+				LogManager.severe("Unable to serialize config", e);
+				return null;
+			}
+		}
+	}
+
+	private void writeConfig(SerializedConfig config) {
+		synchronized (writeLock) {
+			if (config.number <= written)
+				return;
+			writeConfig(config.bytes);
+			written = config.number;
+		}
+	}
+
+	private void writeConfig(byte[] bytes) {
+		long startTime = System.nanoTime();
 		Path tmpCfgFile = Paths.get(configPath + ".tmp");
 		Path cfgFile = Paths.get(configPath);
 
-		// Serialize config
 		try {
 			var file = cfgFile.toFile();
 			if (!file.getAbsoluteFile().getParentFile().exists() && !file.mkdirs()) {
@@ -121,7 +408,21 @@ public class ConfigManager {
 					.severe("Unable to create folders for config on path \"" + cfgFile + "\"");
 				return;
 			}
-			om.writeValue(tmpCfgFile.toFile(), this.vrConfig);
+			try (
+				FileChannel channel = FileChannel
+					.open(
+						tmpCfgFile,
+						StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING
+					)
+			) {
+				ByteBuffer buffer = ByteBuffer.wrap(bytes);
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				// Make sure the new config is on disk before replacing the old one
+				channel.force(true);
+			}
 		} catch (IOException e) {
 			LogManager.severe("Unable to write serialized config to \"" + tmpCfgFile + "\"", e);
 			return; // Abort write
@@ -136,9 +437,36 @@ public class ConfigManager {
 					"Unable to move new config from \"" + tmpCfgFile + "\" to \"" + cfgFile + "\"",
 					e
 				);
+			return;
+		}
+		saves.incrementAndGet();
+		saveTimes.record(System.nanoTime() - startTime);
+
+		try {
+			long modifiedTime = Files.getLastModifiedTime(cfgFile).toMillis();
+			writeCache(bytes, modifiedTime, hash(bytes));
+		} catch (IOException e) {
+			LogManager.warning("[ConfigManager] Unable to write config cache: " + e);
 		}
 	}
 
+	/**
+	 * Adds the amount of save requests and writes to the given stats
+	 */
+	public void addStats(Map<String, String> out) {
+		long requests = saveRequests.get();
+		long written = saves.get();
+		out.put("config_save_requests", Long.toString(requests));
+		out.put("config_saves", Long.toString(written));
+		// Save requests per write
+		out
+			.put(
+				"config_save_coalescing",
+				written == 0 ? "0" : String.format(Locale.ROOT, "%.1f", (double) requests / written)
+			);
+		out.put("config_cache_hit", Boolean.toString(cacheHit));
+	}
+
 	public void resetConfig() {
 		this.vrConfig = new VRConfig();
 		saveConfig();
@@ -0,0 +1,20 @@
+package dev.slimevr.config
+
+class MetricsConfig {
+
+	// Time every stage of each tick and the handling of every tracker
+	// packet, the results are added to the tick stats
+	var stageTiming = false
+
+	// Port of a local endpoint serving the metrics in the Prometheus text
+	// format on the desktop server, 0 to not open it
+	var prometheusPort = 0
+
+	// Measure how long tracker motion takes from being received to being
+	// sent by each output, the results are added to the tick stats
+	var motionLatency = false
+
+	// File to write every motion latency measurement to as CSV, for
+	// analyzing them offline
+	var motionTraceFile: String? = null
+}
@@ -0,0 +1,12 @@
+package dev.slimevr.config
+
+class OSCRouterConfig : OSCConfig() {
+
+	// Forward received packets as they are instead of parsing and serializing
+	// them again, when no other OSC handler listens on the same port
+	var rawRelay = true
+
+	// Only forward messages whose address starts with one of these, forward
+	// everything if empty
+	var addressPrefixes: MutableList<String> = ArrayList()
+}
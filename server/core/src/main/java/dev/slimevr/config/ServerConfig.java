@@ -4,7 +4,15 @@ public class ServerConfig {
 
 	private int trackerPort = 6969;
 
+	// Amount of threads decoding tracker packets, 1 decodes on the receive
+	// thread
+	private int trackerIngestThreads = 1;
+
 	public int getTrackerPort() {
 		return trackerPort;
 	}
+
+	public int getTrackerIngestThreads() {
+		return trackerIngestThreads;
+	}
 }
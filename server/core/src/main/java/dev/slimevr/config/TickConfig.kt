@@ -0,0 +1,36 @@
+package dev.slimevr.config
+
+enum class TickMode {
+	// Ticks at a fixed rate, whether trackers send data or not
+	FIXED_RATE,
+
+	// Ticks when a tracker sends data, between minRate and rate
+	DATA_DRIVEN,
+
+	// Ticks at a fixed rate, dropping to idleRate while no tracker sends data
+	// or tracking is paused
+	ADAPTIVE,
+}
+
+class TickConfig {
+
+	// How the VRServer loop decides when to tick
+	var mode = TickMode.ADAPTIVE
+
+	// Ticks per second, the maximum rate for data driven ticking
+	var rate = 1000
+
+	// Ticks per second for the adaptive mode while idle
+	var idleRate = 50
+
+	// Milliseconds without new data before the adaptive mode goes idle
+	var idleTimeout = 1000L
+
+	// Minimum ticks per second for data driven ticking, so timeouts and
+	// queued tasks still get processed without data
+	var minRate = 50
+
+	// Microseconds per tick spent running queued tasks before leaving the
+	// rest for the next tick, at least one task runs each tick
+	var taskBudget = 500L
+}
@@ -10,4 +10,7 @@ class VMCConfig : OSCConfig() {
 
 	// Mirror the tracking before sending it (turn left <=> turn right, left leg <=> right leg)
 	var mirrorTracking = false
+
+	// Times per second tracking data is sent, too often crashes VSeeFace
+	var rate = 200
 }
@@ -13,6 +13,9 @@ class VRCOSCConfig : OSCConfig() {
 	@JsonDeserialize(using = BooleanMapDeserializer::class)
 	@JsonSerialize(keyUsing = StdKeySerializers.StringKeySerializer::class)
 	var trackers: MutableMap<String, Boolean> = HashMap()
+
+	// Times per second tracking data is sent to VRChat
+	var rate = 100
 	
 	fun getOSCTrackerRole(role: TrackerRole, def: Boolean): Boolean = trackers.getOrDefault(role.name.lowercase(Locale.getDefault()), def)
 
@@ -21,7 +21,7 @@ class VRConfig {
 
 	val driftCompensation: DriftCompensationConfig = DriftCompensationConfig()
 
-	val oscRouter: OSCConfig = OSCConfig()
+	val oscRouter: OSCRouterConfig = OSCRouterConfig()
 
 	val vrcOSC: VRCOSCConfig = VRCOSCConfig()
 
@@ -52,6 +52,10 @@ class VRConfig {
 
 	val overlay: OverlayConfig = OverlayConfig()
 
+	val tick: TickConfig = TickConfig()
+
+	val metrics: MetricsConfig = MetricsConfig()
+
 	init {
 		// Initialize default settings for OSC Router
 		oscRouter.portIn = 9002
@@ -1,5 +1,6 @@
 package dev.slimevr.filtering
 
+import com.jme3.system.NanoTimer
 import dev.slimevr.VRServer
 import io.github.axisangles.ktmath.Quaternion
 import io.github.axisangles.ktmath.Quaternion.Companion.IDENTITY
@@ -15,10 +16,15 @@ private const val PREDICT_MIN = 10f
 // how many past rotations are used for prediction.
 private const val PREDICT_BUFFER = 6
 
+/**
+ * Smooths or predicts a tracker's rotation. Not thread-safe, both
+ * [addQuaternion] and [update] are called from the VRServer thread.
+ */
 class QuaternionMovingAverage(
 	val type: TrackerFilters,
 	var amount: Float,
 	initialRotation: Quaternion,
+	private val fpsTimer: NanoTimer = VRServer.instance.fpsTimer,
 ) {
 	var filteredQuaternion = IDENTITY
 	private var smoothFactor = 0f
@@ -26,7 +32,6 @@ class QuaternionMovingAverage(
 	private lateinit var rotBuffer: CircularArrayList<Quaternion>
 	private var latestQuaternion = IDENTITY
 	private var smoothingQuaternion = IDENTITY
-	private val fpsTimer = VRServer.instance.fpsTimer
 	private var frameCounter = 0
 	private var lastAmt = 0f
 
@@ -55,7 +60,6 @@ class QuaternionMovingAverage(
 
 	// Runs at up to 1000hz. We use a timer to make it framerate-independent
 	// since it runs a bit below 1000hz in practice.
-	@Synchronized
 	fun update() {
 		if (type == TrackerFilters.PREDICTION) {
 			if (rotBuffer.size > 0) {
@@ -93,7 +97,6 @@ class QuaternionMovingAverage(
 		}
 	}
 
-	@Synchronized
 	fun addQuaternion(q: Quaternion) {
 		if (type == TrackerFilters.PREDICTION) {
 			if (rotBuffer.size == rotBuffer.capacity()) {
@@ -0,0 +1,117 @@
+package dev.slimevr.metrics
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Counts durations into log-linear buckets, the way HdrHistogram does: every
+ * power of two is split into [SUB_BUCKETS] buckets, so a percentile is off by
+ * at most 1 / [SUB_BUCKETS] of its value, from nanoseconds to minutes.
+ * Recording is lock-free and never allocates.
+ *
+ * Counts are totals since the histogram was created, [drainTo] keeps what it
+ * read last to report the percentiles of the last interval.
+ */
+class MetricHistogram {
+	private val counts = AtomicLongArray(BUCKETS)
+	private val sum = AtomicLong()
+	private val max = AtomicLong()
+	private var lastDrained = LongArray(BUCKETS)
+
+	fun record(nanos: Long) {
+		val value = nanos.coerceIn(0, MAX_VALUE)
+		counts.incrementAndGet(bucketOf(value))
+		sum.addAndGet(value)
+		var current = max.get()
+		while (value > current && !max.compareAndSet(current, value)) current = max.get()
+	}
+
+	/**
+	 * Records the time since [start] unless it's 0, and returns the current
+	 * time for the next stage to start from, or 0. With one [lap] per stage,
+	 * a loop only reads the clock once per stage.
+	 */
+	fun lap(start: Long): Long {
+		if (start == 0L) return 0L
+		val now = System.nanoTime()
+		record(now - start)
+		return now
+	}
+
+	/**
+	 * Counts of each bucket since the histogram was created
+	 */
+	fun snapshot(): LongArray = LongArray(BUCKETS) { counts.get(it) }
+
+	/**
+	 * Sum of all recorded values in nanoseconds
+	 */
+	val sumNanos: Long
+		get() = sum.get()
+
+	/**
+	 * Adds the amount of values recorded since the last call, their 50th and
+	 * 99th percentiles and their maximum to [out] as `<prefix>_count`,
+	 * `<prefix>_p50_us`, `<prefix>_p99_us` and `<prefix>_max_us`. Only one
+	 * thread should call this.
+	 */
+	fun drainTo(prefix: String, out: MutableMap<String, String>) {
+		val snapshot = snapshot()
+		val interval = LongArray(BUCKETS) { snapshot[it] - lastDrained[it] }
+		lastDrained = snapshot
+		// Percentiles are bucket bounds, which can be above the actual maximum
+		val max = max.getAndSet(0)
+		out["${prefix}_count"] = interval.sum().toString()
+		out["${prefix}_p50_us"] = (percentile(interval, 0.5).coerceAtMost(max) / 1000).toString()
+		out["${prefix}_p99_us"] = (percentile(interval, 0.99).coerceAtMost(max) / 1000).toString()
+		out["${prefix}_max_us"] = (max / 1000).toString()
+	}
+
+	companion object {
+		private const val SUB_BUCKET_BITS = 3
+		const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+
+		// About 18 minutes, longer values are counted as this
+		private const val MAX_MAGNITUDE = 40
+		const val MAX_VALUE = (1L shl (MAX_MAGNITUDE + 1)) - 1
+		val BUCKETS = bucketOf(MAX_VALUE) + 1
+
+		/**
+		 * Values below [SUB_BUCKETS] get a bucket each, the rest go in one of
+		 * the [SUB_BUCKETS] buckets of their power of two
+		 */
+		fun bucketOf(value: Long): Int {
+			if (value < SUB_BUCKETS) return value.toInt()
+			val magnitude = 63 - java.lang.Long.numberOfLeadingZeros(value)
+			val shift = magnitude - SUB_BUCKET_BITS
+			val subBucket = (value ushr shift).toInt() - SUB_BUCKETS
+			return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket
+		}
+
+		/**
+		 * Highest value counted in [bucket]
+		 */
+		fun upperBound(bucket: Int): Long {
+			if (bucket < SUB_BUCKETS) return bucket.toLong()
+			val shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS
+			val subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS
+			return ((SUB_BUCKETS + subBucket + 1).toLong() shl shift) - 1
+		}
+
+		/**
+		 * Highest value of the bucket containing the percentile [p] of the
+		 * values counted in [counts], or 0 if there are none
+		 */
+		fun percentile(counts: LongArray, p: Double): Long {
+			val total = counts.sum()
+			if (total == 0L) return 0
+			val rank = (total * p).toLong()
+			var seen = 0L
+			for (i in counts.indices) {
+				seen += counts[i]
+				if (seen > rank) return upperBound(i)
+			}
+			return upperBound(counts.size - 1)
+		}
+	}
+}
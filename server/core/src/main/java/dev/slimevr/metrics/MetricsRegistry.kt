@@ -0,0 +1,101 @@
+package dev.slimevr.metrics
+
+import java.util.Locale
+import java.util.concurrent.ConcurrentSkipListMap
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Named counters, gauges and histograms of the server. Counters and gauges are
+ * always kept as they cost next to nothing, timing the stages of a loop is
+ * only done while [enabled], as reading the clock around every stage isn't
+ * free. Code timing something calls [startTimer] and passes what it returns
+ * to [MetricHistogram.lap], which does nothing when it got 0.
+ *
+ * Everything is added to the tick stats every second, and can be read in the
+ * Prometheus text format with [writePrometheus].
+ */
+class MetricsRegistry(enabled: Boolean = false) {
+	@Volatile
+	var enabled = enabled
+
+	private val counters = ConcurrentSkipListMap<String, LongAdder>()
+	private val gauges = ConcurrentSkipListMap<String, () -> Number>()
+	private val histograms = ConcurrentSkipListMap<String, MetricHistogram>()
+
+	/**
+	 * Current time to time a stage from, or 0 while disabled
+	 */
+	fun startTimer(): Long = if (enabled) System.nanoTime() else 0L
+
+	fun counter(name: String): LongAdder = counters.computeIfAbsent(name) { LongAdder() }
+
+	/**
+	 * Histogram of durations in nanoseconds
+	 */
+	fun histogram(name: String): MetricHistogram = histograms.computeIfAbsent(name) { MetricHistogram() }
+
+	/**
+	 * Reads [value] whenever the metrics are read, replacing the gauge with
+	 * the same name if there is one
+	 */
+	fun gauge(name: String, value: () -> Number) {
+		gauges[name] = value
+	}
+
+	fun removeGauge(name: String) {
+		gauges.remove(name)
+	}
+
+	/**
+	 * Adds every gauge and counter to [out], along with the percentiles of
+	 * every histogram since the last call. Only one thread should call this.
+	 */
+	fun addStats(out: MutableMap<String, String>) {
+		for ((name, gauge) in gauges) out[name] = gauge().toString()
+		for ((name, counter) in counters) out[name] = counter.sum().toString()
+		for ((name, histogram) in histograms) histogram.drainTo(name, out)
+	}
+
+	/**
+	 * Writes every metric in the Prometheus text format, with names prefixed
+	 * with `slimevr_`. Histograms are in seconds with buckets from 10 us to
+	 * 100 ms, a value is counted by the bound of the bucket it was recorded
+	 * in so counts can be off by the histogram's precision.
+	 */
+	fun writePrometheus(out: Appendable) {
+		for ((name, gauge) in gauges) {
+			out.append("# TYPE slimevr_").append(name).append(" gauge\n")
+			out.append("slimevr_").append(name).append(' ').append(gauge().toString()).append('\n')
+		}
+		for ((name, counter) in counters) {
+			out.append("# TYPE slimevr_").append(name).append(" counter\n")
+			out.append("slimevr_").append(name).append(' ').append(counter.sum().toString()).append('\n')
+		}
+		for ((name, histogram) in histograms) {
+			val metric = "slimevr_${name}_seconds"
+			val counts = histogram.snapshot()
+			out.append("# TYPE ").append(metric).append(" histogram\n")
+			var bucket = 0
+			var cumulative = 0L
+			for (bound in PROMETHEUS_BOUNDS_NANOS) {
+				while (bucket < counts.size && MetricHistogram.upperBound(bucket) <= bound) {
+					cumulative += counts[bucket++]
+				}
+				out.append(metric).append("_bucket{le=\"").append(seconds(bound)).append("\"} ")
+				out.append(cumulative.toString()).append('\n')
+			}
+			val total = counts.sum()
+			out.append(metric).append("_bucket{le=\"+Inf\"} ").append(total.toString()).append('\n')
+			out.append(metric).append("_sum ").append(seconds(histogram.sumNanos)).append('\n')
+			out.append(metric).append("_count ").append(total.toString()).append('\n')
+		}
+	}
+
+	companion object {
+		private val PROMETHEUS_BOUNDS_NANOS = longArrayOf(10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 100000)
+			.map { it * 1000 }
+			.toLongArray()
+
+		private fun seconds(nanos: Long): String = String.format(Locale.ROOT, "%.6f", nanos / 1e9)
+	}
+}
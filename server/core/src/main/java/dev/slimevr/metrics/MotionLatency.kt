@@ -0,0 +1,68 @@
+package dev.slimevr.metrics
+
+import dev.slimevr.tracking.trackers.MotionStamp
+import dev.slimevr.tracking.trackers.Tracker
+
+/**
+ * Measures how long it takes for a tracker's motion to go from being received
+ * to being sent by each output, into the `latency_<output>` histograms of
+ * [metrics]. Each received sample is only measured the first time it reaches
+ * an output, ticks sending the same motion again don't count.
+ *
+ * Only measures while [enabled], and writes every measurement to [trace] if
+ * there is one.
+ */
+class MotionLatency(private val metrics: MetricsRegistry, enabled: Boolean = false) {
+	@Volatile
+	var enabled = enabled
+
+	@Volatile
+	var trace: MotionTrace? = null
+
+	fun output(name: String): Output = Output(name, metrics.histogram("latency_$name"))
+
+	/**
+	 * Latency of one output, only one thread may record to it
+	 */
+	inner class Output internal constructor(val name: String, private val times: MetricHistogram) {
+		// Receive time of the motion last measured, by tracker id + 1 and 0
+		// for the skeleton
+		private var lastMotion = LongArray(32)
+
+		/**
+		 * Measures [tracker]'s motion as being sent now
+		 */
+		fun record(tracker: Tracker) {
+			if (!enabled) return
+			val motion = tracker.motion
+			if (motion != null) {
+				record(tracker.id + 1, tracker.name, motion.source, motion.timeNanos, motion.packetNumber)
+			} else {
+				record(tracker.id + 1, tracker.name, tracker, tracker.sample.timeNanos, tracker.sample.packetNumber)
+			}
+		}
+
+		/**
+		 * Measures the skeleton's pose, for outputs sending bones instead of
+		 * trackers
+		 */
+		fun record(motion: MotionStamp) {
+			if (!enabled) return
+			record(0, SKELETON, motion.source, motion.timeNanos, motion.packetNumber)
+		}
+
+		private fun record(slot: Int, name: String, source: Tracker?, timeNanos: Long, packetNumber: Long) {
+			if (timeNanos == 0L) return
+			if (slot >= lastMotion.size) lastMotion = lastMotion.copyOf(maxOf(slot + 1, lastMotion.size * 2))
+			if (lastMotion[slot] == timeNanos) return
+			lastMotion[slot] = timeNanos
+			val now = System.nanoTime()
+			times.record(now - timeNanos)
+			trace?.add(this.name, name, source?.name, packetNumber, timeNanos, now)
+		}
+	}
+
+	companion object {
+		const val SKELETON = "skeleton"
+	}
+}
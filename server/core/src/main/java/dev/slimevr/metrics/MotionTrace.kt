@@ -0,0 +1,113 @@
+package dev.slimevr.metrics
+
+import io.eiren.util.logging.LogManager
+import java.io.File
+import java.io.IOException
+import java.io.Writer
+import java.util.concurrent.ArrayBlockingQueue
+
+/**
+ * Writes every motion latency measurement to [file] as CSV, with the output,
+ * the tracker or `skeleton` it sent, the input tracker the motion came from,
+ * the packet it came in, when it was received and when it was sent in
+ * [System.nanoTime] and the latency in microseconds. Made for analyzing the
+ * paths of samples offline.
+ *
+ * Measurements are copied into a fixed pool of records and written on a
+ * background thread. When the pool runs out, they are dropped and counted
+ * instead of blocking the outputs.
+ */
+class MotionTrace(val file: File) {
+	private val free = ArrayBlockingQueue<TraceRecord>(QUEUE_SIZE)
+	private val pending = ArrayBlockingQueue<TraceRecord>(QUEUE_SIZE)
+	private val writer: Writer = file.bufferedWriter()
+	private val thread = Thread(::run, "MotionTrace")
+
+	@Volatile
+	private var closed = false
+
+	@Volatile
+	var droppedRecords = 0L
+		private set
+
+	init {
+		repeat(QUEUE_SIZE) { free.add(TraceRecord()) }
+		writer.write("output,tracker,source,packet,received_ns,sent_ns,latency_us\n")
+		thread.isDaemon = true
+		thread.start()
+	}
+
+	fun add(output: String, tracker: String, source: String?, packetNumber: Long, receivedNanos: Long, sentNanos: Long) {
+		val record = if (closed) null else free.poll()
+		if (record == null) {
+			droppedRecords++
+			return
+		}
+		record.output = output
+		record.tracker = tracker
+		record.source = source
+		record.packetNumber = packetNumber
+		record.receivedNanos = receivedNanos
+		record.sentNanos = sentNanos
+		pending.add(record)
+	}
+
+	/**
+	 * Writes what's left and closes the file
+	 */
+	fun close() {
+		closed = true
+		thread.interrupt()
+	}
+
+	private fun run() {
+		try {
+			while (true) {
+				val record = try {
+					// Flush whenever there's nothing left to write
+					pending.poll() ?: writer.flush().let { pending.take() }
+				} catch (e: InterruptedException) {
+					break
+				}
+				write(record)
+			}
+			while (true) write(pending.poll() ?: break)
+		} catch (e: IOException) {
+			LogManager.warning("[MotionTrace] Couldn't write to $file", e)
+			closed = true
+		} finally {
+			try {
+				writer.close()
+			} catch (e: IOException) {
+				LogManager.warning("[MotionTrace] Couldn't close $file", e)
+			}
+		}
+	}
+
+	private fun write(record: TraceRecord) {
+		writer.append(record.output).append(',')
+			.append(record.tracker).append(',')
+			.append(record.source ?: "").append(',')
+			.append(record.packetNumber.toString()).append(',')
+			.append(record.receivedNanos.toString()).append(',')
+			.append(record.sentNanos.toString()).append(',')
+			.append(((record.sentNanos - record.receivedNanos) / 1000).toString()).append('\n')
+		record.output = null
+		record.tracker = null
+		record.source = null
+		free.add(record)
+	}
+
+	private class TraceRecord {
+		var output: String? = null
+		var tracker: String? = null
+		var source: String? = null
+		var packetNumber = -1L
+		var receivedNanos = 0L
+		var sentNanos = 0L
+	}
+
+	companion object {
+		const val QUEUE_SIZE = 4096
+	}
+}
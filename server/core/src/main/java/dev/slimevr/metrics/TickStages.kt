@@ -0,0 +1,15 @@
+package dev.slimevr.metrics
+
+/**
+ * Times of the stages of a VRServer tick, in the order they run
+ */
+class TickStages(metrics: MetricsRegistry) {
+	val tasks = metrics.histogram("stage_tasks")
+	val onTick = metrics.histogram("stage_on_tick")
+	val bridgesRead = metrics.histogram("stage_bridges_read")
+	val trackers = metrics.histogram("stage_trackers")
+	val skeleton = metrics.histogram("stage_skeleton")
+	val bridgesWrite = metrics.histogram("stage_bridges_write")
+	val vrcOSC = metrics.histogram("stage_vrc_osc")
+	val vmc = metrics.histogram("stage_vmc")
+}
@@ -0,0 +1,126 @@
+package dev.slimevr.osc
+
+import io.eiren.util.logging.LogManager
+import java.io.IOException
+import java.net.SocketAddress
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.DatagramChannel
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Sends [OSCFloatBundle]s to its targets from its own thread, so whoever
+ * publishes them only copies their values. A published bundle the thread
+ * didn't get to yet is replaced by the next one. With [mergeReplaced], the
+ * messages enabled in the replaced bundle stay enabled, for publishers that
+ * only enable the messages that changed.
+ */
+class OSCBundleSender(
+	private val name: String,
+	template: OSCFloatBundle,
+	private val mergeReplaced: Boolean = false,
+) {
+	private val lock = Any()
+	private val pending = OSCFloatBundle(template.addresses, template.argCounts, template.leadingArgs)
+	private val sending = OSCFloatBundle(template.addresses, template.argCounts, template.leadingArgs)
+	private var hasPending = false
+
+	private val buffer = ByteBuffer.allocateDirect(template.maxSize).order(ByteOrder.BIG_ENDIAN)
+	private val channel = DatagramChannel.open()
+	private var timeAtLastError = 0L
+
+	@Volatile
+	private var closed = false
+	private val thread = Thread(::run, "$name sender")
+
+	/**
+	 * Where bundles get sent to
+	 */
+	@Volatile
+	var targets: List<SocketAddress> = emptyList()
+
+	/**
+	 * Bundles sent to every target
+	 */
+	@Volatile
+	var sentBundles = 0L
+		private set
+
+	/**
+	 * Bundles replaced by a newer one before being sent
+	 */
+	@Volatile
+	var replacedBundles = 0L
+		private set
+
+	init {
+		thread.isDaemon = true
+		thread.start()
+	}
+
+	/**
+	 * Queues the values of [bundle], which must have the same messages as the
+	 * template this was created with
+	 */
+	fun publish(bundle: OSCFloatBundle) {
+		synchronized(lock) {
+			if (hasPending) {
+				replacedBundles++
+				if (mergeReplaced) pending.mergeFrom(bundle) else pending.copyFrom(bundle)
+			} else {
+				pending.copyFrom(bundle)
+			}
+			hasPending = true
+		}
+		LockSupport.unpark(thread)
+	}
+
+	fun close() {
+		closed = true
+		LockSupport.unpark(thread)
+	}
+
+	private fun run() {
+		while (!closed) {
+			val hasBundle = synchronized(lock) {
+				if (hasPending) {
+					sending.copyFrom(pending)
+					hasPending = false
+					true
+				} else {
+					false
+				}
+			}
+			if (hasBundle) {
+				send()
+			} else {
+				LockSupport.park(this)
+			}
+		}
+		try {
+			channel.close()
+		} catch (e: IOException) {
+			LogManager.warning("[$name] Error closing the OSC sender: $e")
+		}
+	}
+
+	private fun send() {
+		buffer.clear()
+		if (!sending.write(buffer)) return
+		buffer.flip()
+		for (target in targets) {
+			try {
+				channel.send(buffer, target)
+			} catch (e: IOException) {
+				// Avoid spamming errors many times per second
+				val now = System.currentTimeMillis()
+				if (now - timeAtLastError > 100) {
+					timeAtLastError = now
+					LogManager.warning("[$name] Error sending OSC message to $target: $e")
+				}
+			}
+			buffer.rewind()
+		}
+		sentBundles++
+	}
+}
@@ -0,0 +1,139 @@
+package dev.slimevr.osc
+
+import java.nio.ByteBuffer
+
+/**
+ * An OSC bundle of messages with float arguments, written into a reusable
+ * buffer without allocating. The addresses and type tags of the messages are
+ * encoded once, only their values change between bundles. Messages can start
+ * with a constant string or int argument from [leadingArgs], written before
+ * their floats.
+ */
+class OSCFloatBundle(
+	val addresses: List<String>,
+	val argCounts: IntArray,
+	val leadingArgs: List<Any?> = List(addresses.size) { null },
+) {
+	init {
+		require(addresses.size == argCounts.size) { "Every address needs an argument count." }
+		require(addresses.size == leadingArgs.size) { "Every address needs a leading argument or null." }
+	}
+
+	// Address, type tags and leading argument of each message, padded to 4 bytes
+	private val headers = Array(addresses.size) { encodeHeader(addresses[it], argCounts[it], leadingArgs[it]) }
+	private val valueOffsets = IntArray(addresses.size)
+
+	init {
+		for (i in 1 until addresses.size) {
+			valueOffsets[i] = valueOffsets[i - 1] + argCounts[i - 1]
+		}
+	}
+
+	/**
+	 * Arguments of every message, one message after the other
+	 */
+	val values = FloatArray(argCounts.sum())
+
+	/**
+	 * Which messages get written
+	 */
+	val enabled = BooleanArray(addresses.size)
+
+	/**
+	 * Largest size in bytes of the bundle, with every message enabled
+	 */
+	val maxSize = BUNDLE_HEADER.size + 8 + headers.indices.sumOf { 4 + headers[it].size + argCounts[it] * 4 }
+
+	/**
+	 * Sets the arguments of a message with 3 floats and enables it
+	 */
+	fun set(message: Int, x: Float, y: Float, z: Float) {
+		val offset = valueOffsets[message]
+		values[offset] = x
+		values[offset + 1] = y
+		values[offset + 2] = z
+		enabled[message] = true
+	}
+
+	/**
+	 * Index in [values] of the first argument of a message
+	 */
+	fun valueOffset(message: Int): Int = valueOffsets[message]
+
+	/**
+	 * Copies the values and enabled messages of [other], which must have the
+	 * same messages
+	 */
+	fun copyFrom(other: OSCFloatBundle) {
+		System.arraycopy(other.values, 0, values, 0, values.size)
+		System.arraycopy(other.enabled, 0, enabled, 0, enabled.size)
+	}
+
+	/**
+	 * Copies the values of [other], which must have the same messages, and
+	 * enables its enabled messages while keeping the ones enabled here
+	 */
+	fun mergeFrom(other: OSCFloatBundle) {
+		System.arraycopy(other.values, 0, values, 0, values.size)
+		for (i in enabled.indices) {
+			enabled[i] = enabled[i] || other.enabled[i]
+		}
+	}
+
+	/**
+	 * Writes the enabled messages as a bundle to be processed immediately into
+	 * [buffer], which must be big endian and have [maxSize] bytes remaining
+	 *
+	 * @return `false` if no message is enabled and nothing was written
+	 */
+	fun write(buffer: ByteBuffer): Boolean {
+		if (enabled.none { it }) return false
+		buffer.put(BUNDLE_HEADER)
+		buffer.putLong(IMMEDIATELY)
+		for (i in headers.indices) {
+			if (!enabled[i]) continue
+			val header = headers[i]
+			val argCount = argCounts[i]
+			buffer.putInt(header.size + argCount * 4)
+			buffer.put(header)
+			val offset = valueOffsets[i]
+			for (j in offset until offset + argCount) {
+				buffer.putFloat(values[j])
+			}
+		}
+		return true
+	}
+
+	companion object {
+		private val BUNDLE_HEADER = "#bundle\u0000".toByteArray(Charsets.US_ASCII)
+
+		// The OSC time tag meaning immediately
+		private const val IMMEDIATELY = 1L
+
+		private fun encodeHeader(address: String, argCount: Int, leadingArg: Any?): ByteArray {
+			val addressBytes = address.toByteArray(Charsets.US_ASCII)
+			val leadingTag = when (leadingArg) {
+				null -> ""
+				is String -> "s"
+				is Int -> "i"
+				else -> throw IllegalArgumentException("Unsupported leading argument $leadingArg.")
+			}
+			val typeTags = ("," + leadingTag + "f".repeat(argCount)).toByteArray(Charsets.US_ASCII)
+			val argBytes = when (leadingArg) {
+				is String -> leadingArg.toByteArray(Charsets.UTF_8).let { it.copyOf(padded(it.size)) }
+				is Int -> ByteBuffer.allocate(4).putInt(leadingArg).array()
+				else -> ByteArray(0)
+			}
+			val addressSize = padded(addressBytes.size)
+			val typeTagsSize = padded(typeTags.size)
+			val header = ByteArray(addressSize + typeTagsSize + argBytes.size)
+			addressBytes.copyInto(header)
+			typeTags.copyInto(header, addressSize)
+			argBytes.copyInto(header, addressSize + typeTagsSize)
+			return header
+		}
+
+		// Strings are null terminated and padded to 4 bytes
+		private fun padded(size: Int): Int = (size + 4) and 3.inv()
+	}
+}
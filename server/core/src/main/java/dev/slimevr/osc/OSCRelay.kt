@@ -0,0 +1,159 @@
+package dev.slimevr.osc
+
+import io.eiren.util.logging.LogManager
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.SocketAddress
+import java.nio.ByteBuffer
+import java.nio.channels.ClosedChannelException
+import java.nio.channels.DatagramChannel
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Counts the packets an [OSCRouter] forwarded
+ */
+class OSCRelayStats {
+	val forwardedPackets = AtomicLong()
+	val forwardedBytes = AtomicLong()
+
+	/**
+	 * Packets not forwarded because no address matched the prefixes
+	 */
+	val filteredPackets = AtomicLong()
+
+	/**
+	 * Packets that couldn't be forwarded
+	 */
+	val failedPackets = AtomicLong()
+
+	fun addStats(out: MutableMap<String, String>) {
+		out["osc_router_forwarded"] = forwardedPackets.get().toString()
+		out["osc_router_forwarded_bytes"] = forwardedBytes.get().toString()
+		out["osc_router_filtered"] = filteredPackets.get().toString()
+		out["osc_router_failed"] = failedPackets.get().toString()
+	}
+}
+
+/**
+ * Forwards the OSC packets received on a port to [target] as they are,
+ * without parsing them. With address prefixes, only packets holding a message
+ * whose address starts with one of them are forwarded, which is checked on
+ * the raw bytes. A bundle is forwarded whole if any of its messages matches.
+ */
+class OSCRelay
+@Throws(IOException::class)
+constructor(
+	portIn: Int,
+	private val target: SocketAddress,
+	addressPrefixes: List<String>,
+	private val stats: OSCRelayStats,
+) {
+	private val prefixes = addressPrefixes.map { it.toByteArray(Charsets.US_ASCII) }.toTypedArray()
+	private val receiver = DatagramChannel.open()
+	private val sender: DatagramChannel
+	private val buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE)
+	private var timeAtLastError = 0L
+
+	@Volatile
+	private var closed = false
+	private val thread = Thread(::run, "OSCRelay")
+
+	init {
+		try {
+			receiver.bind(InetSocketAddress(portIn))
+			sender = DatagramChannel.open()
+		} catch (e: IOException) {
+			receiver.close()
+			throw e
+		}
+		thread.isDaemon = true
+		thread.start()
+	}
+
+	fun close() {
+		closed = true
+		// Close the sender even if closing the receiver failed
+		try {
+			receiver.close()
+		} catch (e: IOException) {
+			LogManager.warning("[OSCRelay] Error closing the relay's receiver: $e")
+		}
+		try {
+			sender.close()
+		} catch (e: IOException) {
+			LogManager.warning("[OSCRelay] Error closing the relay's sender: $e")
+		}
+	}
+
+	private fun run() {
+		while (!closed) {
+			try {
+				buffer.clear()
+				receiver.receive(buffer) ?: continue
+				buffer.flip()
+				if (!matches(buffer, 0, buffer.limit(), prefixes)) {
+					stats.filteredPackets.incrementAndGet()
+					continue
+				}
+				val size = buffer.remaining()
+				sender.send(buffer, target)
+				stats.forwardedPackets.incrementAndGet()
+				stats.forwardedBytes.addAndGet(size.toLong())
+			} catch (e: ClosedChannelException) {
+				return
+			} catch (e: IOException) {
+				stats.failedPackets.incrementAndGet()
+				// Avoid spamming errors many times per second
+				val now = System.currentTimeMillis()
+				if (now - timeAtLastError > 100) {
+					timeAtLastError = now
+					LogManager.warning("[OSCRelay] Error forwarding OSC packet: $e")
+				}
+			}
+		}
+	}
+
+	companion object {
+		// Largest UDP payload
+		const val MAX_PACKET_SIZE = 65507
+		private const val MAX_BUNDLE_DEPTH = 8
+		private val BUNDLE_HEADER = "#bundle\u0000".toByteArray(Charsets.US_ASCII)
+
+		/**
+		 * Whether the OSC packet between [start] and [end] holds a message with
+		 * an address starting with one of [prefixes], or [prefixes] is empty
+		 */
+		fun matches(packet: ByteBuffer, start: Int, end: Int, prefixes: Array<ByteArray>): Boolean = prefixes.isEmpty() || containsMatch(packet, start, end, prefixes, 0)
+
+		private fun containsMatch(
+			packet: ByteBuffer,
+			start: Int,
+			end: Int,
+			prefixes: Array<ByteArray>,
+			depth: Int,
+		): Boolean {
+			if (!startsWith(packet, start, end, BUNDLE_HEADER)) {
+				return prefixes.any { startsWith(packet, start, end, it) }
+			}
+			if (depth >= MAX_BUNDLE_DEPTH) return false
+			// Bundle header and time tag, then the size of each element
+			var offset = start + BUNDLE_HEADER.size + 8
+			while (offset + 4 <= end) {
+				val size = packet.getInt(offset)
+				offset += 4
+				if (size < 0 || size > end - offset) return false
+				if (containsMatch(packet, offset, offset + size, prefixes, depth + 1)) return true
+				offset += size
+			}
+			return false
+		}
+
+		private fun startsWith(packet: ByteBuffer, start: Int, end: Int, prefix: ByteArray): Boolean {
+			if (end - start < prefix.size) return false
+			for (i in prefix.indices) {
+				if (packet.get(start + i) != prefix[i]) return false
+			}
+			return true
+		}
+	}
+}
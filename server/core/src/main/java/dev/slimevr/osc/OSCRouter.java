@@ -4,7 +4,7 @@ import com.illposed.osc.*;
 import com.illposed.osc.messageselector.OSCPatternAddressMessageSelector;
 import com.illposed.osc.transport.OSCPortIn;
 import com.illposed.osc.transport.OSCPortOut;
-import dev.slimevr.config.OSCConfig;
+import dev.slimevr.config.OSCRouterConfig;
 import io.eiren.util.collections.FastList;
 import io.eiren.util.logging.LogManager;
 
@@ -12,20 +12,25 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Map;
 
 
 public class OSCRouter {
 	private OSCPortIn oscReceiver;
 	private OSCPortOut oscSender;
-	private final OSCConfig config;
+	private OSCRelay relay;
+	private final OSCRouterConfig config;
 	private final FastList<OSCHandler> oscHandlers;
+	private final OSCRelayStats stats = new OSCRelayStats();
+	private List<String> addressPrefixes = List.of();
 	private int lastPortIn;
 	private int lastPortOut;
 	private InetAddress lastAddress;
 	private long timeAtLastError;
 
 	public OSCRouter(
-		OSCConfig oscConfig,
+		OSCRouterConfig oscConfig,
 		FastList<OSCHandler> oscHandlers
 	) {
 		this.config = oscConfig;
@@ -56,10 +61,22 @@ public class OSCRouter {
 			}
 		}
 		oscSender = null;
+		boolean wasRelaying = relay != null;
+		if (wasRelaying) {
+			relay.close();
+			relay = null;
+		}
 
 		if (config.getEnabled()) {
-			// Instantiates the OSC receiver
+			addressPrefixes = List.copyOf(config.getAddressPrefixes());
 			int portIn = config.getPortIn();
+			// Forward the packets as they are if we have the port for ourselves
+			if (config.getRawRelay() && !isPortInShared(portIn)) {
+				startRelay(portIn, wasRelaying);
+				return;
+			}
+
+			// Instantiates the OSC receiver
 			// Check if another OSC receiver with same port exists
 			for (OSCHandler oscHandler : oscHandlers) {
 				if (oscHandler.getPortIn() == portIn) {
@@ -153,15 +170,62 @@ public class OSCRouter {
 		}
 	}
 
+	private boolean isPortInShared(int portIn) {
+		for (OSCHandler oscHandler : oscHandlers) {
+			if (oscHandler.getPortIn() == portIn)
+				return true;
+		}
+		return false;
+	}
+
+	private void startRelay(int portIn, boolean wasRelaying) {
+		InetSocketAddress target;
+		try {
+			target = new InetSocketAddress(
+				InetAddress.getByName(config.getAddress()),
+				config.getPortOut()
+			);
+		} catch (UnknownHostException e) {
+			throw new RuntimeException(e);
+		}
+		try {
+			relay = new OSCRelay(portIn, target, addressPrefixes, stats);
+			if (lastPortIn != portIn || !wasRelaying) {
+				LogManager
+					.info(
+						"[OSCRouter] Relaying port "
+							+ portIn
+							+ " to port "
+							+ target.getPort()
+							+ " at address "
+							+ target.getAddress().toString()
+					);
+			}
+			lastPortIn = portIn;
+		} catch (IOException e) {
+			LogManager
+				.severe(
+					"[OSCRouter] Error listening to the port "
+						+ portIn
+						+ ": "
+						+ e
+				);
+		}
+	}
+
 	void handleReceivedMessage(OSCMessageEvent event) {
 		if (oscSender != null && oscSender.isConnected()) {
-			OSCMessage oscMessage = new OSCMessage(
-				event.getMessage().getAddress(),
-				event.getMessage().getArguments()
-			);
+			OSCMessage oscMessage = event.getMessage();
+			if (!matchesPrefixes(oscMessage.getAddress())) {
+				stats.getFilteredPackets().incrementAndGet();
+				return;
+			}
 			try {
+				// Messages are immutable, so they can be sent as received
 				oscSender.send(oscMessage);
+				stats.getForwardedPackets().incrementAndGet();
 			} catch (IOException | OSCSerializeException e) {
+				stats.getFailedPackets().incrementAndGet();
 				// Avoid spamming AsynchronousCloseException too many
 				// times per second
 				if (System.currentTimeMillis() - timeAtLastError > 100) {
@@ -175,5 +239,21 @@ public class OSCRouter {
 			}
 		}
 	}
-}
 
+	private boolean matchesPrefixes(String address) {
+		if (addressPrefixes.isEmpty())
+			return true;
+		for (String prefix : addressPrefixes) {
+			if (address.startsWith(prefix))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Adds the forwarding counters to the tick stats
+	 */
+	public void addStats(Map<String, String> out) {
+		stats.addStats(out);
+	}
+}
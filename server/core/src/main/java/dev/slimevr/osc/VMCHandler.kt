@@ -1,10 +1,7 @@
 package dev.slimevr.osc
 
-import com.illposed.osc.OSCBundle
-import com.illposed.osc.OSCMessage
 import com.illposed.osc.OSCMessageEvent
 import com.illposed.osc.OSCMessageListener
-import com.illposed.osc.OSCSerializeException
 import com.illposed.osc.messageselector.OSCPatternAddressMessageSelector
 import com.illposed.osc.transport.OSCPortIn
 import com.illposed.osc.transport.OSCPortOut
@@ -13,6 +10,7 @@ import dev.slimevr.VRServer.Companion.currentLocalTrackerId
 import dev.slimevr.VRServer.Companion.getNextLocalTrackerId
 import dev.slimevr.config.VMCConfig
 import dev.slimevr.osc.UnityBone.Companion.getByStringVal
+import dev.slimevr.tick.TickScheduler
 import dev.slimevr.tracking.processor.BoneType
 import dev.slimevr.tracking.processor.HumanPoseManager
 import dev.slimevr.tracking.trackers.Device
@@ -29,6 +27,7 @@ import io.github.axisangles.ktmath.Vector3.Companion.POS_Y
 import java.io.IOException
 import java.net.InetAddress
 import java.net.InetSocketAddress
+import kotlin.math.abs
 
 /**
  * VMC documentation: https://protocol.vmc.info/english
@@ -46,7 +45,6 @@ class VMCHandler(
 	private var oscReceiver: OSCPortIn? = null
 	private var oscSender: OSCPortOut? = null
 	private val computedTrackers: MutableList<Tracker> = FastList()
-	private val oscArgs = FastList<Any?>()
 	private val startTime = System.currentTimeMillis()
 	private val byTrackerNameTracker: MutableMap<String, Tracker> = HashMap()
 	private var yawOffset = IDENTITY
@@ -54,14 +52,34 @@ class VMCHandler(
 	private var outputUnityArmature: UnityArmature? = null
 	private var vrmHeight = 0f
 	private var trackerDevice: Device? = null
-	private var timeAtLastError: Long = 0
 	private var timeAtLastSend: Long = 0
+	private val latency = server.motionLatency.output("vmc")
+	private var timeAtLastFullSend: Long = 0
 	private var anchorHip = false
 	private var mirrorTracking = false
 	private var lastPortIn = 0
 	private var lastPortOut = 0
 	private var lastAddress: InetAddress? = null
 
+	// Time, tracking state, root, humanoid bones and computed trackers, with
+	// only the messages that changed enabled. Sent at the configured rate from
+	// the sender's thread, and rebuilt when computed trackers are added.
+	private var outputBundle: OSCFloatBundle? = null
+	private var outputSender: OSCBundleSender? = null
+	private var outputTargets: List<InetSocketAddress> = emptyList()
+
+	// Values of each message when it was last sent
+	private var sentValues = FloatArray(0)
+
+	// Rotation of each bone and position of the hip the output armature was
+	// last updated with
+	private val armatureInputs = FloatArray(UnityBone.entries.size * 4 + 3) { Float.NaN }
+
+	// Rotation offset of each bone and its inverse as w, x, y, z, so they don't
+	// get boxed
+	private val rotationOffsets = FloatArray(BoneType.entries.size * 4) { Float.NaN }
+	private val inverseRotationOffsets = FloatArray(BoneType.entries.size * 4)
+
 	init {
 		refreshSettings(false)
 	}
@@ -113,6 +131,8 @@ class VMCHandler(
 			}
 		}
 
+		invalidateOutputArmature()
+
 		if (refreshRouterSettings) server.oSCRouter.refreshSettings(false)
 	}
 
@@ -180,6 +200,7 @@ class VMCHandler(
 
 				oscSender!!.connect()
 				outputUnityArmature = UnityArmature(false)
+				invalidateOutputArmature()
 			} catch (e: IOException) {
 				LogManager
 					.severe(
@@ -187,6 +208,19 @@ class VMCHandler(
 					)
 			}
 		}
+		updateOutputTargets()
+	}
+
+	/**
+	 * Points the output sender at the OSC sender
+	 */
+	private fun updateOutputTargets() {
+		outputTargets = if (oscSender?.isConnected == true && lastAddress != null) {
+			listOf(InetSocketAddress(lastAddress, lastPortOut))
+		} else {
+			emptyList()
+		}
+		outputSender?.targets = outputTargets
 	}
 
 	private fun handleReceivedMessage(event: OSCMessageEvent) {
@@ -320,147 +354,232 @@ class VMCHandler(
 		// Update unity hierarchy
 		if (inputUnityArmature != null) inputUnityArmature!!.update()
 
-		val currentTime = System.currentTimeMillis()
-		if (currentTime - timeAtLastSend > 3) { // 200hz to not crash VSF
-			timeAtLastSend = currentTime
-			// Send OSC data
-			if (oscSender != null && oscSender!!.isConnected) {
-				// Create new OSC Bundle
-				val oscBundle = OSCBundle()
-
-				// Add our relative time
-				oscArgs.clear()
-				oscArgs.add((System.currentTimeMillis() - startTime) / 1000f)
-				oscBundle.addPacket(OSCMessage("/VMC/Ext/T", oscArgs.clone()))
-
-				if (humanPoseManager.isSkeletonPresent) {
-					// Indicate tracking is available
-					oscArgs.clear()
-					oscArgs.add(1)
-					oscBundle.addPacket(OSCMessage("/VMC/Ext/OK", oscArgs.clone()))
-
-					oscArgs.clear()
-					oscArgs.add("root")
-					addTransformToArgs(NULL, IDENTITY)
-					oscBundle.addPacket(OSCMessage("/VMC/Ext/Root/Pos", oscArgs.clone()))
-
-					for (unityBone in UnityBone.entries) {
-						if (unityBone.boneType == null) continue
-
-						// Get opposite bone if tracking must be mirrored
-						val boneType = (if (mirrorTracking) tryGetOppositeArmBone(unityBone) else unityBone).boneType
-
-						// Get SlimeVR bone
-						val bone = humanPoseManager.getBone(boneType!!)
-
-						// Update unity hierarchy from bone's global rotation
-						val boneRotation = if (mirrorTracking) {
-							// Mirror tracking horizontally
-							val rotBuf = bone.getGlobalRotation() * bone.rotationOffset.inv()
-							Quaternion(rotBuf.w, rotBuf.x, -rotBuf.y, -rotBuf.z)
-						} else {
-							bone.getGlobalRotation() * bone.rotationOffset.inv()
-						}
-						outputUnityArmature?.setGlobalRotationForBone(unityBone, boneRotation)
-					}
+		// Send OSC data at the configured rate, too often crashes VSF
+		val now = System.nanoTime()
+		if (oscSender == null ||
+			!oscSender!!.isConnected ||
+			now - timeAtLastSend < TickScheduler.periodNanos(config.rate)
+		) {
+			return
+		}
+		timeAtLastSend = now
+		val bundle = outputBundle ?: createOutputBundle()
+
+		// Send everything once in a while, in case a message that didn't change
+		// since was lost
+		val sendAll = now - timeAtLastFullSend >= FULL_SEND_INTERVAL
+		if (sendAll) timeAtLastFullSend = now
+
+		// Add our relative time
+		bundle.values[bundle.valueOffset(TIME_MESSAGE)] = (System.currentTimeMillis() - startTime) / 1000f
+		bundle.enabled[TIME_MESSAGE] = true
+
+		// Indicate tracking is available
+		val skeletonPresent = humanPoseManager.isSkeletonPresent
+		bundle.enabled[OK_MESSAGE] = skeletonPresent
+		bundle.enabled[ROOT_MESSAGE] = skeletonPresent
+
+		if (skeletonPresent) {
+			updateOutputArmature()
+
+			// Add Unity humanoid bones transforms
+			val unityArmature = outputUnityArmature!!
+			for (i in OUTPUT_BONES.indices) {
+				val bone = OUTPUT_BONES[i]
+				if ((humanPoseManager.isTrackingLeftArmFromController && isLeftArmUnityBone(bone)) ||
+					(humanPoseManager.isTrackingRightArmFromController && isRightArmUnityBone(bone))
+				) {
+					bundle.enabled[BONE_MESSAGES + i] = false
+				} else {
+					setTransform(
+						bundle,
+						BONE_MESSAGES + i,
+						unityArmature.getLocalTranslationForBone(bone),
+						unityArmature.getLocalRotationForBone(bone),
+						sendAll,
+					)
+				}
+			}
+		} else {
+			for (i in OUTPUT_BONES.indices) bundle.enabled[BONE_MESSAGES + i] = false
+		}
 
-					if (!anchorHip) {
-						// Anchor from head
-						outputUnityArmature?.let { unityArmature ->
-							// Scale the SlimeVR head position with the VRM model
-							val slimevrScaledHeadPos = humanPoseManager.getBone(BoneType.HEAD).getTailPosition() *
-								(vrmHeight / humanPoseManager.userHeightFromConfig)
+		val trackerMessages = BONE_MESSAGES + OUTPUT_BONES.size
+		for (i in computedTrackers.indices) {
+			val tracker = computedTrackers[i]
+			if (tracker.status.reset) {
+				bundle.enabled[trackerMessages + i] = false
+			} else {
+				setTransform(bundle, trackerMessages + i, tracker.position, tracker.getRotation(), sendAll)
+			}
+		}
 
-							// Get the VRM head and hip positions
-							val vrmHeadPos = unityArmature.getHeadNodeOfBone(UnityBone.HEAD)!!.parent!!.worldTransform.translation
-							val vrmHipPos = unityArmature.getHeadNodeOfBone(UnityBone.HIPS)!!.worldTransform.translation
+		outputSender!!.publish(bundle)
+		if (skeletonPresent) latency.record(humanPoseManager.skeleton.motion)
+		for (i in computedTrackers.indices) {
+			if (!computedTrackers[i].status.reset) latency.record(computedTrackers[i])
+		}
+	}
 
-							// Calculate the new VRM hip position by subtracting the difference head-hip distance from the SlimeVR head
-							val calculatedVrmHipPos = slimevrScaledHeadPos - (vrmHeadPos - vrmHipPos)
+	/**
+	 * Updates the output Unity armature from the skeleton, if any of the bones'
+	 * rotations or the hip position changed since the last update
+	 */
+	private fun updateOutputArmature() {
+		val unityArmature = outputUnityArmature!!
+		var changed = false
+		for (unityBone in OUTPUT_BONES) {
+			// Get opposite bone if tracking must be mirrored
+			val boneType = (if (mirrorTracking) tryGetOppositeArmBone(unityBone) else unityBone).boneType!!
+
+			// Get SlimeVR bone
+			val bone = humanPoseManager.getBone(boneType)
+
+			// Only invert the rotation offset when it changes
+			val rotationOffset = bone.rotationOffset
+			val offset = boneType.ordinal * 4
+			if (rotationOffset.w != rotationOffsets[offset] ||
+				rotationOffset.x != rotationOffsets[offset + 1] ||
+				rotationOffset.y != rotationOffsets[offset + 2] ||
+				rotationOffset.z != rotationOffsets[offset + 3]
+			) {
+				val inverse = rotationOffset.inv()
+				rotationOffsets[offset] = rotationOffset.w
+				rotationOffsets[offset + 1] = rotationOffset.x
+				rotationOffsets[offset + 2] = rotationOffset.y
+				rotationOffsets[offset + 3] = rotationOffset.z
+				inverseRotationOffsets[offset] = inverse.w
+				inverseRotationOffsets[offset + 1] = inverse.x
+				inverseRotationOffsets[offset + 2] = inverse.y
+				inverseRotationOffsets[offset + 3] = inverse.z
+			}
 
-							// Set the VRM's hip position
-							unityArmature.getHeadNodeOfBone(UnityBone.HIPS)?.localTransform?.translation = calculatedVrmHipPos
-						}
-					}
+			// Update unity hierarchy from bone's global rotation
+			val rotBuf = bone.getGlobalRotation() * Quaternion(
+				inverseRotationOffsets[offset],
+				inverseRotationOffsets[offset + 1],
+				inverseRotationOffsets[offset + 2],
+				inverseRotationOffsets[offset + 3],
+			)
+			val boneRotation = if (mirrorTracking) {
+				// Mirror tracking horizontally
+				Quaternion(rotBuf.w, rotBuf.x, -rotBuf.y, -rotBuf.z)
+			} else {
+				rotBuf
+			}
+			val input = unityBone.ordinal * 4
+			if (storeArmatureInput(input, boneRotation.w) or
+				storeArmatureInput(input + 1, boneRotation.x) or
+				storeArmatureInput(input + 2, boneRotation.y) or
+				storeArmatureInput(input + 3, boneRotation.z)
+			) {
+				unityArmature.setGlobalRotationForBone(unityBone, boneRotation)
+				changed = true
+			}
+		}
 
-					// Update Unity skeleton
-					outputUnityArmature!!.update()
-
-					// Add Unity humanoid bones transforms
-					for (bone in UnityBone.entries) {
-						if (bone.boneType != null &&
-							!(humanPoseManager.isTrackingLeftArmFromController && isLeftArmUnityBone(bone)) &&
-							!(humanPoseManager.isTrackingRightArmFromController && isRightArmUnityBone(bone))
-						) {
-							oscArgs.clear()
-							oscArgs.add(bone.stringVal)
-							addTransformToArgs(
-								outputUnityArmature!!.getLocalTranslationForBone(bone),
-								outputUnityArmature!!.getLocalRotationForBone(bone),
-							)
-							oscBundle.addPacket(OSCMessage("/VMC/Ext/Bone/Pos", oscArgs.clone()))
-						}
-					}
-				}
+		if (!anchorHip) {
+			// Anchor from head
+			// Scale the SlimeVR head position with the VRM model
+			val slimevrScaledHeadPos = humanPoseManager.getBone(BoneType.HEAD).getTailPosition() *
+				(vrmHeight / humanPoseManager.userHeightFromConfig)
+
+			// Get the VRM head and hip positions
+			val vrmHeadPos = unityArmature.getHeadNodeOfBone(UnityBone.HEAD)!!.parent!!.worldTransform.translation
+			val vrmHipPos = unityArmature.getHeadNodeOfBone(UnityBone.HIPS)!!.worldTransform.translation
+
+			// Calculate the new VRM hip position by subtracting the difference head-hip distance from the SlimeVR head
+			val calculatedVrmHipPos = slimevrScaledHeadPos - (vrmHeadPos - vrmHipPos)
+
+			// Set the VRM's hip position
+			val input = UnityBone.entries.size * 4
+			if (storeArmatureInput(input, calculatedVrmHipPos.x) or
+				storeArmatureInput(input + 1, calculatedVrmHipPos.y) or
+				storeArmatureInput(input + 2, calculatedVrmHipPos.z)
+			) {
+				unityArmature.getHeadNodeOfBone(UnityBone.HIPS)?.localTransform?.translation = calculatedVrmHipPos
+				changed = true
+			}
+		}
 
-				for (tracker in computedTrackers) {
-					if (!tracker.status.reset) {
-						oscArgs.clear()
+		// Update Unity skeleton
+		if (changed) unityArmature.update()
+	}
 
-						val name = tracker.name
-						oscArgs.add(name)
+	private fun storeArmatureInput(index: Int, value: Float): Boolean {
+		if (armatureInputs[index] == value) return false
+		armatureInputs[index] = value
+		return true
+	}
 
-						addTransformToArgs(
-							tracker.position,
-							tracker.getRotation(),
-						)
+	/**
+	 * Makes the next update recompute the whole output armature
+	 */
+	private fun invalidateOutputArmature() {
+		armatureInputs.fill(Float.NaN)
+	}
 
-						var address: String
-						val role = tracker.trackerPosition
-						address = if (role == TrackerPosition.HEAD) {
-							"/VMC/Ext/Hmd/Pos"
-						} else if (role == TrackerPosition.LEFT_HAND || role == TrackerPosition.RIGHT_HAND
-						) {
-							"/VMC/Ext/Con/Pos"
-						} else {
-							"/VMC/Ext/Tra/Pos"
-						}
-						oscBundle
-							.addPacket(
-								OSCMessage(
-									address,
-									oscArgs.clone(),
-								),
-							)
-					}
-				}
+	/**
+	 * Creates the output bundle and its sender for the current computed trackers
+	 */
+	private fun createOutputBundle(): OSCFloatBundle {
+		val addresses = mutableListOf("/VMC/Ext/T", "/VMC/Ext/OK", "/VMC/Ext/Root/Pos")
+		val argCounts = mutableListOf(1, 0, 7)
+		val leadingArgs = mutableListOf<Any?>(null, 1, "root")
+		for (bone in OUTPUT_BONES) {
+			addresses.add("/VMC/Ext/Bone/Pos")
+			argCounts.add(7)
+			leadingArgs.add(bone.stringVal)
+		}
+		for (tracker in computedTrackers) {
+			val role = tracker.trackerPosition
+			addresses.add(
+				if (role == TrackerPosition.HEAD) {
+					"/VMC/Ext/Hmd/Pos"
+				} else if (role == TrackerPosition.LEFT_HAND || role == TrackerPosition.RIGHT_HAND) {
+					"/VMC/Ext/Con/Pos"
+				} else {
+					"/VMC/Ext/Tra/Pos"
+				},
+			)
+			argCounts.add(7)
+			leadingArgs.add(tracker.name)
+		}
+		val bundle = OSCFloatBundle(addresses, argCounts.toIntArray(), leadingArgs)
+		writeTransform(bundle.values, bundle.valueOffset(ROOT_MESSAGE), NULL, IDENTITY)
+		sentValues = FloatArray(bundle.values.size) { Float.NaN }
+
+		outputSender?.close()
+		outputSender = OSCBundleSender("VMCHandler", bundle, mergeReplaced = true)
+		outputSender!!.targets = outputTargets
+		outputBundle = bundle
+		return bundle
+	}
 
-				// Send OSC packets as bundle
-				try {
-					oscSender!!.send(oscBundle)
-				} catch (e: IOException) {
-					// Avoid spamming AsynchronousCloseException too many
-					// times per second
-					if (System.currentTimeMillis() - timeAtLastError > 100) {
-						timeAtLastError = System.currentTimeMillis()
-						LogManager
-							.warning(
-								"[VMCHandler] Error sending OSC packets: " +
-									e,
-							)
-					}
-				} catch (e: OSCSerializeException) {
-					if (System.currentTimeMillis() - timeAtLastError > 100) {
-						timeAtLastError = System.currentTimeMillis()
-						LogManager
-							.warning(
-								"[VMCHandler] Error sending OSC packets: " +
-									e,
-							)
-					}
-				}
+	/**
+	 * Sets the transform of a message, enabled only if it changed by more than
+	 * [EPSILON] since it was last sent or if [force] is true
+	 */
+	private fun setTransform(
+		bundle: OSCFloatBundle,
+		message: Int,
+		pos: Vector3,
+		rot: Quaternion,
+		force: Boolean,
+	) {
+		val values = bundle.values
+		val offset = bundle.valueOffset(message)
+		writeTransform(values, offset, pos, rot)
+		var changed = force
+		for (i in offset until offset + 7) {
+			// Never sent values are NaN
+			if (!(abs(values[i] - sentValues[i]) <= EPSILON)) {
+				changed = true
+				break
 			}
 		}
+		if (changed) System.arraycopy(values, offset, sentValues, offset, 7)
+		bundle.enabled[message] = changed
 	}
 
 	/**
@@ -479,16 +598,18 @@ class VMCHandler(
 	 */
 	fun addComputedTracker(computedTracker: Tracker) {
 		computedTrackers.add(computedTracker)
+		// Rebuilt on the next update with the new tracker
+		outputBundle = null
 	}
 
-	private fun addTransformToArgs(pos: Vector3, rot: Quaternion) {
-		oscArgs.add(pos.x)
-		oscArgs.add(pos.y)
-		oscArgs.add(-pos.z)
-		oscArgs.add(rot.x)
-		oscArgs.add(rot.y)
-		oscArgs.add(-rot.z)
-		oscArgs.add(-rot.w)
+	private fun writeTransform(values: FloatArray, offset: Int, pos: Vector3, rot: Quaternion) {
+		values[offset] = pos.x
+		values[offset + 1] = pos.y
+		values[offset + 2] = -pos.z
+		values[offset + 3] = rot.x
+		values[offset + 4] = rot.y
+		values[offset + 5] = -rot.z
+		values[offset + 6] = -rot.w
 	}
 
 	/**
@@ -526,4 +647,18 @@ class VMCHandler(
 	override fun getOscReceiver(): OSCPortIn = oscReceiver!!
 
 	override fun getPortIn(): Int = lastPortIn
+
+	companion object {
+		// Humanoid bones sent, in the order of their messages
+		private val OUTPUT_BONES = UnityBone.entries.filter { it.boneType != null }
+
+		private const val TIME_MESSAGE = 0
+		private const val OK_MESSAGE = 1
+		private const val ROOT_MESSAGE = 2
+		private const val BONE_MESSAGES = 3
+
+		// Smallest change of a position (in meters) or rotation component sent
+		private const val EPSILON = 0.0001f
+		private const val FULL_SEND_INTERVAL = 1_000_000_000L
+	}
 }
@@ -1,6 +1,5 @@
 package dev.slimevr.osc
 
-import com.illposed.osc.OSCBundle
 import com.illposed.osc.OSCMessage
 import com.illposed.osc.OSCMessageEvent
 import com.illposed.osc.OSCMessageListener
@@ -13,6 +12,7 @@ import com.jme3.system.NanoTimer
 import dev.slimevr.VRServer
 import dev.slimevr.config.VRCOSCConfig
 import dev.slimevr.protocol.rpc.setup.RPCUtil
+import dev.slimevr.tick.TickScheduler
 import dev.slimevr.tracking.trackers.Device
 import dev.slimevr.tracking.trackers.Tracker
 import dev.slimevr.tracking.trackers.TrackerPosition
@@ -26,6 +26,7 @@ import io.github.axisangles.ktmath.Vector3
 import java.io.IOException
 import java.net.InetAddress
 import java.net.InetSocketAddress
+import kotlin.concurrent.thread
 
 private const val OFFSET_SLERP_FACTOR = 0.5f // Guessed from eyeing VRChat
 
@@ -63,7 +64,6 @@ class VRCOSCHandler(
 	private var oscQuerySenderState = false
 	private var oscQueryPortOut = 0
 	private var oscQueryIp: String? = null
-	private var timeAtLastError: Long = 0
 	private var receivingPositionOffset = Vector3.NULL
 	private var postReceivingPositionOffset = Vector3.NULL
 	private var receivingRotationOffset = Quaternion.IDENTITY
@@ -71,7 +71,28 @@ class VRCOSCHandler(
 	private val postReceivingOffset = EulerAngles(EulerOrder.YXZ, 0f, FastMath.PI, 0f).toQuaternion()
 	private var timeAtLastReceivedRotationOffset = System.currentTimeMillis()
 	private var fpsTimer: NanoTimer? = null
+
+	@Volatile
 	private var vrcOscQueryHandler: VRCOSCQueryHandler? = null
+	private val oscQueryLock = Any()
+	private var oscQueryStarting = false
+
+	// Position and rotation of each computed tracker, and the HMD position if
+	// it's the head. Sent at the configured rate from the sender's thread.
+	private val outputBundle = OSCFloatBundle(
+		computedTrackers.flatMap {
+			val id = getVRCOSCTrackersId(it.trackerPosition)
+			listOf(
+				"/tracking/trackers/$id/position",
+				"/tracking/trackers/$id/rotation",
+				"/tracking/trackers/head/position",
+			)
+		},
+		IntArray(computedTrackers.size * 3) { 3 },
+	)
+	private val outputSender = OSCBundleSender("VRCOSCHandler", outputBundle)
+	private var timeAtLastOutput = 0L
+	private val latency = server.motionLatency.output("vrc_osc")
 
 	init {
 		refreshSettings(false)
@@ -94,15 +115,13 @@ class VRCOSCHandler(
 		updateOscReceiver(config.portIn, vrsystemTrackersAddresses + oscTrackersAddresses)
 		updateOscSender(config.portOut, config.address)
 
-		if (vrcOscQueryHandler == null && config.enabled) {
-			try {
-				vrcOscQueryHandler = VRCOSCQueryHandler(this)
-			} catch (e: Throwable) {
-				LogManager.severe("Unable to initialize OSCQuery: $e", e)
+		if (config.enabled) {
+			startOSCQuery()
+		} else {
+			synchronized(oscQueryLock) {
+				vrcOscQueryHandler?.close()
+				vrcOscQueryHandler = null
 			}
-		} else if (vrcOscQueryHandler != null && !config.enabled) {
-			vrcOscQueryHandler?.close()
-			vrcOscQueryHandler = null
 		}
 
 		if (refreshRouterSettings) {
@@ -110,6 +129,36 @@ class VRCOSCHandler(
 		}
 	}
 
+	/**
+	 * Starts OSCQuery on its own thread if it's not running, as finding the
+	 * local address and starting mDNS can take a while
+	 */
+	private fun startOSCQuery() {
+		synchronized(oscQueryLock) {
+			if (vrcOscQueryHandler != null || oscQueryStarting) return
+			oscQueryStarting = true
+		}
+		thread(name = "OSCQuery init", isDaemon = true) {
+			val handler = try {
+				VRCOSCQueryHandler(this)
+			} catch (e: Throwable) {
+				LogManager.severe("Unable to initialize OSCQuery: $e", e)
+				null
+			}
+			synchronized(oscQueryLock) {
+				oscQueryStarting = false
+				if (!config.enabled) {
+					// Disabled while starting
+					handler?.close()
+					return@thread
+				}
+				vrcOscQueryHandler = handler
+			}
+			// The port may have changed while starting
+			if (portIn != 0) handler?.updateOSCQuery(portIn.toUShort())
+		}
+	}
+
 	/**
 	 * Adds an OSC Sender from OSCQuery
 	 */
@@ -127,6 +176,7 @@ class VRCOSCHandler(
 				LogManager.severe("[VRCOSCHandler] Error connecting to port $oscPortOut at the address $oscIP: $e")
 			}
 		}
+		updateOutputTargets()
 	}
 
 	/**
@@ -142,6 +192,21 @@ class VRCOSCHandler(
 				LogManager.severe("[VRCOSCHandler] Error closing the OSC sender: $e")
 			}
 		}
+		updateOutputTargets()
+	}
+
+	/**
+	 * Points the output sender at the OSC sender and the OSCQuery sender
+	 */
+	private fun updateOutputTargets() {
+		val targets = mutableListOf<InetSocketAddress>()
+		oscIp?.let {
+			if (oscSender?.isConnected == true) targets.add(InetSocketAddress(it, oscPortOut))
+		}
+		oscQueryIp?.let {
+			if (oscQuerySender?.isConnected == true) targets.add(InetSocketAddress(it, oscQueryPortOut))
+		}
+		outputSender.targets = targets
 	}
 
 	override fun updateOscReceiver(portIn: Int, args: Array<String>) {
@@ -210,6 +275,7 @@ class VRCOSCHandler(
 					.severe(
 						"[VRCOSCHandler] Error connecting to port $portOut at the address $ip: $e",
 					)
+				updateOutputTargets()
 				return
 			}
 
@@ -223,6 +289,7 @@ class VRCOSCHandler(
 				addOSCQuerySender(oscQueryPortOut, oscQueryIp!!)
 			}
 		}
+		updateOutputTargets()
 	}
 
 	private fun handleReceivedMessage(event: OSCMessageEvent) {
@@ -414,31 +481,23 @@ class VRCOSCHandler(
 			receivingRotationOffset = receivingRotationOffset.interpR(receivingRotationOffsetGoal, OFFSET_SLERP_FACTOR * (fpsTimer?.timePerFrame ?: 1f))
 		}
 
-		// Update current time
-		val currentTime = System.currentTimeMillis().toFloat()
-
-		// Send OSC data
-		if (oscSender != null && oscSender!!.isConnected) {
-			// Create new bundle
-			val bundle = OSCBundle()
-
+		// Send OSC data, VRChat doesn't need it every tick
+		val now = System.nanoTime()
+		if (oscSender != null &&
+			oscSender!!.isConnected &&
+			now - timeAtLastOutput >= TickScheduler.periodNanos(config.rate)
+		) {
+			timeAtLastOutput = now
 			for (i in computedTrackers.indices) {
+				val tracker = computedTrackers[i]
+				val message = i * 3
 				if (trackersEnabled[i]) {
 					// Send regular trackers' positions
-					val (x, y, z) = computedTrackers[i].position
-					oscArgs.clear()
-					oscArgs.add(x)
-					oscArgs.add(y)
-					oscArgs.add(-z)
-					bundle.addPacket(
-						OSCMessage(
-							"/tracking/trackers/${getVRCOSCTrackersId(computedTrackers[i].trackerPosition)}/position",
-							oscArgs.clone(),
-						),
-					)
+					val (x, y, z) = tracker.position
+					outputBundle.set(message, x, y, -z)
 
 					// Send regular trackers' rotations
-					val (w, x1, y1, z1) = computedTrackers[i].getRotation()
+					val (w, x1, y1, z1) = tracker.getRotation()
 					// We flip the X and Y components of the quaternion because
 					// we flip the z direction when communicating from
 					// our right-handed API to VRChat's left-handed API.
@@ -452,48 +511,27 @@ class VRCOSCHandler(
 						-y1,
 						z1,
 					).toEulerAngles(EulerOrder.YXZ)
-					oscArgs.clear()
-					oscArgs.add(x2 * FastMath.RAD_TO_DEG)
-					oscArgs.add(y2 * FastMath.RAD_TO_DEG)
-					oscArgs.add(z2 * FastMath.RAD_TO_DEG)
-					bundle.addPacket(
-						OSCMessage(
-							"/tracking/trackers/${getVRCOSCTrackersId(computedTrackers[i].trackerPosition)}/rotation",
-							oscArgs.clone(),
-						),
+					outputBundle.set(
+						message + 1,
+						x2 * FastMath.RAD_TO_DEG,
+						y2 * FastMath.RAD_TO_DEG,
+						z2 * FastMath.RAD_TO_DEG,
 					)
+				} else {
+					outputBundle.enabled[message] = false
+					outputBundle.enabled[message + 1] = false
 				}
-				if (computedTrackers[i].trackerPosition == TrackerPosition.HEAD) {
+				if (tracker.trackerPosition == TrackerPosition.HEAD) {
 					// Send HMD position
-					val (x, y, z) = computedTrackers[i].position
-					oscArgs.clear()
-					oscArgs.add(x)
-					oscArgs.add(y)
-					oscArgs.add(-z)
-					bundle.addPacket(
-						OSCMessage(
-							"/tracking/trackers/head/position",
-							oscArgs.clone(),
-						),
-					)
+					val (x, y, z) = tracker.position
+					outputBundle.set(message + 2, x, y, -z)
+				} else {
+					outputBundle.enabled[message + 2] = false
 				}
 			}
-
-			try {
-				oscSender?.send(bundle)
-				oscQuerySender?.send(bundle)
-			} catch (e: IOException) {
-				// Avoid spamming AsynchronousCloseException too many
-				// times per second
-				if (currentTime - timeAtLastError > 100) {
-					timeAtLastError = System.currentTimeMillis()
-					LogManager.warning("[VRCOSCHandler] Error sending OSC message to VRChat: $e")
-				}
-			} catch (e: OSCSerializeException) {
-				if (currentTime - timeAtLastError > 100) {
-					timeAtLastError = System.currentTimeMillis()
-					LogManager.warning("[VRCOSCHandler] Error sending OSC message to VRChat: $e")
-				}
+			outputSender.publish(outputBundle)
+			for (i in computedTrackers.indices) {
+				if (trackersEnabled[i]) latency.record(computedTrackers[i])
 			}
 		}
 	}
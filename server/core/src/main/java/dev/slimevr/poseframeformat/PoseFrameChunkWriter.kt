@@ -0,0 +1,308 @@
+package dev.slimevr.poseframeformat
+
+import dev.slimevr.poseframeformat.trackerdata.TrackerFrame
+import dev.slimevr.poseframeformat.trackerdata.TrackerFrameData
+import dev.slimevr.tracking.trackers.Tracker
+import io.eiren.util.logging.LogManager
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+import java.util.zip.CRC32
+
+/**
+ * Appends frames to a recording in the chunked format from a background
+ * thread, see [PoseFrameIO.readChunksFromFile] for the layout.
+ *
+ * Frames are handed to the writer through a fixed size ring buffer, so a
+ * recording uses the same amount of memory no matter how long it gets. If the
+ * writer can't keep up, new frames are dropped and counted in
+ * [droppedFrames]. Every chunk has a checksum and the file is synced to disk
+ * every [SYNC_INTERVAL_MS], so a recording cut short by a crash can still be
+ * read up to its last complete chunk.
+ *
+ * [offer] and [close] can be called from any thread, a frame offered while
+ * closing is either written or dropped and counted.
+ */
+class PoseFrameChunkWriter(
+	val file: File,
+	trackerNames: List<String>,
+	capacity: Int = DEFAULT_CAPACITY,
+) {
+	private val trackerCount = trackerNames.size
+
+	// Ring buffer of frames, each slot holds the data flags and tracker
+	// position of every tracker and STRIDE floats per tracker
+	private val slotFlags: Array<IntArray>
+	private val slots: Array<FloatArray>
+	private val mask: Long
+	private val producerIndex = AtomicLong()
+	private val consumerIndex = AtomicLong()
+
+	private val channel: FileChannel
+	private val chunk: ByteBuffer
+	private var chunkFrames = 0
+	private var chunkCount = 0
+	private val crc = CRC32()
+
+	// Guards closing and queueing frames, so the writer can't see closing
+	// before a frame that was queued ahead of it
+	private val offerLock = Any()
+
+	@Volatile
+	private var closing = false
+	private val finished = CompletableFuture<File>()
+	private val thread: Thread
+
+	/**
+	 * Frames written to the file so far
+	 */
+	@Volatile
+	var writtenFrames = 0L
+		private set
+
+	/**
+	 * Frames dropped because the ring buffer was full or writing failed
+	 */
+	@Volatile
+	var droppedFrames = 0L
+		private set
+
+	init {
+		require(capacity > 0 && capacity and (capacity - 1) == 0) { "capacity must be a power of two." }
+		slotFlags = Array(capacity) { IntArray(trackerCount * 2) }
+		slots = Array(capacity) { FloatArray(trackerCount * STRIDE) }
+		mask = capacity - 1L
+		chunk = ByteBuffer.allocate(CHUNK_HEADER_SIZE + CHUNK_FRAMES * trackerCount * MAX_TRACKER_FRAME_SIZE)
+			.order(ByteOrder.LITTLE_ENDIAN)
+
+		channel = FileChannel.open(
+			file.toPath(),
+			StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING,
+		)
+		try {
+			val names = trackerNames.map { it.toByteArray(Charsets.UTF_8) }
+			val header = ByteBuffer.allocate(12 + names.sumOf { 2 + it.size }).order(ByteOrder.LITTLE_ENDIAN)
+			header.put(PoseFrameIO.CHUNKS_MAGIC)
+			header.putInt(PoseFrameIO.CHUNKS_VERSION)
+			header.putInt(trackerCount)
+			for (name in names) {
+				header.putShort(name.size.toShort())
+				header.put(name)
+			}
+			header.flip()
+			writeFully(header)
+		} catch (e: IOException) {
+			channel.close()
+			throw e
+		}
+
+		chunk.position(CHUNK_HEADER_SIZE)
+		thread = Thread(::run, "PoseFrameChunkWriter")
+		thread.isDaemon = true
+		thread.start()
+	}
+
+	/**
+	 * Queues a frame of [trackers], which must match the tracker names this was
+	 * created with
+	 *
+	 * @return `false` if the frame was dropped
+	 */
+	fun offer(trackers: List<Tracker>): Boolean {
+		require(trackers.size == trackerCount) { "Expected $trackerCount trackers, got ${trackers.size}." }
+		synchronized(offerLock) {
+			val index = producerIndex.get()
+			if (closing || finished.isDone || index - consumerIndex.get() >= slots.size) {
+				droppedFrames++
+				return false
+			}
+			val slot = (index and mask).toInt()
+			for (i in trackers.indices) {
+				storeFrame(TrackerFrame.fromTracker(trackers[i]), slotFlags[slot], i * 2, slots[slot], i * STRIDE)
+			}
+			producerIndex.lazySet(index + 1)
+			return true
+		}
+	}
+
+	/**
+	 * Writes the remaining frames and the footer and closes the file
+	 *
+	 * @return A future completed with the file once it's closed
+	 */
+	fun close(): CompletableFuture<File> {
+		synchronized(offerLock) {
+			closing = true
+		}
+		LockSupport.unpark(thread)
+		return finished
+	}
+
+	private fun run() {
+		try {
+			var chunkStart = 0L
+			var lastSync = System.nanoTime()
+			var synced = true
+			while (true) {
+				// Read before draining, so every frame offered before close is written
+				val done = closing
+				var index = consumerIndex.get()
+				val end = producerIndex.get()
+				while (index < end) {
+					if (chunkFrames == 0) chunkStart = System.nanoTime()
+					val slot = (index and mask).toInt()
+					appendFrame(slotFlags[slot], slots[slot])
+					consumerIndex.lazySet(++index)
+					if (chunkFrames == CHUNK_FRAMES) {
+						writeChunk()
+						synced = false
+					}
+				}
+
+				val now = System.nanoTime()
+				if (chunkFrames > 0 && (done || now - chunkStart >= FLUSH_INTERVAL_MS * 1_000_000L)) {
+					writeChunk()
+					synced = false
+				}
+				if (done) {
+					writeFooter()
+					channel.force(true)
+					break
+				}
+				if (!synced && now - lastSync >= SYNC_INTERVAL_MS * 1_000_000L) {
+					channel.force(false)
+					lastSync = now
+					synced = true
+				}
+				LockSupport.parkNanos(this, POLL_INTERVAL_MS * 1_000_000L)
+			}
+			channel.close()
+			finished.complete(file)
+		} catch (e: Exception) {
+			LogManager.severe("[PoseFrameChunkWriter] Failed to write to \"${file.path}\".", e)
+			try {
+				channel.close()
+			} catch (_: IOException) {
+			}
+			synchronized(offerLock) {
+				// Count the frames that won't be written anymore
+				droppedFrames += chunkFrames + producerIndex.get() - consumerIndex.get()
+				finished.completeExceptionally(e)
+			}
+		}
+	}
+
+	private fun appendFrame(slotFlags: IntArray, slot: FloatArray) {
+		for (i in 0 until trackerCount) {
+			val offset = i * STRIDE
+			val flags = slotFlags[i * 2]
+			chunk.putInt(flags)
+			if (TrackerFrameData.TRACKER_POSITION_ENUM.check(flags)) chunk.putInt(slotFlags[i * 2 + 1])
+			if (TrackerFrameData.ROTATION.check(flags)) putFloats(slot, offset, 4)
+			if (TrackerFrameData.POSITION.check(flags)) putFloats(slot, offset + 4, 3)
+			if (TrackerFrameData.ACCELERATION.check(flags)) putFloats(slot, offset + 7, 3)
+			if (TrackerFrameData.RAW_ROTATION.check(flags)) putFloats(slot, offset + 10, 4)
+		}
+		chunkFrames++
+	}
+
+	private fun putFloats(slot: FloatArray, offset: Int, count: Int) {
+		for (i in offset until offset + count) {
+			chunk.putFloat(slot[i])
+		}
+	}
+
+	private fun writeChunk() {
+		val payloadSize = chunk.position() - CHUNK_HEADER_SIZE
+		crc.reset()
+		crc.update(chunk.array(), chunk.arrayOffset() + CHUNK_HEADER_SIZE, payloadSize)
+		chunk.putInt(0, chunkFrames)
+		chunk.putInt(4, payloadSize)
+		chunk.putInt(8, crc.value.toInt())
+		chunk.flip()
+		writeFully(chunk)
+		chunk.clear()
+		chunk.position(CHUNK_HEADER_SIZE)
+		writtenFrames += chunkFrames
+		chunkFrames = 0
+		chunkCount++
+	}
+
+	private fun writeFooter() {
+		val footer = ByteBuffer.allocate(CHUNK_HEADER_SIZE + 12 + PoseFrameIO.CHUNKS_END_MAGIC.size)
+			.order(ByteOrder.LITTLE_ENDIAN)
+		// An empty chunk marks the footer
+		footer.putInt(0)
+		footer.putInt(0)
+		footer.putInt(0)
+		footer.putLong(writtenFrames)
+		footer.putInt(chunkCount)
+		footer.put(PoseFrameIO.CHUNKS_END_MAGIC)
+		footer.flip()
+		writeFully(footer)
+	}
+
+	private fun writeFully(buffer: ByteBuffer) {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer)
+		}
+	}
+
+	companion object {
+		const val DEFAULT_CAPACITY = 1024
+
+		// Frames per chunk and the longest time a frame waits to be written
+		const val CHUNK_FRAMES = 256
+		const val FLUSH_INTERVAL_MS = 500L
+		const val SYNC_INTERVAL_MS = 2000L
+		private const val POLL_INTERVAL_MS = 10L
+
+		// Frame count, payload size and CRC32 of the payload
+		const val CHUNK_HEADER_SIZE = 12
+
+		// Rotation, position, acceleration and raw rotation
+		private const val STRIDE = 14
+
+		// Flags and tracker position ints followed by the floats
+		private const val MAX_TRACKER_FRAME_SIZE = 8 + STRIDE * 4
+
+		private fun storeFrame(frame: TrackerFrame?, flags: IntArray, flagsOffset: Int, slot: FloatArray, offset: Int) {
+			if (frame == null) {
+				flags[flagsOffset] = 0
+				return
+			}
+			flags[flagsOffset] = frame.dataFlags
+			frame.trackerPosition?.let { flags[flagsOffset + 1] = it.ordinal }
+			frame.rotation?.let {
+				slot[offset] = it.w
+				slot[offset + 1] = it.x
+				slot[offset + 2] = it.y
+				slot[offset + 3] = it.z
+			}
+			frame.position?.let {
+				slot[offset + 4] = it.x
+				slot[offset + 5] = it.y
+				slot[offset + 6] = it.z
+			}
+			frame.acceleration?.let {
+				slot[offset + 7] = it.x
+				slot[offset + 8] = it.y
+				slot[offset + 9] = it.z
+			}
+			frame.rawRotation?.let {
+				slot[offset + 10] = it.w
+				slot[offset + 11] = it.x
+				slot[offset + 12] = it.y
+				slot[offset + 13] = it.z
+			}
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package dev.slimevr.poseframeformat
 
+import dev.slimevr.poseframeformat.PoseFrameChunkWriter.Companion.CHUNK_HEADER_SIZE
+import dev.slimevr.poseframeformat.trackerdata.TrackerColumnFrames
+import dev.slimevr.poseframeformat.trackerdata.TrackerColumns
 import dev.slimevr.poseframeformat.trackerdata.TrackerFrame
 import dev.slimevr.poseframeformat.trackerdata.TrackerFrameData
 import dev.slimevr.poseframeformat.trackerdata.TrackerFrames
@@ -17,8 +20,40 @@ import java.io.File
 import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.zip.CRC32
 
+/**
+ * Reads and writes recordings. Files are written in the stream format, which
+ * stores every frame of a tracker one after another and can be read by older
+ * versions. The column format stores every field of a tracker as a column,
+ * which is read without creating a [TrackerFrame] per frame. It's only written
+ * when asked for, see [writeColumnsToFile] and [convertToColumns].
+ *
+ * The column format starts with a header of the [COLUMNS_MAGIC], the format
+ * version, the header size and the tracker count, followed by an entry per
+ * tracker with the offset of its columns, its frame count, the
+ * [TrackerFrameData] flags stored and its name. The columns of every tracker
+ * are described by [TrackerColumns]. All values are little-endian.
+ *
+ * Recordings streamed to disk by [PoseFrameChunkWriter] use the chunked
+ * format, see [readChunksFromFile].
+ */
 object PoseFrameIO {
+	private val COLUMNS_MAGIC = "PFRC".toByteArray(Charsets.US_ASCII)
+	const val COLUMNS_VERSION = 1
+	private const val COLUMNS_HEADER_SIZE = 16
+
+	internal val CHUNKS_MAGIC = "PFRA".toByteArray(Charsets.US_ASCII)
+	internal val CHUNKS_END_MAGIC = "PFRE".toByteArray(Charsets.US_ASCII)
+	const val CHUNKS_VERSION = 1
+	private const val MAX_CHUNKS_HEADER_SIZE = 65536L
+
 	@Throws(IOException::class)
 	private fun writeVector3f(outputStream: DataOutputStream, vector: Vector3) {
 		outputStream.writeFloat(vector.x)
@@ -82,11 +117,70 @@ object PoseFrameIO {
 	}
 
 	fun writeToFile(file: File, frames: PoseFrames) {
+		writeStreamToFile(file, frames)
+	}
+
+	/**
+	 * Writes [frames] in the stream format, which older versions can read
+	 */
+	fun writeStreamToFile(file: File, frames: PoseFrames) {
 		DataOutputStream(
 			BufferedOutputStream(FileOutputStream(file)),
 		).use { writeFrames(it, frames) }
 	}
 
+	@Throws(IOException::class)
+	fun writeColumnsToFile(file: File, frames: PoseFrames) {
+		val trackers = frames.frameHolders
+		val fieldMasks = IntArray(trackers.size) { TrackerColumns.fieldMask(trackers[it].frames) }
+		val names = Array(trackers.size) { trackers[it].name.toByteArray(Charsets.UTF_8) }
+
+		var headerSize = COLUMNS_HEADER_SIZE
+		for (name in names) {
+			headerSize += 18 + name.size
+		}
+		headerSize = (headerSize + 7) and 7.inv()
+
+		val header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN)
+		header.put(COLUMNS_MAGIC)
+		header.putInt(COLUMNS_VERSION)
+		header.putInt(headerSize)
+		header.putInt(trackers.size)
+		var columnsOffset = headerSize.toLong()
+		for (i in trackers.indices) {
+			header.putLong(columnsOffset)
+			header.putInt(trackers[i].frames.size)
+			header.putInt(fieldMasks[i])
+			header.putShort(names[i].size.toShort())
+			header.put(names[i])
+			columnsOffset += TrackerColumns.columnsSize(trackers[i].frames.size, fieldMasks[i])
+		}
+		header.position(0)
+
+		FileChannel.open(
+			file.toPath(),
+			StandardOpenOption.CREATE,
+			StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING,
+		).use { channel ->
+			writeFully(channel, header)
+			for (i in trackers.indices) {
+				val size = TrackerColumns.columnsSize(trackers[i].frames.size, fieldMasks[i])
+				if (size > Int.MAX_VALUE) throw IOException("Recording of tracker \"${trackers[i].name}\" is too long.")
+				val columns = ByteBuffer.allocate(size.toInt()).order(ByteOrder.LITTLE_ENDIAN)
+				TrackerColumns.writeColumns(columns, trackers[i].frames, fieldMasks[i])
+				columns.position(0)
+				writeFully(channel, columns)
+			}
+		}
+	}
+
+	private fun writeFully(channel: FileChannel, buffer: ByteBuffer) {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer)
+		}
+	}
+
 	fun tryWriteToFile(file: File, frames: PoseFrames): Boolean = try {
 		writeToFile(file, frames)
 		true
@@ -169,8 +263,226 @@ object PoseFrameIO {
 		null
 	}
 
-	fun readFromFile(file: File): PoseFrames =
-		DataInputStream(BufferedInputStream(FileInputStream(file))).use { readFrames(it) }
+	fun readFromFile(file: File): PoseFrames {
+		val magic = readMagic(file)
+		return when {
+			magic.contentEquals(COLUMNS_MAGIC) -> readColumnsFromFile(file)
+			magic.contentEquals(CHUNKS_MAGIC) -> readChunksFromFile(file)
+			else -> DataInputStream(BufferedInputStream(FileInputStream(file))).use { readFrames(it) }
+		}
+	}
+
+	fun isColumnFile(file: File): Boolean = readMagic(file).contentEquals(COLUMNS_MAGIC)
+
+	private fun readMagic(file: File): ByteArray {
+		val magic = ByteArray(COLUMNS_MAGIC.size)
+		FileInputStream(file).use { inputStream ->
+			var read = 0
+			while (read < magic.size) {
+				val count = inputStream.read(magic, read, magic.size - read)
+				if (count < 0) return ByteArray(0)
+				read += count
+			}
+		}
+		return magic
+	}
+
+	/**
+	 * Reads a recording in the column format. The columns are read into buffers
+	 * on the heap rather than mapped, a mapped file can't be overwritten or
+	 * deleted on Windows until the mapping is garbage collected. Frames are only
+	 * created once they're accessed.
+	 */
+	@Throws(IOException::class)
+	fun readColumnsFromFile(file: File): PoseFrames = FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+		val prefix = ByteBuffer.allocate(COLUMNS_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+		if (!readFully(channel, prefix, 0)) throw IOException("Recording is truncated.")
+		val version = prefix.getInt(4)
+		if (version > COLUMNS_VERSION) throw IOException("Unsupported recording version $version.")
+		val headerSize = prefix.getInt(8)
+		val trackerCount = prefix.getInt(12)
+		if (headerSize < COLUMNS_HEADER_SIZE || headerSize > channel.size()) throw IOException("Recording is truncated.")
+
+		val header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN)
+		readFully(channel, header, 0)
+		header.position(COLUMNS_HEADER_SIZE)
+		val trackers = FastList<TrackerFrames>(trackerCount)
+		for (i in 0 until trackerCount) {
+			val columnsOffset = header.getLong()
+			val frameCount = header.getInt()
+			val fieldMask = header.getInt()
+			val name = ByteArray(header.getShort().toInt() and 0xFFFF)
+			header.get(name)
+			val nameString = String(name, Charsets.UTF_8)
+
+			val size = TrackerColumns.columnsSize(frameCount, fieldMask)
+			if (size > Int.MAX_VALUE) throw IOException("Recording of tracker \"$nameString\" is too long.")
+			val columns = ByteBuffer.allocate(size.toInt()).order(ByteOrder.LITTLE_ENDIAN)
+			if (!readFully(channel, columns, columnsOffset)) throw IOException("Recording of tracker \"$nameString\" is truncated.")
+			trackers.add(TrackerFrames(nameString, TrackerColumnFrames(TrackerColumns(nameString, frameCount, fieldMask, columns))))
+		}
+		PoseFrames(trackers)
+	}
+
+	/**
+	 * Reads a recording in the chunked format into columns on the heap.
+	 *
+	 * The file starts with a header of the [CHUNKS_MAGIC], the format version,
+	 * the tracker count and the name of every tracker. It's followed by chunks
+	 * of a frame count, the payload size and the CRC32 of the payload, with the
+	 * payload holding the data flags and values of every tracker for each
+	 * frame. The footer is a chunk without frames followed by the total frame
+	 * count, the chunk count and [CHUNKS_END_MAGIC]. All values are
+	 * little-endian.
+	 *
+	 * A recording without a footer wasn't finished, it's read up to its last
+	 * complete chunk.
+	 */
+	@Throws(IOException::class)
+	fun readChunksFromFile(file: File): PoseFrames = FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+		val header = ByteBuffer.allocate(minOf(channel.size(), MAX_CHUNKS_HEADER_SIZE).toInt())
+			.order(ByteOrder.LITTLE_ENDIAN)
+		readFully(channel, header, 0)
+		header.flip()
+		header.position(CHUNKS_MAGIC.size)
+		val version = header.getInt()
+		if (version > CHUNKS_VERSION) throw IOException("Unsupported recording version $version.")
+		val trackerCount = header.getInt()
+		val names = Array(trackerCount) {
+			val name = ByteArray(header.getShort().toInt() and 0xFFFF)
+			header.get(name)
+			String(name, Charsets.UTF_8)
+		}
+		val start = header.position().toLong()
+
+		// Count the frames and fields of every tracker first to size the columns
+		var frameCount = 0
+		val fieldMasks = IntArray(trackerCount)
+		val end = forEachChunk(channel, start, channel.size()) { payload, frames ->
+			for (i in 0 until frames * trackerCount) {
+				val flags = readChunkFrame(payload)?.dataFlags ?: continue
+				fieldMasks[i % trackerCount] = fieldMasks[i % trackerCount] or flags
+			}
+			frameCount += frames
+		}
+		if (!hasChunksFooter(channel, end)) {
+			LogManager.warning("[PoseFrameIO] Recording \"${file.path}\" wasn't finished, recovered $frameCount frames.")
+		}
+
+		val columns = Array(trackerCount) { TrackerColumns.allocate(names[it], frameCount, fieldMasks[it]) }
+		var frame = 0
+		forEachChunk(channel, start, end) { payload, frames ->
+			for (i in 0 until frames) {
+				for (columnsOfTracker in columns) {
+					columnsOfTracker.setFrame(frame, readChunkFrame(payload) ?: continue)
+				}
+				frame++
+			}
+		}
+
+		val trackers = FastList<TrackerFrames>(trackerCount)
+		for (i in 0 until trackerCount) {
+			trackers.add(TrackerFrames(names[i], TrackerColumnFrames(columns[i])))
+		}
+		PoseFrames(trackers)
+	}
+
+	/**
+	 * Calls [action] with the payload and frame count of every valid chunk
+	 * between [start] and [end]
+	 *
+	 * @return The position after the last valid chunk
+	 */
+	private inline fun forEachChunk(
+		channel: FileChannel,
+		start: Long,
+		end: Long,
+		action: (payload: ByteBuffer, frameCount: Int) -> Unit,
+	): Long {
+		val header = ByteBuffer.allocate(CHUNK_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN)
+		var payload = ByteBuffer.allocate(0)
+		val crc = CRC32()
+		var position = start
+		while (position + CHUNK_HEADER_SIZE <= end) {
+			header.clear()
+			if (!readFully(channel, header, position)) break
+			val frameCount = header.getInt(0)
+			val payloadSize = header.getInt(4)
+			if (frameCount <= 0 || payloadSize < 0 || position + CHUNK_HEADER_SIZE + payloadSize > end) break
+
+			if (payload.capacity() < payloadSize) {
+				payload = ByteBuffer.allocate(payloadSize).order(ByteOrder.LITTLE_ENDIAN)
+			}
+			payload.clear()
+			payload.limit(payloadSize)
+			if (!readFully(channel, payload, position + CHUNK_HEADER_SIZE)) break
+			crc.reset()
+			crc.update(payload.array(), payload.arrayOffset(), payloadSize)
+			if (crc.value.toInt() != header.getInt(8)) break
+
+			payload.flip()
+			action(payload, frameCount)
+			position += CHUNK_HEADER_SIZE + payloadSize
+		}
+		return position
+	}
+
+	private fun hasChunksFooter(channel: FileChannel, position: Long): Boolean {
+		val footer = ByteBuffer.allocate(CHUNK_HEADER_SIZE + 12 + CHUNKS_END_MAGIC.size).order(ByteOrder.LITTLE_ENDIAN)
+		if (!readFully(channel, footer, position)) return false
+		val magic = ByteArray(CHUNKS_END_MAGIC.size)
+		footer.position(CHUNK_HEADER_SIZE + 12)
+		footer.get(magic)
+		return footer.getInt(0) == 0 && magic.contentEquals(CHUNKS_END_MAGIC)
+	}
+
+	// Reads until the buffer is full, returns false if the file ended before
+	private fun readFully(channel: FileChannel, buffer: ByteBuffer, position: Long): Boolean {
+		var offset = position
+		while (buffer.hasRemaining()) {
+			val count = channel.read(buffer, offset)
+			if (count < 0) return false
+			offset += count
+		}
+		return true
+	}
+
+	private fun readChunkFrame(payload: ByteBuffer): TrackerFrame? {
+		val flags = payload.getInt()
+		if (flags == 0) return null
+		val trackerPosition = if (TrackerFrameData.TRACKER_POSITION_ENUM.check(flags)) {
+			TrackerPosition.values()[payload.getInt()]
+		} else {
+			null
+		}
+		val rotation = if (TrackerFrameData.ROTATION.check(flags)) readQuaternion(payload) else null
+		val position = if (TrackerFrameData.POSITION.check(flags)) readVector3(payload) else null
+		val acceleration = if (TrackerFrameData.ACCELERATION.check(flags)) readVector3(payload) else null
+		val rawRotation = if (TrackerFrameData.RAW_ROTATION.check(flags)) readQuaternion(payload) else null
+		return TrackerFrame(trackerPosition, rotation, position, acceleration, rawRotation)
+	}
+
+	private fun readQuaternion(buffer: ByteBuffer): Quaternion =
+		Quaternion(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat())
+
+	private fun readVector3(buffer: ByteBuffer): Vector3 = Vector3(buffer.getFloat(), buffer.getFloat(), buffer.getFloat())
+
+	/**
+	 * Converts a recording in the stream or chunked format to the column format
+	 *
+	 * @return `false` if [source] already is in the column format
+	 */
+	@Throws(IOException::class)
+	fun convertToColumns(source: File, target: File): Boolean {
+		if (isColumnFile(source)) return false
+		val frames = readFromFile(source)
+		// Write next to the target first so converting in place can't lose the
+		// recording
+		val temp = File(target.absoluteFile.parentFile, "${target.name}.tmp")
+		writeColumnsToFile(temp, frames)
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING)
+		return true
+	}
 
 	fun tryReadFromFile(file: File): PoseFrames? = try {
 		readFromFile(file)
@@ -35,7 +35,7 @@ class PoseFrames : Iterable<Array<TrackerFrame?>> {
 	 */
 	fun getTrackerForPosition(position: TrackerPosition, index: Int = 0): TrackerFrames? {
 		for (tracker in frameHolders) {
-			if (tracker.tryGetFrame(index)?.trackerPosition == position) return tracker
+			if (tracker.tryGetTrackerPosition(index) == position) return tracker
 		}
 		return null
 	}
@@ -63,8 +63,8 @@ class PoseFrames : Iterable<Array<TrackerFrame?>> {
 	 */
 	fun getMaxHeight(trackerFrames: TrackerFrames): Float {
 		var maxHeight = 0f
-		for (frame in trackerFrames.frames) {
-			val framePosition = frame?.tryGetPosition() ?: continue
+		for (i in 0 until trackerFrames.frames.size) {
+			val framePosition = trackerFrames.tryGetPosition(i) ?: continue
 
 			if (framePosition.y > maxHeight) {
 				maxHeight = framePosition.y
@@ -7,23 +7,60 @@ import dev.slimevr.util.ann.VRServerThread
 import io.eiren.util.collections.FastList
 import io.eiren.util.logging.LogManager
 import org.apache.commons.lang3.tuple.Pair
+import java.io.File
+import java.io.IOException
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ExecutionException
 import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
 import java.util.function.Consumer
 
 class PoseRecorder(private val server: VRServer) {
 	inner class RecordingProgress(val frame: Int, val totalFrames: Int)
 
+	/**
+	 * A recording streamed to a file. [file] completes once the recording is
+	 * stopped and the file is closed, the frames are only read from it once
+	 * they're first asked for.
+	 */
+	class StreamedRecording : Future<PoseFrames> {
+		val file = CompletableFuture<File>()
+		private var frames: PoseFrames? = null
+
+		@Synchronized
+		override fun get(): PoseFrames = frames ?: read(file.get())
+
+		override fun get(timeout: Long, unit: TimeUnit): PoseFrames {
+			file.get(timeout, unit)
+			return get()
+		}
+
+		private fun read(file: File): PoseFrames = try {
+			PoseFrameIO.readFromFile(file).also { frames = it }
+		} catch (e: IOException) {
+			throw ExecutionException(e)
+		}
+
+		override fun cancel(mayInterruptIfRunning: Boolean): Boolean = file.cancel(mayInterruptIfRunning)
+
+		override fun isCancelled(): Boolean = file.isCancelled
+
+		override fun isDone(): Boolean = file.isDone
+	}
+
 	private var poseFrame: PoseFrames? = null
 	private var numFrames = -1
 	private var frameCursor = 0
 	private var frameRecordingInterval = 60L
 	private var nextFrameTimeMs = -1L
-	private var currentRecording: CompletableFuture<PoseFrames>? = null
+	private var currentRecording: Future<PoseFrames>? = null
 	private var currentFrameCallback: Consumer<RecordingProgress>? = null
 	var trackers = FastList<Pair<Tracker, TrackerFrames>>()
 
+	// Set while streaming a recording to disk instead of keeping it in memory
+	private var chunkWriter: PoseFrameChunkWriter? = null
+	private var streamTrackers: List<Tracker> = emptyList()
+
 	init {
 		server.addOnTick { onTick() }
 	}
@@ -35,7 +72,7 @@ class PoseRecorder(private val server: VRServer) {
 		}
 		val poseFrame = poseFrame
 		val trackers: List<Pair<Tracker, TrackerFrames>> = trackers
-		if (poseFrame == null) {
+		if (poseFrame == null && chunkWriter == null) {
 			return
 		}
 		if (frameCursor >= numFrames) {
@@ -62,9 +99,14 @@ class PoseRecorder(private val server: VRServer) {
 			// A stopped recording will be accounted for by an empty "trackers"
 			// list
 			val cursor = frameCursor++
-			for (tracker in trackers) {
-				// Add a frame for each tracker
-				tracker.right.addFrameFromTracker(cursor, tracker.left)
+			val chunkWriter = chunkWriter
+			if (chunkWriter != null) {
+				chunkWriter.offer(streamTrackers)
+			} else {
+				for (tracker in trackers) {
+					// Add a frame for each tracker
+					tracker.right.addFrameFromTracker(cursor, tracker.left)
+				}
 			}
 
 			currentFrameCallback?.accept(RecordingProgress(frameCursor, numFrames))
@@ -76,17 +118,40 @@ class PoseRecorder(private val server: VRServer) {
 		}
 	}
 
+	/**
+	 * Starts recording [numFrames] frames of [trackers], one every
+	 * [intervalMs].
+	 *
+	 * With a [streamFile], frames are written to it in the background while
+	 * recording instead of being kept in memory, so the recording can be as
+	 * long as needed (up to [Int.MAX_VALUE] frames, stop it with
+	 * [stopFrameRecording]) and survives a crash. The returned future then is a
+	 * [StreamedRecording], which only reads the frames back from the file when
+	 * they're asked for.
+	 */
 	@Synchronized
 	fun startFrameRecording(
 		numFrames: Int,
 		intervalMs: Long,
 		trackers: List<Tracker?> = server.allTrackers,
+		streamFile: File? = null,
 		frameCallback: Consumer<RecordingProgress>? = null,
 	): Future<PoseFrames> {
 		require(numFrames >= 1) { "numFrames must at least have a value of 1." }
 		require(intervalMs >= 1) { "intervalMs must at least have a value of 1." }
 		require(trackers.isNotEmpty()) { "trackers must have at least one entry." }
 		cancelFrameRecording()
+
+		if (streamFile != null) {
+			val streamTrackers = trackers.filterNotNull().filter { !it.isInternal }
+			require(streamTrackers.isNotEmpty()) { "trackers must have at least one valid tracker." }
+			chunkWriter = PoseFrameChunkWriter(streamFile, streamTrackers.map { it.name })
+			this.streamTrackers = streamTrackers
+			LogManager.info("[PoseRecorder] Streaming recording to \"${streamFile.path}\"")
+			startRecording(numFrames, intervalMs, frameCallback)
+			return StreamedRecording().also { currentRecording = it }
+		}
+
 		val poseFrame = PoseFrames(trackers.size)
 
 		// Update tracker list
@@ -107,6 +172,15 @@ class PoseRecorder(private val server: VRServer) {
 		require(this.trackers.isNotEmpty()) { "trackers must have at least one valid tracker." }
 
 		this.poseFrame = poseFrame
+		startRecording(numFrames, intervalMs, frameCallback)
+		return CompletableFuture<PoseFrames>().also { currentRecording = it }
+	}
+
+	private fun startRecording(
+		numFrames: Int,
+		intervalMs: Long,
+		frameCallback: Consumer<RecordingProgress>?,
+	) {
 		frameCursor = 0
 		this.numFrames = numFrames
 		frameRecordingInterval = intervalMs
@@ -118,15 +192,29 @@ class PoseRecorder(private val server: VRServer) {
 			)
 
 		currentFrameCallback = frameCallback
-		val internalCurrentRecording = CompletableFuture<PoseFrames>()
-		currentRecording = internalCurrentRecording
-		return internalCurrentRecording
 	}
 
 	@Synchronized
 	private fun internalStopFrameRecording(cancel: Boolean) {
 		val currentRecording = currentRecording
-		if (currentRecording != null && !currentRecording.isDone) {
+		val chunkWriter = chunkWriter
+		if (chunkWriter != null) {
+			val writtenFile = chunkWriter.close()
+			if (chunkWriter.droppedFrames > 0) {
+				LogManager.warning("[PoseRecorder] Dropped ${chunkWriter.droppedFrames} frames while streaming the recording")
+			}
+			if (currentRecording is StreamedRecording && !currentRecording.isDone) {
+				if (cancel) {
+					currentRecording.cancel(true)
+				} else {
+					// Hand out the file once the writer is done, without blocking the
+					// server thread
+					writtenFile.whenComplete { file, e ->
+						if (e != null) currentRecording.file.completeExceptionally(e) else currentRecording.file.complete(file)
+					}
+				}
+			}
+		} else if (currentRecording is CompletableFuture && !currentRecording.isDone) {
 			val currentFrames = poseFrame
 			if (cancel || currentFrames == null) {
 				// If it's supposed to be cancelled or there's actually no recording,
@@ -141,6 +229,8 @@ class PoseRecorder(private val server: VRServer) {
 		frameCursor = 0
 		trackers.clear()
 		poseFrame = null
+		this.chunkWriter = null
+		streamTrackers = emptyList()
 	}
 
 	@Synchronized
@@ -41,7 +41,7 @@ class PlayerTracker(val trackerFrames: TrackerFrames, val tracker: Tracker, priv
 	}
 
 	private fun setTrackerStateFromIndex(index: Int = internalCursor) {
-		val frame = trackerFrames.tryGetFrame(index) ?: return
+		if (index < 0 || index >= trackerFrames.frames.size) return
 
 		/*
 		 * TODO: No way to set adjusted rotation manually? That might be nice to have...
@@ -49,22 +49,22 @@ class PlayerTracker(val trackerFrames: TrackerFrames, val tracker: Tracker, priv
 		 * enabling any adjustments
 		 */
 
-		val trackerPosition = frame.tryGetTrackerPosition()
+		val trackerPosition = trackerFrames.tryGetTrackerPosition(index)
 		if (trackerPosition != null) {
 			tracker.trackerPosition = trackerPosition
 		}
 
-		val rotation = frame.tryGetRotation()
+		val rotation = trackerFrames.tryGetRotation(index)
 		if (rotation != null) {
 			tracker.setRotation(rotation)
 		}
 
-		val position = frame.tryGetPosition()
+		val position = trackerFrames.tryGetPosition(index)
 		if (position != null) {
 			tracker.position = position * internalScale
 		}
 
-		val acceleration = frame.tryGetAcceleration()
+		val acceleration = trackerFrames.tryGetAcceleration(index)
 		if (acceleration != null) {
 			tracker.setAcceleration(acceleration * internalScale)
 		}
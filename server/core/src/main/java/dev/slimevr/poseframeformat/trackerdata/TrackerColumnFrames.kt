@@ -0,0 +1,119 @@
+package dev.slimevr.poseframeformat.trackerdata
+
+import dev.slimevr.tracking.trackers.TrackerPosition
+import io.eiren.util.collections.FastList
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+
+/**
+ * A list view of [columns] which creates [TrackerFrame]s only when they're
+ * accessed. Removing frames only drops them from the view, adding or replacing
+ * a frame copies the remaining frames into a list on the heap first.
+ */
+class TrackerColumnFrames(val columns: TrackerColumns) : AbstractMutableList<TrackerFrame?>() {
+	// Frame of the columns for every index of the view, null until a frame is
+	// removed
+	private var frameIndices: IntArray? = null
+	private var frameCount = columns.frameCount
+
+	// The frames once they were added to or replaced, the columns aren't used
+	// anymore after that
+	private var heapFrames: FastList<TrackerFrame?>? = null
+
+	override val size: Int
+		get() = heapFrames?.size ?: frameCount
+
+	private fun columnIndex(index: Int): Int {
+		if (index < 0 || index >= frameCount) throw IndexOutOfBoundsException("Index: $index, Size: $frameCount")
+		return frameIndices?.get(index) ?: index
+	}
+
+	override fun get(index: Int): TrackerFrame? {
+		val heapFrames = heapFrames
+		return if (heapFrames != null) heapFrames[index] else columns.getFrame(columnIndex(index))
+	}
+
+	override fun removeAt(index: Int): TrackerFrame? {
+		val frame = get(index)
+		removeRange(index, index + 1)
+		return frame
+	}
+
+	override fun removeRange(fromIndex: Int, toIndex: Int) {
+		modCount++
+		val heapFrames = heapFrames
+		if (heapFrames != null) {
+			removeFrames { it in fromIndex until toIndex }
+			return
+		}
+		if (fromIndex >= toIndex) return
+		val frameIndices = frameIndices(toIndex - 1)
+		System.arraycopy(frameIndices, toIndex, frameIndices, fromIndex, frameCount - toIndex)
+		frameCount -= toIndex - fromIndex
+	}
+
+	/**
+	 * Removes the frames at the indices [remove] returns `true` for in a single
+	 * pass
+	 */
+	fun removeFrames(remove: (Int) -> Boolean) {
+		modCount++
+		val heapFrames = heapFrames
+		var kept = 0
+		if (heapFrames != null) {
+			for (i in heapFrames.indices) {
+				if (!remove(i)) heapFrames[kept++] = heapFrames[i]
+			}
+			while (heapFrames.size > kept) {
+				heapFrames.removeAt(heapFrames.size - 1)
+			}
+			return
+		}
+		if (frameCount == 0) return
+		val frameIndices = frameIndices(frameCount - 1)
+		for (i in 0 until frameCount) {
+			if (!remove(i)) frameIndices[kept++] = frameIndices[i]
+		}
+		frameCount = kept
+	}
+
+	// Checks the index and creates the frame indices if no frame was removed yet
+	private fun frameIndices(index: Int): IntArray {
+		columnIndex(index)
+		return frameIndices ?: IntArray(frameCount) { it }.also { frameIndices = it }
+	}
+
+	override fun add(index: Int, element: TrackerFrame?) {
+		modCount++
+		toHeap().add(index, element)
+	}
+
+	override fun set(index: Int, element: TrackerFrame?): TrackerFrame? = toHeap().set(index, element)
+
+	private fun toHeap(): FastList<TrackerFrame?> = heapFrames ?: FastList<TrackerFrame?>(frameCount + 1).also {
+		for (i in 0 until frameCount) {
+			it.add(columns.getFrame(columnIndex(i)))
+		}
+		heapFrames = it
+	}
+
+	fun tryGetTrackerPosition(index: Int): TrackerPosition? {
+		val heapFrames = heapFrames
+		return if (heapFrames != null) heapFrames[index]?.tryGetTrackerPosition() else columns.tryGetTrackerPosition(columnIndex(index))
+	}
+
+	fun tryGetRotation(index: Int): Quaternion? {
+		val heapFrames = heapFrames
+		return if (heapFrames != null) heapFrames[index]?.tryGetRotation() else columns.tryGetRotation(columnIndex(index))
+	}
+
+	fun tryGetPosition(index: Int): Vector3? {
+		val heapFrames = heapFrames
+		return if (heapFrames != null) heapFrames[index]?.tryGetPosition() else columns.tryGetPosition(columnIndex(index))
+	}
+
+	fun tryGetAcceleration(index: Int): Vector3? {
+		val heapFrames = heapFrames
+		return if (heapFrames != null) heapFrames[index]?.tryGetAcceleration() else columns.tryGetAcceleration(columnIndex(index))
+	}
+}
@@ -0,0 +1,221 @@
+package dev.slimevr.poseframeformat.trackerdata
+
+import dev.slimevr.tracking.trackers.TrackerPosition
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * The frames of a tracker stored as one column per [TrackerFrameData], read
+ * straight from [buffer] without creating a [TrackerFrame] per frame.
+ *
+ * The columns start with a presence bitmap per stored field, followed by the
+ * values of every stored field. Values of frames missing a field are zero.
+ */
+class TrackerColumns(
+	val name: String,
+	val frameCount: Int,
+	val fieldMask: Int,
+	private val buffer: ByteBuffer,
+) {
+	// Offsets of the columns, indexed by TrackerFrameData.ordinal
+	private val presenceOffsets = IntArray(TrackerFrameData.values().size) { -1 }
+	private val valueOffsets = IntArray(TrackerFrameData.values().size) { -1 }
+
+	init {
+		val end = layout(frameCount, fieldMask, presenceOffsets, valueOffsets)
+		require(end <= buffer.capacity()) { "Columns of tracker \"$name\" are truncated." }
+	}
+
+	fun hasData(frame: Int, field: TrackerFrameData): Boolean {
+		val offset = presenceOffsets[field.ordinal]
+		if (offset < 0) return false
+		return (buffer.getLong(offset + (frame ushr 6) * 8) ushr (frame and 63)) and 1L != 0L
+	}
+
+	fun tryGetTrackerPosition(frame: Int): TrackerPosition? {
+		if (!hasData(frame, TrackerFrameData.TRACKER_POSITION_ENUM)) return null
+		val offset = valueOffsets[TrackerFrameData.TRACKER_POSITION_ENUM.ordinal]
+		return TrackerPosition.values()[buffer.get(offset + frame).toInt()]
+	}
+
+	fun tryGetRotation(frame: Int): Quaternion? = readQuaternion(frame, TrackerFrameData.ROTATION)
+
+	fun tryGetRawRotation(frame: Int): Quaternion? = readQuaternion(frame, TrackerFrameData.RAW_ROTATION)
+
+	fun tryGetPosition(frame: Int): Vector3? = readVector3(frame, TrackerFrameData.POSITION)
+
+	fun tryGetAcceleration(frame: Int): Vector3? = readVector3(frame, TrackerFrameData.ACCELERATION)
+
+	/**
+	 * Creates a [TrackerFrame] with the data of [frame], frames without any
+	 * data are [TrackerFrame.empty]
+	 */
+	fun getFrame(frame: Int): TrackerFrame {
+		val trackerPosition = tryGetTrackerPosition(frame)
+		val rotation = tryGetRotation(frame)
+		val position = tryGetPosition(frame)
+		val acceleration = tryGetAcceleration(frame)
+		val rawRotation = tryGetRawRotation(frame)
+		if (trackerPosition == null && rotation == null && position == null && acceleration == null && rawRotation == null) {
+			return TrackerFrame.empty
+		}
+		return TrackerFrame(trackerPosition, rotation, position, acceleration, rawRotation)
+	}
+
+	/**
+	 * Writes the data of [trackerFrame] to [frame], the buffer must be
+	 * writable and the frame not written before
+	 */
+	fun setFrame(frame: Int, trackerFrame: TrackerFrame) {
+		for (i in FIELDS.indices) {
+			val field = FIELDS[i]
+			val valueOffset = valueOffsets[field.ordinal]
+			if (valueOffset < 0) continue
+			val offset = valueOffset + frame * FIELD_SIZES[i]
+			when (field) {
+				TrackerFrameData.TRACKER_POSITION_ENUM -> {
+					val trackerPosition = trackerFrame.tryGetTrackerPosition() ?: continue
+					buffer.put(offset, trackerPosition.ordinal.toByte())
+				}
+
+				TrackerFrameData.ROTATION -> putQuaternion(offset, trackerFrame.tryGetRotation() ?: continue)
+
+				TrackerFrameData.POSITION -> putVector3(offset, trackerFrame.tryGetPosition() ?: continue)
+
+				TrackerFrameData.ACCELERATION -> putVector3(offset, trackerFrame.tryGetAcceleration() ?: continue)
+
+				TrackerFrameData.RAW_ROTATION -> putQuaternion(offset, trackerFrame.tryGetRawRotation() ?: continue)
+
+				else -> continue
+			}
+			val word = presenceOffsets[field.ordinal] + (frame ushr 6) * 8
+			buffer.putLong(word, buffer.getLong(word) or (1L shl (frame and 63)))
+		}
+	}
+
+	private fun putQuaternion(offset: Int, quaternion: Quaternion) {
+		buffer.putFloat(offset, quaternion.w)
+		buffer.putFloat(offset + 4, quaternion.x)
+		buffer.putFloat(offset + 8, quaternion.y)
+		buffer.putFloat(offset + 12, quaternion.z)
+	}
+
+	private fun putVector3(offset: Int, vector: Vector3) {
+		buffer.putFloat(offset, vector.x)
+		buffer.putFloat(offset + 4, vector.y)
+		buffer.putFloat(offset + 8, vector.z)
+	}
+
+	private fun readQuaternion(frame: Int, field: TrackerFrameData): Quaternion? {
+		if (!hasData(frame, field)) return null
+		val offset = valueOffsets[field.ordinal] + frame * 16
+		return Quaternion(
+			buffer.getFloat(offset),
+			buffer.getFloat(offset + 4),
+			buffer.getFloat(offset + 8),
+			buffer.getFloat(offset + 12),
+		)
+	}
+
+	private fun readVector3(frame: Int, field: TrackerFrameData): Vector3? {
+		if (!hasData(frame, field)) return null
+		val offset = valueOffsets[field.ordinal] + frame * 12
+		return Vector3(buffer.getFloat(offset), buffer.getFloat(offset + 4), buffer.getFloat(offset + 8))
+	}
+
+	companion object {
+		/**
+		 * The fields that can be stored, in the order of their columns
+		 */
+		val FIELDS = arrayOf(
+			TrackerFrameData.TRACKER_POSITION_ENUM,
+			TrackerFrameData.ROTATION,
+			TrackerFrameData.POSITION,
+			TrackerFrameData.ACCELERATION,
+			TrackerFrameData.RAW_ROTATION,
+		)
+
+		// Bytes per frame of each field's values
+		private val FIELD_SIZES = intArrayOf(1, 16, 12, 12, 16)
+
+		private fun bitmapSize(frameCount: Int): Int = ((frameCount + 63) ushr 6) * 8
+
+		private fun align(size: Int): Int = (size + 7) and 7.inv()
+
+		private fun align(size: Long): Long = (size + 7) and 7L.inv()
+
+		/**
+		 * Size in bytes of the columns of [frameCount] frames with the fields of
+		 * [fieldMask]
+		 */
+		fun columnsSize(frameCount: Int, fieldMask: Int): Long {
+			var size = 0L
+			for (i in FIELDS.indices) {
+				if (FIELDS[i].check(fieldMask)) {
+					size += bitmapSize(frameCount) + align(frameCount.toLong() * FIELD_SIZES[i])
+				}
+			}
+			return size
+		}
+
+		// Fills the column offsets of the fields in fieldMask, returns the end of
+		// the columns
+		private fun layout(
+			frameCount: Int,
+			fieldMask: Int,
+			presenceOffsets: IntArray,
+			valueOffsets: IntArray,
+		): Int {
+			var offset = 0
+			for (field in FIELDS) {
+				if (field.check(fieldMask)) {
+					presenceOffsets[field.ordinal] = offset
+					offset += bitmapSize(frameCount)
+				}
+			}
+			for (i in FIELDS.indices) {
+				if (FIELDS[i].check(fieldMask)) {
+					valueOffsets[FIELDS[i].ordinal] = offset
+					offset += align(frameCount * FIELD_SIZES[i])
+				}
+			}
+			return offset
+		}
+
+		/**
+		 * Creates empty columns for [frameCount] frames with the fields of
+		 * [fieldMask] on the heap, to be filled with [setFrame]
+		 */
+		fun allocate(name: String, frameCount: Int, fieldMask: Int): TrackerColumns {
+			val size = columnsSize(frameCount, fieldMask)
+			require(size <= Int.MAX_VALUE) { "Recording of tracker \"$name\" is too long." }
+			return TrackerColumns(name, frameCount, fieldMask, ByteBuffer.allocate(size.toInt()).order(ByteOrder.LITTLE_ENDIAN))
+		}
+
+		/**
+		 * Writes the columns of [frames] with the fields of [fieldMask] to
+		 * [buffer], which must hold [columnsSize] bytes of zeros after its
+		 * position
+		 */
+		fun writeColumns(buffer: ByteBuffer, frames: List<TrackerFrame?>, fieldMask: Int) {
+			val columns = TrackerColumns("", frames.size, fieldMask, buffer.slice().order(buffer.order()))
+			for (i in frames.indices) {
+				columns.setFrame(i, frames[i] ?: continue)
+			}
+			buffer.position(buffer.position() + columnsSize(frames.size, fieldMask).toInt())
+		}
+
+		/**
+		 * The fields present in any of [frames]
+		 */
+		fun fieldMask(frames: List<TrackerFrame?>): Int {
+			var fieldMask = 0
+			for (frame in frames) {
+				if (frame != null) fieldMask = fieldMask or frame.dataFlags
+			}
+			return fieldMask
+		}
+	}
+}
@@ -3,13 +3,16 @@ package dev.slimevr.poseframeformat.trackerdata
 import dev.slimevr.VRServer
 import dev.slimevr.poseframeformat.trackerdata.TrackerFrame.Companion.fromTracker
 import dev.slimevr.tracking.trackers.Tracker
+import dev.slimevr.tracking.trackers.TrackerPosition
 import dev.slimevr.tracking.trackers.TrackerStatus
 import io.eiren.util.collections.FastList
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
 
-data class TrackerFrames(val name: String = "", val frames: FastList<TrackerFrame?>) {
+data class TrackerFrames(val name: String = "", val frames: MutableList<TrackerFrame?>) {
 
 	constructor(name: String = "", initialCapacity: Int = 5) : this(name, FastList<TrackerFrame?>(initialCapacity))
-	constructor(baseTracker: Tracker, frames: FastList<TrackerFrame?>) : this(baseTracker.name, frames)
+	constructor(baseTracker: Tracker, frames: MutableList<TrackerFrame?>) : this(baseTracker.name, frames)
 	constructor(baseTracker: Tracker, initialCapacity: Int = 5) : this(baseTracker, FastList<TrackerFrame?>(initialCapacity))
 
 	fun addFrameFromTracker(index: Int, tracker: Tracker): TrackerFrame? {
@@ -24,10 +27,56 @@ data class TrackerFrames(val name: String = "", val frames: FastList<TrackerFram
 		return trackerFrame
 	}
 
+	/**
+	 * Removes the frames at the indices [remove] returns `true` for in a single
+	 * pass
+	 */
+	fun removeFrames(remove: (Int) -> Boolean) {
+		val frames = frames
+		if (frames is TrackerColumnFrames) {
+			frames.removeFrames(remove)
+			return
+		}
+		var kept = 0
+		for (i in frames.indices) {
+			if (!remove(i)) frames[kept++] = frames[i]
+		}
+		while (frames.size > kept) {
+			frames.removeAt(frames.size - 1)
+		}
+	}
+
 	fun tryGetFrame(index: Int): TrackerFrame? = if (index < 0 || index >= frames.size) null else frames[index]
 
 	fun tryGetFirstNotNullFrame(): TrackerFrame? = frames.firstOrNull { frame -> frame != null }
 
+	// region Frame Data Try Getters
+	// Read from the columns directly when possible instead of creating a frame
+	fun tryGetTrackerPosition(index: Int): TrackerPosition? {
+		if (index < 0 || index >= frames.size) return null
+		val frames = frames
+		return if (frames is TrackerColumnFrames) frames.tryGetTrackerPosition(index) else frames[index]?.tryGetTrackerPosition()
+	}
+
+	fun tryGetRotation(index: Int): Quaternion? {
+		if (index < 0 || index >= frames.size) return null
+		val frames = frames
+		return if (frames is TrackerColumnFrames) frames.tryGetRotation(index) else frames[index]?.tryGetRotation()
+	}
+
+	fun tryGetPosition(index: Int): Vector3? {
+		if (index < 0 || index >= frames.size) return null
+		val frames = frames
+		return if (frames is TrackerColumnFrames) frames.tryGetPosition(index) else frames[index]?.tryGetPosition()
+	}
+
+	fun tryGetAcceleration(index: Int): Vector3? {
+		if (index < 0 || index >= frames.size) return null
+		val frames = frames
+		return if (frames is TrackerColumnFrames) frames.tryGetAcceleration(index) else frames[index]?.tryGetAcceleration()
+	}
+	// endregion
+
 	fun toTracker(): Tracker {
 		val firstFrame = tryGetFirstNotNullFrame() ?: TrackerFrame.empty
 		val tracker = Tracker(
@@ -1,9 +1,12 @@
 package dev.slimevr.protocol;
 
+import dev.slimevr.protocol.datafeed.DataFeedDelta;
 import solarxr_protocol.data_feed.DataFeedConfigT;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 public class ConnectionContext {
@@ -16,6 +19,16 @@ public class ConnectionContext {
 	// Futurabeast
 	private final List<Long> dataFeedTimers = new ArrayList<>();
 
+	// Masks of each data feed config, configs with the same masks get the same
+	// data feed updates
+	private final List<ByteBuffer> dataFeedKeys = new ArrayList<>();
+
+	// What each data feed last sent, for clients that opted in to delta updates.
+	// Built on by the server thread while the websocket thread asks for
+	// keyframes
+	private final List<DataFeedDelta> dataFeedDeltas = new CopyOnWriteArrayList<>();
+	private volatile boolean useDataFeedDeltas = false;
+
 	private final List<Integer> subscribedTopics = new ArrayList<>();
 
 	private boolean useSerial = false;
@@ -31,9 +44,27 @@ public class ConnectionContext {
 		return dataFeedTimers;
 	}
 
+	public List<ByteBuffer> getDataFeedKeys() {
+		return dataFeedKeys;
+	}
+
+	public List<DataFeedDelta> getDataFeedDeltas() {
+		return dataFeedDeltas;
+	}
+
+	public boolean useDataFeedDeltas() {
+		return useDataFeedDeltas;
+	}
+
+	public void setUseDataFeedDeltas(boolean useDataFeedDeltas) {
+		this.useDataFeedDeltas = useDataFeedDeltas;
+	}
+
 	public void clearDataFeeds() {
 		this.dataFeedConfigList.clear();
 		this.dataFeedTimers.clear();
+		this.dataFeedKeys.clear();
+		this.dataFeedDeltas.clear();
 	}
 
 	public List<Integer> getSubscribedTopics() {
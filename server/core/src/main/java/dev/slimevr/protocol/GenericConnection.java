@@ -11,4 +11,19 @@ public interface GenericConnection {
 	ConnectionContext getContext();
 
 	void send(ByteBuffer bytes);
+
+	/**
+	 * Sends an update of the data feed at the given index, connections may drop
+	 * it if a newer update of the same data feed replaces it before it's sent
+	 */
+	default void sendDataFeed(int index, ByteBuffer bytes) {
+		send(bytes);
+	}
+
+	/**
+	 * Messages waiting to be sent to the client
+	 */
+	default int getQueueDepth() {
+		return 0;
+	}
 }
@@ -28,6 +28,9 @@ public class ProtocolAPI {
 		this.rpcHandler = new RPCHandler(this);
 		this.dataFeedHandler = new DataFeedHandler(this);
 		this.pubSubHandler = new PubSubHandler(this);
+
+		this.pubSubHandler
+			.registerTopicListener(DataFeedHandler.DELTA_TOPIC, this.dataFeedHandler::onDeltaMessage);
 	}
 
 	public void onMessage(GenericConnection conn, ByteBuffer message) {
@@ -1,9 +1,16 @@
 package dev.slimevr.protocol;
 
+import java.util.Map;
 import java.util.stream.Stream;
 
 
 public interface ProtocolAPIServer {
 
 	Stream<GenericConnection> getAPIConnections();
+
+	/**
+	 * Adds the stats of the connections since the last call to out
+	 */
+	default void addStats(Map<String, String> out) {
+	}
 }
@@ -24,6 +24,7 @@ import solarxr_protocol.datatypes.math.Vec3f;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -181,7 +182,84 @@ public class DataFeedBuilder {
 		TrackerDataMaskT mask,
 		Tracker tracker
 	) {
-		int trackerInfosOffset = DataFeedBuilder.createTrackerInfos(fbb, mask.getInfo(), tracker);
+		return createTrackerData(fbb, mask, tracker, null);
+	}
+
+	/**
+	 * With a delta, only the fields that changed since the last update are
+	 * added, and nothing is created if none did
+	 *
+	 * @return The offset of the tracker data, or 0 if nothing was created
+	 */
+	public static int createTrackerData(
+		FlatBufferBuilder fbb,
+		TrackerDataMaskT mask,
+		Tracker tracker,
+		DataFeedDelta delta
+	) {
+		Quaternion referenceAdjusted = null;
+		Quaternion identityAdjusted = null;
+		if (
+			tracker.getHasRotation() && (tracker.getNeedsMounting() || tracker.getNeedsReset())
+		) {
+			if (mask.getRotationReferenceAdjusted())
+				referenceAdjusted = tracker.getRotation();
+			if (mask.getRotationIdentityAdjusted())
+				identityAdjusted = tracker.getNeedsMounting()
+					? tracker.getIdentityAdjustedRotation()
+					: tracker.getRawRotation();
+		}
+
+		boolean info = mask.getInfo()
+			&& (delta == null
+				|| delta.changed(tracker, DataFeedDelta.TRACKER_INFO, getTrackerInfoKey(tracker)));
+		boolean status = mask.getStatus()
+			&& (delta == null
+				|| delta.changed(tracker, DataFeedDelta.TRACKER_STATUS, tracker.getStatus()));
+		boolean position = mask.getPosition()
+			&& tracker.getHasPosition()
+			&& (delta == null
+				|| delta.changed(tracker, DataFeedDelta.TRACKER_POSITION, tracker.getPosition()));
+		boolean rotation = mask.getRotation()
+			&& tracker.getHasRotation()
+			&& (delta == null
+				|| delta.changed(tracker, DataFeedDelta.TRACKER_ROTATION, tracker.getRawRotation()));
+		boolean acceleration = mask.getLinearAcceleration()
+			&& tracker.getHasAcceleration()
+			&& (delta == null
+				|| delta
+					.changed(tracker, DataFeedDelta.TRACKER_ACCELERATION, tracker.getAcceleration()));
+		boolean temperature = mask.getTemp()
+			&& (delta == null
+				|| delta
+					.changed(tracker, DataFeedDelta.TRACKER_TEMPERATURE, tracker.getTemperature()));
+		boolean sendReferenceAdjusted = referenceAdjusted != null
+			&& (delta == null
+				|| delta
+					.changed(tracker, DataFeedDelta.TRACKER_REFERENCE_ADJUSTED, referenceAdjusted));
+		boolean sendIdentityAdjusted = identityAdjusted != null
+			&& (delta == null
+				|| delta
+					.changed(tracker, DataFeedDelta.TRACKER_IDENTITY_ADJUSTED, identityAdjusted));
+		boolean tps = mask.getTps()
+			&& (delta == null
+				|| delta.changed(tracker, DataFeedDelta.TRACKER_TPS, (int) tracker.getTps()));
+
+		if (
+			delta != null
+				&& !(info
+					|| status
+					|| position
+					|| rotation
+					|| acceleration
+					|| temperature
+					|| sendReferenceAdjusted
+					|| sendIdentityAdjusted
+					|| tps)
+		)
+			return 0;
+
+		int trackerInfosOffset = DataFeedBuilder.createTrackerInfos(fbb, info, tracker);
 		int trackerIdOffset = DataFeedBuilder.createTrackerId(fbb, tracker);
 
 		TrackerData.startTrackerData(fbb);
@@ -190,56 +268,71 @@ public class DataFeedBuilder {
 
 		if (trackerInfosOffset != 0)
 			TrackerData.addInfo(fbb, trackerInfosOffset);
-		if (mask.getStatus())
+		if (status)
 			TrackerData.addStatus(fbb, tracker.getStatus().getId() + 1);
-		if (mask.getPosition() && tracker.getHasPosition())
+		if (position)
 			TrackerData.addPosition(fbb, DataFeedBuilder.createTrackerPosition(fbb, tracker));
-		if (mask.getRotation() && tracker.getHasRotation())
+		if (rotation)
 			TrackerData.addRotation(fbb, DataFeedBuilder.createTrackerRotation(fbb, tracker));
-		if (mask.getLinearAcceleration() && tracker.getHasAcceleration())
+		if (acceleration)
 			TrackerData
 				.addLinearAcceleration(
 					fbb,
 					DataFeedBuilder.createTrackerAcceleration(fbb, tracker)
 				);
-		if (mask.getTemp()) {
+		if (temperature) {
 			int trackerTemperatureOffset = DataFeedBuilder.createTrackerTemperature(fbb, tracker);
 			if (trackerTemperatureOffset != 0)
 				TrackerData.addTemp(fbb, trackerTemperatureOffset);
 		}
-		if (tracker.getNeedsMounting() && tracker.getHasRotation()) {
-			if (mask.getRotationReferenceAdjusted()) {
-				TrackerData
-					.addRotationReferenceAdjusted(fbb, createQuat(fbb, tracker.getRotation()));
-			}
-			if (mask.getRotationIdentityAdjusted()) {
-				TrackerData
-					.addRotationIdentityAdjusted(
-						fbb,
-						createQuat(fbb, tracker.getIdentityAdjustedRotation())
-					);
-			}
-		} else if (tracker.getNeedsReset() && tracker.getHasRotation()) {
-			if (mask.getRotationReferenceAdjusted()) {
-				TrackerData
-					.addRotationReferenceAdjusted(fbb, createQuat(fbb, tracker.getRotation()));
-			}
-			if (mask.getRotationIdentityAdjusted()) {
-				TrackerData
-					.addRotationIdentityAdjusted(fbb, createQuat(fbb, tracker.getRawRotation()));
-			}
+		if (sendReferenceAdjusted) {
+			TrackerData.addRotationReferenceAdjusted(fbb, createQuat(fbb, referenceAdjusted));
+		}
+		if (sendIdentityAdjusted) {
+			TrackerData.addRotationIdentityAdjusted(fbb, createQuat(fbb, identityAdjusted));
 		}
-		if (mask.getTps()) {
+		if (tps) {
 			TrackerData.addTps(fbb, (int) tracker.getTps());
 		}
 
 		return TrackerData.endTrackerData(fbb);
 	}
 
+	/**
+	 * The values {@link #createTrackerInfos} sends, to tell if they changed
+	 */
+	private static List<Object> getTrackerInfoKey(Tracker tracker) {
+		boolean isImu = tracker.isImu();
+		boolean needsMounting = tracker.getNeedsMounting();
+		return Arrays
+			.asList(
+				tracker.getDisplayName(),
+				tracker.getCustomName(),
+				tracker.getTrackerPosition(),
+				tracker.getUserEditable(),
+				tracker.isComputed(),
+				tracker.getImuType(),
+				isImu,
+				isImu && tracker.getResetsHandler().getAllowDriftCompensation(),
+				needsMounting ? tracker.getResetsHandler().getMountingOrientation() : null,
+				needsMounting ? tracker.getResetsHandler().getMountRotFix() : null,
+				tracker.isHmd()
+			);
+	}
+
 	public static int createTrackersData(
 		FlatBufferBuilder fbb,
 		DeviceDataMaskT mask,
 		Device device
+	) {
+		return createTrackersData(fbb, mask, device, null);
+	}
+
+	public static int createTrackersData(
+		FlatBufferBuilder fbb,
+		DeviceDataMaskT mask,
+		Device device,
+		DataFeedDelta delta
 	) {
 		if (mask.getTrackerData() == null)
 			return 0;
@@ -248,10 +341,15 @@ public class DataFeedBuilder {
 
 		device
 			.getTrackers()
-			.forEach(
-				(key, value) -> trackersOffsets
-					.add(DataFeedBuilder.createTrackerData(fbb, mask.getTrackerData(), value))
-			);
+			.forEach((key, value) -> {
+				int offset = DataFeedBuilder
+					.createTrackerData(fbb, mask.getTrackerData(), value, delta);
+				if (delta == null || offset != 0)
+					trackersOffsets.add(offset);
+			});
+
+		if (delta != null && trackersOffsets.isEmpty())
+			return 0;
 
 		DeviceData.startTrackersVector(fbb, trackersOffsets.size());
 		trackersOffsets.forEach(offset -> DeviceData.addTrackers(fbb, offset));
@@ -263,6 +361,23 @@ public class DataFeedBuilder {
 		int id,
 		DeviceDataMaskT mask,
 		Device device
+	) {
+		return createDeviceData(fbb, id, mask, device, null);
+	}
+
+	/**
+	 * With a delta, the hardware status, hardware info and name are only added
+	 * if they changed since the last update, along with the trackers that
+	 * changed, and nothing is created if none did
+	 *
+	 * @return The offset of the device data, or 0 if nothing was created
+	 */
+	public static int createDeviceData(
+		FlatBufferBuilder fbb,
+		int id,
+		DeviceDataMaskT mask,
+		Device device,
+		DataFeedDelta delta
 	) {
 		if (!mask.getDeviceData())
 			return 0;
@@ -280,6 +395,69 @@ public class DataFeedBuilder {
 		if (tracker == null)
 			return 0;
 
+		boolean status = delta == null
+			|| delta
+				.changed(
+					device,
+					DataFeedDelta.DEVICE_STATUS,
+					Arrays
+						.asList(
+							tracker.getStatus(),
+							tracker.getBatteryVoltage(),
+							tracker.getBatteryLevel(),
+							tracker.getPing(),
+							tracker.getSignalStrength()
+						)
+				);
+		boolean info = delta == null
+			|| delta.changed(device, DataFeedDelta.DEVICE_INFO, getHardwareInfoKey(device));
+		boolean name = delta == null
+			|| delta.changed(device, DataFeedDelta.DEVICE_NAME, device.getName());
+		int trackersOffset = DataFeedBuilder.createTrackersData(fbb, mask, device, delta);
+
+		if (delta != null && !status && !info && !name && trackersOffset == 0)
+			return 0;
+
+		int hardwareDataOffset = status ? createHardwareStatus(fbb, tracker) : 0;
+		int hardwareInfoOffset = info ? DataFeedBuilder.createHardwareInfo(fbb, device) : 0;
+
+		int nameOffset = name && device.getName() != null
+			? fbb.createString(device.getName())
+			: 0;
+
+		DeviceData.startDeviceData(fbb);
+		DeviceData.addCustomName(fbb, nameOffset);
+		DeviceData.addId(fbb, DeviceId.createDeviceId(fbb, id));
+		DeviceData.addHardwareStatus(fbb, hardwareDataOffset);
+		DeviceData.addHardwareInfo(fbb, hardwareInfoOffset);
+		DeviceData.addTrackers(fbb, trackersOffset);
+
+		return DeviceData.endDeviceData(fbb);
+	}
+
+	/**
+	 * The values {@link #createHardwareInfo} sends, to tell if they changed
+	 */
+	private static List<Object> getHardwareInfoKey(Device device) {
+		Object address = null;
+		Object firmwareBuild = null;
+		if (device instanceof UDPDevice udpDevice) {
+			address = udpDevice.getIpAddress();
+			firmwareBuild = udpDevice.firmwareBuild;
+		}
+		return Arrays
+			.asList(
+				device.getFirmwareVersion(),
+				device.getManufacturer(),
+				device.getBoardType(),
+				device.getHardwareIdentifier(),
+				device.getMcuType(),
+				address,
+				firmwareBuild
+			);
+	}
+
+	private static int createHardwareStatus(FlatBufferBuilder fbb, Tracker tracker) {
 		HardwareStatus.startHardwareStatus(fbb);
 		HardwareStatus.addErrorStatus(fbb, tracker.getStatus().getId());
 
@@ -297,28 +475,22 @@ public class DataFeedBuilder {
 		}
 
 
-		int hardwareDataOffset = HardwareStatus.endHardwareStatus(fbb);
-		int hardwareInfoOffset = DataFeedBuilder.createHardwareInfo(fbb, device);
-		int trackersOffset = DataFeedBuilder.createTrackersData(fbb, mask, device);
-
-		int nameOffset = device.getName() != null
-			? fbb.createString(device.getName())
-			: 0;
-
-		DeviceData.startDeviceData(fbb);
-		DeviceData.addCustomName(fbb, nameOffset);
-		DeviceData.addId(fbb, DeviceId.createDeviceId(fbb, id));
-		DeviceData.addHardwareStatus(fbb, hardwareDataOffset);
-		DeviceData.addHardwareInfo(fbb, hardwareInfoOffset);
-		DeviceData.addTrackers(fbb, trackersOffset);
-
-		return DeviceData.endDeviceData(fbb);
+		return HardwareStatus.endHardwareStatus(fbb);
 	}
 
 	public static int createSyntheticTrackersData(
 		FlatBufferBuilder fbb,
 		TrackerDataMaskT trackerDataMaskT,
 		List<Tracker> trackers
+	) {
+		return createSyntheticTrackersData(fbb, trackerDataMaskT, trackers, null);
+	}
+
+	public static int createSyntheticTrackersData(
+		FlatBufferBuilder fbb,
+		TrackerDataMaskT trackerDataMaskT,
+		List<Tracker> trackers,
+		DataFeedDelta delta
 	) {
 		if (trackerDataMaskT == null)
 			return 0;
@@ -326,10 +498,12 @@ public class DataFeedBuilder {
 		List<Integer> trackerOffsets = new ArrayList<>();
 
 		trackers
-			.forEach(
-				(tracker) -> trackerOffsets
-					.add(DataFeedBuilder.createTrackerData(fbb, trackerDataMaskT, tracker))
-			);
+			.forEach((tracker) -> {
+				int offset = DataFeedBuilder
+					.createTrackerData(fbb, trackerDataMaskT, tracker, delta);
+				if (delta == null || offset != 0)
+					trackerOffsets.add(offset);
+			});
 
 		DataFeedUpdate.startSyntheticTrackersVector(fbb, trackerOffsets.size());
 		trackerOffsets.forEach((tracker -> DataFeedUpdate.addSyntheticTrackers(fbb, tracker)));
@@ -340,30 +514,57 @@ public class DataFeedBuilder {
 		FlatBufferBuilder fbb,
 		DeviceDataMaskT deviceDataMaskT,
 		List<Device> devices
+	) {
+		return createDevicesData(fbb, deviceDataMaskT, devices, null);
+	}
+
+	public static int createDevicesData(
+		FlatBufferBuilder fbb,
+		DeviceDataMaskT deviceDataMaskT,
+		List<Device> devices,
+		DataFeedDelta delta
 	) {
 		if (deviceDataMaskT == null)
 			return 0;
 
 		int[] devicesDataOffsets = new int[devices.size()];
+		int count = 0;
 		for (int i = 0; i < devices.size(); i++) {
 			Device device = devices.get(i);
-			devicesDataOffsets[i] = DataFeedBuilder
-				.createDeviceData(fbb, i, deviceDataMaskT, device);
+			int offset = DataFeedBuilder
+				.createDeviceData(fbb, i, deviceDataMaskT, device, delta);
+			if (delta == null || offset != 0)
+				devicesDataOffsets[count++] = offset;
 		}
 
-		return DataFeedUpdate.createDevicesVector(fbb, devicesDataOffsets);
+		return DataFeedUpdate
+			.createDevicesVector(fbb, Arrays.copyOf(devicesDataOffsets, count));
 	}
 
 	public static int createBonesData(
 		FlatBufferBuilder fbb,
 		boolean shouldSend,
 		List<dev.slimevr.tracking.processor.Bone> bones
+	) {
+		return createBonesData(fbb, shouldSend, bones, null);
+	}
+
+	/**
+	 * With a delta, only the bones that changed since the last update are
+	 * added, with only the values that changed
+	 */
+	public static int createBonesData(
+		FlatBufferBuilder fbb,
+		boolean shouldSend,
+		List<dev.slimevr.tracking.processor.Bone> bones,
+		DataFeedDelta delta
 	) {
 		if (!shouldSend) {
 			return 0;
 		}
 
 		var boneOffsets = new int[bones.size()];
+		var count = 0;
 		for (var i = 0; i < bones.size(); ++i) {
 			var bi = bones.get(i);
 
@@ -371,19 +572,33 @@ public class DataFeedBuilder {
 			var rotG = bi.getGlobalRotation();
 			var length = bi.getLength();
 
+			var rotation = delta == null
+				|| delta.changed(bi, DataFeedDelta.BONE_ROTATION, rotG);
+			var position = delta == null
+				|| delta.changed(bi, DataFeedDelta.BONE_POSITION, headPosG);
+			var sendLength = delta == null
+				|| delta.changed(bi, DataFeedDelta.BONE_LENGTH, length);
+			if (!rotation && !position && !sendLength)
+				continue;
+
 			Bone.startBone(fbb);
 
-			var rotGOffset = createQuat(fbb, rotG);
-			Bone.addRotationG(fbb, rotGOffset);
-			var headPosGOffset = Vec3f
-				.createVec3f(fbb, headPosG.getX(), headPosG.getY(), headPosG.getZ());
-			Bone.addHeadPositionG(fbb, headPosGOffset);
+			if (rotation) {
+				var rotGOffset = createQuat(fbb, rotG);
+				Bone.addRotationG(fbb, rotGOffset);
+			}
+			if (position) {
+				var headPosGOffset = Vec3f
+					.createVec3f(fbb, headPosG.getX(), headPosG.getY(), headPosG.getZ());
+				Bone.addHeadPositionG(fbb, headPosGOffset);
+			}
 			Bone.addBodyPart(fbb, bi.getBoneType().bodyPart);
-			Bone.addBoneLength(fbb, length);
+			if (sendLength)
+				Bone.addBoneLength(fbb, length);
 
-			boneOffsets[i] = Bone.endBone(fbb);
+			boneOffsets[count++] = Bone.endBone(fbb);
 		}
 
-		return DataFeedUpdate.createBonesVector(fbb, boneOffsets);
+		return DataFeedUpdate.createBonesVector(fbb, Arrays.copyOf(boneOffsets, count));
 	}
 }
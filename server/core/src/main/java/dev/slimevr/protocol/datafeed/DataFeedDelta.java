@@ -0,0 +1,112 @@
+package dev.slimevr.protocol.datafeed;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * What a client that opted in to delta updates last received on one data
+ * feed. A delta update leaves out every field whose value didn't change, and
+ * every device, tracker and bone of which nothing changed. A keyframe is a full
+ * update and is sent first, every {@link #KEYFRAME_INTERVAL_MS}, when the
+ * devices, trackers or bones change and when the client asks for a resync.
+ */
+public class DataFeedDelta {
+
+	public static final long KEYFRAME_INTERVAL_MS = 5000;
+
+	// Fields of trackers
+	public static final int TRACKER_INFO = 0;
+	public static final int TRACKER_STATUS = 1;
+	public static final int TRACKER_POSITION = 2;
+	public static final int TRACKER_ROTATION = 3;
+	public static final int TRACKER_ACCELERATION = 4;
+	public static final int TRACKER_TEMPERATURE = 5;
+	public static final int TRACKER_REFERENCE_ADJUSTED = 6;
+	public static final int TRACKER_IDENTITY_ADJUSTED = 7;
+	public static final int TRACKER_TPS = 8;
+
+	// Fields of devices
+	public static final int DEVICE_STATUS = 0;
+	public static final int DEVICE_INFO = 1;
+	public static final int DEVICE_NAME = 2;
+
+	// Fields of bones
+	public static final int BONE_ROTATION = 0;
+	public static final int BONE_POSITION = 1;
+	public static final int BONE_LENGTH = 2;
+
+	private static final int MAX_FIELDS = 9;
+
+	// Last sent value of each field, by the tracker, device or bone it belongs
+	// to
+	private final Map<Object, Object[]> sent = new IdentityHashMap<>();
+	// Devices, trackers and bones of the last update, in order
+	private final List<Object> structure = new ArrayList<>();
+
+	private volatile boolean resync = true;
+	private boolean keyframe;
+	private long lastKeyframe;
+	private int sequence;
+
+	/**
+	 * Makes the next update a keyframe, can be called from any thread
+	 */
+	public void requestKeyframe() {
+		resync = true;
+	}
+
+	/**
+	 * Starts building the next update. It's a keyframe if it's due, requested,
+	 * or if the devices, trackers or bones differ from the last update, since a
+	 * delta update can't tell the client about removed ones.
+	 */
+	public void begin(long time, List<Object> structure) {
+		keyframe = resync
+			|| time - lastKeyframe >= KEYFRAME_INTERVAL_MS
+			|| !structureEquals(structure);
+		if (keyframe) {
+			resync = false;
+			lastKeyframe = time;
+			sent.clear();
+			this.structure.clear();
+			this.structure.addAll(structure);
+		}
+		sequence++;
+	}
+
+	private boolean structureEquals(List<Object> structure) {
+		if (structure.size() != this.structure.size())
+			return false;
+		for (int i = 0; i < structure.size(); i++) {
+			if (structure.get(i) != this.structure.get(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Compares the field of the owner to its last sent value and remembers the
+	 * new value
+	 *
+	 * @return Whether the field needs to be sent
+	 */
+	public boolean changed(Object owner, int field, Object value) {
+		Object[] fields = sent.computeIfAbsent(owner, (o) -> new Object[MAX_FIELDS]);
+		if (!keyframe && Objects.equals(fields[field], value))
+			return false;
+		fields[field] = value;
+		return true;
+	}
+
+	public boolean isKeyframe() {
+		return keyframe;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+}
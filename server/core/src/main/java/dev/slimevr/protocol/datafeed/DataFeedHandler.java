@@ -1,24 +1,71 @@
 package dev.slimevr.protocol.datafeed;
 
 import com.google.flatbuffers.FlatBufferBuilder;
+import dev.slimevr.metrics.MotionLatency;
+import dev.slimevr.protocol.ConnectionContext;
 import dev.slimevr.protocol.GenericConnection;
 import dev.slimevr.protocol.ProtocolAPI;
 import dev.slimevr.protocol.ProtocolHandler;
+import dev.slimevr.tracking.processor.Bone;
+import dev.slimevr.tracking.trackers.Device;
 import dev.slimevr.tracking.trackers.Tracker;
 import io.eiren.util.logging.LogManager;
 import solarxr_protocol.MessageBundle;
 import solarxr_protocol.data_feed.*;
+import solarxr_protocol.pub_sub.KeyValuesT;
+import solarxr_protocol.pub_sub.Message;
+import solarxr_protocol.pub_sub.MessageT;
+import solarxr_protocol.pub_sub.Payload;
+import solarxr_protocol.pub_sub.PayloadUnion;
+import solarxr_protocol.pub_sub.PubSubHeader;
+import solarxr_protocol.pub_sub.PubSubUnion;
+import solarxr_protocol.pub_sub.Topic;
+import solarxr_protocol.pub_sub.TopicIdT;
+import solarxr_protocol.pub_sub.TopicUnion;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 
 public class DataFeedHandler extends ProtocolHandler<DataFeedMessageHeader> {
 
+	/**
+	 * Clients publish key values on this topic to opt in to delta updates with
+	 * "delta" = "true", or to ask for a keyframe with "resync". Every delta
+	 * update is bundled with key values on this topic holding the "feed" index,
+	 * its "sequence" number and whether it's a "keyframe".
+	 */
+	public static final TopicIdT DELTA_TOPIC = new TopicIdT();
+
+	static {
+		DELTA_TOPIC.setOrganization("slimevr.dev");
+		DELTA_TOPIC.setAppName("server");
+		DELTA_TOPIC.setTopic("datafeed_delta");
+	}
+
+	// Delta updates can't be dropped, so they wait while this many messages to
+	// the client are still queued
+	private static final int MAX_DELTA_QUEUE_DEPTH = 4;
+
 	private final ProtocolAPI api;
 
+	// Data feed updates built this tick, keyed by the masks of the config they
+	// were built for. Connections with the same masks share the same update.
+	private final Map<ByteBuffer, ByteBuffer> tickUpdates = new HashMap<>();
+	private final AtomicLong updateCacheHits = new AtomicLong();
+	private final AtomicLong updateCacheMisses = new AtomicLong();
+	private List<Tracker> tickSyntheticTrackers;
+	private final MotionLatency.Output latency;
+
 	public DataFeedHandler(ProtocolAPI api) {
 		this.api = api;
+		this.latency = api.server.motionLatency.output("datafeed");
 
 		registerPacketListener(DataFeedMessage.StartDataFeed, this::onStartDataFeed);
 		registerPacketListener(DataFeedMessage.PollDataFeed, this::onPollDataFeedRequest);
@@ -38,8 +85,32 @@ public class DataFeedHandler extends ProtocolHandler<DataFeedMessageHeader> {
 			// anyway so
 			// let's do it from here and send the reference to an arraylist
 			DataFeedConfigT config = req.dataFeeds(i).unpack();
+			conn.getContext().getDataFeedKeys().add(getMasksKey(config));
 			conn.getContext().getDataFeedConfigList().add(config);
 			conn.getContext().getDataFeedTimers().add(System.currentTimeMillis());
+			conn.getContext().getDataFeedDeltas().add(new DataFeedDelta());
+		}
+	}
+
+	/**
+	 * Handles the key values a client published on {@link #DELTA_TOPIC}
+	 */
+	public void onDeltaMessage(GenericConnection conn, MessageT message) {
+		if (message.getPayload().getType() != Payload.KeyValues)
+			return;
+		KeyValuesT keyValues = message.getPayload().asKeyValues();
+		String[] keys = keyValues.getKeys();
+		String[] values = keyValues.getValues();
+		ConnectionContext context = conn.getContext();
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i].equals("delta")) {
+				context
+					.setUseDataFeedDeltas(i < values.length && Boolean.parseBoolean(values[i]));
+			} else if (!keys[i].equals("resync")) {
+				continue;
+			}
+			// Both start over with a keyframe
+			context.getDataFeedDeltas().forEach(DataFeedDelta::requestKeyframe);
 		}
 	}
 
@@ -52,9 +123,32 @@ public class DataFeedHandler extends ProtocolHandler<DataFeedMessageHeader> {
 		if (req == null)
 			return;
 
+		conn.send(buildDatafeedUpdate(req.config().unpack(), getSyntheticTrackers()));
+	}
+
+	/**
+	 * Builds a finished message bundle holding a single data feed update
+	 */
+	private ByteBuffer buildDatafeedUpdate(
+		DataFeedConfigT config,
+		List<Tracker> syntheticTrackers
+	) {
+		return buildDatafeedUpdate(config, syntheticTrackers, -1, null);
+	}
+
+	/**
+	 * Builds a finished message bundle holding a single data feed update, and
+	 * with a delta, the key values describing it on {@link #DELTA_TOPIC}
+	 */
+	private ByteBuffer buildDatafeedUpdate(
+		DataFeedConfigT config,
+		List<Tracker> syntheticTrackers,
+		int index,
+		DataFeedDelta delta
+	) {
 		FlatBufferBuilder fbb = new FlatBufferBuilder(300);
 
-		int messageOffset = this.buildDatafeed(fbb, req.config().unpack());
+		int messageOffset = this.buildDatafeed(fbb, config, syntheticTrackers, delta);
 
 		DataFeedMessageHeader.startDataFeedMessageHeader(fbb);
 		DataFeedMessageHeader.addMessage(fbb, messageOffset);
@@ -65,37 +159,108 @@ public class DataFeedHandler extends ProtocolHandler<DataFeedMessageHeader> {
 		MessageBundle.addDataFeedMsgs(fbb, headerOffset);
 		int datafeedMessagesOffset = fbb.endVector();
 
-		int packet = createMessage(fbb, datafeedMessagesOffset);
-		fbb.finish(packet);
-		conn.send(fbb.dataBuffer());
+		if (delta == null) {
+			int packet = createMessage(fbb, datafeedMessagesOffset);
+			fbb.finish(packet);
+			return fbb.dataBuffer();
+		}
+
+		KeyValuesT keyValues = new KeyValuesT();
+		keyValues.setKeys(new String[] { "feed", "sequence", "keyframe" });
+		keyValues
+			.setValues(
+				new String[] {
+					Integer.toString(index),
+					Integer.toString(delta.getSequence()),
+					Boolean.toString(delta.isKeyframe())
+				}
+			);
+		MessageT messageT = new MessageT();
+		TopicUnion topicUnion = new TopicUnion();
+		topicUnion.setType(Topic.TopicId);
+		topicUnion.setValue(DELTA_TOPIC);
+		messageT.setTopic(topicUnion);
+		PayloadUnion payload = new PayloadUnion();
+		payload.setType(Payload.KeyValues);
+		payload.setValue(keyValues);
+		messageT.setPayload(payload);
+
+		int pubSubHeaderOffset = PubSubHeader
+			.createPubSubHeader(fbb, PubSubUnion.Message, Message.pack(fbb, messageT));
+		int pubSubMessagesOffset = MessageBundle
+			.createPubSubMsgsVector(fbb, new int[] { pubSubHeaderOffset });
+
+		MessageBundle.startMessageBundle(fbb);
+		MessageBundle.addDataFeedMsgs(fbb, datafeedMessagesOffset);
+		MessageBundle.addPubSubMsgs(fbb, pubSubMessagesOffset);
+		fbb.finish(MessageBundle.endMessageBundle(fbb));
+		return fbb.dataBuffer();
+	}
+
+	/**
+	 * Packs the masks of the config, leaving out its update interval, so configs
+	 * asking for the same data get equal keys
+	 */
+	private static ByteBuffer getMasksKey(DataFeedConfigT config) {
+		int minimumTimeSinceLast = config.getMinimumTimeSinceLast();
+		config.setMinimumTimeSinceLast(0);
+		FlatBufferBuilder fbb = new FlatBufferBuilder(64);
+		fbb.finish(DataFeedConfig.pack(fbb, config));
+		config.setMinimumTimeSinceLast(minimumTimeSinceLast);
+		return ByteBuffer.wrap(fbb.sizedByteArray());
+	}
+
+	private List<Tracker> getSyntheticTrackers() {
+		return this.api.server
+			.getAllTrackers()
+			.stream()
+			.filter(Tracker::isComputed)
+			.collect(Collectors.toList());
 	}
 
 	public int buildDatafeed(FlatBufferBuilder fbb, DataFeedConfigT config) {
+		return buildDatafeed(fbb, config, getSyntheticTrackers(), null);
+	}
+
+	private int buildDatafeed(
+		FlatBufferBuilder fbb,
+		DataFeedConfigT config,
+		List<Tracker> syntheticTrackers,
+		DataFeedDelta delta
+	) {
+		List<Device> devices = this.api.server.deviceManager.getDevices();
+		var h = this.api.server.humanPoseManager;
+		List<Bone> bones = h.getAllBones();
+		if (delta != null) {
+			List<Object> structure = new ArrayList<>(devices);
+			devices.forEach((device) -> structure.addAll(device.getTrackers().values()));
+			structure.addAll(syntheticTrackers);
+			structure.addAll(bones);
+			delta.begin(System.currentTimeMillis(), structure);
+		}
+
 		int devicesOffset = DataFeedBuilder
 			.createDevicesData(
 				fbb,
 				config.getDataMask(),
-				this.api.server.deviceManager
-					.getDevices()
+				devices,
+				delta
 			);
 		// Synthetic tracker is computed tracker apparently
 		int trackersOffset = DataFeedBuilder
 			.createSyntheticTrackersData(
 				fbb,
 				config.getSyntheticTrackersMask(),
-				this.api.server
-					.getAllTrackers()
-					.stream()
-					.filter(Tracker::isComputed)
-					.collect(Collectors.toList())
+				syntheticTrackers,
+				delta
 			);
 
-		var h = this.api.server.humanPoseManager;
 		int bonesOffset = DataFeedBuilder
 			.createBonesData(
 				fbb,
 				config.getBoneMask(),
-				h.getAllBones()
+				bones,
+				delta
 			);
 
 		return DataFeedUpdate.createDataFeedUpdate(fbb, devicesOffset, trackersOffset, bonesOffset);
@@ -103,38 +268,82 @@ public class DataFeedHandler extends ProtocolHandler<DataFeedMessageHeader> {
 
 	public void sendDataFeedUpdate() {
 		long currTime = System.currentTimeMillis();
+		tickUpdates.clear();
+		tickSyntheticTrackers = null;
 
 		this.api.getAPIServers().forEach((server) -> server.getAPIConnections().forEach((conn) -> {
-			FlatBufferBuilder fbb = null;
-
-			int configsCount = conn.getContext().getDataFeedConfigList().size();
-
-			int[] data = new int[configsCount];
+			ConnectionContext context = conn.getContext();
+			int configsCount = context.getDataFeedConfigList().size();
 
 			for (int index = 0; index < configsCount; index++) {
-				Long lastTimeSent = conn.getContext().getDataFeedTimers().get(index);
-				DataFeedConfigT configT = conn.getContext().getDataFeedConfigList().get(index);
-				if (currTime - lastTimeSent > configT.getMinimumTimeSinceLast()) {
-					if (fbb == null) {
-						// That way we create a buffer only when needed
-						fbb = new FlatBufferBuilder(300);
+				Long lastTimeSent = context.getDataFeedTimers().get(index);
+				DataFeedConfigT configT = context.getDataFeedConfigList().get(index);
+				if (currTime - lastTimeSent <= configT.getMinimumTimeSinceLast())
+					continue;
+				if (context.useDataFeedDeltas()) {
+					// Each delta builds on the last one, so they're built for
+					// every connection and never dropped
+					if (conn.getQueueDepth() > MAX_DELTA_QUEUE_DEPTH)
+						continue;
+					if (tickSyntheticTrackers == null) {
+						tickSyntheticTrackers = getSyntheticTrackers();
 					}
-
-					int messageOffset = this.buildDatafeed(fbb, configT);
-
-					DataFeedMessageHeader.startDataFeedMessageHeader(fbb);
-					DataFeedMessageHeader.addMessage(fbb, messageOffset);
-					DataFeedMessageHeader.addMessageType(fbb, DataFeedMessage.DataFeedUpdate);
-					data[index] = DataFeedMessageHeader.endDataFeedMessageHeader(fbb);
-
-					conn.getContext().getDataFeedTimers().set(index, currTime);
-					int messages = MessageBundle.createDataFeedMsgsVector(fbb, data);
-					int packet = createMessage(fbb, messages);
-					fbb.finish(packet);
-					conn.send(fbb.dataBuffer());
+					DataFeedDelta delta = context.getDataFeedDeltas().get(index);
+					context.getDataFeedTimers().set(index, currTime);
+					conn.send(buildDatafeedUpdate(configT, tickSyntheticTrackers, index, delta));
+				} else {
+					ByteBuffer update = getTickUpdate(configT, context.getDataFeedKeys().get(index));
+					context.getDataFeedTimers().set(index, currTime);
+					// Every connection reads the shared update through its own view
+					conn.sendDataFeed(index, update.asReadOnlyBuffer());
 				}
 			}
 		}));
+
+		// Set once an update was built for any connection
+		if (tickSyntheticTrackers != null) {
+			for (Tracker tracker : tickSyntheticTrackers) {
+				latency.record(tracker);
+			}
+		}
+	}
+
+	/**
+	 * Gets the update for the config's masks built this tick, or builds it
+	 */
+	private ByteBuffer getTickUpdate(DataFeedConfigT config, ByteBuffer key) {
+		ByteBuffer update = tickUpdates.get(key);
+		if (update != null) {
+			updateCacheHits.incrementAndGet();
+			return update;
+		}
+		updateCacheMisses.incrementAndGet();
+		if (tickSyntheticTrackers == null) {
+			tickSyntheticTrackers = getSyntheticTrackers();
+		}
+		update = buildDatafeedUpdate(config, tickSyntheticTrackers);
+		tickUpdates.put(key, update);
+		return update;
+	}
+
+	/**
+	 * Times a data feed update was shared with another connection with the same
+	 * masks during the same tick instead of being built
+	 */
+	public long getUpdateCacheHits() {
+		return updateCacheHits.get();
+	}
+
+	/**
+	 * Times a data feed update had to be built
+	 */
+	public long getUpdateCacheMisses() {
+		return updateCacheMisses.get();
+	}
+
+	public void addStats(Map<String, String> out) {
+		out.put("datafeed_cache_hits", Long.toString(getUpdateCacheHits()));
+		out.put("datafeed_cache_misses", Long.toString(getUpdateCacheMisses()));
 	}
 
 	@Override
@@ -9,6 +9,7 @@ import solarxr_protocol.MessageBundle;
 import solarxr_protocol.pub_sub.*;
 
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
@@ -24,6 +25,9 @@ public class PubSubHandler extends ProtocolHandler<PubSubHeader> {
 
 	public AtomicInteger nextLocalHandle = new AtomicInteger();
 
+	// Server side listeners of messages published on a topic, by topic handle
+	private final Map<Integer, BiConsumer<GenericConnection, MessageT>> topicListeners = new HashMap<>();
+
 	public PubSubHandler(ProtocolAPI api) {
 		super();
 		this.api = api;
@@ -135,6 +139,10 @@ public class PubSubHandler extends ProtocolHandler<PubSubHeader> {
 
 		int finalSubHandle = subHandle;
 
+		BiConsumer<GenericConnection, MessageT> listener = topicListeners.get(subHandle);
+		if (listener != null)
+			listener.accept(c, messageT);
+
 		this.api.getAPIServers().forEach((server) -> {
 			server.getAPIConnections().forEach((conn) -> {
 				// Make sure that we are not sending a message to ourselves
@@ -156,6 +164,63 @@ public class PubSubHandler extends ProtocolHandler<PubSubHeader> {
 		});
 	}
 
+	/**
+	 * Publishes key values from the server on the given topic to every
+	 * connection subscribed to it
+	 */
+	public void publishKeyValues(TopicIdT topic, Map<String, String> values) {
+		int handle = getTopicHandle(topic);
+		if (!hasSubscribers(handle))
+			return;
+
+		KeyValuesT keyValues = new KeyValuesT();
+		keyValues.setKeys(values.keySet().toArray(new String[0]));
+		keyValues.setValues(values.values().toArray(new String[0]));
+
+		MessageT messageT = new MessageT();
+		TopicUnion topicUnion = new TopicUnion();
+		topicUnion.setType(Topic.TopicId);
+		topicUnion.setValue(topic);
+		messageT.setTopic(topicUnion);
+		PayloadUnion payload = new PayloadUnion();
+		payload.setType(Payload.KeyValues);
+		payload.setValue(keyValues);
+		messageT.setPayload(payload);
+
+		FlatBufferBuilder fbb = new FlatBufferBuilder(256);
+		int outbound = createMessage(fbb, PubSubUnion.Message, Message.pack(fbb, messageT));
+		fbb.finish(outbound);
+		this.api.getAPIServers().forEach((server) -> {
+			server.getAPIConnections().forEach((conn) -> {
+				if (conn.getContext().getSubscribedTopics().contains(handle)) {
+					conn.send(fbb.dataBuffer());
+				}
+			});
+		});
+	}
+
+	/**
+	 * Registers a listener for the messages clients publish on the given topic,
+	 * which still get forwarded to its subscribers
+	 */
+	public void registerTopicListener(
+		TopicIdT topic,
+		BiConsumer<GenericConnection, MessageT> listener
+	) {
+		topicListeners.merge(getTopicHandle(topic), listener, BiConsumer::andThen);
+	}
+
+	private boolean hasSubscribers(int handle) {
+		return this.api
+			.getAPIServers()
+			.stream()
+			.anyMatch(
+				(server) -> server
+					.getAPIConnections()
+					.anyMatch((conn) -> conn.getContext().getSubscribedTopics().contains(handle))
+			);
+	}
+
 	@Override
 	public void onMessage(GenericConnection conn, PubSubHeader message) {
 		BiConsumer<GenericConnection, PubSubHeader> consumer = this.handlers[message.uType()];
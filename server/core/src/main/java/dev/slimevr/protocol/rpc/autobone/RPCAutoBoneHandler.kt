@@ -18,6 +18,7 @@ import solarxr_protocol.rpc.RpcMessage
 import solarxr_protocol.rpc.RpcMessageHeader
 import solarxr_protocol.rpc.SkeletonPart
 import java.util.*
+import java.util.concurrent.Future
 
 class RPCAutoBoneHandler(
 	private val rpcHandler: RPCHandler,
@@ -100,7 +101,7 @@ class RPCAutoBoneHandler(
 		}
 	}
 
-	override fun onAutoBoneRecordingEnd(recording: PoseFrames) {
+	override fun onAutoBoneRecordingEnd(recording: Future<PoseFrames>) {
 		// Do nothing, this is broadcasted by "onAutoBoneProcessStatus" uwu
 	}
 
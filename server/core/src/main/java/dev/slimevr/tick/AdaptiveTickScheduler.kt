@@ -0,0 +1,79 @@
+package dev.slimevr.tick
+
+import dev.slimevr.config.TickMode
+import dev.slimevr.metrics.MetricsRegistry
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Ticks at a fixed [rate] while trackers send data, and at [idleRate] once
+ * none did for [idleTimeoutMs] or while tracking is paused. New data or
+ * queued tasks wake an idle loop up right away.
+ */
+class AdaptiveTickScheduler(
+	rate: Int,
+	idleRate: Int,
+	idleTimeoutMs: Long,
+	private val isPaused: () -> Boolean,
+	metrics: MetricsRegistry,
+) : TickScheduler(metrics) {
+	override val mode = TickMode.ADAPTIVE
+	private val period = periodNanos(rate)
+	private val idlePeriod = periodNanos(idleRate).coerceAtLeast(period)
+	private val idleTimeout = idleTimeoutMs * 1_000_000
+	private var nextTick = 0L
+
+	@Volatile
+	private var lastData = System.nanoTime()
+
+	@Volatile
+	private var idle = false
+
+	@Volatile
+	private var paused = false
+	private val woken = AtomicBoolean()
+
+	@Volatile
+	private var thread: Thread? = null
+
+	override fun waitForNextTick(now: Long): Long {
+		thread = Thread.currentThread()
+		// Going idle is published before lastData is read, so data arriving
+		// meanwhile either keeps the loop active or wakes it up
+		woken.set(false)
+		idle = true
+		paused = isPaused()
+		idle = !tasksLeft && (paused || now - lastData > idleTimeout)
+		if (!idle) {
+			nextTick += period
+			// Don't catch up on missed ticks, that would only make a burst of them
+			if (now - nextTick > period) nextTick = now
+			sleepUntil(nextTick, period / 2)
+			return nextTick
+		}
+
+		nextTick += idlePeriod
+		if (now - nextTick > idlePeriod) nextTick = now
+		while (!woken.get() && System.nanoTime() < nextTick) {
+			parkUntil(nextTick)
+		}
+		idle = false
+		if (woken.get()) {
+			// Woken up early, start counting ticks from now
+			nextTick = System.nanoTime()
+		}
+		return nextTick
+	}
+
+	override fun onData() {
+		lastData = System.nanoTime()
+		// While paused, new data doesn't need to be processed any faster
+		if (idle && !paused) wakeUp()
+	}
+
+	override fun wakeUp() {
+		if (idle && woken.compareAndSet(false, true)) {
+			thread?.let { LockSupport.unpark(it) }
+		}
+	}
+}
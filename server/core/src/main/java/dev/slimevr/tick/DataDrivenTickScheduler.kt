@@ -0,0 +1,61 @@
+package dev.slimevr.tick
+
+import dev.slimevr.config.TickMode
+import dev.slimevr.metrics.MetricsRegistry
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Ticks when a tracker receives new data, at most at [maxRate] and at least
+ * at [minRate].
+ */
+class DataDrivenTickScheduler(maxRate: Int, minRate: Int, metrics: MetricsRegistry) : TickScheduler(metrics) {
+	override val mode = TickMode.DATA_DRIVEN
+	private val minInterval = periodNanos(maxRate)
+	private val maxInterval = periodNanos(minRate).coerceAtLeast(minInterval)
+	private val pending = AtomicBoolean()
+
+	@Volatile
+	private var pendingTime = 0L
+
+	@Volatile
+	private var thread: Thread? = null
+	private var lastTick = 0L
+
+	override fun waitForNextTick(now: Long): Long {
+		if (thread == null) {
+			thread = Thread.currentThread()
+			lastTick = now
+		}
+		val earliest = lastTick + minInterval
+		val deadline = lastTick + maxInterval
+		var target = deadline
+		while (true) {
+			if (pending.get() || tasksLeft) {
+				// Don't tick faster than the max rate, data arriving in the
+				// meantime gets processed together
+				while (System.nanoTime() < earliest) parkUntil(earliest)
+				pending.set(false)
+				target = pendingTime.coerceAtLeast(earliest)
+				break
+			}
+			if (System.nanoTime() >= deadline) break
+			parkUntil(deadline)
+		}
+		lastTick = System.nanoTime()
+		return target
+	}
+
+	override fun onData() {
+		wakeUp()
+	}
+
+	override fun wakeUp() {
+		if (!pending.get()) {
+			pendingTime = System.nanoTime()
+			if (pending.compareAndSet(false, true)) {
+				thread?.let { LockSupport.unpark(it) }
+			}
+		}
+	}
+}
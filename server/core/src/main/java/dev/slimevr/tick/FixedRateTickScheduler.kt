@@ -0,0 +1,23 @@
+package dev.slimevr.tick
+
+import dev.slimevr.config.TickMode
+import dev.slimevr.metrics.MetricsRegistry
+
+/**
+ * Ticks at a fixed rate. Ticks are scheduled from the previous deadline
+ * rather than from when the work finished, so the rate doesn't drift with the
+ * work duration.
+ */
+class FixedRateTickScheduler(rate: Int, metrics: MetricsRegistry) : TickScheduler(metrics) {
+	override val mode = TickMode.FIXED_RATE
+	private val period = periodNanos(rate)
+	private var nextTick = 0L
+
+	override fun waitForNextTick(now: Long): Long {
+		nextTick += period
+		// Don't catch up on missed ticks, that would only make a burst of them
+		if (now - nextTick > period) nextTick = now
+		sleepUntil(nextTick, period / 2)
+		return nextTick
+	}
+}
@@ -0,0 +1,112 @@
+package dev.slimevr.tick
+
+import dev.slimevr.metrics.MetricsRegistry
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+enum class TaskPriority {
+	// Settings, resets and tracker changes
+	CONTROL,
+
+	// Rebuilding the skeleton and other state derived from the trackers
+	REBUILD,
+}
+
+/**
+ * Tasks waiting to run on the VRServer thread. Each tick runs them by
+ * priority, in order within a priority, until its time budget is spent, so
+ * a burst of tasks can't hold up tracking. A task queued with a key is
+ * skipped while another one with the same key is still waiting to run.
+ * How long running them took goes into the `tasks` histogram of [metrics].
+ */
+class TaskQueue(metrics: MetricsRegistry) {
+	private val queues = Array(TaskPriority.entries.size) { ConcurrentLinkedQueue<Runnable>() }
+	private val pendingKeys = ConcurrentHashMap.newKeySet<Any>()
+	private val size = AtomicInteger()
+
+	@Volatile
+	private var maxSize = 0
+	private val tasksRun = AtomicLong()
+	private val tasksCoalesced = AtomicLong()
+	private val ticksOverBudget = AtomicLong()
+
+	/**
+	 * How long running the tasks took in the ticks that had any
+	 */
+	val runTime = metrics.histogram("tasks")
+
+	val pendingTasks: Int
+		get() = size.get()
+
+	fun add(task: Runnable, priority: TaskPriority = TaskPriority.CONTROL) {
+		queues[priority.ordinal].add(task)
+		val newSize = size.incrementAndGet()
+		if (newSize > maxSize) maxSize = newSize
+	}
+
+	/**
+	 * Queues [task] unless a task with the same [key] is waiting to run
+	 *
+	 * @return false if the task was coalesced with the waiting one
+	 */
+	fun addCoalesced(key: Any, task: Runnable, priority: TaskPriority = TaskPriority.REBUILD): Boolean {
+		if (!pendingKeys.add(key)) {
+			tasksCoalesced.incrementAndGet()
+			return false
+		}
+		add(
+			{
+				// Removed first so queuing it again while it runs isn't lost
+				pendingKeys.remove(key)
+				task.run()
+			},
+			priority,
+		)
+		return true
+	}
+
+	/**
+	 * Runs tasks until [budgetNanos] is spent, running at least one so the
+	 * queue always moves forward. Tasks queued meanwhile run too if they fit.
+	 *
+	 * @return true if tasks are left for the next tick
+	 */
+	fun run(budgetNanos: Long): Boolean {
+		if (size.get() == 0) return false
+		val start = System.nanoTime()
+		var elapsed: Long
+		do {
+			val task = poll() ?: break
+			task.run()
+			tasksRun.incrementAndGet()
+			elapsed = System.nanoTime() - start
+		} while (elapsed < budgetNanos)
+		runTime.record(System.nanoTime() - start)
+		if (size.get() == 0) return false
+		ticksOverBudget.incrementAndGet()
+		return true
+	}
+
+	private fun poll(): Runnable? {
+		for (queue in queues) {
+			val task = queue.poll() ?: continue
+			size.decrementAndGet()
+			return task
+		}
+		return null
+	}
+
+	/**
+	 * Adds the queue depth and task counts to [out]
+	 */
+	fun drainStats(out: MutableMap<String, String>) {
+		out["tasks_pending"] = size.get().toString()
+		out["tasks_max_pending"] = maxSize.toString()
+		maxSize = size.get()
+		out["tasks_run"] = tasksRun.get().toString()
+		out["tasks_coalesced"] = tasksCoalesced.get().toString()
+		out["tasks_over_budget_ticks"] = ticksOverBudget.get().toString()
+	}
+}
@@ -0,0 +1,133 @@
+package dev.slimevr.tick
+
+import dev.slimevr.config.TickConfig
+import dev.slimevr.config.TickMode
+import dev.slimevr.metrics.MetricsRegistry
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Decides when the VRServer loop runs its next tick. Records how late each
+ * tick started compared to when it should have and how long its work took
+ * into the `jitter` and `work` histograms of [metrics].
+ */
+abstract class TickScheduler(metrics: MetricsRegistry) {
+	abstract val mode: TickMode
+
+	/**
+	 * How late ticks started, the tick jitter
+	 */
+	val lateness = metrics.histogram("jitter")
+
+	/**
+	 * How long the work of a tick took
+	 */
+	val work = metrics.histogram("work")
+
+	@Volatile
+	var ticks = 0L
+		private set
+
+	/**
+	 * Set by the VRServer loop when queued tasks didn't all fit in the tick's
+	 * budget, so the next tick comes at the full rate
+	 */
+	var tasksLeft = false
+
+	private var tickStart = 0L
+
+	// How much parkNanos overslept on average, the spin tail gets sized by it
+	private var averageOversleep = MIN_SPIN_NANOS
+
+	/**
+	 * Waits until the next tick should start. Called by the VRServer thread
+	 * once the work of the current tick is done.
+	 */
+	@Throws(InterruptedException::class)
+	fun awaitNextTick() {
+		val now = System.nanoTime()
+		if (tickStart != 0L) work.record(now - tickStart)
+		val target = waitForNextTick(now)
+		tickStart = System.nanoTime()
+		lateness.record((tickStart - target).coerceAtLeast(0))
+		ticks++
+	}
+
+	/**
+	 * Waits for the next tick and returns the [System.nanoTime] it should have
+	 * started at
+	 */
+	protected abstract fun waitForNextTick(now: Long): Long
+
+	/**
+	 * Tells the scheduler that a tracker received new data, can be called from
+	 * any thread
+	 */
+	open fun onData() {}
+
+	/**
+	 * Wakes the loop up early if it's waiting for data, can be called from any
+	 * thread
+	 */
+	open fun wakeUp() {}
+
+	/**
+	 * Parks until shortly before [deadline], then spins for the rest so the
+	 * tick doesn't depend on the OS timer resolution
+	 */
+	@Throws(InterruptedException::class)
+	protected fun sleepUntil(deadline: Long, maxSpinNanos: Long) {
+		val spin = (averageOversleep * 2).coerceIn(MIN_SPIN_NANOS, maxSpinNanos)
+		while (true) {
+			val remaining = deadline - System.nanoTime()
+			if (remaining <= 0) return
+			if (remaining > spin) {
+				val parkTime = remaining - spin
+				val parkStart = System.nanoTime()
+				LockSupport.parkNanos(this, parkTime)
+				val oversleep = (System.nanoTime() - parkStart - parkTime).coerceAtLeast(0)
+				averageOversleep += (oversleep - averageOversleep) / 8
+			}
+			if (Thread.interrupted()) throw InterruptedException()
+		}
+	}
+
+	/**
+	 * Parks until [deadline] or until [LockSupport.unpark] gets called on the
+	 * VRServer thread, without spinning
+	 */
+	@Throws(InterruptedException::class)
+	protected fun parkUntil(deadline: Long) {
+		val remaining = deadline - System.nanoTime()
+		if (remaining > 0) LockSupport.parkNanos(this, remaining)
+		if (Thread.interrupted()) throw InterruptedException()
+	}
+
+	/**
+	 * Adds the tick mode and count to [out]
+	 */
+	fun addStats(out: MutableMap<String, String>) {
+		out["mode"] = mode.name
+		out["ticks"] = ticks.toString()
+	}
+
+	companion object {
+		const val MIN_SPIN_NANOS = 50_000L
+
+		@JvmStatic
+		fun create(config: TickConfig, metrics: MetricsRegistry, isPaused: () -> Boolean): TickScheduler = when (config.mode) {
+			TickMode.FIXED_RATE -> FixedRateTickScheduler(config.rate, metrics)
+
+			TickMode.DATA_DRIVEN -> DataDrivenTickScheduler(config.rate, config.minRate, metrics)
+
+			TickMode.ADAPTIVE -> AdaptiveTickScheduler(
+				config.rate,
+				config.idleRate,
+				config.idleTimeout,
+				isPaused,
+				metrics,
+			)
+		}
+
+		fun periodNanos(rate: Int): Long = 1_000_000_000L / rate.coerceAtLeast(1)
+	}
+}
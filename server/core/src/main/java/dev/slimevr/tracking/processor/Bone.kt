@@ -5,19 +5,21 @@ import io.github.axisangles.ktmath.Vector3
 import java.util.concurrent.CopyOnWriteArrayList
 
 /**
- * Represents a bone composed of 2 joints: headNode and tailNode.
+ * Represents a bone composed of 2 joints: head and tail. Its transforms are
+ * stored in [transforms], shared by all the bones of a skeleton.
  */
-class Bone(val boneType: BoneType) {
-	private val headNode = TransformNode(true)
-	private val tailNode = TransformNode(false)
+class Bone(val boneType: BoneType, private val transforms: SkeletonTransforms) {
+	internal var index = transforms.add(this)
 	var parent: Bone? = null
 		private set
 	val children: MutableList<Bone> = CopyOnWriteArrayList()
-	var rotationOffset = Quaternion.IDENTITY
 
-	init {
-		headNode.attachChild(tailNode)
-	}
+	/**
+	 * Rotation applied on top of the rotation set with [setRotation]
+	 */
+	var rotationOffset: Quaternion
+		get() = transforms.getRotationOffset(index)
+		set(value) = transforms.setRotationOffset(index, value)
 
 	/**
 	 * Attach another bone as a child of this.
@@ -25,11 +27,11 @@ class Bone(val boneType: BoneType) {
 	fun attachChild(bone: Bone) {
 		// Attach bone
 		require(bone.parent == null) { "The child bone must not already have a parent." }
+		require(bone.transforms === transforms) { "The child bone must be part of the same skeleton." }
 		children.add(bone)
 		bone.parent = this
 
-		// Attach node
-		tailNode.attachChild(bone.headNode)
+		transforms.rebuild()
 	}
 
 	/**
@@ -42,12 +44,7 @@ class Bone(val boneType: BoneType) {
 		parent?.children?.remove(this)
 		parent = null
 
-		// Detach nodes
-		headNode.detachWithChildren()
-		tailNode.detachWithChildren()
-
-		// Reattach this bone
-		headNode.attachChild(tailNode)
+		transforms.rebuild()
 	}
 
 	/**
@@ -55,35 +52,35 @@ class Bone(val boneType: BoneType) {
 	 * this bone and all of its children.
 	 */
 	fun update() {
-		headNode.update()
+		transforms.updateSubtree(index)
 	}
 
 	/**
 	 * Returns the world-aligned rotation of the bone
 	 */
-	fun getGlobalRotation(): Quaternion = headNode.worldTransform.rotation
+	fun getGlobalRotation(): Quaternion = transforms.getRotation(index)
 
 	/**
 	 * Returns the rotation of the bone relative to its parent
 	 */
-	fun getLocalRotation(): Quaternion = headNode.localTransform.rotation
+	fun getLocalRotation(): Quaternion = transforms.getLocalRotation(index)
 
 	/**
 	 * Sets the global rotation of the bone
 	 */
 	fun setRotation(rotation: Quaternion) {
-		headNode.localTransform.rotation = rotation * rotationOffset
+		transforms.setRotation(index, rotation)
 	}
 
 	/**
 	 * Returns the global position of the head of the bone
 	 */
-	fun getPosition(): Vector3 = headNode.worldTransform.translation
+	fun getPosition(): Vector3 = transforms.getPosition(index)
 
 	/**
 	 * Returns the global position of the tail of the bone
 	 */
-	fun getTailPosition(): Vector3 = tailNode.worldTransform.translation
+	fun getTailPosition(): Vector3 = transforms.getTailPosition(index)
 
 	/**
 	 * Sets the global position of the head of the bone.
@@ -92,19 +89,14 @@ class Bone(val boneType: BoneType) {
 	 */
 	fun setPosition(position: Vector3) {
 		require(parent == null) { "Cannot set the position of a child bone." }
-		headNode.localTransform.translation = position
+		transforms.setLocalPosition(index, position)
 	}
 
 	/**
 	 * The length of the bone is in meters.
-	 * This is the local translation of the tail node.
-	 * This is also the difference between the head position and the tail position.
+	 * This is the difference between the head position and the tail position.
 	 */
 	var length: Float
-		get() = tailNode.localTransform.translation.len()
-		set(len) = updateLength(len)
-
-	private fun updateLength(length: Float) {
-		tailNode.localTransform.translation = Vector3(0f, -length, 0f)
-	}
+		get() = transforms.getLength(index)
+		set(len) = transforms.setLength(index, len)
 }
@@ -0,0 +1,272 @@
+package dev.slimevr.tracking.processor
+
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+import kotlin.math.abs
+
+/**
+ * Holds the transforms of a hierarchy of [Bone]s in flat arrays. The bones
+ * are ordered so every bone comes after its parent and the bones of a subtree
+ * are next to each other, which lets [update] compute world transforms with a
+ * single pass over the arrays.
+ *
+ * A bone's head rotates with its own rotation only and sits at the tail of its
+ * parent, the tail is the head moved by the bone's length along its -Y axis.
+ */
+class SkeletonTransforms {
+	private var bones = arrayOfNulls<Bone>(INITIAL_CAPACITY)
+	var size = 0
+		private set
+
+	// Index of the parent bone, or -1 for roots
+	private var parents = IntArray(INITIAL_CAPACITY)
+
+	// Index after the last bone of the subtree starting at a bone
+	private var subtreeEnds = IntArray(INITIAL_CAPACITY)
+
+	// Inputs, rotations are stored as w, x, y, z. A bone's local rotation is its
+	// rotation multiplied by its rotation offset.
+	private var inputRotations = FloatArray(INITIAL_CAPACITY * 4)
+	private var rotationOffsets = FloatArray(INITIAL_CAPACITY * 4)
+	private var localPositions = FloatArray(INITIAL_CAPACITY * 3)
+	private var lengths = FloatArray(INITIAL_CAPACITY)
+
+	// Outputs of update
+	private var rotations = FloatArray(INITIAL_CAPACITY * 4)
+	private var positions = FloatArray(INITIAL_CAPACITY * 3)
+	private var tailPositions = FloatArray(INITIAL_CAPACITY * 3)
+
+	/**
+	 * Adds a bone as a new root and returns its index
+	 */
+	@Synchronized
+	internal fun add(bone: Bone): Int {
+		if (size == bones.size) grow()
+		val index = size++
+		bones[index] = bone
+		parents[index] = -1
+		subtreeEnds[index] = size
+		inputRotations[index * 4] = 1f
+		rotationOffsets[index * 4] = 1f
+		rotations[index * 4] = 1f
+		return index
+	}
+
+	/**
+	 * Reorders the bones after their hierarchy changed
+	 */
+	@Synchronized
+	internal fun rebuild() {
+		val order = arrayOfNulls<Bone>(bones.size)
+		val newParents = IntArray(parents.size)
+		val newSubtreeEnds = IntArray(subtreeEnds.size)
+		var next = 0
+
+		fun visit(bone: Bone, parent: Int) {
+			val index = next++
+			order[index] = bone
+			newParents[index] = parent
+			for (child in bone.children) visit(child, index)
+			newSubtreeEnds[index] = next
+		}
+		// Roots keep their relative order
+		for (i in 0 until size) {
+			val bone = bones[i]!!
+			if (bone.parent == null) visit(bone, -1)
+		}
+		check(next == size) { "Bones must only be attached to bones of the same skeleton." }
+
+		inputRotations = permute(order, inputRotations, 4)
+		rotationOffsets = permute(order, rotationOffsets, 4)
+		localPositions = permute(order, localPositions, 3)
+		lengths = permute(order, lengths, 1)
+		rotations = permute(order, rotations, 4)
+		positions = permute(order, positions, 3)
+		tailPositions = permute(order, tailPositions, 3)
+		for (i in 0 until size) order[i]!!.index = i
+		bones = order
+		parents = newParents
+		subtreeEnds = newSubtreeEnds
+	}
+
+	private fun permute(order: Array<Bone?>, values: FloatArray, stride: Int): FloatArray {
+		val result = FloatArray(values.size)
+		for (i in 0 until size) {
+			System.arraycopy(values, order[i]!!.index * stride, result, i * stride, stride)
+		}
+		return result
+	}
+
+	private fun grow() {
+		val capacity = bones.size * 2
+		bones = bones.copyOf(capacity)
+		parents = parents.copyOf(capacity)
+		subtreeEnds = subtreeEnds.copyOf(capacity)
+		inputRotations = inputRotations.copyOf(capacity * 4)
+		rotationOffsets = rotationOffsets.copyOf(capacity * 4)
+		localPositions = localPositions.copyOf(capacity * 3)
+		lengths = lengths.copyOf(capacity)
+		rotations = rotations.copyOf(capacity * 4)
+		positions = positions.copyOf(capacity * 3)
+		tailPositions = tailPositions.copyOf(capacity * 3)
+	}
+
+	/**
+	 * Computes the world transforms of all the bones
+	 */
+	fun update() {
+		update(0, size)
+	}
+
+	/**
+	 * Computes the world transforms of the bone at [index] and its children
+	 */
+	@Synchronized
+	fun updateSubtree(index: Int) {
+		update(index, subtreeEnds[index])
+	}
+
+	@Synchronized
+	private fun update(from: Int, to: Int) {
+		val inputRotations = inputRotations
+		val rotationOffsets = rotationOffsets
+		val localPositions = localPositions
+		val rotations = rotations
+		val positions = positions
+		val tailPositions = tailPositions
+		for (i in from until to) {
+			val r = i * 4
+			val w = multiplyW(inputRotations, rotationOffsets, r)
+			val x = multiplyX(inputRotations, rotationOffsets, r)
+			val y = multiplyY(inputRotations, rotationOffsets, r)
+			val z = multiplyZ(inputRotations, rotationOffsets, r)
+			rotations[r] = w
+			rotations[r + 1] = x
+			rotations[r + 2] = y
+			rotations[r + 3] = z
+
+			val p = i * 3
+			var headX = localPositions[p]
+			var headY = localPositions[p + 1]
+			var headZ = localPositions[p + 2]
+			val parent = parents[i]
+			if (parent >= 0) {
+				headX += tailPositions[parent * 3]
+				headY += tailPositions[parent * 3 + 1]
+				headZ += tailPositions[parent * 3 + 2]
+			}
+			positions[p] = headX
+			positions[p + 1] = headY
+			positions[p + 2] = headZ
+
+			// (0, -length, 0) rotated by the bone's rotation, which doesn't need
+			// to be normalized
+			val scale = -lengths[i] / (w * w + x * x + y * y + z * z)
+			tailPositions[p] = headX + 2f * scale * (x * y - w * z)
+			tailPositions[p + 1] = headY + scale * (w * w - x * x + y * y - z * z)
+			tailPositions[p + 2] = headZ + 2f * scale * (y * z + w * x)
+		}
+	}
+
+	internal fun getRotation(index: Int): Quaternion = get(rotations, index * 4)
+
+	internal fun getLocalRotation(index: Int): Quaternion {
+		val r = index * 4
+		return Quaternion(
+			multiplyW(inputRotations, rotationOffsets, r),
+			multiplyX(inputRotations, rotationOffsets, r),
+			multiplyY(inputRotations, rotationOffsets, r),
+			multiplyZ(inputRotations, rotationOffsets, r),
+		)
+	}
+
+	internal fun setRotation(index: Int, rotation: Quaternion) {
+		set(inputRotations, index * 4, rotation)
+	}
+
+	internal fun getRotationOffset(index: Int): Quaternion = get(rotationOffsets, index * 4)
+
+	internal fun setRotationOffset(index: Int, rotation: Quaternion) {
+		set(rotationOffsets, index * 4, rotation)
+	}
+
+	internal fun getPosition(index: Int): Vector3 {
+		val p = index * 3
+		return Vector3(positions[p], positions[p + 1], positions[p + 2])
+	}
+
+	internal fun getTailPosition(index: Int): Vector3 {
+		val p = index * 3
+		return Vector3(tailPositions[p], tailPositions[p + 1], tailPositions[p + 2])
+	}
+
+	internal fun setLocalPosition(index: Int, position: Vector3) {
+		val p = index * 3
+		localPositions[p] = position.x
+		localPositions[p + 1] = position.y
+		localPositions[p + 2] = position.z
+	}
+
+	internal fun getLength(index: Int): Float = abs(lengths[index])
+
+	internal fun setLength(index: Int, length: Float) {
+		lengths[index] = length
+	}
+
+	/**
+	 * Amount of floats [savePose] writes
+	 */
+	val poseSize: Int
+		get() = size * 7
+
+	/**
+	 * Writes the rotations and root positions of all bones to [pose] at
+	 * [offset]. Rotation offsets and lengths aren't part of the pose, so it
+	 * can be loaded again after they changed.
+	 */
+	@Synchronized
+	fun savePose(pose: FloatArray, offset: Int) {
+		System.arraycopy(inputRotations, 0, pose, offset, size * 4)
+		System.arraycopy(localPositions, 0, pose, offset + size * 4, size * 3)
+	}
+
+	/**
+	 * Loads a pose written by [savePose] from a skeleton with the same bones,
+	 * with its positions multiplied by [positionScale]
+	 */
+	@Synchronized
+	fun loadPose(pose: FloatArray, offset: Int, positionScale: Float) {
+		System.arraycopy(pose, offset, inputRotations, 0, size * 4)
+		val positionOffset = offset + size * 4
+		for (i in 0 until size * 3) {
+			localPositions[i] = pose[positionOffset + i] * positionScale
+		}
+	}
+
+	companion object {
+		private const val INITIAL_CAPACITY = 64
+
+		private fun get(values: FloatArray, r: Int) = Quaternion(values[r], values[r + 1], values[r + 2], values[r + 3])
+
+		private fun set(values: FloatArray, r: Int, rotation: Quaternion) {
+			values[r] = rotation.w
+			values[r + 1] = rotation.x
+			values[r + 2] = rotation.y
+			values[r + 3] = rotation.z
+		}
+
+		// Components of the product of the quaternions a and b at r, same as
+		// Quaternion.times
+		private fun multiplyW(a: FloatArray, b: FloatArray, r: Int) =
+			a[r] * b[r] - a[r + 1] * b[r + 1] - a[r + 2] * b[r + 2] - a[r + 3] * b[r + 3]
+
+		private fun multiplyX(a: FloatArray, b: FloatArray, r: Int) =
+			a[r + 1] * b[r] + a[r] * b[r + 1] - a[r + 3] * b[r + 2] + a[r + 2] * b[r + 3]
+
+		private fun multiplyY(a: FloatArray, b: FloatArray, r: Int) =
+			a[r + 2] * b[r] + a[r + 3] * b[r + 1] + a[r] * b[r + 2] - a[r + 1] * b[r + 3]
+
+		private fun multiplyZ(a: FloatArray, b: FloatArray, r: Int) =
+			a[r + 3] * b[r] - a[r + 2] * b[r + 1] + a[r + 1] * b[r + 2] + a[r] * b[r + 3]
+	}
+}
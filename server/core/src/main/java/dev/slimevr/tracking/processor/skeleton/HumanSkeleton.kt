@@ -5,8 +5,10 @@ import dev.slimevr.VRServer
 import dev.slimevr.tracking.processor.Bone
 import dev.slimevr.tracking.processor.BoneType
 import dev.slimevr.tracking.processor.HumanPoseManager
+import dev.slimevr.tracking.processor.SkeletonTransforms
 import dev.slimevr.tracking.processor.config.SkeletonConfigToggles
 import dev.slimevr.tracking.processor.config.SkeletonConfigValues
+import dev.slimevr.tracking.trackers.MotionStamp
 import dev.slimevr.tracking.trackers.Tracker
 import dev.slimevr.tracking.trackers.TrackerPosition
 import dev.slimevr.tracking.trackers.TrackerRole
@@ -33,46 +35,48 @@ import kotlin.properties.Delegates
 class HumanSkeleton(
 	val humanPoseManager: HumanPoseManager,
 ) {
+	val transforms = SkeletonTransforms()
+
 	// Upper body bones
-	val headBone = Bone(BoneType.HEAD)
-	val neckBone = Bone(BoneType.NECK)
-	val upperChestBone = Bone(BoneType.UPPER_CHEST)
-	val chestBone = Bone(BoneType.CHEST)
-	val waistBone = Bone(BoneType.WAIST)
-	val hipBone = Bone(BoneType.HIP)
+	val headBone = Bone(BoneType.HEAD, transforms)
+	val neckBone = Bone(BoneType.NECK, transforms)
+	val upperChestBone = Bone(BoneType.UPPER_CHEST, transforms)
+	val chestBone = Bone(BoneType.CHEST, transforms)
+	val waistBone = Bone(BoneType.WAIST, transforms)
+	val hipBone = Bone(BoneType.HIP, transforms)
 
 	// Lower body bones
-	val leftHipBone = Bone(BoneType.LEFT_HIP)
-	val rightHipBone = Bone(BoneType.RIGHT_HIP)
-	val leftUpperLegBone = Bone(BoneType.LEFT_UPPER_LEG)
-	val rightUpperLegBone = Bone(BoneType.RIGHT_UPPER_LEG)
-	val leftLowerLegBone = Bone(BoneType.LEFT_LOWER_LEG)
-	val rightLowerLegBone = Bone(BoneType.RIGHT_LOWER_LEG)
-	val leftFootBone = Bone(BoneType.LEFT_FOOT)
-	val rightFootBone = Bone(BoneType.RIGHT_FOOT)
+	val leftHipBone = Bone(BoneType.LEFT_HIP, transforms)
+	val rightHipBone = Bone(BoneType.RIGHT_HIP, transforms)
+	val leftUpperLegBone = Bone(BoneType.LEFT_UPPER_LEG, transforms)
+	val rightUpperLegBone = Bone(BoneType.RIGHT_UPPER_LEG, transforms)
+	val leftLowerLegBone = Bone(BoneType.LEFT_LOWER_LEG, transforms)
+	val rightLowerLegBone = Bone(BoneType.RIGHT_LOWER_LEG, transforms)
+	val leftFootBone = Bone(BoneType.LEFT_FOOT, transforms)
+	val rightFootBone = Bone(BoneType.RIGHT_FOOT, transforms)
 
 	// Arm bones
-	val leftShoulderBone = Bone(BoneType.LEFT_SHOULDER)
-	val rightShoulderBone = Bone(BoneType.RIGHT_SHOULDER)
-	val leftUpperArmBone = Bone(BoneType.LEFT_UPPER_ARM)
-	val rightUpperArmBone = Bone(BoneType.RIGHT_UPPER_ARM)
-	val leftLowerArmBone = Bone(BoneType.LEFT_LOWER_ARM)
-	val rightLowerArmBone = Bone(BoneType.RIGHT_LOWER_ARM)
-	val leftHandBone = Bone(BoneType.LEFT_HAND)
-	val rightHandBone = Bone(BoneType.RIGHT_HAND)
+	val leftShoulderBone = Bone(BoneType.LEFT_SHOULDER, transforms)
+	val rightShoulderBone = Bone(BoneType.RIGHT_SHOULDER, transforms)
+	val leftUpperArmBone = Bone(BoneType.LEFT_UPPER_ARM, transforms)
+	val rightUpperArmBone = Bone(BoneType.RIGHT_UPPER_ARM, transforms)
+	val leftLowerArmBone = Bone(BoneType.LEFT_LOWER_ARM, transforms)
+	val rightLowerArmBone = Bone(BoneType.RIGHT_LOWER_ARM, transforms)
+	val leftHandBone = Bone(BoneType.LEFT_HAND, transforms)
+	val rightHandBone = Bone(BoneType.RIGHT_HAND, transforms)
 
 	// Tracker bones
-	val headTrackerBone = Bone(BoneType.HEAD_TRACKER)
-	val chestTrackerBone = Bone(BoneType.CHEST_TRACKER)
-	val hipTrackerBone = Bone(BoneType.HIP_TRACKER)
-	val leftKneeTrackerBone = Bone(BoneType.LEFT_KNEE_TRACKER)
-	val rightKneeTrackerBone = Bone(BoneType.RIGHT_KNEE_TRACKER)
-	val leftFootTrackerBone = Bone(BoneType.LEFT_FOOT_TRACKER)
-	val rightFootTrackerBone = Bone(BoneType.RIGHT_FOOT_TRACKER)
-	val leftElbowTrackerBone = Bone(BoneType.LEFT_ELBOW_TRACKER)
-	val rightElbowTrackerBone = Bone(BoneType.RIGHT_ELBOW_TRACKER)
-	val leftHandTrackerBone = Bone(BoneType.LEFT_HAND_TRACKER)
-	val rightHandTrackerBone = Bone(BoneType.RIGHT_HAND_TRACKER)
+	val headTrackerBone = Bone(BoneType.HEAD_TRACKER, transforms)
+	val chestTrackerBone = Bone(BoneType.CHEST_TRACKER, transforms)
+	val hipTrackerBone = Bone(BoneType.HIP_TRACKER, transforms)
+	val leftKneeTrackerBone = Bone(BoneType.LEFT_KNEE_TRACKER, transforms)
+	val rightKneeTrackerBone = Bone(BoneType.RIGHT_KNEE_TRACKER, transforms)
+	val leftFootTrackerBone = Bone(BoneType.LEFT_FOOT_TRACKER, transforms)
+	val rightFootTrackerBone = Bone(BoneType.RIGHT_FOOT_TRACKER, transforms)
+	val leftElbowTrackerBone = Bone(BoneType.LEFT_ELBOW_TRACKER, transforms)
+	val rightElbowTrackerBone = Bone(BoneType.RIGHT_ELBOW_TRACKER, transforms)
+	val leftHandTrackerBone = Bone(BoneType.LEFT_HAND_TRACKER, transforms)
+	val rightHandTrackerBone = Bone(BoneType.RIGHT_HAND_TRACKER, transforms)
 
 	// Buffers
 	var hasSpineTracker = false
@@ -142,6 +146,35 @@ class HumanSkeleton(
 	// Others
 	private var pauseTracking = false // Pauses skeleton tracking if true, resumes skeleton tracking if false
 
+	// Dirty tracking. Only the server's skeleton has its trackers ticked, which
+	// is what updates their generation.
+	var skipUnchangedFrames = humanPoseManager.server != null
+	private var dirty = true
+	private var outputsSettled = false
+	private var coreGeneration = 0L
+	private var leftLegGeneration = 0L
+	private var rightLegGeneration = 0L
+	private var leftArmGeneration = 0L
+	private var rightArmGeneration = 0L
+	private val lastOutputs = FloatArray(COMPUTED_TRACKER_COUNT * 7)
+
+	/**
+	 * Amount of updates skipped because no input tracker changed
+	 */
+	var skippedUpdates = 0L
+		private set
+
+	/**
+	 * Amount of updates where only the limbs whose trackers changed got updated
+	 */
+	var partialUpdates = 0L
+		private set
+
+	/**
+	 * Newest sample of the input trackers, shared with the computed trackers
+	 */
+	val motion = MotionStamp()
+
 	// Modules
 	var legTweaks = LegTweaks(this)
 	var tapDetectionManager = TapDetectionManager(this)
@@ -224,6 +257,7 @@ class HumanSkeleton(
 	 */
 	@ThreadSafe
 	fun assembleSkeletonArms(reset: Boolean) {
+		markDirty()
 		if (reset) {
 			for (bone in allArmBones) {
 				bone.detachWithChildren()
@@ -265,6 +299,7 @@ class HumanSkeleton(
 	 * Set input trackers from a list
 	 */
 	fun setTrackersFromList(trackers: List<Tracker>) {
+		markDirty()
 		headTracker = getTrackerForSkeleton(trackers, TrackerPosition.HEAD)
 		neckTracker = getTrackerForSkeleton(trackers, TrackerPosition.NECK)
 		upperChestTracker = getTrackerForSkeleton(trackers, TrackerPosition.UPPER_CHEST)
@@ -359,17 +394,206 @@ class HumanSkeleton(
 	@VRServerThread
 	fun updatePose() {
 		tapDetectionManager.update()
+		updateMotion()
+
+		if (skipUnchangedFrames && updateChangedLimbs()) return
 
 		updateTransforms()
 		updateBones()
+		postProcess()
+	}
+
+	/**
+	 * Forces the next update to recompute the whole skeleton, for changes
+	 * that don't come from the input trackers
+	 */
+	fun markDirty() {
+		dirty = true
+	}
+
+	/**
+	 * Skips the update or only updates the limbs whose trackers changed, as
+	 * long as the head and spine didn't change.
+	 *
+	 * @return false if the whole skeleton needs to be updated
+	 */
+	private fun updateChangedLimbs(): Boolean {
+		val core = coreGeneration()
+		val leftLeg = limbGeneration(leftUpperLegTracker, leftLowerLegTracker, leftFootTracker, null)
+		val rightLeg = limbGeneration(rightUpperLegTracker, rightLowerLegTracker, rightFootTracker, null)
+		val leftArm = limbGeneration(leftShoulderTracker, leftUpperArmTracker, leftLowerArmTracker, leftHandTracker)
+		val rightArm = limbGeneration(rightShoulderTracker, rightUpperArmTracker, rightLowerArmTracker, rightHandTracker)
+		val leftLegChanged = leftLeg != leftLegGeneration
+		val rightLegChanged = rightLeg != rightLegGeneration
+		val leftArmChanged = leftArm != leftArmGeneration
+		val rightArmChanged = rightArm != rightArmGeneration
+		val fullUpdate = dirty || pauseTracking || localizer.getEnabled() || core != coreGeneration
+		coreGeneration = core
+		leftLegGeneration = leftLeg
+		rightLegGeneration = rightLeg
+		leftArmGeneration = leftArm
+		rightArmGeneration = rightArm
+		dirty = false
+		if (fullUpdate) return false
+
+		if (!leftLegChanged && !rightLegChanged && !leftArmChanged && !rightArmChanged) {
+			// Keep updating until post-processing stops changing the outputs
+			if (!outputsSettled) return false
+			skippedUpdates++
+			return true
+		}
+
+		// Post-processing that changes bones would be applied again to the
+		// limbs that kept the pose it tweaked in the last update
+		if (legTweaks.changesBones || viveEmulation.enabled) return false
+
+		// Limbs are only updated from their root bone, whose parent didn't move
+		if (leftLegChanged) {
+			updateLeftLegTransforms()
+			leftUpperLegBone.update()
+		}
+		if (rightLegChanged) {
+			updateRightLegTransforms()
+			rightUpperLegBone.update()
+		}
+		if (leftArmChanged) {
+			updateLeftArmTransforms()
+			if (isTrackingLeftArmFromController) leftHandTrackerBone.update() else leftShoulderBone.update()
+		}
+		if (rightArmChanged) {
+			updateRightArmTransforms()
+			if (isTrackingRightArmFromController) rightHandTrackerBone.update() else rightShoulderBone.update()
+		}
+		partialUpdates++
+		postProcess()
+		return true
+	}
+
+	/**
+	 * Stamps the pose with the newest sample of the input trackers
+	 */
+	private fun updateMotion() {
+		var newest = newerMotion(headTracker, neckTracker)
+		newest = newerMotion(newest, upperChestTracker)
+		newest = newerMotion(newest, chestTracker)
+		newest = newerMotion(newest, waistTracker)
+		newest = newerMotion(newest, hipTracker)
+		newest = newerMotion(newest, leftUpperLegTracker)
+		newest = newerMotion(newest, leftLowerLegTracker)
+		newest = newerMotion(newest, leftFootTracker)
+		newest = newerMotion(newest, rightUpperLegTracker)
+		newest = newerMotion(newest, rightLowerLegTracker)
+		newest = newerMotion(newest, rightFootTracker)
+		newest = newerMotion(newest, leftShoulderTracker)
+		newest = newerMotion(newest, leftUpperArmTracker)
+		newest = newerMotion(newest, leftLowerArmTracker)
+		newest = newerMotion(newest, leftHandTracker)
+		newest = newerMotion(newest, rightShoulderTracker)
+		newest = newerMotion(newest, rightUpperArmTracker)
+		newest = newerMotion(newest, rightLowerArmTracker)
+		newest = newerMotion(newest, rightHandTracker)
+		if (newest == null) {
+			motion.set(null, 0L, -1L)
+		} else {
+			// An input can itself be computed from another tracker's sample
+			val source = newest.motion
+			if (source != null) {
+				motion.set(source.source, source.timeNanos, source.packetNumber)
+			} else {
+				motion.set(newest, newest.sample.timeNanos, newest.sample.packetNumber)
+			}
+		}
+	}
+
+	private fun newerMotion(a: Tracker?, b: Tracker?): Tracker? {
+		if (a == null) return b
+		if (b == null) return a
+		return if (b.motionTimeNanos > a.motionTimeNanos) b else a
+	}
+
+	/**
+	 * Sum of the generations of the trackers the head and spine depend on,
+	 * changes whenever one of them changes
+	 */
+	private fun coreGeneration(): Long {
+		var generation = generationOf(headTracker) + generationOf(neckTracker) +
+			generationOf(upperChestTracker) + generationOf(chestTracker) +
+			generationOf(waistTracker) + generationOf(hipTracker)
+		// These guess the lower spine from the upper legs
+		if (extendedSpineModel || extendedPelvisModel) {
+			generation += generationOf(leftUpperLegTracker) + generationOf(rightUpperLegTracker)
+		}
+		return generation
+	}
+
+	private fun limbGeneration(a: Tracker?, b: Tracker?, c: Tracker?, d: Tracker?): Long =
+		generationOf(a) + generationOf(b) + generationOf(c) + generationOf(d)
+
+	private fun generationOf(tracker: Tracker?): Long = tracker?.generation ?: 0L
+
+	private fun postProcess() {
 		updateComputedTrackers()
 
 		// Don't run post-processing if the tracking is paused
-		if (pauseTracking) return
+		if (!pauseTracking) {
+			legTweaks.tweakLegs()
+			localizer.update()
+			viveEmulation.update()
+		}
+
+		if (skipUnchangedFrames) outputsSettled = !updateLastOutputs()
+	}
+
+	/**
+	 * Stores the computed trackers' rotations and positions
+	 *
+	 * @return true if any of them changed since the last call
+	 */
+	private fun updateLastOutputs(): Boolean {
+		var changed = storeOutputs(0, computedHeadTracker)
+		changed = storeOutputs(1, computedChestTracker) or changed
+		changed = storeOutputs(2, computedHipTracker) or changed
+		changed = storeOutputs(3, computedLeftKneeTracker) or changed
+		changed = storeOutputs(4, computedRightKneeTracker) or changed
+		changed = storeOutputs(5, computedLeftFootTracker) or changed
+		changed = storeOutputs(6, computedRightFootTracker) or changed
+		changed = storeOutputs(7, computedLeftElbowTracker) or changed
+		changed = storeOutputs(8, computedRightElbowTracker) or changed
+		changed = storeOutputs(9, computedLeftHandTracker) or changed
+		changed = storeOutputs(10, computedRightHandTracker) or changed
+		return changed
+	}
 
-		legTweaks.tweakLegs()
-		localizer.update()
-		viveEmulation.update()
+	private fun storeOutputs(slot: Int, tracker: Tracker?): Boolean {
+		if (tracker == null) return false
+		val rot = tracker.getRawRotation()
+		val pos = tracker.position
+		val i = slot * 7
+		var changed = storeOutput(i, rot.w)
+		changed = storeOutput(i + 1, rot.x) or changed
+		changed = storeOutput(i + 2, rot.y) or changed
+		changed = storeOutput(i + 3, rot.z) or changed
+		changed = storeOutput(i + 4, pos.x) or changed
+		changed = storeOutput(i + 5, pos.y) or changed
+		changed = storeOutput(i + 6, pos.z) or changed
+		return changed
+	}
+
+	private fun storeOutput(index: Int, value: Float): Boolean {
+		if (lastOutputs[index] == value) return false
+		lastOutputs[index] = value
+		return true
+	}
+
+	/**
+	 * Recomputes the bones and computed trackers from the current bone
+	 * rotations and root positions without reading the input trackers, for
+	 * when those were loaded with [SkeletonTransforms.loadPose] or only bone
+	 * lengths changed. Doesn't run any post-processing.
+	 */
+	fun updateBonePositions() {
+		updateBones()
+		updateComputedTrackers(dataTick = false)
 	}
 
 	/**
@@ -377,9 +601,9 @@ class HumanSkeleton(
 	 */
 	@ThreadSafe
 	fun updateBones() {
-		headBone.update()
-		if (isTrackingLeftArmFromController) leftHandTrackerBone.update()
-		if (isTrackingRightArmFromController) rightHandTrackerBone.update()
+		// Also covers the hand tracker bones, which are roots when tracking the
+		// arms from controllers
+		transforms.update()
 	}
 
 	/**
@@ -394,7 +618,15 @@ class HumanSkeleton(
 
 		// Spine
 		updateSpineTransforms()
-		// Left leg
+		// Legs
+		updateLeftLegTransforms()
+		updateRightLegTransforms()
+		// Arms
+		updateLeftArmTransforms()
+		updateRightArmTransforms()
+	}
+
+	private fun updateLeftLegTransforms() {
 		updateLegTransforms(
 			leftUpperLegBone,
 			leftKneeTrackerBone,
@@ -405,7 +637,9 @@ class HumanSkeleton(
 			leftLowerLegTracker,
 			leftFootTracker,
 		)
-		// Right leg
+	}
+
+	private fun updateRightLegTransforms() {
 		updateLegTransforms(
 			rightUpperLegBone,
 			rightKneeTrackerBone,
@@ -416,7 +650,9 @@ class HumanSkeleton(
 			rightLowerLegTracker,
 			rightFootTracker,
 		)
-		// Left arm
+	}
+
+	private fun updateLeftArmTransforms() {
 		updateArmTransforms(
 			isTrackingLeftArmFromController,
 			leftShoulderBone,
@@ -430,7 +666,9 @@ class HumanSkeleton(
 			leftLowerArmTracker,
 			leftHandTracker,
 		)
-		// Right arm
+	}
+
+	private fun updateRightArmTransforms() {
 		updateArmTransforms(
 			isTrackingRightArmFromController,
 			rightShoulderBone,
@@ -818,30 +1056,32 @@ class HumanSkeleton(
 	}
 
 	// Update the output trackers
-	private fun updateComputedTrackers() {
-		updateComputedTracker(computedHeadTracker, headTrackerBone)
-		updateComputedTracker(computedChestTracker, chestTrackerBone)
-		updateComputedTracker(computedHipTracker, hipTrackerBone)
-		updateComputedTracker(computedLeftKneeTracker, leftKneeTrackerBone)
-		updateComputedTracker(computedRightKneeTracker, rightKneeTrackerBone)
-		updateComputedTracker(computedLeftFootTracker, leftFootTrackerBone)
-		updateComputedTracker(computedRightFootTracker, rightFootTrackerBone)
-		updateComputedTracker(computedLeftElbowTracker, leftElbowTrackerBone)
-		updateComputedTracker(computedRightElbowTracker, rightElbowTrackerBone)
-		updateComputedTracker(computedLeftHandTracker, leftHandTrackerBone)
-		updateComputedTracker(computedRightHandTracker, rightHandTrackerBone)
+	private fun updateComputedTrackers(dataTick: Boolean = true) {
+		updateComputedTracker(computedHeadTracker, headTrackerBone, dataTick)
+		updateComputedTracker(computedChestTracker, chestTrackerBone, dataTick)
+		updateComputedTracker(computedHipTracker, hipTrackerBone, dataTick)
+		updateComputedTracker(computedLeftKneeTracker, leftKneeTrackerBone, dataTick)
+		updateComputedTracker(computedRightKneeTracker, rightKneeTrackerBone, dataTick)
+		updateComputedTracker(computedLeftFootTracker, leftFootTrackerBone, dataTick)
+		updateComputedTracker(computedRightFootTracker, rightFootTrackerBone, dataTick)
+		updateComputedTracker(computedLeftElbowTracker, leftElbowTrackerBone, dataTick)
+		updateComputedTracker(computedRightElbowTracker, rightElbowTrackerBone, dataTick)
+		updateComputedTracker(computedLeftHandTracker, leftHandTrackerBone, dataTick)
+		updateComputedTracker(computedRightHandTracker, rightHandTrackerBone, dataTick)
 	}
 
-	private fun updateComputedTracker(computedTracker: Tracker?, trackerBone: Bone) {
+	private fun updateComputedTracker(computedTracker: Tracker?, trackerBone: Bone, dataTick: Boolean) {
 		computedTracker?.let {
+			it.motion = motion
 			it.position = trackerBone.getTailPosition()
 			it.setRotation(trackerBone.getGlobalRotation() * trackerBone.rotationOffset.inv())
-			it.dataTick()
+			if (dataTick) it.dataTick()
 		}
 	}
 
 	// Skeleton Config toggles
 	fun updateToggleState(configToggle: SkeletonConfigToggles, newValue: Boolean) {
+		markDirty()
 		when (configToggle) {
 			SkeletonConfigToggles.EXTENDED_SPINE_MODEL -> extendedSpineModel = newValue
 
@@ -871,6 +1111,7 @@ class HumanSkeleton(
 
 	// Skeleton Config ratios
 	fun updateValueState(configValue: SkeletonConfigValues, newValue: Float) {
+		markDirty()
 		when (configValue) {
 			SkeletonConfigValues.WAIST_FROM_CHEST_HIP_AVERAGING -> waistFromChestHipAveraging = newValue
 			SkeletonConfigValues.WAIST_FROM_CHEST_LEGS_AVERAGING -> waistFromChestLegsAveraging = newValue
@@ -884,6 +1125,7 @@ class HumanSkeleton(
 
 	// Skeleton Config bone lengths
 	fun updateNodeOffset(boneType: BoneType, offset: Vector3) {
+		markDirty()
 		var transOffset = offset
 
 		// If no head position, headShift and neckLength = 0
@@ -1056,6 +1298,7 @@ class HumanSkeleton(
 		)
 
 	fun resetTrackersFull(resetSourceName: String?) {
+		markDirty()
 		var referenceRotation = IDENTITY
 		headTracker?.let {
 			// Always reset the head (ifs in resetsHandler)
@@ -1082,6 +1325,7 @@ class HumanSkeleton(
 
 	@VRServerThread
 	fun resetTrackersYaw(resetSourceName: String?) {
+		markDirty()
 		// Resets the yaw of the trackers with the head as reference.
 		var referenceRotation = IDENTITY
 		headTracker?.let {
@@ -1103,6 +1347,7 @@ class HumanSkeleton(
 
 	@VRServerThread
 	fun resetTrackersMounting(resetSourceName: String?) {
+		markDirty()
 		val server = humanPoseManager.server
 		if (server != null && server.statusSystem.hasStatusType(StatusData.StatusTrackerReset)) {
 			LogManager.info("[HumanSkeleton] Reset: mounting ($resetSourceName) failed, reset required")
@@ -1131,6 +1376,7 @@ class HumanSkeleton(
 
 	@VRServerThread
 	fun clearTrackersMounting(resetSourceName: String?) {
+		markDirty()
 		headTracker?.let {
 			if (it.needsMounting) it.resetsHandler.clearMounting()
 		}
@@ -1150,6 +1396,7 @@ class HumanSkeleton(
 	}
 
 	fun updateLegTweaksConfig() {
+		markDirty()
 		legTweaks.updateConfig()
 	}
 
@@ -1162,6 +1409,7 @@ class HumanSkeleton(
 		toeSnap: Boolean,
 		footPlant: Boolean,
 	) {
+		markDirty()
 		legTweaks.setSkatingCorrectionEnabled(skatingCorrection)
 		legTweaks.setFloorClipEnabled(floorClip)
 		legTweaks.toeSnapEnabled = toeSnap
@@ -1177,6 +1425,7 @@ class HumanSkeleton(
 		toeSnap: Boolean,
 		footPlant: Boolean,
 	) {
+		markDirty()
 		// only reset the true values as they are a mask for what to reset
 		if (skatingCorrection) {
 			legTweaks
@@ -1207,6 +1456,7 @@ class HumanSkeleton(
 	 */
 	@VRServerThread
 	fun setLegTweaksEnabled(value: Boolean) {
+		markDirty()
 		legTweaks.enabled = value
 	}
 
@@ -1223,6 +1473,7 @@ class HumanSkeleton(
 	fun getPauseTracking(): Boolean = pauseTracking
 
 	fun setPauseTracking(pauseTracking: Boolean, sourceName: String?) {
+		markDirty()
 		if (!pauseTracking && this.pauseTracking) {
 			// If unpausing tracking, clear the legtweaks buffer
 			legTweaks.resetBuffer()
@@ -1240,6 +1491,8 @@ class HumanSkeleton(
 	}
 
 	companion object {
+		private const val COMPUTED_TRACKER_COUNT = 11
+
 		val FORWARD_QUATERNION = EulerAngles(
 			EulerOrder.YZX,
 			FastMath.HALF_PI,
@@ -180,11 +180,17 @@ class LegTweaks(private val skeleton: HumanSkeleton) {
 			skeleton.humanPoseManager.getToggle(SkeletonConfigToggles.FOOT_PLANT)
 	}
 
+	/**
+	 * Whether [tweakLegs] changes the leg bones, it doesn't if the user
+	 * doesn't have knees or legtweaks is disabled
+	 */
+	val changesBones: Boolean
+		get() = enabled && (skeleton.hasKneeTrackers || alwaysUseFloorclip)
+
 	// tweak the position of the legs based on data from the last frames
 	fun tweakLegs() {
-		// If user doesn't have knees or legtweaks is disabled,
-		// don't spend time doing calculations!
-		if ((!skeleton.hasKneeTrackers && !alwaysUseFloorclip) || !enabled) return
+		// don't spend time doing calculations if it wouldn't change anything!
+		if (!changesBones) return
 
 		// update the class with the latest data from the skeleton
 		// if false is returned something indicated that the legs should not
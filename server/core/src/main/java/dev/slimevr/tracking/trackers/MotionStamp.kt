@@ -0,0 +1,30 @@
+package dev.slimevr.tracking.trackers
+
+/**
+ * Which received sample a pose was computed from: the input tracker whose
+ * sample was the newest, when it was received and the packet it came in.
+ * The skeleton keeps one and shares it with its computed trackers, so that
+ * outputs can tell how old the motion they send is.
+ */
+class MotionStamp {
+	var source: Tracker? = null
+		private set
+
+	/**
+	 * [System.nanoTime] of when the source's sample was received, 0 if none
+	 */
+	var timeNanos = 0L
+		private set
+
+	/**
+	 * Number of the packet the source's sample came in, -1 if unknown
+	 */
+	var packetNumber = -1L
+		private set
+
+	fun set(source: Tracker?, timeNanos: Long, packetNumber: Long) {
+		this.source = source
+		this.timeNanos = timeNanos
+		this.packetNumber = packetNumber
+	}
+}
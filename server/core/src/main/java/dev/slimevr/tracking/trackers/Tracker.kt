@@ -13,6 +13,8 @@ import solarxr_protocol.rpc.StatusData
 import solarxr_protocol.rpc.StatusDataUnion
 import solarxr_protocol.rpc.StatusTrackerErrorT
 import solarxr_protocol.rpc.StatusTrackerResetT
+import java.util.concurrent.atomic.LongAdder
+import java.util.concurrent.locks.StampedLock
 import kotlin.properties.Delegates
 
 const val TIMEOUT_MS = 2_000L
@@ -67,9 +69,39 @@ class Tracker @JvmOverloads constructor(
 	val isHmd: Boolean = false,
 ) {
 	private val timer = BufferedTimer(1f)
+
+	@Volatile
 	private var timeAtLastUpdate: Long = System.currentTimeMillis()
-	private var _rotation = Quaternion.IDENTITY
-	private var _acceleration = Vector3.NULL
+
+	/**
+	 * Raw rotation and acceleration, safe to write from the thread receiving
+	 * the tracker's data
+	 */
+	val sample = TrackerSample()
+
+	/**
+	 * Sample the data of a computed tracker was computed from, set by the
+	 * skeleton. Null for trackers whose data is their own sample.
+	 */
+	var motion: MotionStamp? = null
+
+	/**
+	 * Changes on ticks where the adjusted rotation or the position changed, so
+	 * the skeleton can skip trackers that didn't move. Includes changes from
+	 * filtering and resets, not only new data.
+	 */
+	var generation = 0L
+		private set
+	private var tickRotation = Quaternion.NULL
+	private var tickPosition = Vector3.NULL
+
+	// Adjusted rotations and acceleration memoized until the next tick or
+	// until the sample, resets or filtering change
+	@Volatile
+	private var tickEpoch = 0L
+	private val rotationMemo = Memo()
+	private val identityRotationMemo = Memo()
+	private val accelerationMemo = Memo()
 	var position = Vector3.NULL
 	val resetsHandler: TrackerResetsHandler = TrackerResetsHandler(this)
 	val filteringHandler: TrackerFilteringHandler = TrackerFilteringHandler()
@@ -94,7 +126,7 @@ class Tracker @JvmOverloads constructor(
 			}
 			alreadyInitialized = true
 		}
-		if (!isInternal) {
+		if (!isInternal && VRServer.instanceInitialized) {
 			// If the status of a non-internal tracker has changed, inform
 			// the VRServer to recreate the skeleton, as it may need to
 			// assign or un-assign the tracker to a body part
@@ -287,17 +319,32 @@ class Tracker @JvmOverloads constructor(
 				status = TrackerStatus.TIMED_OUT
 			}
 		}
-		filteringHandler.update()
+		filteringHandler.update(sample)
 		resetsHandler.update()
+		// After the updates, so values computed meanwhile aren't kept
+		tickEpoch++
+		updateGeneration()
+	}
+
+	private fun updateGeneration() {
+		val rot = getRotation()
+		val pos = position
+		if (rot.w != tickRotation.w || rot.x != tickRotation.x || rot.y != tickRotation.y || rot.z != tickRotation.z ||
+			pos.x != tickPosition.x || pos.y != tickPosition.y || pos.z != tickPosition.z
+		) {
+			tickRotation = rot
+			tickPosition = pos
+			generation++
+		}
 	}
 
 	/**
-	 * Tells the tracker that it received new data
+	 * Tells the tracker that it received new data. Only one thread should call
+	 * this, usually the one writing the data.
 	 */
 	fun dataTick() {
 		timer.update()
 		timeAtLastUpdate = System.currentTimeMillis()
-		filteringHandler.dataTick(_rotation)
 	}
 
 	/**
@@ -311,16 +358,20 @@ class Tracker @JvmOverloads constructor(
 	 * Gets the adjusted tracker rotation after all corrections
 	 * (filtering, reset, mounting and drift compensation).
 	 * This is the rotation that is applied on the SlimeVR skeleton bones.
-	 * Warning: This performs several Quaternion multiplications, so calling
-	 * it too much should be avoided for performance reasons.
+	 * Computed once per tick, as it takes several Quaternion multiplications.
 	 */
 	fun getRotation(): Quaternion {
-		var rot = if (allowFiltering && filteringHandler.enabled) {
+		val filtered = allowFiltering && filteringHandler.enabled
+		return memoize(rotationMemo, filtered, Memo::quaternion, Memo::set) { computeRotation(filtered) }
+	}
+
+	private fun computeRotation(filtered: Boolean): Quaternion {
+		var rot = if (filtered) {
 			// Get filtered rotation
 			filteringHandler.getFilteredRotation()
 		} else {
 			// Get unfiltered rotation
-			_rotation
+			sample.rotation
 		}
 
 		// Reset if needed and is not computed and internal
@@ -335,10 +386,11 @@ class Tracker @JvmOverloads constructor(
 	/**
 	 * Gets the world-adjusted acceleration
 	 */
-	fun getAcceleration(): Vector3 = if (needsReset) {
-		resetsHandler.getReferenceAdjustedAccel(_rotation, _acceleration)
-	} else {
-		_acceleration
+	fun getAcceleration(): Vector3 {
+		if (!needsReset) return sample.acceleration
+		return memoize(accelerationMemo, false, Memo::vector3, Memo::set) {
+			resetsHandler.getReferenceAdjustedAccel(sample.rotation, sample.acceleration)
+		}
 	}
 
 	/**
@@ -347,12 +399,19 @@ class Tracker @JvmOverloads constructor(
 	 * This is used for debugging/visualizing tracker data
 	 */
 	fun getIdentityAdjustedRotation(): Quaternion {
-		var rot = if (filteringHandler.enabled) {
+		val filtered = filteringHandler.enabled
+		return memoize(identityRotationMemo, filtered, Memo::quaternion, Memo::set) {
+			computeIdentityAdjustedRotation(filtered)
+		}
+	}
+
+	private fun computeIdentityAdjustedRotation(filtered: Boolean): Quaternion {
+		var rot = if (filtered) {
 			// Get filtered rotation
 			filteringHandler.getFilteredRotation()
 		} else {
 			// Get unfiltered rotation
-			_rotation
+			sample.rotation
 		}
 
 		// Reset if needed or is a computed tracker besides head
@@ -368,27 +427,148 @@ class Tracker @JvmOverloads constructor(
 	 * Gets the raw (unadjusted) rotation of the tracker.
 	 * If this is an IMU, this will be the raw sensor rotation.
 	 */
-	fun getRawRotation(): Quaternion = _rotation
+	fun getRawRotation(): Quaternion = sample.rotation
 
 	/**
 	 * Sets the raw (unadjusted) rotation of the tracker.
 	 */
-	fun setRotation(rotation: Quaternion) {
-		this._rotation = rotation
+	@JvmOverloads
+	fun setRotation(rotation: Quaternion, packetNumber: Long = -1) {
+		setRotation(rotation.w, rotation.x, rotation.y, rotation.z, packetNumber, System.nanoTime())
+	}
+
+	/**
+	 * Sets the raw (unadjusted) rotation of the tracker, received at
+	 * [timeNanos] in the packet [packetNumber]. Every sample is queued for
+	 * the filter, so filtering doesn't depend on the tick rate.
+	 *
+	 * Samples of trackers with their own data wake the tick scheduler, the
+	 * skeleton's and bridges' internal trackers don't, or they would keep it
+	 * from ever idling.
+	 */
+	fun setRotation(w: Float, x: Float, y: Float, z: Float, packetNumber: Long, timeNanos: Long) {
+		sample.setRotation(w, x, y, z, packetNumber, timeNanos)
+		filteringHandler.dataTick(w, x, y, z)
+		if (!isComputed && !isInternal && VRServer.instanceInitialized) VRServer.instance.tickScheduler.onData()
 	}
 
 	/**
 	 * Sets the raw (unadjusted) acceleration of the tracker.
 	 */
 	fun setAcceleration(vec: Vector3) {
-		this._acceleration = vec
+		sample.setAcceleration(vec.x, vec.y, vec.z)
 	}
 
 	fun isImu(): Boolean = imuType != null
 
+	/**
+	 * [System.nanoTime] of when the motion the tracker's data comes from was
+	 * received, 0 if it has no data yet
+	 */
+	val motionTimeNanos: Long
+		get() = motion?.timeNanos ?: sample.timeNanos
+
 	/**
 	 * Gets the current TPS of the tracker
 	 */
 	val tps: Float
 		get() = timer.averageFPS
+
+	/**
+	 * Returns the value of [memo] if it was computed in this tick from the
+	 * current sample, resets and filtering, or the value of [compute]. What
+	 * it's computed from is read first, so a change made while computing makes
+	 * the next call compute it again.
+	 */
+	private inline fun <T> memoize(
+		memo: Memo,
+		filtered: Boolean,
+		read: (Memo) -> T,
+		write: (Memo, T) -> Unit,
+		compute: () -> T,
+	): T {
+		val tick = tickEpoch
+		// A filtered rotation only takes new samples in on ticks
+		val sampleVersion = if (filtered) -1 else sample.version
+		val resetsVersion = resetsHandler.version
+		val filteringVersion = filteringHandler.version
+		val stamp = memo.lock.tryOptimisticRead()
+		if (memo.tick == tick &&
+			memo.sampleVersion == sampleVersion &&
+			memo.resetsVersion == resetsVersion &&
+			memo.filteringVersion == filteringVersion
+		) {
+			val value = read(memo)
+			// The memo wasn't written while reading it
+			if (memo.lock.validate(stamp)) {
+				memoHits.increment()
+				return value
+			}
+		}
+		memoMisses.increment()
+		val value = compute()
+		// Not stored if another thread is storing its value already
+		val writeStamp = memo.lock.tryWriteLock()
+		if (writeStamp != 0L) {
+			try {
+				memo.tick = tick
+				memo.sampleVersion = sampleVersion
+				memo.resetsVersion = resetsVersion
+				memo.filteringVersion = filteringVersion
+				write(memo, value)
+			} finally {
+				memo.lock.unlockWrite(writeStamp)
+			}
+		}
+		return value
+	}
+
+	/**
+	 * A memoized Quaternion or Vector3 and what it was computed from, kept in
+	 * primitive fields so computing it again doesn't allocate. Writes take
+	 * [lock], readers check it didn't change while they read.
+	 */
+	private class Memo {
+		val lock = StampedLock()
+		var tick = -1L
+		var sampleVersion = 0
+		var resetsVersion = 0
+		var filteringVersion = 0
+		private var w = 0f
+		private var x = 0f
+		private var y = 0f
+		private var z = 0f
+
+		fun quaternion() = Quaternion(w, x, y, z)
+
+		fun vector3() = Vector3(x, y, z)
+
+		fun set(value: Quaternion) {
+			w = value.w
+			x = value.x
+			y = value.y
+			z = value.z
+		}
+
+		fun set(value: Vector3) {
+			x = value.x
+			y = value.y
+			z = value.z
+		}
+	}
+
+	companion object {
+		private val memoHits = LongAdder()
+		private val memoMisses = LongAdder()
+
+		/**
+		 * Adds how many adjusted rotations and accelerations of all trackers
+		 * were served from memo and how many were computed to [out]
+		 */
+		@JvmStatic
+		fun addStats(out: MutableMap<String, String>) {
+			out["tracker_adjusted_memo_hits"] = memoHits.sum().toString()
+			out["tracker_adjusted_memo_misses"] = memoMisses.sum().toString()
+		}
+	}
 }
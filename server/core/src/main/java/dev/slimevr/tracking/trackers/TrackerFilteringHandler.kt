@@ -1,5 +1,7 @@
 package dev.slimevr.tracking.trackers
 
+import com.jme3.system.NanoTimer
+import dev.slimevr.VRServer
 import dev.slimevr.config.FiltersConfig
 import dev.slimevr.filtering.QuaternionMovingAverage
 import dev.slimevr.filtering.TrackerFilters
@@ -9,46 +11,109 @@ import io.github.axisangles.ktmath.Quaternion
  * Class taking care of filtering logic
  * (smoothing and prediction)
  * See QuaternionMovingAverage.kt for the quaternion math.
+ *
+ * Every received rotation goes into a ring without locking, the VRServer
+ * thread feeds them to the filter on its next update. Only one thread may
+ * add rotations at a time, like [TrackerSample].
  */
 class TrackerFilteringHandler {
+	// Rotations waiting to be filtered, the receiving thread only moves head
+	// and the VRServer thread only moves tail
+	private val pending = FloatArray(RING_SIZE * 4)
 
+	@Volatile
+	private var head = 0L
+
+	@Volatile
+	private var tail = 0L
+
+	// Set when the ring was full, the filter gets the latest sample instead
+	@Volatile
+	private var overflowed = false
+
+	// Replaced from the thread applying the config, used on the VRServer thread
+	@Volatile
 	private var movingAverage: QuaternionMovingAverage? = null
 	var enabled = false
 
 	/**
-	 * Reads/loads filtering settings from given config
+	 * Changes whenever the filtering settings do
+	 */
+	@Volatile
+	var version = 0
+		private set
+
+	/**
+	 * Reads/loads filtering settings from given config. The filter times its
+	 * updates with [fpsTimer], the VRServer's if null.
 	 */
-	fun readFilteringConfig(config: FiltersConfig, currentRawRotation: Quaternion) {
+	fun readFilteringConfig(config: FiltersConfig, currentRawRotation: Quaternion, fpsTimer: NanoTimer? = null) {
 		val type = TrackerFilters.getByConfigkey(config.type)
 		if (type == TrackerFilters.SMOOTHING || type == TrackerFilters.PREDICTION) {
 			movingAverage = QuaternionMovingAverage(
 				type,
 				config.amount,
 				currentRawRotation,
+				fpsTimer ?: VRServer.instance.fpsTimer,
 			)
 			enabled = true
 		} else {
 			movingAverage = null
 			enabled = false
 		}
+		version++
 	}
 
 	/**
-	 * Update the moving average to make it smooth
+	 * Feeds the rotations received since the last update to the moving
+	 * average, then updates it to make it smooth. Called by the VRServer
+	 * thread.
 	 */
-	fun update() {
+	fun update(sample: TrackerSample) {
+		val movingAverage = movingAverage
+		val end = head
+		var t = tail
+		while (t < end) {
+			val i = (t and RING_MASK).toInt() * 4
+			movingAverage?.addQuaternion(Quaternion(pending[i], pending[i + 1], pending[i + 2], pending[i + 3]))
+			t++
+		}
+		tail = t
+		if (overflowed) {
+			overflowed = false
+			movingAverage?.addQuaternion(sample.rotation)
+		}
 		movingAverage?.update()
 	}
 
 	/**
-	 * Updates the latest rotation
+	 * Queues a received rotation for the next update, dropped if the VRServer
+	 * thread is [RING_SIZE] rotations behind
 	 */
-	fun dataTick(currentRawRotation: Quaternion) {
-		movingAverage?.addQuaternion(currentRawRotation)
+	fun dataTick(w: Float, x: Float, y: Float, z: Float) {
+		if (movingAverage == null) return
+		val h = head
+		if (h - tail >= RING_SIZE) {
+			overflowed = true
+			return
+		}
+		val i = (h and RING_MASK).toInt() * 4
+		pending[i] = w
+		pending[i + 1] = x
+		pending[i + 2] = y
+		pending[i + 3] = z
+		// Publishes the rotation
+		head = h + 1
 	}
 
 	/**
 	 * Get the filtered rotation from the moving average
 	 */
 	fun getFilteredRotation(): Quaternion = movingAverage?.filteredQuaternion ?: Quaternion.IDENTITY
+
+	companion object {
+		// A power of two, enough for a 1 kHz tracker while ticks are 30 ms late
+		const val RING_SIZE = 32
+		private const val RING_MASK = RING_SIZE - 1L
+	}
 }
@@ -48,6 +48,14 @@ class TrackerResetsHandler(val tracker: Tracker) {
 	var allowDriftCompensation = false
 	var lastResetQuaternion: Quaternion? = null
 
+	/**
+	 * Changes whenever the adjustments applied to rotations change, so the
+	 * tracker knows its memoized adjusted rotation is outdated
+	 */
+	@Volatile
+	var version = 0
+		private set
+
 	// Manual mounting orientation
 	var mountingOrientation = HalfHorizontal
 		set(value) {
@@ -60,7 +68,10 @@ class TrackerResetsHandler(val tracker: Tracker) {
 	private var gyroFix = Quaternion.IDENTITY
 	private var attachmentFix = Quaternion.IDENTITY
 	var mountRotFix = Quaternion.IDENTITY
-		private set
+		private set(value) {
+			field = value
+			version++
+		}
 	private var yawFix = Quaternion.IDENTITY
 
 	// Yaw reset smoothing vars
@@ -100,6 +111,7 @@ class TrackerResetsHandler(val tracker: Tracker) {
 		totalDriftTime = 0L
 		driftQuats.clear()
 		driftTimes.clear()
+		version++
 	}
 
 	/**
@@ -113,6 +125,7 @@ class TrackerResetsHandler(val tracker: Tracker) {
 				VRServer.instance.allTrackers,
 				TrackerPosition.HEAD,
 			) != null
+		version++
 	}
 
 	/**
@@ -275,6 +288,7 @@ class TrackerResetsHandler(val tracker: Tracker) {
 		}
 
 		calculateDrift(oldRot)
+		version++
 
 		if (this.tracker.lastResetStatus != 0u) {
 			VRServer.instance.statusSystem.removeStatus(this.tracker.lastResetStatus)
@@ -306,6 +320,7 @@ class TrackerResetsHandler(val tracker: Tracker) {
 			yawResetSmoothTimeRemain = yawResetSmoothTime
 			yawFixSmoothIncremental = yawFixOld / yawFix
 		}
+		version++
 
 		// Remove the status if yaw reset was performed after the tracker
 		// was disconnected and connected.
@@ -519,6 +534,7 @@ class TrackerResetsHandler(val tracker: Tracker) {
 						animateEase(yawResetSmoothTimeRemain / yawResetSmoothTime),
 					)
 			}
+			version++
 		}
 	}
 
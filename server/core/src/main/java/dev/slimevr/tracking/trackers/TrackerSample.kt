@@ -0,0 +1,118 @@
+package dev.slimevr.tracking.trackers
+
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+
+/**
+ * Latest raw data of a tracker. Written by the thread receiving the tracker's
+ * data and read by the VRServer thread and bridges without locking.
+ *
+ * Uses a sequence lock: the writer makes the sequence odd while it writes and
+ * even again once done, so a reader retries when the sequence was odd or
+ * changed while it was reading. Only one thread may write at a time.
+ *
+ * The components are volatile as well, since the Java memory model gives no
+ * ordering between plain reads and the second sequence read otherwise.
+ * Volatile reads are plain loads on x86 and ARMv8.
+ */
+class TrackerSample {
+	@Volatile
+	private var sequence = 0
+
+	@Volatile
+	private var rw = 1f
+
+	@Volatile
+	private var rx = 0f
+
+	@Volatile
+	private var ry = 0f
+
+	@Volatile
+	private var rz = 0f
+
+	@Volatile
+	private var ax = 0f
+
+	@Volatile
+	private var ay = 0f
+
+	@Volatile
+	private var az = 0f
+
+	@Volatile
+	private var rotationTime = 0L
+
+	@Volatile
+	private var rotationPacketNumber = -1L
+
+	/**
+	 * Amount of writes so far, changes whenever the sample does
+	 */
+	val version: Int
+		get() = sequence ushr 1
+
+	val rotation: Quaternion
+		get() {
+			while (true) {
+				val seq = sequence
+				if (seq and 1 == 0) {
+					val w = rw
+					val x = rx
+					val y = ry
+					val z = rz
+					if (sequence == seq) return Quaternion(w, x, y, z)
+				}
+			}
+		}
+
+	val acceleration: Vector3
+		get() {
+			while (true) {
+				val seq = sequence
+				if (seq and 1 == 0) {
+					val x = ax
+					val y = ay
+					val z = az
+					if (sequence == seq) return Vector3(x, y, z)
+				}
+			}
+		}
+
+	/**
+	 * [System.nanoTime] of when the rotation was received
+	 */
+	val timeNanos: Long
+		get() = rotationTime
+
+	/**
+	 * Number of the packet the rotation was received in, -1 if unknown
+	 */
+	val packetNumber: Long
+		get() = rotationPacketNumber
+
+	/**
+	 * Sets the rotation received at [timeNanos], which is now unless the
+	 * data was stamped when it was received
+	 */
+	fun setRotation(w: Float, x: Float, y: Float, z: Float, packetNumber: Long, timeNanos: Long = System.nanoTime()) {
+		val seq = sequence
+		sequence = seq + 1
+		rw = w
+		rx = x
+		ry = y
+		rz = z
+		rotationTime = timeNanos
+		rotationPacketNumber = packetNumber
+		sequence = seq + 2
+	}
+
+	fun setAcceleration(x: Float, y: Float, z: Float) {
+		val seq = sequence
+		sequence = seq + 1
+		ax = x
+		ay = y
+		az = z
+		sequence = seq + 2
+	}
+}
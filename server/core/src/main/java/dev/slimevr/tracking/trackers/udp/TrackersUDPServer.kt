@@ -3,34 +3,51 @@ package dev.slimevr.tracking.trackers.udp
 import com.jme3.math.FastMath
 import dev.slimevr.NetworkProtocol
 import dev.slimevr.VRServer
+import dev.slimevr.metrics.MetricsRegistry
 import dev.slimevr.tracking.trackers.Tracker
 import dev.slimevr.tracking.trackers.TrackerStatus
 import io.eiren.util.Util
-import io.eiren.util.collections.FastList
 import io.eiren.util.logging.LogManager
 import io.github.axisangles.ktmath.Quaternion.Companion.fromRotationVector
 import io.github.axisangles.ktmath.Vector3
 import org.apache.commons.lang3.ArrayUtils
 import solarxr_protocol.rpc.ResetType
-import java.net.DatagramPacket
-import java.net.DatagramSocket
 import java.net.InetSocketAddress
 import java.net.NetworkInterface
 import java.net.SocketAddress
-import java.net.SocketTimeoutException
+import java.net.StandardSocketOptions
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
+import java.nio.channels.DatagramChannel
+import java.nio.channels.SelectionKey
+import java.nio.channels.Selector
 import java.util.Random
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
 import java.util.function.Consumer
 
 /**
  * Receives trackers data by UDP using extended owoTrack protocol.
+ *
+ * With more than one ingest thread, this thread only receives datagrams and
+ * hands them to [UDPIngestShard]s by sender address, so every device is
+ * always processed by the same shard and its packets stay in order.
  */
-class TrackersUDPServer(private val port: Int, name: String, private val trackersConsumer: Consumer<Tracker>) : Thread(name) {
+class TrackersUDPServer @JvmOverloads constructor(
+	private val port: Int,
+	name: String,
+	private val trackersConsumer: Consumer<Tracker>,
+	ingestThreads: Int = 1,
+	private val metrics: MetricsRegistry = MetricsRegistry(),
+) : Thread(name) {
 	private val random = Random()
-	private val connections: MutableList<UDPDevice> = FastList()
-	private val connectionsByAddress: MutableMap<SocketAddress, UDPDevice> = HashMap()
-	private val connectionsByMAC: MutableMap<String, UDPDevice> = HashMap()
+	private val connections: MutableList<UDPDevice> = CopyOnWriteArrayList()
+	private val connectionsByAddress: MutableMap<SocketAddress, UDPDevice> = ConcurrentHashMap()
+	private val connectionsByMAC: MutableMap<String, UDPDevice> = ConcurrentHashMap()
+
+	// Only guards connection setup and removal, packets look up connections
+	// without locking
+	private val connectionsLock = Any()
 	private val broadcastAddresses: List<InetSocketAddress> = try {
 		NetworkInterface.getNetworkInterfaces().asSequence().filter {
 			// Ignore loopback, PPP, virtual and disabled interfaces
@@ -45,20 +62,80 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 		LogManager.severe("[TrackerServer] Can't enumerate network interfaces", e)
 		emptyList()
 	}
-	private val parser = UDPProtocolParser()
+	private val rcvBuffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE).order(ByteOrder.BIG_ENDIAN)
+
+	// Used by this thread to process packets without shards and for keepalives
+	private val context = PacketContext()
+	private val shards = if (ingestThreads > 1) {
+		Array(ingestThreads) { i -> UDPIngestShard("$name shard $i", metrics, "udp_shard_$i", PacketContext()::handleDatagram) }
+	} else {
+		emptyArray()
+	}
+	private var lastDroppedPackets = 0L
+
+	// Only written by this thread
+	@Volatile
+	private var receivedPackets = 0L
+
+	// Round trip times of the pings
+	private val pingTimes = metrics.histogram("udp_ping")
+
+	// How long handling a datagram takes on this thread, without shards
+	private val handleTimes = metrics.histogram("udp_handle")
 
-	// 1500 is a common network MTU. 1472 is the maximum size of a UDP packet (1500 - 20 for IPv4 header - 8 for UDP header)
-	private val rcvBuffer = ByteArray(1500 - 20 - 8)
-	private val bb = ByteBuffer.wrap(rcvBuffer).order(ByteOrder.BIG_ENDIAN)
+	/**
+	 * [System.nanoTime] when the first packet was received, or 0 if none was
+	 */
+	@Volatile
+	var firstPacketTime = 0L
+		private set
 
 	// Gets initialized in this.run()
-	private lateinit var socket: DatagramSocket
+	private lateinit var channel: DatagramChannel
 	private var lastKeepup = System.currentTimeMillis()
 
-	private fun setUpNewConnection(handshakePacket: DatagramPacket, handshake: UDPPacket3Handshake) {
-		LogManager.info("[TrackerServer] Handshake received from ${handshakePacket.address}:${handshakePacket.port}")
-		val addr = handshakePacket.address
-		val socketAddr = handshakePacket.socketAddress
+	/**
+	 * Parser and buffers of a thread processing packets, packets are parsed into
+	 * objects owned by the parser so each thread needs its own
+	 */
+	private inner class PacketContext {
+		val parser = UDPProtocolParser()
+
+		// Separate from the receive buffer as responses are sent while a bundle
+		// is still being parsed
+		val sendBuffer: ByteBuffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE).order(ByteOrder.BIG_ENDIAN)
+
+		// Sender, connection and receive time of the datagram being parsed,
+		// read by packetConsumer
+		private var receivedAddress: InetSocketAddress? = null
+		private var receivedConnection: UDPDevice? = null
+		var receivedNanos = 0L
+			private set
+		private val packetConsumer = Consumer<UDPPacket> { packet ->
+			processPacket(this, receivedAddress!!, packet, receivedConnection)
+		}
+
+		fun handleDatagram(address: InetSocketAddress, buf: ByteBuffer, receivedNanos: Long) {
+			val connection = connectionsByAddress[address]
+			receivedAddress = address
+			receivedConnection = connection
+			this.receivedNanos = receivedNanos
+			parser.parse(buf, connection, packetConsumer)
+		}
+
+		/**
+		 * Sends the content written to [sendBuffer] to the given address
+		 */
+		fun send(address: SocketAddress) {
+			sendBuffer.flip()
+			channel.send(sendBuffer, address)
+		}
+	}
+
+	private fun setUpNewConnection(ctx: PacketContext, handshakeAddress: InetSocketAddress, handshake: UDPPacket3Handshake) {
+		LogManager.info("[TrackerServer] Handshake received from ${handshakeAddress.address}:${handshakeAddress.port}")
+		val addr = handshakeAddress.address
+		val socketAddr: SocketAddress = handshakeAddress
 
 		// Check if it's a known device
 		VRServer.instance.configManager.vrConfig.let { vrConfig ->
@@ -70,7 +147,7 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 		}
 
 		// Get a connection either by an existing one, or by creating a new one
-		val connection: UDPDevice = synchronized(connections) {
+		val connection: UDPDevice = synchronized(connectionsLock) {
 			connectionsByMAC[handshake.macString]?.apply {
 				// Look for an existing connection by the MAC address and update the
 				// connection information
@@ -145,7 +222,7 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 			// 		Fixing this would break config!
 			connection.descriptiveName = "udp:/$addr"
 			connection.firmwareVersion = handshake.firmware
-			synchronized(connections) {
+			synchronized(connectionsLock) {
 				// Register the new connection
 				val i = connections.size
 				connections.add(connection)
@@ -174,10 +251,9 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 			connection
 		}
 		connection.firmwareFeatures = FirmwareFeatures()
-		bb.limit(bb.capacity())
-		bb.rewind()
-		parser.writeHandshakeResponse(bb, connection)
-		socket.send(DatagramPacket(rcvBuffer, bb.position(), connection.address))
+		ctx.sendBuffer.clear()
+		ctx.parser.writeHandshakeResponse(ctx.sendBuffer, connection)
+		ctx.send(connection.address)
 	}
 
 	private fun setUpSensor(connection: UDPDevice, trackerId: Int, sensorType: IMUType, sensorStatus: Int) {
@@ -215,88 +291,111 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 
 	override fun run() {
 		val serialBuffer2 = StringBuilder()
+		var selector: Selector? = null
+		for (shard in shards) {
+			shard.start()
+		}
 		try {
-			socket = DatagramSocket(port)
+			channel = DatagramChannel.open()
+			// Enabled by default on DatagramSocket, but not on channels
+			channel.setOption(StandardSocketOptions.SO_BROADCAST, true)
+			channel.bind(InetSocketAddress(port))
+			channel.configureBlocking(false)
+			selector = Selector.open()
+			channel.register(selector, SelectionKey.OP_READ)
 			var prevPacketTime = System.currentTimeMillis()
-			socket.soTimeout = 250
 			while (true) {
-				var received: DatagramPacket? = null
+				var received: InetSocketAddress? = null
 				try {
 					val hasActiveTrackers = connections.any { it.trackers.size > 0 }
 					if (!hasActiveTrackers) {
 						val discoveryPacketTime = System.currentTimeMillis()
 						if (discoveryPacketTime - prevPacketTime >= 2000) {
 							for (addr in broadcastAddresses) {
-								bb.limit(bb.capacity())
-								bb.rewind()
-								parser.write(bb, null, UDPPacket0Heartbeat)
-								socket.send(DatagramPacket(rcvBuffer, bb.position(), addr))
+								context.sendBuffer.clear()
+								context.parser.write(context.sendBuffer, null, UDPPacket0Heartbeat)
+								context.send(addr)
 							}
 							prevPacketTime = discoveryPacketTime
 						}
 					}
-					received = DatagramPacket(rcvBuffer, rcvBuffer.size)
-					socket.receive(received)
-					bb.limit(received.length)
-					bb.rewind()
-					val connection = synchronized(connections) { connectionsByAddress[received.socketAddress] }
-					parser.parse(bb, connection)
-						.filterNotNull()
-						.forEach { processPacket(received, it, connection) }
-				} catch (ignored: SocketTimeoutException) {
+					// Replaces the socket timeout, the keepalive below needs to
+					// run even if no packets are coming in
+					if (selector.select(250) > 0) {
+						selector.selectedKeys().clear()
+					}
+					// Drain what was queued while we were busy, but not forever
+					// so the keepalive still gets to run under heavy load
+					for (i in 0 until MAX_PACKETS_PER_SELECT) {
+						rcvBuffer.clear()
+						received = channel.receive(rcvBuffer) as InetSocketAddress? ?: break
+						rcvBuffer.flip()
+						// Stamps the samples in the datagram, so their latency
+						// includes waiting for an ingest shard
+						val receivedNanos = System.nanoTime()
+						if (firstPacketTime == 0L) firstPacketTime = receivedNanos
+						receivedPackets++
+						if (shards.isEmpty()) {
+							val start = metrics.startTimer()
+							context.handleDatagram(received, rcvBuffer, receivedNanos)
+							handleTimes.lap(start)
+						} else {
+							// Every address always goes to the same shard, which
+							// keeps the packets of each device in order
+							shards[Math.floorMod(received.hashCode(), shards.size)].offer(received, rcvBuffer, receivedNanos)
+						}
+					}
 				} catch (e: Exception) {
 					LogManager.warning(
-						"[TrackerServer] Error parsing packet ${packetToString(received)}",
+						"[TrackerServer] Error parsing packet ${packetToString(received, rcvBuffer)}",
 						e,
 					)
 				}
 				if (lastKeepup + 500 < System.currentTimeMillis()) {
 					lastKeepup = System.currentTimeMillis()
-					synchronized(connections) {
-						for (conn in connections) {
-							bb.limit(bb.capacity())
-							bb.rewind()
-							parser.write(bb, conn, UDPPacket1Heartbeat)
-							socket.send(DatagramPacket(rcvBuffer, bb.position(), conn.address))
-							if (conn.lastPacket + 1000 < System.currentTimeMillis()) {
-								if (!conn.timedOut) {
-									conn.timedOut = true
-									LogManager.info("[TrackerServer] Tracker timed out: $conn")
-								}
-							} else {
-								for (value in conn.trackers.values) {
-									if (value.status == TrackerStatus.DISCONNECTED ||
-										value.status == TrackerStatus.TIMED_OUT
-									) {
-										value.status = TrackerStatus.OK
-									}
+					checkDroppedPackets()
+					for (conn in connections) {
+						context.sendBuffer.clear()
+						context.parser.write(context.sendBuffer, conn, UDPPacket1Heartbeat)
+						context.send(conn.address)
+						if (conn.lastPacket + 1000 < System.currentTimeMillis()) {
+							if (!conn.timedOut) {
+								conn.timedOut = true
+								LogManager.info("[TrackerServer] Tracker timed out: $conn")
+							}
+						} else {
+							for (value in conn.trackers.values) {
+								if (value.status == TrackerStatus.DISCONNECTED ||
+									value.status == TrackerStatus.TIMED_OUT
+								) {
+									value.status = TrackerStatus.OK
 								}
-								conn.timedOut = false
 							}
+							conn.timedOut = false
+						}
 
-							if (conn.serialBuffer.isNotEmpty() &&
-								conn.lastSerialUpdate + 500L < System.currentTimeMillis()
-							) {
-								serialBuffer2
-									.append('[')
-									.append(conn.name)
-									.append("] ")
-									.append(conn.serialBuffer)
-								println(serialBuffer2)
-								serialBuffer2.setLength(0)
-								conn.serialBuffer.setLength(0)
-							}
+						if (conn.serialBuffer.isNotEmpty() &&
+							conn.lastSerialUpdate + 500L < System.currentTimeMillis()
+						) {
+							serialBuffer2
+								.append('[')
+								.append(conn.name)
+								.append("] ")
+								.append(conn.serialBuffer)
+							println(serialBuffer2)
+							serialBuffer2.setLength(0)
+							conn.serialBuffer.setLength(0)
+						}
 
-							if (conn.lastPingPacketTime + 500 < System.currentTimeMillis()) {
-								conn.lastPingPacketId = random.nextInt()
-								conn.lastPingPacketTime = System.currentTimeMillis()
-								bb.limit(bb.capacity())
-								bb.rewind()
-								bb.putInt(10)
-								bb.putLong(0)
-								bb.putInt(conn.lastPingPacketId)
-								socket.send(DatagramPacket(rcvBuffer, bb.position(), conn.address))
-							}
+						if (conn.lastPingPacketTime + 500 < System.currentTimeMillis()) {
+							conn.lastPingPacketId = random.nextInt()
+							conn.lastPingPacketTime = System.currentTimeMillis()
+							conn.lastPingPacketNanos = System.nanoTime()
+							context.sendBuffer.clear()
+							context.sendBuffer.putInt(10)
+							context.sendBuffer.putLong(0)
+							context.sendBuffer.putInt(conn.lastPingPacketId)
+							context.send(conn.address)
 						}
 					}
 				}
@@ -304,23 +403,23 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 		} catch (e: Exception) {
 			e.printStackTrace()
 		} finally {
-			Util.close(socket)
+			Util.close(selector, channel)
 		}
 	}
 
-	private fun processPacket(received: DatagramPacket, packet: UDPPacket, connection: UDPDevice?) {
+	private fun processPacket(ctx: PacketContext, received: InetSocketAddress, packet: UDPPacket, connection: UDPDevice?) {
 		val tracker: Tracker?
 		when (packet) {
 			is UDPPacket0Heartbeat, is UDPPacket1Heartbeat -> {}
 
-			is UDPPacket3Handshake -> setUpNewConnection(received, packet)
+			is UDPPacket3Handshake -> setUpNewConnection(ctx, received, packet)
 
 			is RotationPacket -> {
-				var rot = packet.rotation
-				rot = AXES_OFFSET.times(rot)
 				tracker = connection?.getTracker(packet.sensorId)
 				if (tracker == null) return
-				tracker.setRotation(rot)
+				// Components are read one by one, reading the interface's
+				// rotation as a whole would box it
+				setAxesAdjustedRotation(connection!!, tracker, packet.rotation.w, packet.rotation.x, packet.rotation.y, packet.rotation.z, ctx.receivedNanos)
 				if (packet is UDPPacket23RotationAndAcceleration) {
 					// Switch x and y around to adjust for different axes
 					tracker.setAcceleration(Vector3(packet.acceleration.y, packet.acceleration.x, packet.acceleration.z))
@@ -331,11 +430,9 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 			is UDPPacket17RotationData -> {
 				tracker = connection?.getTracker(packet.sensorId)
 				if (tracker == null) return
-				var rot17 = packet.rotation
-				rot17 = AXES_OFFSET * rot17
 				when (packet.dataType) {
 					UDPPacket17RotationData.DATA_TYPE_NORMAL -> {
-						tracker.setRotation(rot17)
+						setAxesAdjustedRotation(connection!!, tracker, packet.rotation.w, packet.rotation.x, packet.rotation.y, packet.rotation.z, ctx.receivedNanos)
 						tracker.dataTick()
 						// tracker.calibrationStatus = rotationData.calibrationInfo;
 						// Not implemented in server
@@ -362,13 +459,16 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 			is UDPPacket10PingPong -> {
 				if (connection == null) return
 				if (connection.lastPingPacketId == packet.pingId) {
+					pingTimes.record(System.nanoTime() - connection.lastPingPacketNanos)
 					for (t in connection.trackers.values) {
 						t.ping = (System.currentTimeMillis() - connection.lastPingPacketTime).toInt() / 2
 						t.dataTick()
 					}
 				} else {
 					LogManager.debug(
-						"[TrackerServer] Wrong ping id ${packet.pingId} != ${connection.lastPingPacketId}",
+						"[TrackerServer] Wrong ping id {} != {}",
+						packet.pingId,
+						connection.lastPingPacketId,
 					)
 				}
 			}
@@ -393,7 +493,7 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 
 			is UDPPacket14Error -> {
 				LogManager.severe(
-					"[TrackerServer] Error received from ${received.socketAddress}: ${packet.errorNumber}",
+					"[TrackerServer] Error received from $received: ${packet.errorNumber}",
 				)
 				tracker = connection?.getTracker(packet.sensorId)
 				if (tracker == null) return
@@ -404,10 +504,9 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 				if (connection == null) return
 				setUpSensor(connection, packet.sensorId, packet.sensorType, packet.sensorStatus)
 				// Send ack
-				bb.limit(bb.capacity())
-				bb.rewind()
-				parser.writeSensorInfoResponse(bb, connection, packet)
-				socket.send(DatagramPacket(rcvBuffer, bb.position(), connection.address))
+				ctx.sendBuffer.clear()
+				ctx.parser.writeSensorInfoResponse(ctx.sendBuffer, connection, packet)
+				ctx.send(connection.address)
 				LogManager.info(
 					"[TrackerServer] Sensor info for ${connection.descriptiveName}/${packet.sensorId}: ${packet.sensorStatus}",
 				)
@@ -462,10 +561,9 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 			is UDPPacket22FeatureFlags -> {
 				if (connection == null) return
 				// Respond with server flags
-				bb.limit(bb.capacity())
-				bb.rewind()
-				parser.write(bb, connection, packet)
-				socket.send(DatagramPacket(rcvBuffer, bb.position(), connection.address))
+				ctx.sendBuffer.clear()
+				ctx.parser.write(ctx.sendBuffer, connection, packet)
+				ctx.send(connection.address)
 				connection.firmwareFeatures = packet.firmwareFeatures
 			}
 
@@ -475,12 +573,37 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 
 	fun getConnections(): List<UDPDevice?> = connections
 
+	/**
+	 * Total amount of packets dropped because an ingest shard's queue was full
+	 */
+	val droppedPackets: Long
+		get() = shards.sumOf { it.droppedPackets }
+
+	/**
+	 * Adds the amount of connections, and the total amount of packets received,
+	 * skipped as out of order and dropped by the ingest shards, to [out]
+	 */
+	fun addStats(out: MutableMap<String, String>) {
+		out["udp_connections"] = connections.size.toString()
+		out["udp_packets"] = receivedPackets.toString()
+		out["udp_out_of_order"] = connections.sumOf { it.outOfOrderPackets }.toString()
+		out["udp_queue_dropped"] = droppedPackets.toString()
+	}
+
+	private fun checkDroppedPackets() {
+		val dropped = droppedPackets
+		if (dropped != lastDroppedPackets) {
+			LogManager.warning(
+				"[TrackerServer] Dropped ${dropped - lastDroppedPackets} packets, the ingest threads can't keep up",
+			)
+			lastDroppedPackets = dropped
+		}
+	}
+
 	// FIXME: for some reason it ends up disconnecting after 30 seconds have passed instead of immediately
 	fun disconnectDevice(device: UDPDevice) {
-		synchronized(connections) {
+		synchronized(connectionsLock) {
 			connections.remove(device)
-		}
-		synchronized(connectionsByAddress) {
 			connectionsByAddress.filter { (_, dev) -> dev.id == device.id }.keys.forEach(
 				connectionsByAddress::remove,
 			)
@@ -500,18 +623,49 @@ class TrackersUDPServer(private val port: Int, name: String, private val tracker
 		 */
 		private val AXES_OFFSET = fromRotationVector(-FastMath.HALF_PI, 0f, 0f)
 		private const val RESET_SOURCE_NAME = "TrackerServer"
-		private fun packetToString(packet: DatagramPacket?): String {
+		private const val MAX_PACKETS_PER_SELECT = 64
+
+		// 1500 is a common network MTU. 1472 is the maximum size of a UDP packet (1500 - 20 for IPv4 header - 8 for UDP header)
+		const val MAX_PACKET_SIZE = 1500 - 20 - 8
+
+		/**
+		 * Sets [AXES_OFFSET] * (w, x, y, z) as the tracker's rotation, along with
+		 * the number of the packet it came in and when it was received. The
+		 * product is written out so that no intermediate quaternion gets boxed.
+		 */
+		private fun setAxesAdjustedRotation(
+			connection: UDPDevice,
+			tracker: Tracker,
+			w: Float,
+			x: Float,
+			y: Float,
+			z: Float,
+			receivedNanos: Long,
+		) {
+			val o = AXES_OFFSET
+			tracker.setRotation(
+				o.w * w - o.x * x - o.y * y - o.z * z,
+				o.x * w + o.w * x - o.z * y + o.y * z,
+				o.y * w + o.z * x + o.w * y - o.x * z,
+				o.z * w - o.y * x + o.x * y + o.w * z,
+				connection.lastPacketNumber,
+				receivedNanos,
+			)
+		}
+
+		private fun packetToString(address: InetSocketAddress?, buffer: ByteBuffer): String {
 			val sb = StringBuilder()
 			sb.append("DatagramPacket{")
-			if (packet == null) {
+			if (address == null) {
 				sb.append("null")
 			} else {
-				sb.append(packet.address.toString())
-				sb.append(packet.port)
+				sb.append(address.address.toString())
+				sb.append(address.port)
 				sb.append(',')
-				sb.append(packet.length)
+				sb.append(buffer.limit())
 				sb.append(',')
-				sb.append(ArrayUtils.toString(packet.data))
+				val data = ByteArray(buffer.limit()) { buffer.get(it) }
+				sb.append(ArrayUtils.toString(data))
 			}
 			sb.append('}')
 			return sb.toString()
@@ -18,13 +18,23 @@ class UDPDevice(
 	override val id: Int = nextLocalDeviceId.incrementAndGet()
 
 	@JvmField
+	@Volatile
 	var lastPacket = System.currentTimeMillis()
 
 	@JvmField
+	@Volatile
 	var lastPingPacketId = -1
 
 	@JvmField
+	@Volatile
 	var lastPingPacketTime: Long = 0
+
+	/**
+	 * [System.nanoTime] of when the last ping was sent, to measure its round trip
+	 */
+	@JvmField
+	@Volatile
+	var lastPingPacketNanos: Long = 0
 	override var name: String? = null
 		set(name) {
 			super.name = name
@@ -43,6 +53,13 @@ class UDPDevice(
 	@JvmField
 	var lastPacketNumber: Long = -1
 
+	/**
+	 * Amount of packets skipped because they didn't come after the last one
+	 */
+	@JvmField
+	@Volatile
+	var outOfOrderPackets = 0L
+
 	@JvmField
 	var protocol: NetworkProtocol? = null
 
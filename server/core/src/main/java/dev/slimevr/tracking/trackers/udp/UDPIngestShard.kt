@@ -0,0 +1,96 @@
+package dev.slimevr.tracking.trackers.udp
+
+import dev.slimevr.metrics.MetricsRegistry
+import io.eiren.util.logging.LogManager
+import java.net.InetSocketAddress
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.concurrent.ArrayBlockingQueue
+
+/**
+ * Decodes datagrams for a subset of devices on its own thread. The receive
+ * thread copies each datagram into one of a fixed pool of buffers, so no
+ * allocations happen per packet. When the pool runs out, packets are dropped
+ * and counted instead of blocking the receive thread.
+ *
+ * The queue depth and how long handling a datagram takes are kept in
+ * [metrics] as `<metricsPrefix>_queue` and `<metricsPrefix>_handle`.
+ */
+class UDPIngestShard(
+	name: String,
+	private val metrics: MetricsRegistry,
+	metricsPrefix: String,
+	private val handler: PacketHandler,
+) : Thread(name) {
+	private val free = ArrayBlockingQueue<IngestDatagram>(QUEUE_SIZE)
+	private val pending = ArrayBlockingQueue<IngestDatagram>(QUEUE_SIZE)
+	private val handleTimes = metrics.histogram("${metricsPrefix}_handle")
+
+	@Volatile
+	var droppedPackets = 0L
+		private set
+
+	init {
+		isDaemon = true
+		repeat(QUEUE_SIZE) { free.add(IngestDatagram()) }
+		metrics.gauge("${metricsPrefix}_queue") { pending.size }
+	}
+
+	/**
+	 * Copies the remaining bytes of [buf] and queues them for this shard, along
+	 * with the [System.nanoTime] they were received at. Only called from the
+	 * receive thread.
+	 */
+	fun offer(address: InetSocketAddress, buf: ByteBuffer, receivedNanos: Long): Boolean {
+		val datagram = free.poll()
+		if (datagram == null) {
+			droppedPackets++
+			return false
+		}
+		datagram.address = address
+		datagram.receivedNanos = receivedNanos
+		datagram.buffer.clear()
+		datagram.buffer.put(buf)
+		datagram.buffer.flip()
+		pending.add(datagram)
+		return true
+	}
+
+	override fun run() {
+		while (true) {
+			val datagram = try {
+				pending.take()
+			} catch (e: InterruptedException) {
+				return
+			}
+			val start = metrics.startTimer()
+			try {
+				handler.handle(datagram.address!!, datagram.buffer, datagram.receivedNanos)
+			} catch (e: Exception) {
+				LogManager.warning("[TrackerServer] Error parsing packet from ${datagram.address}", e)
+			} finally {
+				datagram.address = null
+				free.add(datagram)
+			}
+			handleTimes.lap(start)
+		}
+	}
+
+	/**
+	 * Handles a datagram on the shard's thread. Not a function type, so the
+	 * receive time isn't boxed for every packet.
+	 */
+	fun interface PacketHandler {
+		fun handle(address: InetSocketAddress, buffer: ByteBuffer, receivedNanos: Long)
+	}
+
+	private class IngestDatagram {
+		val buffer: ByteBuffer = ByteBuffer.allocate(TrackersUDPServer.MAX_PACKET_SIZE).order(ByteOrder.BIG_ENDIAN)
+		var address: InetSocketAddress? = null
+		var receivedNanos = 0L
+	}
+
+	companion object {
+		const val QUEUE_SIZE = 1024
+	}
+}
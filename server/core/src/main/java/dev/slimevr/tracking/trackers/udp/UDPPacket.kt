@@ -6,6 +6,7 @@ import io.github.axisangles.ktmath.Vector3
 import java.io.IOException
 import java.nio.BufferUnderflowException
 import java.nio.ByteBuffer
+import kotlin.math.*
 
 sealed class UDPPacket(val packetId: Int) {
 	@Throws(IOException::class, BufferUnderflowException::class)
@@ -87,7 +88,11 @@ data class UDPPacket1Rotation(override var rotation: Quaternion = Quaternion.IDE
 	RotationPacket {
 	override val sensorId = 0
 	override fun readData(buf: ByteBuffer) {
-		rotation = UDPUtils.getSafeBufferQuaternion(buf)
+		val x = buf.float
+		val y = buf.float
+		val z = buf.float
+		val w = buf.float
+		rotation = if (UDPUtils.isSafeQuaternion(w, x, y, z)) Quaternion(w, x, y, z) else Quaternion.IDENTITY
 	}
 }
 
@@ -250,7 +255,11 @@ data class UDPPacket16Rotation2(override var rotation: Quaternion = Quaternion.I
 	RotationPacket {
 	override val sensorId = 1
 	override fun readData(buf: ByteBuffer) {
-		rotation = UDPUtils.getSafeBufferQuaternion(buf)
+		val x = buf.float
+		val y = buf.float
+		val z = buf.float
+		val w = buf.float
+		rotation = if (UDPUtils.isSafeQuaternion(w, x, y, z)) Quaternion(w, x, y, z) else Quaternion.IDENTITY
 	}
 }
 
@@ -264,7 +273,11 @@ data class UDPPacket17RotationData(
 	override fun readData(buf: ByteBuffer) {
 		sensorId = buf.get().toInt() and 0xFF
 		dataType = buf.get().toInt() and 0xFF
-		rotation = UDPUtils.getSafeBufferQuaternion(buf)
+		val x = buf.float
+		val y = buf.float
+		val z = buf.float
+		val w = buf.float
+		rotation = if (UDPUtils.isSafeQuaternion(w, x, y, z)) Quaternion(w, x, y, z) else Quaternion.IDENTITY
 		calibrationInfo = buf.get().toInt() and 0xFF
 	}
 
@@ -344,7 +357,9 @@ data class UDPPacket23RotationAndAcceleration(
 		val y = buf.short * scaleR
 		val z = buf.short * scaleR
 		val w = buf.short * scaleR
-		rotation = Quaternion(w, x, y, z).unit()
+		// Normalized in place, Quaternion.unit() would box the result
+		val len = sqrt(w * w + x * x + y * y + z * z)
+		rotation = if (len == 0f) Quaternion.NULL else Quaternion(w / len, x / len, y / len, z / len)
 		val scaleA = 1 / (1 shl 7).toFloat() // The same as the HID scale
 		acceleration = Vector3(buf.short * scaleA, buf.short * scaleA, buf.short * scaleA)
 	}
@@ -373,15 +388,23 @@ class UDPUtils {
 			val z = byteBuffer.getFloat()
 			val w = byteBuffer.getFloat()
 
-			return if (
-				(x.isNaN() || y.isNaN() || z.isNaN() || w.isNaN()) ||
-				(x == 0f && y == 0f && z == 0f && w == 0f)
-			) {
-				Quaternion.IDENTITY
-			} else {
+			return if (isSafeQuaternion(w, x, y, z)) {
 				Quaternion(w, x, y, z)
+			} else {
+				Quaternion.IDENTITY
 			}
 		}
+
+		/**
+		 * Checks the components of a quaternion read from the network.
+		 * Packets read their components into locals and use this instead of
+		 * [getSafeBufferQuaternion] so that the returned value isn't boxed.
+		 */
+		fun isSafeQuaternion(w: Float, x: Float, y: Float, z: Float): Boolean = !(
+			(x.isNaN() || y.isNaN() || z.isNaN() || w.isNaN()) ||
+				(x == 0f && y == 0f && z == 0f && w == 0f)
+			)
+
 		fun getSafeBufferFloat(byteBuffer: ByteBuffer): Float {
 			val value = byteBuffer.getFloat()
 			return if (value.isNaN()) {
@@ -1,76 +1,101 @@
 package dev.slimevr.tracking.trackers.udp
 
+import io.eiren.util.logging.LogManager
 import java.io.IOException
 import java.nio.ByteBuffer
 import java.nio.charset.StandardCharsets
+import java.util.function.Consumer
 
+/**
+ * Parses tracker datagrams. High-rate packets are decoded into instances owned
+ * by the parser, so a parsed packet is only valid until the consumer returns
+ * and a parser must only be used from one thread.
+ */
 class UDPProtocolParser {
+	private val rotationPacket = UDPPacket1Rotation()
+	private val accelerationPacket = UDPPacket4Acceleration()
+	private val pingPongPacket = UDPPacket10PingPong()
+	private val batteryLevelPacket = UDPPacket12BatteryLevel()
+	private val rotation2Packet = UDPPacket16Rotation2()
+	private val rotationDataPacket = UDPPacket17RotationData()
+	private val magnetometerAccuracyPacket = UDPPacket18MagnetometerAccuracy()
+	private val signalStrengthPacket = UDPPacket19SignalStrength()
+	private val temperaturePacket = UDPPacket20Temperature()
+	private val rotationAndAccelerationPacket = UDPPacket23RotationAndAcceleration()
+
 	@Throws(IOException::class)
-	fun parse(buf: ByteBuffer, connection: UDPDevice?): Array<UDPPacket?> {
+	fun parse(buf: ByteBuffer, connection: UDPDevice?, consumer: Consumer<UDPPacket>) {
 		val packetId = buf.int
 		val packetNumber = buf.long
 		if (connection != null) {
 			if (!connection.isNextPacket(packetNumber)) {
-				// Skip packet because it's not next
-				throw IOException(
-					"Out of order packet received: id $packetId, number $packetNumber, last ${connection.lastPacketNumber}, from $connection",
+				connection.outOfOrderPackets++
+				// Skip packet because it's not next, this can happen often so
+				// the message is only formatted if it gets written
+				LogManager.warning(
+					"[TrackerServer] Out of order packet received: id {}, number {}, last {}, from {}",
+					packetId,
+					packetNumber,
+					connection.lastPacketNumber,
+					connection,
 				)
+				return
 			}
 			connection.lastPacket = System.currentTimeMillis()
-			connection.trackers.forEach { (_, tracker) ->
+			for (tracker in connection.trackers.values) {
 				tracker.heartbeat()
 			}
 		}
 		if (packetId == PACKET_BUNDLE) {
-			bundlePackets.clear()
 			while (buf.hasRemaining()) {
 				val bundlePacketLen = Math.min(buf.short.toInt(), buf.remaining())
 				if (bundlePacketLen == 0) continue
 
 				val bundlePacketStart = buf.position()
-				val bundleBuf = buf.slice()
-				bundleBuf.limit(bundlePacketLen)
-				val bundlePacketId = bundleBuf.int
-				val newPacket = getNewPacket(bundlePacketId)
-				newPacket?.let {
-					newPacket.readData(bundleBuf)
-					bundlePackets.add(newPacket)
+				val bundleLimit = buf.limit()
+				// Limit the buffer to the bundled packet instead of slicing it
+				// to not allocate a new buffer per packet
+				buf.limit(bundlePacketStart + bundlePacketLen)
+				val bundlePacketId = buf.int
+				getPacket(bundlePacketId)?.let {
+					it.readData(buf)
+					consumer.accept(it)
 				}
 
+				buf.limit(bundleLimit)
 				buf.position(bundlePacketStart + bundlePacketLen)
 			}
-			return bundlePackets.toTypedArray()
+			return
 		} else if (packetId == PACKET_BUNDLE_COMPACT) {
-			bundlePackets.clear()
 			while (buf.hasRemaining()) {
 				val bundlePacketLen = Math.min(buf.get().toUByte().toInt(), buf.remaining()) // 1 byte
 				if (bundlePacketLen == 0) continue
 
 				val bundlePacketStart = buf.position()
-				val bundleBuf = buf.slice()
-				bundleBuf.limit(bundlePacketLen)
-				val bundlePacketId = bundleBuf.get().toUByte().toInt() // 1 byte
-				val newPacket = getNewPacket(bundlePacketId)
-				newPacket?.let {
-					newPacket.readData(bundleBuf)
-					bundlePackets.add(newPacket)
+				val bundleLimit = buf.limit()
+				buf.limit(bundlePacketStart + bundlePacketLen)
+				val bundlePacketId = buf.get().toUByte().toInt() // 1 byte
+				getPacket(bundlePacketId)?.let {
+					it.readData(buf)
+					consumer.accept(it)
 				}
 
+				buf.limit(bundleLimit)
 				buf.position(bundlePacketStart + bundlePacketLen)
 			}
-			return bundlePackets.toTypedArray()
+			return
 		}
 
-		val newPacket = getNewPacket(packetId)
+		val newPacket = getPacket(packetId)
 		if (newPacket != null) {
 			newPacket.readData(buf)
+			consumer.accept(newPacket)
 		} else {
 // 			LogManager.log.debug(
 // 				"[UDPProtocolParser] Skipped packet id " +
 // 					packetId + " from " + connection
 // 			)
 		}
-		return arrayOf(newPacket)
 	}
 
 	@Throws(IOException::class)
@@ -96,24 +121,29 @@ class UDPProtocolParser {
 		buf.put(packet.sensorStatus.toByte())
 	}
 
-	protected fun getNewPacket(packetId: Int): UDPPacket? = when (packetId) {
+	/**
+	 * Gets the packet to decode [packetId] into. Packets sent at tracking rate
+	 * are reused, the rest are rare enough to be allocated.
+	 */
+	private fun getPacket(packetId: Int): UDPPacket? = when (packetId) {
 		PACKET_HEARTBEAT -> UDPPacket0Heartbeat
-		PACKET_ROTATION -> UDPPacket1Rotation()
+		PACKET_ROTATION -> rotationPacket
 		PACKET_HANDSHAKE -> UDPPacket3Handshake()
-		PACKET_PING_PONG -> UDPPacket10PingPong()
-		PACKET_ACCEL -> UDPPacket4Acceleration()
+		PACKET_PING_PONG -> pingPongPacket
+		PACKET_ACCEL -> accelerationPacket
 		PACKET_SERIAL -> UDPPacket11Serial()
-		PACKET_BATTERY_LEVEL -> UDPPacket12BatteryLevel()
+		PACKET_BATTERY_LEVEL -> batteryLevelPacket
 		PACKET_TAP -> UDPPacket13Tap()
 		PACKET_ERROR -> UDPPacket14Error()
 		PACKET_SENSOR_INFO -> UDPPacket15SensorInfo()
-		PACKET_ROTATION_2 -> UDPPacket16Rotation2()
-		PACKET_ROTATION_DATA -> UDPPacket17RotationData()
-		PACKET_MAGNETOMETER_ACCURACY -> UDPPacket18MagnetometerAccuracy()
-		PACKET_SIGNAL_STRENGTH -> UDPPacket19SignalStrength()
-		PACKET_TEMPERATURE -> UDPPacket20Temperature()
+		PACKET_ROTATION_2 -> rotation2Packet
+		PACKET_ROTATION_DATA -> rotationDataPacket
+		PACKET_MAGNETOMETER_ACCURACY -> magnetometerAccuracyPacket
+		PACKET_SIGNAL_STRENGTH -> signalStrengthPacket
+		PACKET_TEMPERATURE -> temperaturePacket
 		PACKET_USER_ACTION -> UDPPacket21UserAction()
 		PACKET_FEATURE_FLAGS -> UDPPacket22FeatureFlags()
+		PACKET_ROTATION_AND_ACCELERATION -> rotationAndAccelerationPacket
 		PACKET_PROTOCOL_CHANGE -> UDPPacket200ProtocolChange()
 		else -> null
 	}
@@ -151,7 +181,6 @@ class UDPProtocolParser {
 		const val PACKET_BUNDLE_COMPACT = 101
 		const val PACKET_PROTOCOL_CHANGE = 200
 		private val HANDSHAKE_BUFFER = ByteArray(64)
-		private val bundlePackets = ArrayList<UDPPacket>(128)
 
 		init {
 			HANDSHAKE_BUFFER[0] = 3
@@ -112,7 +112,7 @@ class WebSocketVRBridge(
 						?.lowercase(Locale.getDefault()),
 				)
 			message.put("tracker_type", message["location"].asText())
-			conn.send(message.toString())
+			send(conn, message.toString())
 		}
 	}
 
@@ -196,11 +196,17 @@ class WebSocketVRBridge(
 				message.put("qz", t.getRotation().z)
 				message.put("qw", t.getRotation().w)
 
-				conn.send(message.toString())
+				send(conn, message.toString())
 			}
 		}
 	}
 
+	// Queue replies like the protocol messages, so a client that stops reading
+	// gets disconnected instead of piling them up in the socket
+	private fun send(conn: WebSocket, message: String) {
+		conn.getAttachment<WebsocketConnection>()?.sendQueue?.send(message)
+	}
+
 	private fun parseAction(json: ObjectNode, conn: WebSocket) {
 		when (json["name"].asText()) {
 			"calibrate" -> instance.resetTrackersYaw(RESET_SOURCE_NAME)
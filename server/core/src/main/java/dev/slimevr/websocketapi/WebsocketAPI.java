@@ -1,6 +1,7 @@
 package dev.slimevr.websocketapi;
 
 import dev.slimevr.VRServer;
+import dev.slimevr.metrics.MetricHistogram;
 import dev.slimevr.protocol.GenericConnection;
 import dev.slimevr.protocol.ProtocolAPI;
 import dev.slimevr.protocol.ProtocolAPIServer;
@@ -13,6 +14,7 @@ import org.java_websocket.server.WebSocketServer;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Stream;
 
@@ -21,14 +23,18 @@ public class WebsocketAPI extends WebSocketServer implements ProtocolAPIServer {
 
 	public final VRServer server;
 	public final ProtocolAPI protocolAPI;
+	private final WebsocketSender sender = new WebsocketSender();
+	private final MetricHistogram sendLatency;
 
 	public WebsocketAPI(VRServer server, ProtocolAPI protocolAPI) {
 		super(new InetSocketAddress(21110), Collections.singletonList(new Draft_6455()));
 		this.server = server;
 		this.protocolAPI = protocolAPI;
+		this.sendLatency = server.metrics.histogram("ws_latency");
 
 		this.protocolAPI.registerAPIServer(this);
 		setReuseAddr(true);
+		sender.start();
 	}
 
 	@Override
@@ -38,13 +44,13 @@ public class WebsocketAPI extends WebSocketServer implements ProtocolAPIServer {
 				"[WebSocketAPI] New connection from: "
 					+ conn.getRemoteSocketAddress().getAddress().getHostAddress()
 			);
-		conn.setAttachment(new WebsocketConnection(conn));
+		conn.setAttachment(new WebsocketConnection(conn, sender, sendLatency));
 	}
 
 	/**
 	 * Helper function to get the string of the `conn` while handling `null`
 	 */
-	protected static String connAddr(WebSocket conn) {
+	public static String connAddr(WebSocket conn) {
 		if (conn == null) {
 			return "null";
 		}
@@ -107,4 +113,18 @@ public class WebsocketAPI extends WebSocketServer implements ProtocolAPIServer {
 			return (GenericConnection) c;
 		}).filter(Objects::nonNull);
 	}
+
+	@Override
+	public void addStats(Map<String, String> out) {
+		for (WebSocket conn : getConnections()) {
+			var c = conn.<WebsocketConnection>getAttachment();
+			if (c == null)
+				continue;
+			var remote = conn.getRemoteSocketAddress();
+			String name = remote != null
+				? connAddr(conn) + ":" + remote.getPort()
+				: c.getConnectionId().toString();
+			c.sendQueue.addStats("ws_" + name, out);
+		}
+	}
 }
@@ -1,5 +1,6 @@
 package dev.slimevr.websocketapi;
 
+import dev.slimevr.metrics.MetricHistogram;
 import dev.slimevr.protocol.ConnectionContext;
 import dev.slimevr.protocol.GenericConnection;
 import org.java_websocket.WebSocket;
@@ -12,11 +13,17 @@ public class WebsocketConnection implements GenericConnection {
 
 	public final ConnectionContext context;
 	public final WebSocket conn;
+	public final WebsocketSendQueue sendQueue;
 	public UUID id;
 
-	public WebsocketConnection(WebSocket conn) {
+	public WebsocketConnection(
+		WebSocket conn,
+		WebsocketSender sender,
+		MetricHistogram sendLatency
+	) {
 		this.context = new ConnectionContext();
 		this.conn = conn;
+		this.sendQueue = new WebsocketSendQueue(conn, sender, sendLatency);
 		this.id = UUID.randomUUID();
 	}
 
@@ -27,8 +34,17 @@ public class WebsocketConnection implements GenericConnection {
 
 	@Override
 	public void send(ByteBuffer bytes) {
-		if (this.conn.isOpen())
-			this.conn.send(bytes);
+		this.sendQueue.send(bytes);
+	}
+
+	@Override
+	public void sendDataFeed(int index, ByteBuffer bytes) {
+		this.sendQueue.sendDataFeed(index, bytes);
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return this.sendQueue.getDepth();
 	}
 
 	@Override
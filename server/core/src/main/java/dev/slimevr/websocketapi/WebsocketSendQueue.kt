@@ -0,0 +1,152 @@
+package dev.slimevr.websocketapi
+
+import dev.slimevr.metrics.MetricHistogram
+import io.eiren.util.logging.LogManager
+import org.java_websocket.WebSocket
+import org.java_websocket.WebSocketImpl
+import org.java_websocket.exceptions.WebsocketNotConnectedException
+import org.java_websocket.framing.CloseFrame
+import java.nio.ByteBuffer
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * The outgoing messages of a websocket connection, written to the socket by a
+ * [WebsocketSender].
+ *
+ * Messages are sent in order and never dropped. If the client stops reading
+ * until [MAX_MESSAGES] are waiting, it gets disconnected instead. Data feed
+ * updates only keep the latest update of each data feed while the client is
+ * behind, and are sent once every message queued before them is.
+ *
+ * How long messages waited before being handed to the socket is recorded in
+ * [latency], which the connections share.
+ */
+class WebsocketSendQueue(
+	private val socket: WebSocket,
+	private val sender: WebsocketSender,
+	private val latency: MetricHistogram,
+) {
+	// Either a binary or a text message
+	private class Outbound(val bytes: ByteBuffer?, val text: String?, val queuedAt: Long)
+
+	private val messages = ArrayBlockingQueue<Outbound>(MAX_MESSAGES)
+	private val dataFeeds = ConcurrentHashMap<Int, Outbound>()
+	private val scheduled = AtomicBoolean()
+
+	private val replacedDataFeeds = AtomicLong()
+
+	/**
+	 * Data feed updates dropped because a newer one replaced them
+	 */
+	val droppedDataFeeds: Long
+		get() = replacedDataFeeds.get()
+
+	/**
+	 * Messages and data feed updates waiting to be sent
+	 */
+	val depth: Int
+		get() = messages.size + dataFeeds.size
+
+	/**
+	 * Queues a message, the buffer is sent from its current position and must
+	 * not be changed afterwards
+	 */
+	fun send(bytes: ByteBuffer) {
+		queue(Outbound(bytes.slice(), null, System.nanoTime()))
+	}
+
+	/**
+	 * Queues a text message
+	 */
+	fun send(text: String) {
+		queue(Outbound(null, text, System.nanoTime()))
+	}
+
+	private fun queue(message: Outbound) {
+		if (!socket.isOpen) return
+		if (!messages.offer(message)) {
+			LogManager.warning(
+				"[WebSocketAPI] Disconnecting ${WebsocketAPI.connAddr(socket)}, $MAX_MESSAGES messages are waiting to be sent.",
+			)
+			messages.clear()
+			dataFeeds.clear()
+			socket.close(CloseFrame.TRY_AGAIN_LATER, "Too many unsent messages")
+			return
+		}
+		schedule()
+	}
+
+	/**
+	 * Queues an update of the data feed at [index], replacing its last update
+	 * if that wasn't sent yet
+	 */
+	fun sendDataFeed(index: Int, bytes: ByteBuffer) {
+		if (!socket.isOpen) return
+		if (dataFeeds.put(index, Outbound(bytes.slice(), null, System.nanoTime())) != null) {
+			replacedDataFeeds.incrementAndGet()
+		}
+		schedule()
+	}
+
+	private fun schedule() {
+		if (scheduled.compareAndSet(false, true)) sender.schedule(this)
+	}
+
+	/**
+	 * Hands queued messages to the socket until it's busy, called by the
+	 * sender thread
+	 *
+	 * @return `false` if messages are left
+	 */
+	internal fun flush(): Boolean {
+		scheduled.set(false)
+		if (!socket.isOpen) {
+			messages.clear()
+			dataFeeds.clear()
+			return true
+		}
+		while (!isSocketBusy()) {
+			write(messages.poll() ?: break)
+		}
+		if (messages.isEmpty()) {
+			for (index in dataFeeds.keys) {
+				if (isSocketBusy()) break
+				write(dataFeeds.remove(index) ?: continue)
+			}
+		}
+		return messages.isEmpty() && dataFeeds.isEmpty()
+	}
+
+	// The socket is written by the websocket server's own thread, only give it
+	// a few frames at a time so the rest can still be coalesced
+	private fun isSocketBusy(): Boolean = if (socket is WebSocketImpl) {
+		socket.outQueue.size >= MAX_SOCKET_FRAMES
+	} else {
+		socket.hasBufferedData()
+	}
+
+	private fun write(message: Outbound) {
+		latency.record(System.nanoTime() - message.queuedAt)
+		try {
+			if (message.text != null) socket.send(message.text) else socket.send(message.bytes)
+		} catch (_: WebsocketNotConnectedException) {
+		}
+	}
+
+	/**
+	 * Adds the queue depth and dropped data feed updates to [out], with keys
+	 * starting with [prefix]
+	 */
+	fun addStats(prefix: String, out: MutableMap<String, String>) {
+		out["${prefix}_queue"] = depth.toString()
+		out["${prefix}_dropped"] = droppedDataFeeds.toString()
+	}
+
+	companion object {
+		const val MAX_MESSAGES = 1024
+		const val MAX_SOCKET_FRAMES = 16
+	}
+}
@@ -0,0 +1,68 @@
+package dev.slimevr.websocketapi
+
+import io.eiren.util.logging.LogManager
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * Hands the queued messages of websocket connections to their sockets from
+ * its own thread, so whoever sends a message never waits on a socket.
+ * Connections whose sockets are still busy writing are retried every
+ * [RETRY_INTERVAL_MS].
+ */
+class WebsocketSender {
+	private val ready = LinkedBlockingQueue<WebsocketSendQueue>()
+
+	// Only touched by the sender thread
+	private val stalled = LinkedHashSet<WebsocketSendQueue>()
+	private val thread = Thread(::run, "WebsocketSender")
+
+	init {
+		thread.isDaemon = true
+	}
+
+	fun start() {
+		thread.start()
+	}
+
+	/**
+	 * Asks the sender thread to flush [queue], can be called from any thread
+	 */
+	fun schedule(queue: WebsocketSendQueue) {
+		ready.offer(queue)
+	}
+
+	private fun run() {
+		var lastRetry = System.nanoTime()
+		while (true) {
+			try {
+				val queue = if (stalled.isEmpty()) {
+					ready.take()
+				} else {
+					ready.poll(RETRY_INTERVAL_MS, TimeUnit.MILLISECONDS)
+				}
+				if (queue != null) flush(queue)
+
+				val now = System.nanoTime()
+				if (stalled.isNotEmpty() && now - lastRetry >= RETRY_INTERVAL_MS * 1_000_000L) {
+					lastRetry = now
+					val retry = stalled.toList()
+					stalled.clear()
+					retry.forEach(::flush)
+				}
+			} catch (e: InterruptedException) {
+				return
+			} catch (e: Exception) {
+				LogManager.severe("[WebsocketSender] Failed to send messages.", e)
+			}
+		}
+	}
+
+	private fun flush(queue: WebsocketSendQueue) {
+		if (!queue.flush()) stalled.add(queue)
+	}
+
+	companion object {
+		const val RETRY_INTERVAL_MS = 2L
+	}
+}
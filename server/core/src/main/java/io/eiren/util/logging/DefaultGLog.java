@@ -1,12 +1,26 @@
 package io.eiren.util.logging;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
+/**
+ * Writes log messages from its own thread. Logging never blocks the caller:
+ * messages go through a bounded ring buffer and are dropped when it's full,
+ * and formatting happens on the logger thread. A message repeated more than
+ * {@link #MAX_REPEATS} times within a second at the same level is only
+ * counted, and the count is written at the end of the second.
+ */
 public class DefaultGLog extends Thread implements IGLog {
 
+	private static final int CAPACITY = 1 << 15;
+	private static final int MAX_REPEATS = 10;
+	private static final long WINDOW_NANOS = 1_000_000_000L;
+
 	private final Logger logger;
 
 	public static class LogEntry {
@@ -39,67 +53,93 @@ public class DefaultGLog extends Thread implements IGLog {
 		}
 	}
 
-	private final ArrayBlockingQueue<LogEntry> queue = new ArrayBlockingQueue<>(50000);
+	private static class Repeats {
+
+		private final Level level;
+		private int count;
+		private int suppressed;
+
+		private Repeats(Level level) {
+			this.level = level;
+		}
+	}
+
+	private final LogRingBuffer buffer = new LogRingBuffer(CAPACITY);
+	private volatile boolean waiting;
 	private volatile LoggerRecorder recorder;
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong suppressed = new AtomicLong();
+
+	// Only used by the logger thread, repeats of each message by level
+	private final Map<Level, Map<String, Repeats>> repeats = new HashMap<>();
+	private long windowStart = System.nanoTime();
+	private long reportedDrops;
 
 	@Override
 	public void info(String message) {
-		add(new LogEntry(Level.INFO, message));
+		add(Level.INFO, message, null, null);
 	}
 
 	@Override
 	public void info(String message, Throwable t) {
-		add(new LogEntry(Level.INFO, message, t));
+		add(Level.INFO, message, null, t);
 	}
 
 	@Override
 	public void severe(String message) {
-		add(new LogEntry(Level.SEVERE, message));
+		add(Level.SEVERE, message, null, null);
 	}
 
 	@Override
 	public void severe(String message, Throwable t) {
-		add(new LogEntry(Level.SEVERE, message, t));
+		add(Level.SEVERE, message, null, t);
 	}
 
 	@Override
 	public void warning(String message) {
-		add(new LogEntry(Level.WARNING, message));
+		add(Level.WARNING, message, null, null);
 	}
 
 	@Override
 	public void warning(String message, Throwable t) {
-		add(new LogEntry(Level.WARNING, message, t));
+		add(Level.WARNING, message, null, t);
 	}
 
 	@Override
 	public void debug(String message) {
-		add(new LogEntry(Level.INFO, "[DBG] " + message));
+		add(Level.INFO, "[DBG] " + message, null, null);
 	}
 
 	@Override
 	public void debug(String message, Throwable t) {
-		add(new LogEntry(Level.INFO, "[DBG] " + message, t));
+		add(Level.INFO, "[DBG] " + message, null, t);
 	}
 
 	@Override
 	public void log(Level level, String message) {
-		add(new LogEntry(level, message));
+		add(level, message, null, null);
 	}
 
 	@Override
 	public void log(Level level, String message, Throwable t) {
-		add(new LogEntry(level, message, t));
+		add(level, message, null, t);
 	}
 
-	private void add(LogEntry entry) {
-		try {
-			queue.put(entry);
-		} catch (InterruptedException ignored) {}
-		try {
-			if (recorder != null)
-				recorder.addEntry(entry);
-		} catch (NullPointerException ignored) {}
+	@Override
+	public void logFormat(Level level, String pattern, Throwable t, Object... args) {
+		add(level, pattern, args, t);
+	}
+
+	private void add(Level level, String pattern, Object[] args, Throwable t) {
+		if (buffer.offer(level, pattern, args, t)) {
+			if (waiting)
+				LockSupport.unpark(this);
+		} else {
+			dropped.incrementAndGet();
+		}
+		LoggerRecorder recorder = this.recorder;
+		if (recorder != null)
+			recorder.addEntry(new LogEntry(level, format(pattern, args), t));
 	}
 
 	@Override
@@ -114,6 +154,26 @@ public class DefaultGLog extends Thread implements IGLog {
 		return lr;
 	}
 
+	/**
+	 * Messages dropped because the buffer was full
+	 */
+	public long getDroppedMessages() {
+		return dropped.get();
+	}
+
+	/**
+	 * Messages not written because they were repeated too often
+	 */
+	public long getSuppressedMessages() {
+		return suppressed.get();
+	}
+
+	@Override
+	public void addStats(Map<String, String> out) {
+		out.put("log_dropped", Long.toString(dropped.get()));
+		out.put("log_suppressed", Long.toString(suppressed.get()));
+	}
+
 	public DefaultGLog(Logger logger) {
 		super("Logger");
 		this.logger = logger;
@@ -125,13 +185,109 @@ public class DefaultGLog extends Thread implements IGLog {
 	@Override
 	public void run() {
 		while (true) {
-			try {
-				LogEntry log = queue.take();
-				if (log.t != null)
-					logger.log(log.level, log.message, log.t);
-				else
-					logger.log(log.level, log.message);
-			} catch (InterruptedException ignored) {}
+			LogRingBuffer.Slot slot = buffer.peek();
+			if (slot == null) {
+				endWindow();
+				reportDrops();
+				waiting = true;
+				// Check again in case a message was added before waiting was set
+				if (buffer.peek() == null)
+					LockSupport.parkNanos(this, WINDOW_NANOS);
+				waiting = false;
+				continue;
+			}
+			Level level = slot.level;
+			String pattern = slot.pattern;
+			Object[] args = slot.args;
+			Throwable t = slot.t;
+			buffer.release();
+			write(level, pattern, args, t);
+		}
+	}
+
+	private void write(Level level, String pattern, Object[] args, Throwable t) {
+		endWindow();
+		Map<String, Repeats> levelRepeats = repeats.get(level);
+		if (levelRepeats == null) {
+			levelRepeats = new HashMap<>();
+			repeats.put(level, levelRepeats);
+		}
+		Repeats messageRepeats = levelRepeats.get(pattern);
+		if (messageRepeats == null) {
+			messageRepeats = new Repeats(level);
+			levelRepeats.put(pattern, messageRepeats);
+		}
+		if (++messageRepeats.count > MAX_REPEATS) {
+			messageRepeats.suppressed++;
+			suppressed.incrementAndGet();
+			return;
+		}
+		String message = format(pattern, args);
+		if (t != null)
+			logger.log(level, message, t);
+		else
+			logger.log(level, message);
+	}
+
+	/**
+	 * Writes how many times messages were suppressed and starts counting
+	 * repeats again, once a second
+	 */
+	private void endWindow() {
+		long now = System.nanoTime();
+		if (now - windowStart < WINDOW_NANOS)
+			return;
+		windowStart = now;
+		if (repeats.isEmpty())
+			return;
+		for (Map<String, Repeats> levelRepeats : repeats.values()) {
+			for (Map.Entry<String, Repeats> entry : levelRepeats.entrySet()) {
+				Repeats messageRepeats = entry.getValue();
+				if (messageRepeats.suppressed > 0) {
+					logger
+						.log(
+							messageRepeats.level,
+							"[Logger] Message repeated "
+								+ messageRepeats.suppressed
+								+ " more times: "
+								+ entry.getKey()
+						);
+				}
+			}
+		}
+		repeats.clear();
+	}
+
+	private void reportDrops() {
+		long drops = dropped.get();
+		if (drops != reportedDrops) {
+			logger
+				.log(
+					Level.WARNING,
+					"[Logger] Dropped "
+						+ (drops - reportedDrops)
+						+ " messages, the log buffer was full"
+				);
+			reportedDrops = drops;
+		}
+	}
+
+	/**
+	 * Replaces each {} in the pattern by the string value of the next argument
+	 */
+	static String format(String pattern, Object[] args) {
+		if (args == null || args.length == 0)
+			return pattern;
+		StringBuilder sb = new StringBuilder(pattern.length() + 16 * args.length);
+		int start = 0;
+		for (Object arg : args) {
+			int index = pattern.indexOf("{}", start);
+			if (index < 0)
+				break;
+			sb.append(pattern, start, index).append(arg);
+			start = index + 2;
 		}
+		sb.append(pattern, start, pattern.length());
+		return sb.toString();
 	}
 }
@@ -1,5 +1,6 @@
 package io.eiren.util.logging;
 
+import java.util.Map;
 import java.util.logging.Level;
 
 
@@ -33,6 +34,21 @@ public interface IGLog {
 
 	void log(Level level, String message, Throwable t);
 
+	/**
+	 * Logs a message whose {} get replaced by the string values of args when
+	 * it's written, so the caller doesn't pay for the formatting. The
+	 * arguments must not change after the call.
+	 */
+	default void logFormat(Level level, String pattern, Throwable t, Object... args) {
+		log(level, DefaultGLog.format(pattern, args), t);
+	}
+
+	/**
+	 * Adds the counts of dropped and suppressed messages to the given stats
+	 */
+	default void addStats(Map<String, String> out) {
+	}
+
 	void setRecorder(LoggerRecorder recorder);
 
 	LoggerRecorder removeRecorder();
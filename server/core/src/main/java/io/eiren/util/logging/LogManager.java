@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Paths;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
@@ -88,6 +89,26 @@ public class LogManager {
 		log.debug(message, t);
 	}
 
+	/**
+	 * Logs a message whose {} get replaced by the string values of args on the
+	 * logger thread, see {@link IGLog#logFormat}
+	 */
+	public static void info(String pattern, Object... args) {
+		log.logFormat(Level.INFO, pattern, null, args);
+	}
+
+	public static void severe(String pattern, Object... args) {
+		log.logFormat(Level.SEVERE, pattern, null, args);
+	}
+
+	public static void warning(String pattern, Object... args) {
+		log.logFormat(Level.WARNING, pattern, null, args);
+	}
+
+	public static void debug(String pattern, Object... args) {
+		log.logFormat(Level.INFO, "[DBG] " + pattern, null, args);
+	}
+
 	public static void log(Level level, String message) {
 		log.log(level, message);
 	}
@@ -96,6 +117,10 @@ public class LogManager {
 		log.log(level, message, t);
 	}
 
+	public static void addStats(Map<String, String> out) {
+		log.addStats(out);
+	}
+
 	public static void closeLogger() {
 		for (Handler handler : global.getHandlers()) {
 			handler.close();
@@ -0,0 +1,90 @@
+package io.eiren.util.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+
+/**
+ * Bounded lock-free queue of log entries, written by any thread and read by
+ * the logger thread only. Entries are stored in preallocated slots, and
+ * offering to a full buffer drops the entry instead of waiting.
+ */
+class LogRingBuffer {
+
+	static final class Slot {
+		Level level;
+		String pattern;
+		Object[] args;
+		Throwable t;
+	}
+
+	private final Slot[] slots;
+	// A slot can be written when its sequence is the position being written,
+	// and read when it's one more
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail = new AtomicLong();
+	// Only used by the reader
+	private long head;
+
+	LogRingBuffer(int capacity) {
+		if (Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Capacity must be a power of 2");
+		slots = new Slot[capacity];
+		sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = new Slot();
+			sequences.set(i, i);
+		}
+		mask = capacity - 1;
+	}
+
+	/**
+	 * @return false if the buffer is full and the entry was dropped
+	 */
+	boolean offer(Level level, String pattern, Object[] args, Throwable t) {
+		long position = tail.get();
+		while (true) {
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					Slot slot = slots[index];
+					slot.level = level;
+					slot.pattern = pattern;
+					slot.args = args;
+					slot.t = t;
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				// The reader didn't release this slot yet
+				return false;
+			} else {
+				// Another writer took this position
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Returns the oldest entry, or null if the buffer is empty. Only the reader
+	 * can call this, and it must call {@link #release()} once done with it.
+	 */
+	Slot peek() {
+		int index = (int) head & mask;
+		return sequences.get(index) == head + 1 ? slots[index] : null;
+	}
+
+	void release() {
+		int index = (int) head & mask;
+		Slot slot = slots[index];
+		slot.pattern = null;
+		slot.args = null;
+		slot.t = null;
+		sequences.set(index, head + slots.length);
+		head++;
+	}
+}
@@ -0,0 +1,93 @@
+package dev.slimevr.unit
+
+import dev.slimevr.autobone.AutoBone
+import dev.slimevr.config.AutoBoneConfig
+import dev.slimevr.poseframeformat.PoseFrames
+import dev.slimevr.poseframeformat.trackerdata.TrackerFrame
+import dev.slimevr.poseframeformat.trackerdata.TrackerFrames
+import dev.slimevr.tracking.processor.config.SkeletonConfigOffsets
+import dev.slimevr.tracking.trackers.TrackerPosition
+import io.eiren.util.collections.FastList
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import kotlin.math.PI
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Tests that AutoBone gives the same results no matter how many threads
+ * train in parallel
+ */
+class AutoBoneTests {
+	@Test
+	fun defaultsTrainOnePairAtATime() {
+		// The default batch doesn't depend on the amount of cores, so it trains
+		// every pair on its own like before batches could be configured
+		val expected = train(threads = 1, batchSize = 1)
+		Assertions.assertEquals(expected, train(threads = 4, batchSize = null))
+		Assertions.assertEquals(expected, train(threads = 0, batchSize = null))
+	}
+
+	@Test
+	fun parallelTrainingIsDeterministic() {
+		val expected = train(threads = 1)
+		Assertions.assertEquals(expected, train(threads = 3))
+		Assertions.assertEquals(expected, train(threads = 4))
+	}
+
+	@Test
+	fun parallelFrameFilteringIsDeterministic() {
+		val expected = train(threads = 1, useFrameFiltering = true)
+		Assertions.assertEquals(expected, train(threads = 4, useFrameFiltering = true))
+	}
+
+	private fun train(
+		threads: Int,
+		useFrameFiltering: Boolean = false,
+		batchSize: Int? = 16,
+	): Map<SkeletonConfigOffsets, Float> {
+		val config = AutoBoneConfig()
+		config.threads = threads
+		if (batchSize != null) config.batchSize = batchSize
+		config.numEpochs = 5
+		config.targetHmdHeight = 1.6f
+		config.maxFinalError = Float.MAX_VALUE
+		config.useFrameFiltering = useFrameFiltering
+		return AutoBone(null, config).processFrames(walkingFrames(100), config).configValues
+	}
+
+	companion object {
+		/**
+		 * A recording of legs swinging back and forth with the knees bending
+		 */
+		fun walkingFrames(frameCount: Int): PoseFrames {
+			val frames = PoseFrames()
+			fun addTracker(position: TrackerPosition, frame: (phase: Float) -> TrackerFrame) {
+				val trackerFrames = FastList<TrackerFrame?>(frameCount)
+				for (i in 0 until frameCount) {
+					trackerFrames.add(frame(i * 0.15f))
+				}
+				frames.frameHolders.add(TrackerFrames(position.designation, trackerFrames))
+			}
+
+			fun addLeg(upperLeg: TrackerPosition, lowerLeg: TrackerPosition, offset: Float) {
+				addTracker(upperLeg) { TrackerFrame(upperLeg, rotationX(0.5f * sin(it + offset))) }
+				addTracker(lowerLeg) {
+					TrackerFrame(lowerLeg, rotationX(0.5f * sin(it + offset) - 0.4f * (1f + cos(it + offset))))
+				}
+			}
+
+			addTracker(TrackerPosition.HEAD) {
+				TrackerFrame(TrackerPosition.HEAD, Quaternion.IDENTITY, Vector3(0f, 1.6f + 0.02f * sin(it * 2f), 0f))
+			}
+			addTracker(TrackerPosition.HIP) { TrackerFrame(TrackerPosition.HIP, Quaternion.IDENTITY) }
+			addLeg(TrackerPosition.LEFT_UPPER_LEG, TrackerPosition.LEFT_LOWER_LEG, 0f)
+			addLeg(TrackerPosition.RIGHT_UPPER_LEG, TrackerPosition.RIGHT_LOWER_LEG, PI.toFloat())
+			return frames
+		}
+
+		private fun rotationX(angle: Float) = Quaternion(cos(angle / 2f), sin(angle / 2f), 0f, 0f)
+	}
+}
@@ -0,0 +1,74 @@
+package dev.slimevr.unit
+
+import dev.slimevr.protocol.datafeed.DataFeedDelta
+import io.github.axisangles.ktmath.Quaternion
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+/**
+ * Tests which fields [DataFeedDelta] sends in keyframes and delta updates
+ */
+class DataFeedDeltaTests {
+	private val tracker = Any()
+	private val bone = Any()
+	private val structure = listOf(tracker, bone)
+
+	@Test
+	fun firstUpdateIsFull() {
+		val delta = DataFeedDelta()
+		delta.begin(0L, structure)
+		Assertions.assertTrue(delta.isKeyframe)
+		Assertions.assertEquals(1, delta.sequence)
+		Assertions.assertTrue(delta.changed(tracker, DataFeedDelta.TRACKER_ROTATION, Quaternion.IDENTITY))
+		Assertions.assertTrue(delta.changed(tracker, DataFeedDelta.TRACKER_STATUS, 1))
+		Assertions.assertTrue(delta.changed(bone, DataFeedDelta.BONE_LENGTH, 0.5f))
+	}
+
+	@Test
+	fun onlyChangedFieldsAreSent() {
+		val delta = DataFeedDelta()
+		delta.begin(0L, structure)
+		delta.changed(tracker, DataFeedDelta.TRACKER_ROTATION, Quaternion.IDENTITY)
+		delta.changed(tracker, DataFeedDelta.TRACKER_STATUS, 1)
+		delta.changed(bone, DataFeedDelta.BONE_LENGTH, 0.5f)
+
+		delta.begin(100L, structure)
+		Assertions.assertFalse(delta.isKeyframe)
+		Assertions.assertEquals(2, delta.sequence)
+		// Unchanged, including equal values that aren't the same instance
+		Assertions.assertFalse(delta.changed(tracker, DataFeedDelta.TRACKER_ROTATION, Quaternion(1f, 0f, 0f, 0f)))
+		Assertions.assertFalse(delta.changed(bone, DataFeedDelta.BONE_LENGTH, 0.5f))
+		// Changed
+		Assertions.assertTrue(delta.changed(tracker, DataFeedDelta.TRACKER_STATUS, 2))
+
+		// The changed value is what the next update compares against
+		delta.begin(200L, structure)
+		Assertions.assertFalse(delta.changed(tracker, DataFeedDelta.TRACKER_STATUS, 2))
+		Assertions.assertTrue(delta.changed(tracker, DataFeedDelta.TRACKER_STATUS, 1))
+	}
+
+	@Test
+	fun keyframes() {
+		val delta = DataFeedDelta()
+		delta.begin(0L, structure)
+		delta.changed(tracker, DataFeedDelta.TRACKER_STATUS, 1)
+
+		// Requested
+		delta.requestKeyframe()
+		delta.begin(100L, structure)
+		Assertions.assertTrue(delta.isKeyframe)
+		Assertions.assertTrue(delta.changed(tracker, DataFeedDelta.TRACKER_STATUS, 1))
+
+		// Due
+		delta.begin(100L + DataFeedDelta.KEYFRAME_INTERVAL_MS, structure)
+		Assertions.assertTrue(delta.isKeyframe)
+		Assertions.assertTrue(delta.changed(tracker, DataFeedDelta.TRACKER_STATUS, 1))
+
+		// The trackers changed
+		delta.begin(200L + DataFeedDelta.KEYFRAME_INTERVAL_MS, listOf(tracker))
+		Assertions.assertTrue(delta.isKeyframe)
+		Assertions.assertTrue(delta.changed(tracker, DataFeedDelta.TRACKER_STATUS, 1))
+		delta.begin(300L + DataFeedDelta.KEYFRAME_INTERVAL_MS, listOf(tracker))
+		Assertions.assertFalse(delta.isKeyframe)
+	}
+}
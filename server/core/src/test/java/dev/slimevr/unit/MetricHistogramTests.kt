@@ -0,0 +1,44 @@
+package dev.slimevr.unit
+
+import dev.slimevr.metrics.MetricHistogram
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+/**
+ * Tests the buckets and percentiles of [MetricHistogram]
+ */
+class MetricHistogramTests {
+	@Test
+	fun bucketsContainTheirValues() {
+		var value = 0L
+		while (value <= MetricHistogram.MAX_VALUE) {
+			val bucket = MetricHistogram.bucketOf(value)
+			Assertions.assertTrue(value <= MetricHistogram.upperBound(bucket)) { "$value above bucket $bucket" }
+			if (bucket > 0) {
+				Assertions.assertTrue(value > MetricHistogram.upperBound(bucket - 1)) { "$value below bucket $bucket" }
+			}
+			// Error of the bucket's bound
+			Assertions.assertTrue(MetricHistogram.upperBound(bucket) - value <= value / MetricHistogram.SUB_BUCKETS)
+			value = value * 9 / 8 + 1
+		}
+		Assertions.assertEquals(MetricHistogram.BUCKETS - 1, MetricHistogram.bucketOf(MetricHistogram.MAX_VALUE))
+	}
+
+	@Test
+	fun percentiles() {
+		val histogram = MetricHistogram()
+		for (i in 1..1000) histogram.record(i * 1000L)
+		val stats = HashMap<String, String>()
+		histogram.drainTo("test", stats)
+		Assertions.assertEquals("1000", stats["test_count"])
+		Assertions.assertEquals(500.0, stats["test_p50_us"]!!.toDouble(), 500.0 / MetricHistogram.SUB_BUCKETS)
+		Assertions.assertEquals(990.0, stats["test_p99_us"]!!.toDouble(), 990.0 / MetricHistogram.SUB_BUCKETS)
+		Assertions.assertEquals("1000", stats["test_max_us"])
+
+		// Only what was recorded since the last drain
+		histogram.record(5_000_000L)
+		histogram.drainTo("test", stats)
+		Assertions.assertEquals("1", stats["test_count"])
+		Assertions.assertEquals("5000", stats["test_max_us"])
+	}
+}
@@ -0,0 +1,88 @@
+package dev.slimevr.unit
+
+import dev.slimevr.osc.OSCRelay
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+
+/**
+ * Tests which OSC packets [OSCRelay] forwards for its address prefixes
+ */
+class OSCRelayTests {
+	private val prefixes = arrayOf("/avatar/parameters/".toByteArray(Charsets.US_ASCII))
+
+	@Test
+	fun messages() {
+		Assertions.assertTrue(matches(message("/avatar/parameters/VelocityX")))
+		Assertions.assertFalse(matches(message("/tracking/trackers/1/position")))
+		// Shorter than the prefix
+		Assertions.assertFalse(matches(message("/avatar")))
+		// Everything matches without prefixes
+		val other = message("/tracking/vrsystem")
+		Assertions.assertTrue(OSCRelay.matches(wrap(other), 0, other.size, emptyArray()))
+	}
+
+	@Test
+	fun bundles() {
+		val other = message("/tracking/trackers/head/position")
+		val avatar = message("/avatar/parameters/Grounded")
+		Assertions.assertTrue(matches(bundle(other, avatar)))
+		Assertions.assertFalse(matches(bundle(other, other)))
+		Assertions.assertFalse(matches(bundle()))
+		// Nested bundles
+		Assertions.assertTrue(matches(bundle(other, bundle(bundle(avatar)))))
+		Assertions.assertFalse(matches(bundle(other, bundle(bundle(other)))))
+	}
+
+	@Test
+	fun malformedBundles() {
+		val avatar = message("/avatar/parameters/Grounded")
+		// An element claiming to be longer than the packet
+		val packet = bundle(avatar)
+		Assertions.assertFalse(matches(packet.copyOf(packet.size - 4)))
+		// Bundles nested deeper than what's followed
+		var nested = avatar
+		repeat(16) { nested = bundle(nested) }
+		Assertions.assertFalse(matches(nested))
+	}
+
+	@Test
+	fun onlyTheGivenRangeIsChecked() {
+		val other = message("/tracking/trackers/1/rotation")
+		val avatar = message("/avatar/parameters/Grounded")
+		val packet = wrap(other + avatar)
+		Assertions.assertFalse(OSCRelay.matches(packet, 0, other.size, prefixes))
+		Assertions.assertTrue(OSCRelay.matches(packet, other.size, other.size + avatar.size, prefixes))
+	}
+
+	private fun matches(packet: ByteArray): Boolean = OSCRelay.matches(wrap(packet), 0, packet.size, prefixes)
+
+	private fun wrap(packet: ByteArray): ByteBuffer = ByteBuffer.wrap(packet)
+
+	// An OSC message with a float argument, strings are padded to 4 bytes
+	private fun message(address: String): ByteArray {
+		val out = ByteArrayOutputStream()
+		out.write(padded(address))
+		out.write(padded(",f"))
+		out.write(ByteBuffer.allocate(4).putFloat(1f).array())
+		return out.toByteArray()
+	}
+
+	private fun bundle(vararg elements: ByteArray): ByteArray {
+		val out = ByteArrayOutputStream()
+		out.write(padded("#bundle"))
+		// Immediate time tag
+		out.write(ByteBuffer.allocate(8).putLong(1L).array())
+		for (element in elements) {
+			out.write(ByteBuffer.allocate(4).putInt(element.size).array())
+			out.write(element)
+		}
+		return out.toByteArray()
+	}
+
+	private fun padded(string: String): ByteArray {
+		val bytes = string.toByteArray(Charsets.US_ASCII)
+		return bytes.copyOf((bytes.size + 4) and 3.inv())
+	}
+}
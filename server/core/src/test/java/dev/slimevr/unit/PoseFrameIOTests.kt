@@ -0,0 +1,132 @@
+package dev.slimevr.unit
+
+import dev.slimevr.VRServer
+import dev.slimevr.poseframeformat.PoseFrameChunkWriter
+import dev.slimevr.poseframeformat.PoseFrameIO
+import dev.slimevr.poseframeformat.PoseFrames
+import dev.slimevr.poseframeformat.trackerdata.TrackerFrame
+import dev.slimevr.poseframeformat.trackerdata.TrackerFrames
+import dev.slimevr.tracking.trackers.Tracker
+import dev.slimevr.tracking.trackers.TrackerPosition
+import dev.slimevr.tracking.trackers.TrackerStatus
+import io.eiren.util.collections.FastList
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.io.File
+import java.io.RandomAccessFile
+
+/**
+ * Tests that recordings read the same from the stream, column and chunked
+ * formats
+ */
+class PoseFrameIOTests {
+	@TempDir
+	lateinit var dir: File
+
+	@Test
+	fun convertedRecordingMatches() {
+		val frames = AutoBoneTests.walkingFrames(200)
+		// A tracker with missing frames and data
+		val trackerFrames = FastList<TrackerFrame?>()
+		for (i in 0 until 150) {
+			trackerFrames.add(
+				when (i % 3) {
+					0 -> null
+					1 -> TrackerFrame(TrackerPosition.CHEST, Quaternion(0.5f, 0.5f, 0.5f, 0.5f), acceleration = Vector3(0f, i.toFloat(), 0f))
+					else -> TrackerFrame(rawRotation = Quaternion(i.toFloat(), 0f, 0f, 1f))
+				},
+			)
+		}
+		frames.frameHolders.add(TrackerFrames("chest", trackerFrames))
+
+		val file = File(dir, "recording.pfr")
+		PoseFrameIO.writeToFile(file, frames)
+		Assertions.assertFalse(PoseFrameIO.isColumnFile(file))
+		val streamFrames = PoseFrameIO.readFromFile(file)
+		Assertions.assertTrue(PoseFrameIO.convertToColumns(file, file))
+		Assertions.assertTrue(PoseFrameIO.isColumnFile(file))
+		Assertions.assertFalse(PoseFrameIO.convertToColumns(file, file))
+		val columnFrames = PoseFrameIO.readFromFile(file)
+		assertFramesEqual(streamFrames, columnFrames)
+
+		// Removing frames keeps the remaining ones
+		for (recording in listOf(streamFrames, columnFrames)) {
+			for (tracker in recording.frameHolders) {
+				tracker.frames.removeAt(10)
+				tracker.frames.removeAt(0)
+				tracker.removeFrames { it % 7 == 3 }
+			}
+		}
+		assertFramesEqual(streamFrames, columnFrames)
+
+		// Adding and replacing frames keeps the frames read from the columns
+		val frame = TrackerFrame(TrackerPosition.HIP, Quaternion(0f, 1f, 0f, 0f))
+		for (recording in listOf(streamFrames, columnFrames)) {
+			for (tracker in recording.frameHolders) {
+				tracker.frames[5] = frame
+				tracker.frames.add(20, null)
+				tracker.frames.add(frame)
+				tracker.removeFrames { it == 2 }
+			}
+		}
+		assertFramesEqual(streamFrames, columnFrames)
+	}
+
+	@Test
+	fun streamedRecordingMatches() {
+		val trackers = listOf(TrackerPosition.HEAD, TrackerPosition.HIP).map { position ->
+			Tracker(
+				null,
+				VRServer.getNextLocalTrackerId(),
+				position.designation,
+				trackerPosition = position,
+				hasRotation = true,
+				hasPosition = position == TrackerPosition.HEAD,
+			).also { it.status = TrackerStatus.OK }
+		}
+		val expected = PoseFrames()
+		for (tracker in trackers) {
+			expected.frameHolders.add(TrackerFrames(tracker))
+		}
+
+		val file = File(dir, "streamed.pfr")
+		val writer = PoseFrameChunkWriter(file, trackers.map { it.name })
+		val frameCount = PoseFrameChunkWriter.CHUNK_FRAMES * 2 + 100
+		for (i in 0 until frameCount) {
+			trackers[0].position = Vector3(0f, 1.6f, i * 0.001f)
+			trackers[1].setRotation(Quaternion(1f, i * 0.001f, 0f, 0f).unit())
+			for (j in trackers.indices) {
+				expected.frameHolders[j].addFrameFromTracker(trackers[j])
+			}
+			while (!writer.offer(trackers)) {
+				Thread.sleep(1)
+			}
+		}
+		writer.close().get()
+		assertFramesEqual(expected, PoseFrameIO.readFromFile(file))
+
+		// Cutting off the footer and the last chunk keeps the complete chunks
+		RandomAccessFile(file, "rw").use { it.setLength(it.length() - 40) }
+		for (tracker in expected.frameHolders) {
+			while (tracker.frames.size > PoseFrameChunkWriter.CHUNK_FRAMES * 2) {
+				tracker.frames.removeAt(tracker.frames.size - 1)
+			}
+		}
+		assertFramesEqual(expected, PoseFrameIO.readFromFile(file))
+	}
+
+	private fun assertFramesEqual(expected: PoseFrames, actual: PoseFrames) {
+		Assertions.assertEquals(expected.frameHolders.size, actual.frameHolders.size)
+		for ((expectedTracker, actualTracker) in expected.frameHolders.zip(actual.frameHolders)) {
+			Assertions.assertEquals(expectedTracker.name, actualTracker.name)
+			Assertions.assertEquals(expectedTracker.frames.toList(), actualTracker.frames.toList())
+			for (i in expectedTracker.frames.indices) {
+				Assertions.assertEquals(expectedTracker.tryGetRotation(i), actualTracker.tryGetRotation(i))
+				Assertions.assertEquals(expectedTracker.tryGetPosition(i), actualTracker.tryGetPosition(i))
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package dev.slimevr.unit
+
+import dev.slimevr.tracking.processor.Bone
+import dev.slimevr.tracking.processor.BoneType
+import dev.slimevr.tracking.processor.SkeletonTransforms
+import dev.slimevr.tracking.processor.TransformNode
+import io.github.axisangles.ktmath.Quaternion
+import io.github.axisangles.ktmath.Vector3
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import kotlin.random.Random
+
+/**
+ * Tests that bones stored in [SkeletonTransforms] get the same world
+ * transforms as the [TransformNode] hierarchy bones used to be made of
+ */
+class SkeletonTransformsTests {
+	/**
+	 * A bone the way it was before [SkeletonTransforms]: a head node with a
+	 * tail node as its child, and the heads of child bones under the tail
+	 */
+	private class NodeBone {
+		val head = TransformNode(true)
+		val tail = TransformNode(false)
+
+		init {
+			head.attachChild(tail)
+		}
+	}
+
+	private val random = Random(42)
+
+	@Test
+	fun matchesTransformNodes() {
+		val transforms = SkeletonTransforms()
+		val boneTypes = BoneType.values()
+		val bones = ArrayList<Bone>()
+		val nodeBones = ArrayList<NodeBone>()
+		for (i in 0 until BONES) {
+			val bone = Bone(boneTypes[i % boneTypes.size], transforms)
+			val nodeBone = NodeBone()
+			// A few roots, every other bone is attached to an earlier one
+			if (i % 10 != 0) {
+				val parent = random.nextInt(i)
+				bones[parent].attachChild(bone)
+				nodeBones[parent].tail.attachChild(nodeBone.head)
+			}
+			bones.add(bone)
+			nodeBones.add(nodeBone)
+		}
+
+		repeat(POSES) {
+			for (i in 0 until BONES) {
+				val bone = bones[i]
+				val nodeBone = nodeBones[i]
+				val rotation = randomRotation()
+				val offset = if (i % 3 == 0) randomRotation() else Quaternion.IDENTITY
+				val length = random.nextFloat()
+				bone.rotationOffset = offset
+				bone.setRotation(rotation)
+				bone.length = length
+				nodeBone.head.localTransform.rotation = rotation * offset
+				nodeBone.tail.localTransform.translation = Vector3(0f, -length, 0f)
+				if (bone.parent == null) {
+					val position = randomVector()
+					bone.setPosition(position)
+					nodeBone.head.localTransform.translation = position
+				}
+			}
+			transforms.update()
+			for (i in 0 until BONES) {
+				if (bones[i].parent == null) nodeBones[i].head.update()
+			}
+			assertMatch(bones, nodeBones)
+
+			// Only updating a subtree
+			val i = random.nextInt(BONES)
+			val rotation = randomRotation()
+			bones[i].setRotation(rotation)
+			nodeBones[i].head.localTransform.rotation = rotation * bones[i].rotationOffset
+			bones[i].update()
+			nodeBones[i].head.update()
+			assertMatch(bones, nodeBones)
+		}
+	}
+
+	private fun assertMatch(bones: List<Bone>, nodeBones: List<NodeBone>) {
+		for (i in bones.indices) {
+			val bone = bones[i]
+			val nodeBone = nodeBones[i]
+			assertClose(nodeBone.head.worldTransform.rotation, bone.getGlobalRotation(), i)
+			assertClose(nodeBone.head.worldTransform.translation, bone.getPosition(), i)
+			assertClose(nodeBone.tail.worldTransform.translation, bone.getTailPosition(), i)
+		}
+	}
+
+	private fun assertClose(expected: Quaternion, actual: Quaternion, bone: Int) {
+		val message = { "Bone $bone: expected rotation $expected, got $actual" }
+		Assertions.assertEquals(expected.w, actual.w, EPSILON, message)
+		Assertions.assertEquals(expected.x, actual.x, EPSILON, message)
+		Assertions.assertEquals(expected.y, actual.y, EPSILON, message)
+		Assertions.assertEquals(expected.z, actual.z, EPSILON, message)
+	}
+
+	private fun assertClose(expected: Vector3, actual: Vector3, bone: Int) {
+		val message = { "Bone $bone: expected position $expected, got $actual" }
+		Assertions.assertEquals(expected.x, actual.x, EPSILON, message)
+		Assertions.assertEquals(expected.y, actual.y, EPSILON, message)
+		Assertions.assertEquals(expected.z, actual.z, EPSILON, message)
+	}
+
+	private fun randomRotation(): Quaternion = Quaternion(
+		random.nextFloat() * 2f - 1f,
+		random.nextFloat() * 2f - 1f,
+		random.nextFloat() * 2f - 1f,
+		random.nextFloat() * 2f - 1f,
+	).unit()
+
+	private fun randomVector(): Vector3 = Vector3(
+		random.nextFloat() * 2f - 1f,
+		random.nextFloat() * 2f - 1f,
+		random.nextFloat() * 2f - 1f,
+	)
+
+	companion object {
+		private const val BONES = 40
+		private const val POSES = 100
+		private const val EPSILON = 1e-4f
+	}
+}
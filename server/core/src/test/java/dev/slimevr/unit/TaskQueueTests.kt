@@ -0,0 +1,116 @@
+package dev.slimevr.unit
+
+import dev.slimevr.metrics.MetricsRegistry
+import dev.slimevr.tick.TaskPriority
+import dev.slimevr.tick.TaskQueue
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+/**
+ * Tests the order, coalescing and time budget of [TaskQueue]
+ */
+class TaskQueueTests {
+	private val noBudget = Long.MAX_VALUE
+
+	@Test
+	fun tasksRunByPriority() {
+		val queue = TaskQueue(MetricsRegistry())
+		val ran = mutableListOf<String>()
+		queue.add({ ran.add("rebuild 1") }, TaskPriority.REBUILD)
+		queue.add({ ran.add("control 1") }, TaskPriority.CONTROL)
+		queue.add({ ran.add("rebuild 2") }, TaskPriority.REBUILD)
+		queue.add({ ran.add("control 2") }, TaskPriority.CONTROL)
+
+		Assertions.assertFalse(queue.run(noBudget))
+		Assertions.assertEquals(listOf("control 1", "control 2", "rebuild 1", "rebuild 2"), ran)
+		Assertions.assertEquals(0, queue.pendingTasks)
+	}
+
+	@Test
+	fun repeatedKeysAreCoalesced() {
+		val queue = TaskQueue(MetricsRegistry())
+		val key = Any()
+		var runs = 0
+		Assertions.assertTrue(queue.addCoalesced(key, { runs++ }))
+		Assertions.assertFalse(queue.addCoalesced(key, { runs++ }))
+		Assertions.assertFalse(queue.addCoalesced(key, { runs++ }))
+		// A different key is queued on its own
+		Assertions.assertTrue(queue.addCoalesced(Any(), { runs++ }))
+		Assertions.assertEquals(2, queue.pendingTasks)
+
+		queue.run(noBudget)
+		Assertions.assertEquals(2, runs)
+		val stats = HashMap<String, String>()
+		queue.drainStats(stats)
+		Assertions.assertEquals("2", stats["tasks_coalesced"])
+
+		// The key can be queued again once its task ran
+		Assertions.assertTrue(queue.addCoalesced(key, { runs++ }))
+		queue.run(noBudget)
+		Assertions.assertEquals(3, runs)
+	}
+
+	@Test
+	fun keyCanBeQueuedAgainWhileItsTaskRuns() {
+		val queue = TaskQueue(MetricsRegistry())
+		val key = Any()
+		var runs = 0
+		lateinit var task: Runnable
+		task = Runnable {
+			if (runs++ == 0) Assertions.assertTrue(queue.addCoalesced(key, task))
+		}
+		queue.addCoalesced(key, task)
+
+		queue.run(noBudget)
+		Assertions.assertEquals(2, runs)
+	}
+
+	@Test
+	fun budgetLeavesTasksForTheNextTick() {
+		val metrics = MetricsRegistry()
+		val queue = TaskQueue(metrics)
+		var runs = 0
+		repeat(3) { queue.add({ runs++ }) }
+
+		// At least one task runs, even without any budget
+		Assertions.assertTrue(queue.run(0L))
+		Assertions.assertEquals(1, runs)
+		Assertions.assertEquals(2, queue.pendingTasks)
+
+		Assertions.assertTrue(queue.run(0L))
+		Assertions.assertEquals(2, runs)
+
+		// The last one empties the queue
+		Assertions.assertFalse(queue.run(0L))
+		Assertions.assertEquals(3, runs)
+		Assertions.assertFalse(queue.run(0L))
+
+		val stats = HashMap<String, String>()
+		queue.drainStats(stats)
+		Assertions.assertEquals("3", stats["tasks_run"])
+		Assertions.assertEquals("2", stats["tasks_over_budget_ticks"])
+		// Only the ticks that had tasks are timed
+		metrics.addStats(stats)
+		Assertions.assertEquals("3", stats["tasks_count"])
+	}
+
+	@Test
+	fun budgetIsCheckedAfterEachTask() {
+		val queue = TaskQueue(MetricsRegistry())
+		val budget = 1_000_000L
+		var runs = 0
+		repeat(3) {
+			queue.add({
+				runs++
+				val start = System.nanoTime()
+				while (System.nanoTime() - start < budget) Thread.onSpinWait()
+			})
+		}
+
+		Assertions.assertTrue(queue.run(budget))
+		Assertions.assertEquals(1, runs)
+		// Both fit in a larger budget
+		Assertions.assertFalse(queue.run(budget * 100))
+		Assertions.assertEquals(3, runs)
+	}
+}
@@ -0,0 +1,77 @@
+package dev.slimevr.unit
+
+import com.jme3.system.NanoTimer
+import dev.slimevr.config.FiltersConfig
+import dev.slimevr.filtering.QuaternionMovingAverage
+import dev.slimevr.filtering.TrackerFilters
+import dev.slimevr.tracking.trackers.TrackerFilteringHandler
+import dev.slimevr.tracking.trackers.TrackerSample
+import io.github.axisangles.ktmath.Quaternion
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Tests that [TrackerFilteringHandler] hands every received rotation to the
+ * filter in order, as if it had been fed directly
+ */
+class TrackerFilteringHandlerTests {
+	private val fpsTimer = NanoTimer().also {
+		it.update()
+		Thread.sleep(1)
+		it.update()
+	}
+	private val config = FiltersConfig().also { it.amount = 0.5f }
+
+	@Test
+	fun everySampleIsFiltered() {
+		for (type in listOf(TrackerFilters.SMOOTHING, TrackerFilters.PREDICTION)) {
+			config.type = type.configKey
+			val handler = TrackerFilteringHandler()
+			handler.readFilteringConfig(config, Quaternion.IDENTITY, fpsTimer)
+			val reference = QuaternionMovingAverage(type, config.amount, Quaternion.IDENTITY, fpsTimer)
+			val sample = TrackerSample()
+
+			var i = 0
+			repeat(10) { tick ->
+				// A few samples between two ticks
+				repeat(tick % 4) {
+					val rot = rotation(i++)
+					sample.setRotation(rot.w, rot.x, rot.y, rot.z, i.toLong())
+					handler.dataTick(rot.w, rot.x, rot.y, rot.z)
+					reference.addQuaternion(rot)
+				}
+				handler.update(sample)
+				reference.update()
+				Assertions.assertEquals(reference.filteredQuaternion, handler.getFilteredRotation()) { "$type, tick $tick" }
+			}
+		}
+	}
+
+	@Test
+	fun latestSampleIsFilteredWhenBehind() {
+		config.type = TrackerFilters.PREDICTION.configKey
+		val handler = TrackerFilteringHandler()
+		handler.readFilteringConfig(config, Quaternion.IDENTITY, fpsTimer)
+		val reference = QuaternionMovingAverage(TrackerFilters.PREDICTION, config.amount, Quaternion.IDENTITY, fpsTimer)
+		val sample = TrackerSample()
+
+		for (i in 0 until TrackerFilteringHandler.RING_SIZE + 5) {
+			val rot = rotation(i)
+			sample.setRotation(rot.w, rot.x, rot.y, rot.z, i.toLong())
+			handler.dataTick(rot.w, rot.x, rot.y, rot.z)
+			// The rotations that didn't fit are dropped, but the latest one
+			if (i < TrackerFilteringHandler.RING_SIZE) reference.addQuaternion(rot)
+		}
+		reference.addQuaternion(sample.rotation)
+		handler.update(sample)
+		reference.update()
+		Assertions.assertEquals(reference.filteredQuaternion, handler.getFilteredRotation())
+	}
+
+	private fun rotation(i: Int): Quaternion {
+		val angle = i * 0.05f
+		return Quaternion(cos(angle / 2f), 0f, sin(angle / 2f), 0f)
+	}
+}
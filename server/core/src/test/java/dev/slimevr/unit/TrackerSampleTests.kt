@@ -0,0 +1,65 @@
+package dev.slimevr.unit
+
+import dev.slimevr.tracking.trackers.TrackerSample
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.concurrent.thread
+
+/**
+ * Tests that [TrackerSample] never hands out a torn rotation or acceleration
+ * while another thread writes to it
+ */
+class TrackerSampleTests {
+	@Test
+	fun noTornReads() {
+		val sample = TrackerSample()
+		val done = AtomicBoolean()
+
+		// Every write has all components set to the same value, so a read
+		// mixing two writes has different components
+		val writer = thread(name = "TrackerSample writer") {
+			var i = 0
+			while (!done.get()) {
+				i++
+				val v = i.toFloat()
+				sample.setRotation(v, v, v, v, i.toLong())
+				sample.setAcceleration(v, v, v)
+			}
+		}
+
+		try {
+			while (sample.version == 0) {
+				// Wait for the writer to start
+			}
+			var lastVersion = sample.version
+			var changes = 0
+			repeat(READS) {
+				val rot = sample.rotation
+				Assertions.assertTrue(rot.w == rot.x && rot.w == rot.y && rot.w == rot.z) {
+					"Torn rotation $rot"
+				}
+				val accel = sample.acceleration
+				Assertions.assertTrue(accel.x == accel.y && accel.x == accel.z) {
+					"Torn acceleration $accel"
+				}
+
+				val version = sample.version
+				Assertions.assertTrue(version >= lastVersion) {
+					"Version went back from $lastVersion to $version"
+				}
+				if (version != lastVersion) changes++
+				lastVersion = version
+			}
+			// Make sure the reads actually raced the writer
+			Assertions.assertTrue(changes > 0)
+		} finally {
+			done.set(true)
+			writer.join()
+		}
+	}
+
+	companion object {
+		const val READS = 2_000_000
+	}
+}
@@ -0,0 +1,136 @@
+package io.eiren.util.logging
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.logging.Handler
+import java.util.logging.Level
+import java.util.logging.LogRecord
+import java.util.logging.Logger
+import kotlin.concurrent.thread
+
+class LoggingTest {
+
+	@Test
+	fun ringBufferDropsWhenFull() {
+		val buffer = LogRingBuffer(4)
+		for (i in 0 until 4) {
+			Assertions.assertTrue(buffer.offer(Level.INFO, "$i", null, null))
+		}
+		Assertions.assertFalse(buffer.offer(Level.INFO, "4", null, null))
+
+		// Releasing a slot makes room for one more, entries stay in order
+		Assertions.assertEquals("0", buffer.peek()!!.pattern)
+		buffer.release()
+		Assertions.assertTrue(buffer.offer(Level.INFO, "5", null, null))
+		Assertions.assertFalse(buffer.offer(Level.INFO, "6", null, null))
+		for (expected in listOf("1", "2", "3", "5")) {
+			Assertions.assertEquals(expected, buffer.peek()!!.pattern)
+			buffer.release()
+		}
+		Assertions.assertNull(buffer.peek())
+	}
+
+	@Test
+	fun ringBufferKeepsTheOrderOfEachWriter() {
+		val buffer = LogRingBuffer(1024)
+		val writers = 4
+		val entries = 200_000
+		val dropped = IntArray(writers)
+		val threads = List(writers) { writer ->
+			thread {
+				for (i in 0 until entries) {
+					if (!buffer.offer(Level.INFO, "", arrayOf(writer, i), null)) dropped[writer]++
+				}
+			}
+		}
+
+		// Read while writing, every entry of a writer must come after its last one
+		val last = IntArray(writers) { -1 }
+		val received = IntArray(writers)
+		while (true) {
+			val slot = buffer.peek()
+			if (slot == null) {
+				if (threads.any { it.isAlive }) continue
+				// Writers are done, read what they wrote last
+				if (buffer.peek() == null) break
+				continue
+			}
+			val writer = slot.args[0] as Int
+			val i = slot.args[1] as Int
+			buffer.release()
+			Assertions.assertTrue(i > last[writer]) { "Entry $i of writer $writer after ${last[writer]}" }
+			last[writer] = i
+			received[writer]++
+		}
+		threads.forEach { it.join() }
+
+		// Every entry was either read or counted as dropped
+		for (writer in 0 until writers) {
+			Assertions.assertEquals(entries, received[writer] + dropped[writer]) { "Writer $writer lost entries" }
+		}
+	}
+
+	@Test
+	fun logFormat() {
+		val records = LinkedBlockingQueue<LogRecord>()
+		val log = DefaultGLog(testLogger(records))
+
+		val exception = RuntimeException("test")
+		log.logFormat(Level.WARNING, "Tracker {} sent {} packets", exception, "head", 5)
+		val record = records.poll(5, TimeUnit.SECONDS)!!
+		Assertions.assertEquals("Tracker head sent 5 packets", record.message)
+		Assertions.assertEquals(Level.WARNING, record.level)
+		Assertions.assertSame(exception, record.thrown)
+
+		// Missing arguments leave their placeholders, extra ones are ignored
+		log.logFormat(Level.INFO, "{} and {}", null, 1)
+		Assertions.assertEquals("1 and {}", records.poll(5, TimeUnit.SECONDS)!!.message)
+		log.logFormat(Level.INFO, "Only {}", null, 1, 2)
+		Assertions.assertEquals("Only 1", records.poll(5, TimeUnit.SECONDS)!!.message)
+		log.logFormat(Level.INFO, "No arguments {}", null)
+		Assertions.assertEquals("No arguments {}", records.poll(5, TimeUnit.SECONDS)!!.message)
+
+		log.logFormat(Level.INFO, "Null {}", null, *arrayOf<Any?>(null))
+		Assertions.assertEquals("Null null", records.poll(5, TimeUnit.SECONDS)!!.message)
+	}
+
+	@Test
+	fun repeatsAreCountedByLevel() {
+		val records = LinkedBlockingQueue<LogRecord>()
+		val log = DefaultGLog(testLogger(records))
+		repeat(20) { log.logFormat(Level.INFO, "Repeated {}", null, it) }
+		log.logFormat(Level.SEVERE, "Repeated {}", null, 20)
+
+		for (i in 0 until 10) {
+			Assertions.assertEquals("Repeated $i", records.poll(5, TimeUnit.SECONDS)!!.message)
+		}
+		// The repeats at another level aren't suppressed with them
+		val severe = records.poll(5, TimeUnit.SECONDS)!!
+		Assertions.assertEquals(Level.SEVERE, severe.level)
+		Assertions.assertEquals("Repeated 20", severe.message)
+		Assertions.assertEquals(10L, log.suppressedMessages)
+
+		// The suppressed ones are reported once the second is over
+		val report = records.poll(5, TimeUnit.SECONDS)!!
+		Assertions.assertEquals("[Logger] Message repeated 10 more times: Repeated {}", report.message)
+	}
+
+	private fun testLogger(records: LinkedBlockingQueue<LogRecord>): Logger {
+		val logger = Logger.getAnonymousLogger()
+		logger.useParentHandlers = false
+		logger.addHandler(
+			object : Handler() {
+				override fun publish(record: LogRecord) {
+					records.add(record)
+				}
+
+				override fun flush() {}
+
+				override fun close() {}
+			},
+		)
+		return logger
+	}
+}
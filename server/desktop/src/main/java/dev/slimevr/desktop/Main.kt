@@ -6,11 +6,13 @@ import dev.slimevr.Keybinding
 import dev.slimevr.SLIMEVR_IDENTIFIER
 import dev.slimevr.VRServer
 import dev.slimevr.bridge.ISteamVRBridge
+import dev.slimevr.desktop.metrics.PrometheusEndpoint
 import dev.slimevr.desktop.platform.SteamVRBridge
 import dev.slimevr.desktop.platform.linux.UnixSocketBridge
 import dev.slimevr.desktop.platform.windows.WindowsNamedPipeBridge
 import dev.slimevr.desktop.serial.DesktopSerialHandler
 import dev.slimevr.desktop.tracking.trackers.hid.TrackersHID
+import dev.slimevr.poseframeformat.PoseFrameIO
 import dev.slimevr.tracking.trackers.Tracker
 import io.eiren.util.OperatingSystem
 import io.eiren.util.collections.FastList
@@ -64,11 +66,14 @@ fun main(args: Array<String>) {
 	}
 
 	if (cmd.args.isEmpty()) {
-		System.err.println("No command specified, expected 'run'")
+		System.err.println("No command specified, expected 'run' or 'convert-recording'")
 		exitProcess(1)
 	}
+	if (cmd.args[0].equals("convert-recording", true)) {
+		convertRecordings(cmd.args.drop(1))
+	}
 	if (!cmd.args[0].equals("run", true)) {
-		System.err.println("Unknown command: ${cmd.args[0]}, expected 'run'")
+		System.err.println("Unknown command: ${cmd.args[0]}, expected 'run' or 'convert-recording'")
 		exitProcess(1)
 	}
 
@@ -125,6 +130,15 @@ fun main(args: Array<String>) {
 		)
 		vrServer.start()
 
+		val prometheusPort = vrServer.configManager.vrConfig.metrics.prometheusPort
+		if (prometheusPort > 0) {
+			try {
+				PrometheusEndpoint(vrServer.metrics, prometheusPort).start()
+			} catch (e: IOException) {
+				LogManager.warning("Couldn't serve metrics on port $prometheusPort", e)
+			}
+		}
+
 		// Start service for USB HID trackers
 		TrackersHID(
 			"Sensors HID service",
@@ -149,6 +163,31 @@ fun main(args: Array<String>) {
 	}
 }
 
+/**
+ * Converts recordings from the stream format to the column format in place
+ */
+fun convertRecordings(paths: List<String>): Nothing {
+	if (paths.isEmpty()) {
+		System.err.println("Usage: convert-recording <recording.pfr>...")
+		exitProcess(1)
+	}
+	var failed = false
+	for (path in paths) {
+		val file = File(path)
+		try {
+			if (PoseFrameIO.convertToColumns(file, file)) {
+				println("Converted $path")
+			} else {
+				println("$path is already converted")
+			}
+		} catch (e: IOException) {
+			System.err.println("Failed to convert $path: ${e.message}")
+			failed = true
+		}
+	}
+	exitProcess(if (failed) 1 else 0)
+}
+
 fun provideSteamVRBridge(
 	server: VRServer,
 	computedTrackers: List<Tracker>,
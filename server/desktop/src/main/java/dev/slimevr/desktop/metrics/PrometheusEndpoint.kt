@@ -0,0 +1,38 @@
+package dev.slimevr.desktop.metrics
+
+import com.sun.net.httpserver.HttpServer
+import dev.slimevr.metrics.MetricsRegistry
+import io.eiren.util.logging.LogManager
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.nio.charset.StandardCharsets
+
+/**
+ * Serves the server's metrics at `http://localhost:<port>/metrics` for
+ * Prometheus to scrape. Only listens on the loopback address.
+ */
+class PrometheusEndpoint(private val metrics: MetricsRegistry, port: Int) {
+	private val server = HttpServer.create(InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0)
+
+	init {
+		server.createContext("/metrics") { exchange ->
+			exchange.use {
+				val body = StringBuilder()
+				metrics.writePrometheus(body)
+				val bytes = body.toString().toByteArray(StandardCharsets.UTF_8)
+				it.responseHeaders.set("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+				it.sendResponseHeaders(200, bytes.size.toLong())
+				it.responseBody.write(bytes)
+			}
+		}
+	}
+
+	fun start() {
+		server.start()
+		LogManager.info("[PrometheusEndpoint] Serving metrics on http://localhost:${server.address.port}/metrics")
+	}
+
+	fun stop() {
+		server.stop(0)
+	}
+}
@@ -4,6 +4,7 @@ import dev.slimevr.VRServer.Companion.instance
 import dev.slimevr.bridge.BridgeThread
 import dev.slimevr.bridge.ISteamVRBridge
 import dev.slimevr.desktop.platform.ProtobufMessages.*
+import dev.slimevr.metrics.MotionLatency
 import dev.slimevr.tracking.trackers.Tracker
 import dev.slimevr.tracking.trackers.TrackerStatus
 import dev.slimevr.tracking.trackers.TrackerStatus.Companion.getById
@@ -17,7 +18,10 @@ import java.util.Queue
 import java.util.concurrent.LinkedBlockingQueue
 import kotlin.collections.HashMap
 
-abstract class ProtobufBridge(@JvmField protected val bridgeName: String) : ISteamVRBridge {
+abstract class ProtobufBridge(
+	@JvmField protected val bridgeName: String,
+	private val latency: MotionLatency.Output? = null,
+) : ISteamVRBridge {
 	@JvmField
 	@VRServerThread
 	protected val sharedTrackers: MutableList<Tracker> = FastList()
@@ -116,6 +120,7 @@ abstract class ProtobufBridge(@JvmField protected val bridgeName: String) : ISte
 			builder.setQw(rot.w)
 		}
 		sendMessage(ProtobufMessage.newBuilder().setPosition(builder).build())
+		latency?.record(localTracker)
 	}
 
 	@VRServerThread
@@ -25,7 +25,7 @@ abstract class SteamVRBridge(
 	bridgeName: String,
 	protected val bridgeSettingsKey: String,
 	protected val shareableTrackers: List<Tracker>,
-) : ProtobufBridge(bridgeName),
+) : ProtobufBridge(bridgeName, server.motionLatency.output(bridgeSettingsKey)),
 	Runnable {
 	protected val runnerThread: Thread = Thread(this, threadName)
 	protected val config: BridgeConfig = server.configManager.vrConfig.getBridge(bridgeSettingsKey)
@@ -21,6 +21,7 @@ pluginManagement {
 	val shadowJarVersion: String by settings
 	val buildconfigVersion: String by settings
 	val grgitVersion: String by settings
+	val jmhPluginVersion: String by settings
 	plugins {
 		kotlin("plugin.serialization") version kotlinVersion
 		kotlin("jvm") version kotlinVersion
@@ -29,6 +30,7 @@ pluginManagement {
 		id("com.gradleup.shadow") version shadowJarVersion
 		id("com.github.gmazzo.buildconfig") version buildconfigVersion
 		id("org.ajoberstar.grgit") version grgitVersion
+		id("me.champeau.jmh") version jmhPluginVersion
 	}
 }
 
@@ -40,3 +42,4 @@ project(":server").projectDir = File("server")
 include(":server:core")
 include(":server:desktop")
 include(":server:android")
+include(":server:benchmarks")